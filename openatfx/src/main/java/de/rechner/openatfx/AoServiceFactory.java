@@ -24,13 +24,16 @@ import org.omg.PortableServer.LifespanPolicyValue;
 import org.omg.PortableServer.POA;
 import org.omg.PortableServer.POAHelper;
 import org.omg.PortableServer.RequestProcessingPolicyValue;
+import org.omg.PortableServer.Servant;
 import org.omg.PortableServer.ServantRetentionPolicyValue;
 import org.omg.PortableServer.ThreadPolicyValue;
 import org.omg.PortableServer.POAManagerPackage.AdapterInactive;
 import org.omg.PortableServer.POAPackage.AdapterAlreadyExists;
 import org.omg.PortableServer.POAPackage.InvalidPolicy;
+import org.omg.PortableServer.POAPackage.ObjectNotActive;
 import org.omg.PortableServer.POAPackage.ServantAlreadyActive;
 import org.omg.PortableServer.POAPackage.ServantNotActive;
+import org.omg.PortableServer.POAPackage.WrongAdapter;
 import org.omg.PortableServer.POAPackage.WrongPolicy;
 
 import de.rechner.openatfx.basestructure.BaseStructureFactory;
@@ -197,6 +200,40 @@ public class AoServiceFactory {
         }
     }
 
+    /**
+     * Returns the implementation of a session created by this factory, giving access to the operations beyond the
+     * ODS interface, e.g. {@link AoSessionImpl#compactExternalComponents()}.
+     * 
+     * @param orb The ORB the session has been created with.
+     * @param aoSession The session.
+     * @return The session implementation.
+     * @throws AoException The session has not been created by this factory within given ORB.
+     */
+    public AoSessionImpl getAoSessionImpl(ORB orb, AoSession aoSession) throws AoException {
+        try {
+            POA rootPOA = POAHelper.narrow(orb.resolve_initial_references("RootPOA"));
+            for (POA poa : rootPOA.the_children()) {
+                try {
+                    Servant servant = poa.reference_to_servant(aoSession);
+                    if (servant instanceof AoSessionImpl) {
+                        return (AoSessionImpl) servant;
+                    }
+                } catch (WrongAdapter e) {
+                    // session belongs to another POA
+                } catch (ObjectNotActive e) {
+                    // session belongs to another POA
+                } catch (WrongPolicy e) {
+                    // not a session POA
+                }
+            }
+        } catch (InvalidName e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+        throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
+                              "Session has not been created by this factory");
+    }
+
     /**
      * Creates a new POA for all elements of the application structure for the session.
      * 
@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import org.apache.commons.logging.Log;
@@ -106,6 +108,9 @@ public class AoSessionImpl extends AoSessionPOA {
     /** the temporary backup original file for transaction handling */
     private File transactionFile;
 
+    /** the external component files made obsolete by a compaction, deleted on commit */
+    private final Set<File> obsoleteExtCompFiles;
+
     private final int id;
 
     /**
@@ -123,6 +128,7 @@ public class AoSessionImpl extends AoSessionPOA {
         this.baseStructure = baseStructure;
         this.atfxCache = new AtfxCache(fileHandler);
         this.path = path;
+        this.obsoleteExtCompFiles = new LinkedHashSet<File>();
         SESSION_NO++;
         this.id = SESSION_NO;
 
@@ -136,6 +142,21 @@ public class AoSessionImpl extends AoSessionPOA {
         this.atfxCache.getContext().put("FILENAME", ODSHelper.createStringNV("FILENAME", fileStr));
         this.atfxCache.getContext().put("EXT_COMP_SEGSIZE",
                                         ODSHelper.createLongLongNV("EXT_COMP_SEGSIZE", 1024 * 1024 * 500)); // 500 MB
+        this.atfxCache.getContext().put("EXT_COMP_READ_MODE",
+                                        ODSHelper.createStringNV("EXT_COMP_READ_MODE", "BUFFERED")); // or MMAP
+        this.atfxCache.getContext().put("EXT_COMP_CACHE_SIZE",
+                                        ODSHelper.createLongLongNV("EXT_COMP_CACHE_SIZE", 1024 * 1024 * 64)); // 64 MB
+        this.atfxCache.getContext().put("EXT_COMP_WRITE_THREADS",
+                                        ODSHelper.createLongNV("EXT_COMP_WRITE_THREADS", 0)); // > 0 writes behind
+        this.atfxCache.getContext().put("EXT_COMP_WRITE_QUEUE_SIZE",
+                                        ODSHelper.createLongLongNV("EXT_COMP_WRITE_QUEUE_SIZE",
+                                                                   1024 * 1024 * 64)); // 64 MB
+        this.atfxCache.getContext().put("EXT_COMP_WRITE_LAYOUT",
+                                        ODSHelper.createStringNV("EXT_COMP_WRITE_LAYOUT", "COLUMN")); // or RECORD
+        this.atfxCache.getContext().put("EXT_COMP_COMPACT", ODSHelper.createStringNV("EXT_COMP_COMPACT", "FALSE"));
+        this.atfxCache.getContext().put("OFF_HEAP_VALUES_THRESHOLD",
+                                        ODSHelper.createLongLongNV("OFF_HEAP_VALUES_THRESHOLD",
+                                                                   1024 * 1024 * 16)); // 16 MB, 0 keeps all on heap
         this.atfxCache.getContext().put("INDENT_XML", ODSHelper.createStringNV("INDENT_XML", "TRUE"));
         this.atfxCache.getContext().put("WRITE_EXTERNALCOMPONENTS",
                                         ODSHelper.createStringNV("WRITE_EXTERNALCOMPONENTS", "FALSE"));
@@ -282,9 +303,12 @@ public class AoSessionImpl extends AoSessionPOA {
     public NameIterator listContext(String varPattern) throws AoException {
         try {
             List<String> list = new ArrayList<String>();
-            for (String str : this.atfxCache.getContext().keySet()) {
-                if (PatternUtil.nameFilterMatch(str, varPattern)) {
-                    list.add(str);
+            Map<String, NameValue> context = this.atfxCache.getContext();
+            synchronized (context) {
+                for (String str : context.keySet()) {
+                    if (PatternUtil.nameFilterMatch(str, varPattern)) {
+                        list.add(str);
+                    }
                 }
             }
             NameIteratorImpl nIteratorImpl = new NameIteratorImpl(this.modelPOA, list.toArray(new String[0]));
@@ -306,9 +330,12 @@ public class AoSessionImpl extends AoSessionPOA {
     public NameValueIterator getContext(String varPattern) throws AoException {
         try {
             List<NameValue> list = new ArrayList<NameValue>();
-            for (NameValue nv : this.atfxCache.getContext().values()) {
-                if (PatternUtil.nameFilterMatch(nv.valName, varPattern)) {
-                    list.add(ODSHelper.cloneNV(nv));
+            Map<String, NameValue> context = this.atfxCache.getContext();
+            synchronized (context) {
+                for (NameValue nv : context.values()) {
+                    if (PatternUtil.nameFilterMatch(nv.valName, varPattern)) {
+                        list.add(ODSHelper.cloneNV(nv));
+                    }
                 }
             }
             NameValueIteratorImpl nvIteratorImpl = new NameValueIteratorImpl(this.modelPOA,
@@ -365,22 +392,25 @@ public class AoSessionImpl extends AoSessionPOA {
      * @see org.asam.ods.AoSessionOperations#removeContext(java.lang.String)
      */
     public void removeContext(String varPattern) throws AoException {
-        // check if readonly context should be removed
-        for (NameValue nv : this.atfxCache.getContext().values()) {
-            if (PatternUtil.nameFilterMatch(nv.valName, varPattern) && STATIC_CONTEXT.containsKey(nv.valName)) {
-                throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0,
-                                      "Unable to remove readonly context '" + nv.valName + "'");
+        Map<String, NameValue> context = this.atfxCache.getContext();
+        synchronized (context) {
+            // check if readonly context should be removed
+            for (NameValue nv : context.values()) {
+                if (PatternUtil.nameFilterMatch(nv.valName, varPattern) && STATIC_CONTEXT.containsKey(nv.valName)) {
+                    throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0,
+                                          "Unable to remove readonly context '" + nv.valName + "'");
+                }
             }
-        }
-        // remove matching context
-        List<String> toRemove = new ArrayList<String>();
-        for (NameValue nv : this.atfxCache.getContext().values()) {
-            if (PatternUtil.nameFilterMatch(nv.valName, varPattern)) {
-                toRemove.add(nv.valName);
+            // remove matching context
+            List<String> toRemove = new ArrayList<String>();
+            for (NameValue nv : context.values()) {
+                if (PatternUtil.nameFilterMatch(nv.valName, varPattern)) {
+                    toRemove.add(nv.valName);
+                }
+            }
+            for (String valName : toRemove) {
+                context.remove(valName);
             }
-        }
-        for (String valName : toRemove) {
-            this.atfxCache.getContext().remove(valName);
         }
     }
 
@@ -504,6 +534,9 @@ public class AoSessionImpl extends AoSessionPOA {
 
         // restore backup
         try {
+            this.atfxCache.discardExtCompWrites();
+            this.atfxCache.closeExtCompSegmentWriters();
+            this.obsoleteExtCompFiles.clear();
             FileUtil.copyFile(this.transactionFile, localAtfxFile);
             this.transactionFile.delete();
             this.transactionFile = null;
@@ -534,6 +567,16 @@ public class AoSessionImpl extends AoSessionPOA {
         File localAtfxFile = new File(this.path);
 
         try {
+            // finish writing the external component files
+            this.atfxCache.awaitExtCompWrites();
+            this.atfxCache.closeExtCompSegmentWriters();
+
+            // copy the referenced data of the external component files to new files
+            NameValue compact = this.atfxCache.getContext().get(ExtCompCompactor.CONTEXT_COMPACT);
+            if (compact != null && compact.value.flag == 15 && compact.value.u.stringVal().equalsIgnoreCase("TRUE")) {
+                compactExternalComponents();
+            }
+
             // overwrite backup file
             AtfxWriter.getInstance().writeXML(this.transactionFile, _this());
 
@@ -541,6 +584,17 @@ public class AoSessionImpl extends AoSessionPOA {
             this.transactionFile.delete();
             this.transactionFile = null;
 
+            // the obsolete files are no longer referenced by the written ATFX file
+            if (!this.obsoleteExtCompFiles.isEmpty()) {
+                this.atfxCache.getFileChannelPool().close();
+                for (File file : this.obsoleteExtCompFiles) {
+                    if (!file.delete()) {
+                        LOG.warn("Unable to delete obsolete external component file '" + file + "'");
+                    }
+                }
+                this.obsoleteExtCompFiles.clear();
+            }
+
             LOG.info("Commited transaction to '" + localAtfxFile.getAbsolutePath() + "'");
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
@@ -554,7 +608,9 @@ public class AoSessionImpl extends AoSessionPOA {
      * @see org.asam.ods.AoSessionOperations#flush()
      */
     public void flush() throws AoException {
-        // TODO To be implemented
+        // finish pending writes to the external component files
+        this.atfxCache.awaitExtCompWrites();
+        this.atfxCache.flushExtCompSegmentWriters();
     }
 
     /**
@@ -567,10 +623,35 @@ public class AoSessionImpl extends AoSessionPOA {
             this.instancePOA.destroy(false, false);
         }
         this.modelPOA.destroy(false, false);
+        this.atfxCache.closeExtCompResources();
+        this.atfxCache.closeOffHeapValueStore();
         LOG.info("Closed ATFX AoSession");
         System.gc();
     }
 
+    /**
+     * Copies the data still referenced by the external components to new segment files and updates the external
+     * components accordingly, see {@link ExtCompCompactor}. The segment files left without references are deleted
+     * when the transaction is committed, the same as with the context variable 'EXT_COMP_COMPACT' set to 'TRUE'.
+     * 
+     * @throws AoException No transaction active or error compacting the files.
+     */
+    public void compactExternalComponents() throws AoException {
+        if (this.transactionFile == null) {
+            throw new AoException(ErrorCode.AO_TRANSACTION_NOT_ACTIVE, SeverityFlag.ERROR, 0, "No transaction active");
+        }
+        this.atfxCache.awaitExtCompWrites();
+        this.atfxCache.closeExtCompSegmentWriters();
+        this.obsoleteExtCompFiles.addAll(new ExtCompCompactor(this.atfxCache).compact());
+    }
+
+    /**
+     * Packs the instance relations into compact arrays, to be called after the instances of a file have been loaded.
+     */
+    public void packInstanceRelations() {
+        this.atfxCache.packInstanceRelations();
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -4,9 +4,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -40,7 +40,6 @@ import org.asam.ods.SelType;
 import org.asam.ods.SelValueExt;
 import org.asam.ods.SetType;
 import org.asam.ods.SeverityFlag;
-import org.asam.ods.TS_Union;
 import org.asam.ods.TS_Value;
 import org.asam.ods.TS_ValueSeq;
 import org.asam.ods.T_LONGLONG;
@@ -91,98 +90,24 @@ class ApplElemAccessImpl extends ApplElemAccessPOA {
         }
         int numberOfRows = val[0].values.flag.length;
 
-        // group by application element id and check if id attr is given
-        Map<Long, AIDNameValueSeqUnitId> idColumns = new HashMap<Long, AIDNameValueSeqUnitId>();
-        Map<Long, List<AIDNameValueSeqUnitId>> aeGroupColumns = new HashMap<Long, List<AIDNameValueSeqUnitId>>();
+        // group by application element id
+        Map<Long, List<AIDNameValueSeqUnitId>> aeGroupColumns = new LinkedHashMap<Long, List<AIDNameValueSeqUnitId>>();
         for (AIDNameValueSeqUnitId column : val) {
             long aid = ODSHelper.asJLong(column.attr.aid);
-            Integer attrNo = this.atfxCache.getAttrNoByName(aid, column.attr.aaName);
-            // add to ae group
             List<AIDNameValueSeqUnitId> list = aeGroupColumns.get(aid);
             if (list == null) {
                 list = new ArrayList<AIDNameValueSeqUnitId>();
                 aeGroupColumns.put(aid, list);
             }
             list.add(column);
-            // check for id column
-            Integer idAttrNo = this.atfxCache.getAttrNoByBaName(aid, "id");
-            if (attrNo != null && attrNo.equals(idAttrNo)) {
-                idColumns.put(aid, column);
-            }
         }
 
-        // create instances per application element
+        // create instances per application element, column by column
         List<ElemId> elemIdList = new ArrayList<ElemId>(numberOfRows);
-        for (final long aid : aeGroupColumns.keySet()) { // iterate over application elements
-
-            // find 'id' column
-            AIDNameValueSeqUnitId idCol = idColumns.get(aid);
-
-            // trick for 'AoLocalColumn': sort the attribute 'sequence_representation' BEFORE the attribute 'values'.
-            // This is needed to write the values correctly
-            Set<Long> lcAids = this.atfxCache.getAidsByBaseType("aolocalcolumn");
-            if (lcAids != null && lcAids.contains(aid)) {
-                Collections.sort(aeGroupColumns.get(aid), new Comparator<AIDNameValueSeqUnitId>() {
-
-                    public int compare(AIDNameValueSeqUnitId o1, AIDNameValueSeqUnitId o2) {
-                        Integer i1 = atfxCache.getAttrNoByName(aid, o2.attr.aaName);
-                        Integer i2 = atfxCache.getAttrNoByBaName(aid, "sequence_representation");
-                        if (i1 == null || i2 == null) { // in case of relation or instance attribute
-                            return -1;
-                        }
-                        boolean isSeqRepVal = i1.equals(i2);
-                        return isSeqRepVal ? 1 : 0;
-                    }
-                });
-            }
-
-            // iterate over rows (instances)
-            for (int row = 0; row < numberOfRows; row++) {
-
-                // fetch or create id
-                long iid = 0;
-                if (idCol != null) {
-                    iid = ODSHelper.asJLong(ODSHelper.tsValueSeq2tsValue(idCol.values, row).u.longlongVal());
-                } else {
-                    iid = this.atfxCache.nextIid(aid);
-                }
-
-                // create instance
-                this.atfxCache.addInstance(aid, iid);
-                // write id column to cache (if autogenerated)
-                if (idCol == null) {
-                    Integer idAttrNo = this.atfxCache.getAttrNoByBaName(aid, "id");
-                    TS_Value value = new TS_Value();
-                    value.flag = (short) 15;
-                    value.u = new TS_Union();
-                    value.u.longlongVal(ODSHelper.asODSLongLong(iid));
-                    this.atfxCache.setInstanceValue(aid, iid, idAttrNo, value);
-                }
-
-                // write instance values or relation
-                for (AIDNameValueSeqUnitId anvsui : aeGroupColumns.get(aid)) {
-                    Integer attrNo = this.atfxCache.getAttrNoByName(aid, anvsui.attr.aaName);
-                    TS_Value value = ODSHelper.tsValueSeq2tsValue(anvsui.values, row);
-                    // attribute is an application attribute
-                    if (attrNo != null) {
-                        this.atfxCache.setInstanceValue(aid, iid, attrNo, value);
-                    }
-                    // attribute is an application relation or an instance attribute
-                    else {
-                        ApplicationRelation rel = this.atfxCache.getApplicationRelationByName(aid, anvsui.attr.aaName);
-                        if (rel != null) {
-                            List<Long> otherIids = new ArrayList<Long>();
-                            otherIids.add(ODSHelper.asJLong(value.u.longlongVal()));
-                            this.atfxCache.createInstanceRelations(aid, iid, rel, otherIids);
-                        }
-                        // not defined in application model, assume instance attribute
-                        else {
-                            this.atfxCache.setInstanceAttributeValue(aid, iid, anvsui.attr.aaName, value);
-                        }
-                    }
-                }
-
-                elemIdList.add(new ElemId(ODSHelper.asODSLongLong(aid), ODSHelper.asODSLongLong(iid)));
+        for (Map.Entry<Long, List<AIDNameValueSeqUnitId>> entry : aeGroupColumns.entrySet()) {
+            T_LONGLONG aid = ODSHelper.asODSLongLong(entry.getKey());
+            for (long iid : this.atfxCache.insertInstances(entry.getKey(), entry.getValue())) {
+                elemIdList.add(new ElemId(aid, ODSHelper.asODSLongLong(iid)));
             }
         }
 
@@ -605,94 +530,188 @@ class ApplElemAccessImpl extends ApplElemAccessPOA {
             }
         }
 
+        // answer equality conditions from the hash index of the condition attribute or relation, otherwise filter
+        // all instances
+        List<Long> filteredIids = findIndexedInstanceIds(aid, condition);
+        if (filteredIids == null) {
+            filteredIids = filterInstanceIds(aid, condition);
+        }
+
+        // build the result set
+        ElemResultSetExt erse = new ElemResultSetExt();
+        erse.aid = ODSHelper.asODSLongLong(aid);
+        if (wildcardHelper != null) {
+            wildcardHelper.fillElemResultsSetExt(erse, filteredIids);
+        } else {
+        	erse.values = new NameValueSeqUnitId[aoq.anuSeq.length];
+        	for (int col = 0; col < erse.values.length; col++) {
+        	    Integer attrNo = this.atfxCache.getAttrNoByName(aid, aoq.anuSeq[col].attr.aaName);
+        	    ApplicationRelation ar = atfxCache.getRelationByName(aid, aoq.anuSeq[col].attr.aaName);
+        	    erse.values[col] = new NameValueSeqUnitId();
+        	    erse.values[col].valName = aoq.anuSeq[col].attr.aaName;
+        	    erse.values[col].value = new TS_ValueSeq();
+        	    erse.values[col].unitId = new T_LONGLONG(0, 0);
+        	    
+        	    if (attrNo == null) {
+       		        erse.values[col].value = atfxCache.getRelatedInstanceIds(aid, filteredIids, ar);
+        	    } else {
+        	        erse.values[col].value = atfxCache.getInstanceValues(aid, attrNo, filteredIids);
+        	    }
+        	}
+        }
+        
+        return new ResultSetExt[] { new ResultSetExt(new ElemResultSetExt[] { erse }, null) };
+    }
+
+    /**
+     * Returns the ids of the instances matching an equality condition, using the hash indexes of the
+     * <code>AtfxCache</code>.
+     * 
+     * @param aid The application element id.
+     * @param condition The condition, may be null.
+     * @return The instance ids in ascending order, null if the condition cannot be answered from an index.
+     * @throws AoException Error reading index.
+     */
+    private List<Long> findIndexedInstanceIds(long aid, SelValueExt condition) throws AoException {
+        if (condition == null) {
+            return null;
+        }
+        DataType condDt = condition.value.u.discriminator();
+        boolean inset = (condition.oper == SelOpcode.INSET);
+        Integer condAttrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
+
+        // condition on N:1 relation
+        if (condAttrNo == null) {
+            ApplicationRelation condRel = this.atfxCache.getRelationByName(aid, condition.attr.attr.aaName);
+            if (condDt == DataType.DT_LONGLONG) {
+                List<Long> otherIids = Collections.singletonList(ODSHelper.asJLong(condition.value.u.longlongVal()));
+                return this.atfxCache.findInstanceIdsByRelation(aid, condRel, otherIids);
+            } else if (condDt == DataType.DS_LONGLONG && inset) {
+                List<Long> otherIids = new ArrayList<Long>();
+                for (long otherIid : ODSHelper.asJLong(condition.value.u.longlongSeq())) {
+                    otherIids.add(otherIid);
+                }
+                return this.atfxCache.findInstanceIdsByRelation(aid, condRel, otherIids);
+            }
+            return null;
+        }
+
+        // condition on attribute, instances without value are read as empty string or zero, these are filtered
+        DataType attrDt = this.atfxCache.getApplicationAttribute(aid, condAttrNo).getDataType();
+        if (condDt == DataType.DT_STRING && attrDt == DataType.DT_STRING) {
+            String pattern = condition.value.u.stringVal();
+            if (pattern.length() < 1 || pattern.indexOf('*') > -1 || pattern.indexOf('?') > -1) {
+                return null;
+            }
+            return this.atfxCache.findInstanceIds(aid, condAttrNo, Collections.singletonList(pattern), true);
+        } else if (condDt == DataType.DS_STRING && inset && attrDt == DataType.DT_STRING) {
+            List<String> values = Arrays.asList(condition.value.u.stringSeq());
+            if (values.contains("")) {
+                return null;
+            }
+            return this.atfxCache.findInstanceIds(aid, condAttrNo, values, false);
+        } else if (condDt == DataType.DT_LONGLONG && attrDt == DataType.DT_LONGLONG) {
+            long value = ODSHelper.asJLong(condition.value.u.longlongVal());
+            if (value == 0) {
+                return null;
+            }
+            return this.atfxCache.findInstanceIds(aid, condAttrNo, Collections.singletonList(value), false);
+        } else if (condDt == DataType.DS_LONGLONG && inset && attrDt == DataType.DT_LONGLONG) {
+            List<Long> values = new ArrayList<Long>();
+            for (long value : ODSHelper.asJLong(condition.value.u.longlongSeq())) {
+                if (value == 0) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return this.atfxCache.findInstanceIds(aid, condAttrNo, values, false);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the ids of the instances matching a condition by reading the condition values of all instances.
+     * 
+     * @param aid The application element id.
+     * @param condition The condition, may be null.
+     * @return The instance ids in ascending order.
+     * @throws AoException Error reading values.
+     */
+    private List<Long> filterInstanceIds(long aid, SelValueExt condition) throws AoException {
         // get all queries instances -> get all instances, then filter manually, because the 'getInstances()' method
         // uses case sensitivity
         Set<Long> ieIds = atfxCache.getInstanceIds(aid);
         List<Long> filteredIids = new ArrayList<Long>();
+
+        // read the values of the condition attribute of all instances at once
+        Integer condAttrNo = null;
+        ApplicationRelation condRel = null;
+        TS_ValueSeq condValues = null;
+        if (condition != null) {
+            condAttrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
+            if (condAttrNo != null) {
+                condValues = this.atfxCache.getInstanceValues(aid, condAttrNo, ieIds);
+            } else {
+                condRel = this.atfxCache.getRelationByName(aid, condition.attr.attr.aaName);
+            }
+        }
+        String[] condStrings = null;
+        long[] condLongs = null;
+        if (condition != null && condition.value.u.discriminator() == DataType.DS_STRING) {
+            condStrings = condition.value.u.stringSeq();
+            Arrays.sort(condStrings); // sort so find method works
+        } else if (condition != null && condition.value.u.discriminator() == DataType.DS_LONGLONG) {
+            condLongs = ODSHelper.asJLong(condition.value.u.longlongSeq());
+            Arrays.sort(condLongs); // sort so find method works
+        }
+
+        int row = -1;
         for (Long iid : ieIds) {
+            row++;
             if (condition == null) {
                 filteredIids.add(iid);
             } else if (condition.value.u.discriminator() == DataType.DT_STRING) {
-                Integer attrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
-                TS_Value value = atfxCache.getInstanceValue(aid, attrNo, iid);
-                if ((value != null) && (value.u != null) && (value.u.stringVal() != null)) {
-                    if (PatternUtil.nameFilterMatchCI(value.u.stringVal(), condition.value.u.stringVal())) {
+                String value = condValues.u.stringVal()[row];
+                if (value != null) {
+                    if (PatternUtil.nameFilterMatchCI(value, condition.value.u.stringVal())) {
                         filteredIids.add(iid);
                     }
                 }
             } else if ((condition.value.u.discriminator() == DataType.DS_STRING)
                     && (condition.oper == SelOpcode.INSET)) {
-                Integer attrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
-                TS_Value value = atfxCache.getInstanceValue(aid, attrNo, iid);
-                String[] cond = condition.value.u.stringSeq();
-                Arrays.sort(cond); // sort so find method works
-                if (Arrays.binarySearch(cond, value.u.stringVal()) > -1) {
+                if (Arrays.binarySearch(condStrings, condValues.u.stringVal()[row]) > -1) {
                     filteredIids.add(iid);
                 }
 
             } else if (condition.value.u.discriminator() == DataType.DT_LONGLONG) {
-                Integer attrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
-                if (attrNo == null) {
-                    ApplicationRelation ar = atfxCache.getRelationByName(aid, condition.attr.attr.aaName);
-                    List<Long> longlongVals  = atfxCache.getRelatedInstanceIds(aid, iid, ar);
+                if (condAttrNo == null) {
+                    List<Long> longlongVals  = atfxCache.getRelatedInstanceIds(aid, iid, condRel);
                     if (longlongVals.size() == 1 && longlongVals.get(0) == ODSHelper.asJLong(condition.value.u.longlongVal())) {
                         filteredIids.add(iid);
                     }
                 } else {
-                    TS_Value value = atfxCache.getInstanceValue(aid, attrNo, iid);
-                    if ((value != null) && (value.u != null) && (value.u.longlongVal() != null)) {
-                        if (ODSHelper.asJLong(value.u.longlongVal()) == ODSHelper.asJLong(condition.value.u.longlongVal())) {
+                    T_LONGLONG value = condValues.u.longlongVal()[row];
+                    if (value != null) {
+                        if (ODSHelper.asJLong(value) == ODSHelper.asJLong(condition.value.u.longlongVal())) {
                             filteredIids.add(iid);
                         }
                     }
                 }
             } else if ((condition.value.u.discriminator() == DataType.DS_LONGLONG)
                     && (condition.oper == SelOpcode.INSET)) {
-                Integer attrNo = this.atfxCache.getAttrNoByName(aid, condition.attr.attr.aaName);
-                if (attrNo == null) {
-                    ApplicationRelation ar = atfxCache.getRelationByName(aid, condition.attr.attr.aaName);
-                    List<Long> longlongVals  = atfxCache.getRelatedInstanceIds(aid, iid, ar);
-                    long[] cond = ODSHelper.asJLong(condition.value.u.longlongSeq());
-                    Arrays.sort(cond); // sort so find method works
-
-                    if (longlongVals.size() == 1 && Arrays.binarySearch(cond, longlongVals.get(0)) > -1) {
+                if (condAttrNo == null) {
+                    List<Long> longlongVals  = atfxCache.getRelatedInstanceIds(aid, iid, condRel);
+                    if (longlongVals.size() == 1 && Arrays.binarySearch(condLongs, longlongVals.get(0)) > -1) {
                         filteredIids.add(iid);
                     }
                 } else {
-                    TS_Value value = atfxCache.getInstanceValue(aid, attrNo, iid);
-                    long[] cond = ODSHelper.asJLong(condition.value.u.longlongSeq());
-                    Arrays.sort(cond); // sort so find method works
-                    if (Arrays.binarySearch(cond, ODSHelper.asJLong(value.u.longlongVal())) > -1) {
+                    if (Arrays.binarySearch(condLongs, ODSHelper.asJLong(condValues.u.longlongVal()[row])) > -1) {
                         filteredIids.add(iid);
                     }
                 }
             }
         }
-
-        // build the result set
-        ElemResultSetExt erse = new ElemResultSetExt();
-        erse.aid = ODSHelper.asODSLongLong(aid);
-        if (wildcardHelper != null) {
-            wildcardHelper.fillElemResultsSetExt(erse, filteredIids);
-        } else {
-        	erse.values = new NameValueSeqUnitId[aoq.anuSeq.length];
-        	for (int col = 0; col < erse.values.length; col++) {
-        	    Integer attrNo = this.atfxCache.getAttrNoByName(aid, aoq.anuSeq[col].attr.aaName);
-        	    ApplicationRelation ar = atfxCache.getRelationByName(aid, aoq.anuSeq[col].attr.aaName);
-        	    erse.values[col] = new NameValueSeqUnitId();
-        	    erse.values[col].valName = aoq.anuSeq[col].attr.aaName;
-        	    erse.values[col].value = new TS_ValueSeq();
-        	    erse.values[col].unitId = new T_LONGLONG(0, 0);
-        	    
-        	    if (attrNo == null) {
-       		        erse.values[col].value = atfxCache.getRelatedInstanceIds(aid, filteredIids, ar);
-        	    } else {
-        	        erse.values[col].value = atfxCache.getInstanceValues(aid, attrNo, filteredIids);
-        	    }
-        	}
-        }
-        
-        return new ResultSetExt[] { new ResultSetExt(new ElemResultSetExt[] { erse }, null) };
+        return filteredIids;
     }
 
     /**
@@ -1,20 +1,30 @@
 package de.rechner.openatfx;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.asam.ods.AIDNameValueSeqUnitId;
 import org.asam.ods.AoException;
 import org.asam.ods.ApplicationAttribute;
 import org.asam.ods.ApplicationElement;
@@ -28,16 +38,23 @@ import org.asam.ods.InstanceElementIterator;
 import org.asam.ods.InstanceElementIteratorHelper;
 import org.asam.ods.NameValue;
 import org.asam.ods.SeverityFlag;
+import org.asam.ods.TS_UnionSeq;
 import org.asam.ods.TS_Value;
 import org.asam.ods.TS_ValueSeq;
 import org.asam.ods.T_LONGLONG;
 import org.omg.PortableServer.POA;
 
+import de.rechner.openatfx.util.FileUtil;
 import de.rechner.openatfx.util.ODSHelper;
 
 
 /**
  * Central cache holding all data for performance reasons.
+ * <p>
+ * The instance data may be read by concurrent CORBA requests while a single writer modifies it: the instances of each
+ * application element are guarded by a read/write lock of their {@link InstanceStore}, the CORBA object references
+ * are cached in concurrent maps. Changes of the application model are expected not to run concurrently with other
+ * requests.
  * 
  * @author Christian Rechner
  */
@@ -45,48 +62,79 @@ class AtfxCache {
 
     private static final Log LOG = LogFactory.getLog(AtfxCache.class);
 
+    /** the roles of application attributes with special handling on reading and writing values */
+    private static final int ROLE_LC_VALUES = 1;
+    private static final int ROLE_LC_FLAGS = 2;
+    private static final int ROLE_LC_GEN_PARAMS = 4;
+
     /** the file handler */
     private final IFileHandler fileHandler;
 
-    /** session context variables */
+    /** session context variables, synchronized keeping the insertion order */
     private final Map<String, NameValue> context;
 
-    /** application elements */
+    /** application elements, the model maps are concurrent as they are read while a single writer modifies them */
     private final Map<String, ApplicationElement> nameToAeMap; // <aeName,
                                                                // ApplicationElement>
     private final Map<String, Set<Long>> beToAidMap; // <beName, aid>
     private final Map<Long, String> aidToAeNameMap;
     private final Map<Long, ApplicationElement> aidToAeMap;
 
-    /** application attributes */
+    /** application attributes, the ordered maps per application element are replaced on each modification */
     private final Map<Long, Map<Integer, ApplicationAttribute>> attrNoToAttrMap; // <aid,<attrNo,Attribute>>
     private final Map<Long, Map<String, Integer>> aaNameToAttrNoMap; // <aid,<aaName,attrNo>>
     private final Map<Long, Map<String, Integer>> baNameToAttrNoMap; // <aid,<baName,attrNo>>
+    private final Map<Long, int[]> attrRoles; // <aid,<attrNo,roles>>, computed on first usage
 
     /** application relations */
     private final Map<Long, Set<ApplicationRelation>> applicationRelationMap; // <aid,<applRels>
     private final Map<ApplicationRelation, ApplicationRelation> inverseRelationMap; // <rel, invRel>
 
-    /** instance relations */
-    private final Map<Long, Map<Long, Map<ApplicationRelation, Set<Long>>>> instanceRelMap; // <aid,<iid,<applRel,relInstIds>>>
+    /** instances with their values, instance attribute values and relations */
+    private final Map<Long, InstanceStore> instanceStores; // <aid,instances>
+
+    /** decoded values of local columns read from external component files */
+    private final LocalColumnValuesCache localColumnValuesCache;
+
+    /** descriptors of external components */
+    private final Map<Long, ExtCompDescriptor> extCompDescriptors; // <iid,descriptor>
+
+    /** descriptors of local columns */
+    private final Map<Long, LocalColumnDescriptor> localColumnDescriptors; // <iid,descriptor>
 
-    /** instance values */
-    private final Map<Long, Map<Long, Map<Integer, Object>>> instanceValueMap; // <aid,<iid,<attrNo,value>>>
+    /** open file channels to the external component files */
+    private final FileChannelPool fileChannelPool;
 
-    /** instance attribute values */
-    private final Map<Long, Map<Long, Map<String, TS_Value>>> instanceAttrValueMap; // <aid,<iid,<attrName,value>>>
+    /** pool decoding the segments of external components in parallel, created on first usage */
+    private ForkJoinPool forkJoinPool;
+
+    /** writers appending to the external component segment files, created on first usage */
+    private final Map<ExtCompSegmentWriter.Kind, ExtCompSegmentWriter> extCompSegmentWriters;
+
+    /** queue writing local column values to the external component files, created on first usage */
+    private volatile ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> extCompWriteQueue;
+    private boolean extCompWriteQueueCreated;
+    private final ExtCompWriteQueue.Collector<List<ExtCompWriter.WrittenComponent>> extCompAttacher;
+
+    /** store keeping large local column values outside of the heap, created on first usage */
+    private OffHeapValueStore offHeapValueStore;
 
     /** instance element CORBA object references */
-    private final Map<Long, Map<Long, InstanceElement>> instanceElementCache; // <aid,<iid,<InstanceElement>>>
+    private final Map<Long, ConcurrentMap<Long, InstanceElement>> instanceElementCache; // <aid,<iid,<InstanceElement>>>
 
     /** the instance iterator references */
     private final Map<Long, InstanceElement[]> instanceIteratorElementCache;
     private final Map<Long, Integer> instanceIteratorPointerCache;
-    private long nextInstanceIteratorId = 0;
+    private final AtomicLong nextInstanceIteratorId;
 
     /** The counters for ids */
     private int nextAid;
     private final Map<Long, Integer> nextAttrNoMap;
+    private final ConcurrentMap<Long, AtomicLong> nextIidMap; // <aid,nextIid>
+
+    /** The generation of the cached data, changed by each modification of instance data */
+    private final AtomicLong cacheGeneration;
+    private final AtomicInteger runningModifications;
 
     /**
      * Constructor.
@@ -97,31 +145,45 @@ class AtfxCache {
         this.fileHandler = fileHandler;
 
         /** session context */
-        this.context = new LinkedHashMap<String, NameValue>();
+        this.context = Collections.synchronizedMap(new LinkedHashMap<String, NameValue>());
 
         /** application element */
-        this.nameToAeMap = new HashMap<String, ApplicationElement>();
-        this.beToAidMap = new HashMap<String, Set<Long>>();
-        this.aidToAeMap = new TreeMap<Long, ApplicationElement>();
-        this.aidToAeNameMap = new HashMap<Long, String>();
+        this.nameToAeMap = new ConcurrentHashMap<String, ApplicationElement>();
+        this.beToAidMap = new ConcurrentHashMap<String, Set<Long>>();
+        this.aidToAeMap = new ConcurrentSkipListMap<Long, ApplicationElement>();
+        this.aidToAeNameMap = new ConcurrentHashMap<Long, String>();
 
         /** application attributes */
-        this.attrNoToAttrMap = new HashMap<Long, Map<Integer, ApplicationAttribute>>();
-        this.aaNameToAttrNoMap = new HashMap<Long, Map<String, Integer>>();
-        this.baNameToAttrNoMap = new HashMap<Long, Map<String, Integer>>();
-
-        this.applicationRelationMap = new HashMap<Long, Set<ApplicationRelation>>();
-        this.inverseRelationMap = new HashMap<ApplicationRelation, ApplicationRelation>();
-
-        this.instanceRelMap = new HashMap<Long, Map<Long, Map<ApplicationRelation, Set<Long>>>>();
-        this.instanceValueMap = new HashMap<Long, Map<Long, Map<Integer, Object>>>();
-        this.instanceAttrValueMap = new HashMap<Long, Map<Long, Map<String, TS_Value>>>();
-        this.instanceElementCache = new HashMap<Long, Map<Long, InstanceElement>>();
-        this.instanceIteratorElementCache = new HashMap<Long, InstanceElement[]>();
-        this.instanceIteratorPointerCache = new HashMap<Long, Integer>();
+        this.attrNoToAttrMap = new ConcurrentHashMap<Long, Map<Integer, ApplicationAttribute>>();
+        this.aaNameToAttrNoMap = new ConcurrentHashMap<Long, Map<String, Integer>>();
+        this.baNameToAttrNoMap = new ConcurrentHashMap<Long, Map<String, Integer>>();
+        this.attrRoles = new ConcurrentHashMap<Long, int[]>();
+
+        this.applicationRelationMap = new ConcurrentHashMap<Long, Set<ApplicationRelation>>();
+        this.inverseRelationMap = new ConcurrentHashMap<ApplicationRelation, ApplicationRelation>();
+
+        this.instanceStores = new ConcurrentHashMap<Long, InstanceStore>();
+        this.localColumnValuesCache = new LocalColumnValuesCache();
+        this.extCompDescriptors = new ConcurrentHashMap<Long, ExtCompDescriptor>();
+        this.localColumnDescriptors = new ConcurrentHashMap<Long, LocalColumnDescriptor>();
+        this.fileChannelPool = new FileChannelPool(FileChannelPool.DEFAULT_MAX_OPEN_CHANNELS);
+        this.extCompSegmentWriters = new ConcurrentHashMap<ExtCompSegmentWriter.Kind, ExtCompSegmentWriter>();
+        this.extCompAttacher = new ExtCompWriteQueue.Collector<List<ExtCompWriter.WrittenComponent>>() {
+
+            public void collect(long iidLc, List<ExtCompWriter.WrittenComponent> components) throws AoException {
+                ExtCompWriter.getInstance().attachValues(AtfxCache.this, iidLc, components);
+            }
+        };
+        this.instanceElementCache = new ConcurrentHashMap<Long, ConcurrentMap<Long, InstanceElement>>();
+        this.instanceIteratorElementCache = new ConcurrentHashMap<Long, InstanceElement[]>();
+        this.instanceIteratorPointerCache = new ConcurrentHashMap<Long, Integer>();
+        this.nextInstanceIteratorId = new AtomicLong();
 
         this.nextAid = 1;
         this.nextAttrNoMap = new HashMap<Long, Integer>();
+        this.nextIidMap = new ConcurrentHashMap<Long, AtomicLong>();
+        this.cacheGeneration = new AtomicLong();
+        this.runningModifications = new AtomicInteger();
     }
 
     /**
@@ -159,23 +221,38 @@ class AtfxCache {
     }
 
     /**
-     * Returns the next free instance element id for an application element.
+     * Allocates the next free instance element id for an application element. The id is following the highest id ever
+     * added or allocated, so ids of removed instances are not reused. Concurrent callers get distinct ids.
      * 
      * @param aid The application element id.
      * @return The instance element id.
      */
     public long nextIid(long aid) {
-        Long[] instIids = getInstanceIds(aid).toArray(new Long[0]);
-        if (instIids.length > 0) {
-            return instIids[instIids.length - 1] + 1;
+        return getIidCounter(aid).getAndIncrement();
+    }
+
+    private AtomicLong getIidCounter(long aid) {
+        AtomicLong counter = this.nextIidMap.get(aid);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong(1);
+            counter = this.nextIidMap.putIfAbsent(aid, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
         }
-        return 1;
+        return counter;
     }
 
     /***********************************************************************************
      * session context
      ***********************************************************************************/
 
+    /**
+     * Returns the session context variables. The map is synchronized, iterating over it requires to synchronize on the
+     * map.
+     * 
+     * @return The context variables.
+     */
     public Map<String, NameValue> getContext() {
         return context;
     }
@@ -196,21 +273,20 @@ class AtfxCache {
         this.aidToAeMap.put(aid, ae);
         this.aidToAeNameMap.put(aid, "");
         this.nameToAeMap.put("", ae);
-        this.attrNoToAttrMap.put(aid, new LinkedHashMap<Integer, ApplicationAttribute>());
-        this.aaNameToAttrNoMap.put(aid, new LinkedHashMap<String, Integer>());
-        this.baNameToAttrNoMap.put(aid, new HashMap<String, Integer>());
-        this.applicationRelationMap.put(aid, new LinkedHashSet<ApplicationRelation>());
-        this.instanceRelMap.put(aid, new HashMap<Long, Map<ApplicationRelation, Set<Long>>>());
-        this.instanceValueMap.put(aid, new TreeMap<Long, Map<Integer, Object>>());
-        this.instanceAttrValueMap.put(aid, new TreeMap<Long, Map<String, TS_Value>>());
-        this.instanceElementCache.put(aid, new TreeMap<Long, InstanceElement>());
+        this.attrNoToAttrMap.put(aid, Collections.<Integer, ApplicationAttribute> emptyMap());
+        this.aaNameToAttrNoMap.put(aid, Collections.<String, Integer> emptyMap());
+        this.baNameToAttrNoMap.put(aid, new ConcurrentHashMap<String, Integer>());
+        this.applicationRelationMap.put(aid, new CopyOnWriteArraySet<ApplicationRelation>());
+        this.instanceStores.put(aid, new InstanceStore());
+        this.instanceElementCache.put(aid, new ConcurrentHashMap<Long, InstanceElement>());
 
         Set<Long> applElems = this.beToAidMap.get(beName.toLowerCase());
         if (applElems == null) {
-            applElems = new HashSet<Long>();
+            applElems = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
             this.beToAidMap.put(beName.toLowerCase(), applElems);
         }
         applElems.add(aid);
+        invalidateAttributeRoles();
     }
 
     /**
@@ -262,7 +338,9 @@ class AtfxCache {
         String oldName = this.aidToAeNameMap.get(aid);
         ApplicationElement ae = this.aidToAeMap.get(aid);
         this.aidToAeNameMap.put(aid, newAeName);
-        this.nameToAeMap.remove(oldName);
+        if (oldName != null) {
+            this.nameToAeMap.remove(oldName);
+        }
         this.nameToAeMap.put(newAeName, ae);
     }
 
@@ -272,18 +350,24 @@ class AtfxCache {
      * @param aid The application element id.
      */
     public void removeApplicationElement(long aid) {
-        this.nameToAeMap.remove(aidToAeNameMap.get(aid));
-        this.aidToAeNameMap.remove(aid);
+        Integer valuesAttrNo = getAttrNoByBaName(aid, "values");
+        if (valuesAttrNo != null) {
+            freeOffHeapValues(aid, valuesAttrNo, getInstanceIds(aid));
+        }
+        String aeName = this.aidToAeNameMap.remove(aid);
+        if (aeName != null) {
+            this.nameToAeMap.remove(aeName);
+        }
         this.aidToAeMap.remove(aid);
         this.aaNameToAttrNoMap.remove(aid);
         this.baNameToAttrNoMap.remove(aid);
         this.aaNameToAttrNoMap.remove(aid);
         this.applicationRelationMap.remove(aid);
-        this.instanceRelMap.remove(aid);
-        this.instanceValueMap.remove(aid);
-        this.instanceAttrValueMap.remove(aid);
+        this.instanceStores.remove(aid);
         this.instanceElementCache.remove(aid);
         this.nextAttrNoMap.remove(aid);
+        this.nextIidMap.remove(aid);
+        invalidateAttributeRoles();
     }
 
     /**
@@ -301,7 +385,10 @@ class AtfxCache {
      ***********************************************************************************/
 
     public void addApplicationAttribute(long aid, int attrNo, ApplicationAttribute aa) {
-        this.attrNoToAttrMap.get(aid).put(attrNo, aa);
+        Map<Integer, ApplicationAttribute> attrMap = new LinkedHashMap<Integer, ApplicationAttribute>(
+                this.attrNoToAttrMap.get(aid));
+        attrMap.put(attrNo, aa);
+        this.attrNoToAttrMap.put(aid, Collections.unmodifiableMap(attrMap));
     }
 
     /**
@@ -334,11 +421,10 @@ class AtfxCache {
     }
 
     public void setBaNameForAttrNo(long aid, int attrNo, String baName) {
-        if (baName == null) {
-            this.baNameToAttrNoMap.get(aid).remove(null);
-        } else {
+        if (baName != null) {
             this.baNameToAttrNoMap.get(aid).put(baName, attrNo);
         }
+        invalidateAttributeRoles();
     }
 
     /**
@@ -360,9 +446,10 @@ class AtfxCache {
      * @param newAaName The new application attribute name.
      */
     public void renameApplicationAttribute(long aid, int attrNo, String oldAaName, String newAaName) {
-        Map<String, Integer> attrNoMap = this.aaNameToAttrNoMap.get(aid);
+        Map<String, Integer> attrNoMap = new LinkedHashMap<String, Integer>(this.aaNameToAttrNoMap.get(aid));
         attrNoMap.remove(oldAaName);
         attrNoMap.put(newAaName, attrNo);
+        this.aaNameToAttrNoMap.put(aid, Collections.unmodifiableMap(attrNoMap));
     }
 
     /**
@@ -374,8 +461,16 @@ class AtfxCache {
      */
     public void removeApplicationAttribute(long aid, String aaName) throws AoException {
         Integer attrNo = getAttrNoByName(aid, aaName);
-        this.attrNoToAttrMap.get(aid).remove(attrNo);
-        this.aaNameToAttrNoMap.get(aid).remove(aaName);
+        if (attrNo != null) {
+            freeOffHeapValues(aid, attrNo, getInstanceIds(aid));
+        }
+        Map<Integer, ApplicationAttribute> attrMap = new LinkedHashMap<Integer, ApplicationAttribute>(
+                this.attrNoToAttrMap.get(aid));
+        attrMap.remove(attrNo);
+        this.attrNoToAttrMap.put(aid, Collections.unmodifiableMap(attrMap));
+        Map<String, Integer> attrNoMap = new LinkedHashMap<String, Integer>(this.aaNameToAttrNoMap.get(aid));
+        attrNoMap.remove(aaName);
+        this.aaNameToAttrNoMap.put(aid, Collections.unmodifiableMap(attrNoMap));
 
         // remove from base attribute map
         String baName = null;
@@ -384,15 +479,15 @@ class AtfxCache {
                 baName = entry.getKey();
             }
         }
-        this.baNameToAttrNoMap.get(aid).remove(baName);
+        if (baName != null) {
+            this.baNameToAttrNoMap.get(aid).remove(baName);
+        }
 
-        // remove from instance value map
-        Map<Long, Map<Integer, Object>> ieValueMap = this.instanceValueMap.get(aid);
-        for (Map<Integer, Object> v : ieValueMap.values()) {
-            if (v != null) {
-                v.remove(attrNo);
-            }
+        // remove from instance values
+        if (attrNo != null) {
+            this.instanceStores.get(aid).removeValues(attrNo);
         }
+        invalidateAttributeRoles();
     }
 
     /***********************************************************************************
@@ -468,20 +563,6 @@ class AtfxCache {
     public void addApplicationRelation(ApplicationRelation applRel, ApplicationRelation invApplRel) {
         this.inverseRelationMap.put(applRel, invApplRel);
         this.inverseRelationMap.put(invApplRel, applRel);
-
-        // prepare application relation maps for all aids
-        for (Map<Long, Map<ApplicationRelation, Set<Long>>> map : this.instanceRelMap.values()) {
-            for (Map<ApplicationRelation, Set<Long>> iMap : map.values()) {
-                iMap.put(applRel, new TreeSet<Long>());
-            }
-        }
-
-        // prepare application relation maps for all aids
-        for (Map<Long, Map<ApplicationRelation, Set<Long>>> map : this.instanceRelMap.values()) {
-            for (Map<ApplicationRelation, Set<Long>> iMap : map.values()) {
-                iMap.put(invApplRel, new TreeSet<Long>());
-            }
-        }
     }
 
     /**
@@ -499,13 +580,12 @@ class AtfxCache {
             relList.remove(applRel);
             relList.remove(invApplRel);
         }
-        // remove application relation maps for all instances
-        for (Map<Long, Map<ApplicationRelation, Set<Long>>> map : this.instanceRelMap.values()) {
-            for (Map<ApplicationRelation, Set<Long>> iMap : map.values()) {
-                iMap.remove(applRel);
-                iMap.remove(invApplRel);
-            }
+        // remove instance relations of all instances
+        for (InstanceStore instances : this.instanceStores.values()) {
+            instances.removeRelations(applRel);
+            instances.removeRelations(invApplRel);
         }
+        this.localColumnDescriptors.clear();
     }
 
     /**
@@ -535,13 +615,94 @@ class AtfxCache {
      * @param iid The instance id.
      */
     public void addInstance(long aid, long iid) throws AoException {
-        this.instanceRelMap.get(aid).put(iid, new HashMap<ApplicationRelation, Set<Long>>());
-        for (ApplicationRelation rel : this.getApplicationRelations(aid)) {
-            this.instanceRelMap.get(aid).get(iid).put(rel, new TreeSet<Long>());
+        startModification();
+        try {
+            invalidateLocalColumnDescriptor(aid, iid);
+            AtomicLong counter = getIidCounter(aid);
+            long nextIid = counter.get();
+            while (iid >= nextIid && !counter.compareAndSet(nextIid, iid + 1)) {
+                nextIid = counter.get();
+            }
+            this.instanceStores.get(aid).add(iid);
+        } finally {
+            endModification();
+        }
+    }
+
+    /**
+     * Creates instances of an application element from whole columns, as given to
+     * <code>ApplElemAccess.insertInstances()</code>. The values of the application attributes are set and the
+     * instance relations are created column by column, see {@link #setInstanceValues(long, long[], int, TS_ValueSeq)}
+     * and {@link #createInstanceRelations(long, long[], ApplicationRelation, long[])}. The values of local columns
+     * are set last, after the sequence representation and the relations.
+     * 
+     * @param aid The application element id.
+     * @param columns The columns of the application element, all of equal length.
+     * @return The instance ids in the order of the rows.
+     * @throws AoException Error creating instances.
+     */
+    public long[] insertInstances(long aid, List<AIDNameValueSeqUnitId> columns) throws AoException {
+        int rows = columns.get(0).values.flag.length;
+
+        // create the instances, the ids are taken from the 'id' column or generated
+        Integer idAttrNo = getAttrNoByBaName(aid, "id");
+        T_LONGLONG[] ids = null;
+        for (AIDNameValueSeqUnitId column : columns) {
+            Integer attrNo = getAttrNoByName(aid, column.attr.aaName);
+            if (attrNo != null && attrNo.equals(idAttrNo)) {
+                ids = column.values.u.longlongVal();
+            }
+        }
+        long[] iids = new long[rows];
+        T_LONGLONG[] generatedIds = new T_LONGLONG[rows];
+        for (int row = 0; row < rows; row++) {
+            iids[row] = (ids != null) ? ODSHelper.asJLong(ids[row]) : nextIid(aid);
+            generatedIds[row] = ODSHelper.asODSLongLong(iids[row]);
+            addInstance(aid, iids[row]);
+        }
+        if (ids == null && idAttrNo != null) {
+            setInstanceValues(aid, iids, idAttrNo, generatedIds, DataType.DT_LONGLONG);
+        }
+
+        // application attributes, relations and instance attributes
+        List<AIDNameValueSeqUnitId> lcColumns = new ArrayList<AIDNameValueSeqUnitId>();
+        for (AIDNameValueSeqUnitId column : columns) {
+            Integer attrNo = getAttrNoByName(aid, column.attr.aaName);
+            if (attrNo != null) {
+                if (isLocalColumnValuesAttribute(aid, attrNo)) {
+                    lcColumns.add(0, column);
+                } else if (isLocalColumnFlagsAttribute(aid, attrNo)) {
+                    lcColumns.add(column);
+                } else {
+                    setInstanceValues(aid, iids, attrNo, column.values);
+                }
+                continue;
+            }
+            ApplicationRelation rel = getApplicationRelationByName(aid, column.attr.aaName);
+            if (rel != null) {
+                T_LONGLONG[] relIds = column.values.u.longlongVal();
+                long[] otherIids = new long[rows];
+                for (int row = 0; row < rows; row++) {
+                    otherIids[row] = ODSHelper.asJLong(relIds[row]);
+                }
+                createInstanceRelations(aid, iids, rel, otherIids);
+            }
+            // not defined in application model, assume instance attribute
+            else {
+                TS_Value[] values = new TS_Value[rows];
+                for (int row = 0; row < rows; row++) {
+                    values[row] = ODSHelper.tsValueSeq2tsValue(column.values, row);
+                }
+                this.instanceStores.get(aid).setInstanceAttributes(iids, column.attr.aaName, values);
+            }
+        }
+
+        // the values and flags of local columns may be written to external component files
+        for (AIDNameValueSeqUnitId column : lcColumns) {
+            setInstanceValues(aid, iids, getAttrNoByName(aid, column.attr.aaName), column.values);
         }
 
-        this.instanceValueMap.get(aid).put(iid, new HashMap<Integer, Object>());
-        this.instanceAttrValueMap.get(aid).put(iid, new LinkedHashMap<String, TS_Value>());
+        return iids;
     }
 
     /**
@@ -566,7 +727,10 @@ class AtfxCache {
                     throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
                 }
                 ie = InstanceElementHelper.unchecked_narrow(obj);
-                this.instanceElementCache.get(aid).put(iid, ie);
+                InstanceElement existing = this.instanceElementCache.get(aid).putIfAbsent(iid, ie);
+                if (existing != null) {
+                    ie = existing;
+                }
             }
             return ie;
         }
@@ -621,7 +785,7 @@ class AtfxCache {
      * @throws AoException Error lazy create CORBA instance element.
      */
     public InstanceElement[] getInstances(POA instancePOA, long aid) throws AoException {
-        Set<Long> iids = this.instanceValueMap.get(aid).keySet();
+        Set<Long> iids = getInstanceIds(aid);
         InstanceElement[] ies = new InstanceElement[iids.size()];
         int i = 0;
         for (long iid : iids) {
@@ -639,25 +803,41 @@ class AtfxCache {
      * @throws AoException
      */
     public void removeInstance(long aid, long iid) throws AoException {
-        // remove relations
-        for (ApplicationRelation applRel : getApplicationRelations(aid)) {
-            removeInstanceRelations(aid, iid, applRel, getRelatedInstanceIds(aid, iid, applRel));
+        startModification();
+        try {
+            invalidateLocalColumnValues(aid, iid);
+            invalidateExtCompDescriptor(aid, iid);
+            invalidateLocalColumnDescriptor(aid, iid);
+
+            // remove relations, only the inverse relations of the related instances have to be visited
+            awaitExtCompWrite(aid, iid);
+            InstanceStore instances = this.instanceStores.get(aid);
+            for (ApplicationRelation applRel : getApplicationRelations(aid)) {
+                long[] relInstIds = instances.getRelatedIids(iid, applRel);
+                if (relInstIds.length > 0) {
+                    removeInstanceRelations(aid, iid, applRel, toList(relInstIds));
+                }
+            }
+            // remove instance values
+            Integer valuesAttrNo = getAttrNoByBaName(aid, "values");
+            if (valuesAttrNo != null) {
+                freeOffHeapValues(aid, valuesAttrNo, Collections.singleton(iid));
+            }
+            instances.remove(iid);
+            this.instanceElementCache.get(aid).remove(iid);
+        } finally {
+            endModification();
         }
-        // remove instance values
-        this.instanceValueMap.get(aid).remove(iid);
-        this.instanceAttrValueMap.get(aid).remove(iid);
-        this.instanceRelMap.get(aid).remove(iid);
-        this.instanceElementCache.get(aid).remove(iid);
     }
 
     /**
      * Returns all instance ids for given application element id.
      * 
      * @param aid The application element id.
-     * @return The instance ids.
+     * @return A copy of the instance ids in ascending order.
      */
     public Set<Long> getInstanceIds(long aid) {
-        return this.instanceValueMap.get(aid).keySet();
+        return this.instanceStores.get(aid).getIids();
     }
 
     /**
@@ -668,7 +848,49 @@ class AtfxCache {
      * @return True, if instance exists, otherwise false.
      */
     public boolean instanceExists(long aid, long iid) {
-        return this.instanceValueMap.get(aid).containsKey(iid);
+        return this.instanceStores.get(aid).contains(iid);
+    }
+
+    /**
+     * Returns the ids of the instances having one of the given values of an application attribute, using a hash index
+     * of the application attribute. Instances without value are not found.
+     * 
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @param values The values, <code>T_LONGLONG</code> values may be given as <code>Long</code>.
+     * @param caseInsensitive Whether to ignore the case of the ASCII characters of string values.
+     * @return The instance ids in ascending order.
+     */
+    public List<Long> findInstanceIds(long aid, int attrNo, Collection<?> values, boolean caseInsensitive) {
+        return toList(this.instanceStores.get(aid).findIids(attrNo, values, caseInsensitive));
+    }
+
+    /**
+     * Returns the ids of the instances having exactly one related instance with one of the given ids, using a hash
+     * index of the application relation.
+     * 
+     * @param aid The application element id.
+     * @param applRel The application relation.
+     * @param otherIids The ids of the related instances.
+     * @return The instance ids in ascending order.
+     * @throws AoException Error waiting for pending writes.
+     */
+    public List<Long> findInstanceIdsByRelation(long aid, ApplicationRelation applRel, Collection<Long> otherIids)
+            throws AoException {
+        // the external components of local columns with pending writes are not yet created
+        Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
+        if (localColumnAids != null && localColumnAids.contains(aid)) {
+            awaitExtCompWrites();
+        }
+        return toList(this.instanceStores.get(aid).findIidsByRelatedIid(applRel, otherIids));
+    }
+
+    private static List<Long> toList(long[] iids) {
+        List<Long> list = new ArrayList<Long>(iids.length);
+        for (long iid : iids) {
+            list.add(iid);
+        }
+        return list;
     }
 
     /**
@@ -723,20 +945,84 @@ class AtfxCache {
      * @param value The value.
      */
     public void setInstanceValue(long aid, long iid, int attrNo, TS_Value value) throws AoException {
+        startModification();
+        try {
+            invalidateLocalColumnValues(aid, iid);
+            invalidateExtCompDescriptor(aid, iid);
+            invalidateLocalColumnDescriptor(aid, iid);
+            storeInstanceValue(aid, iid, attrNo, value, null, null);
+        } finally {
+            endModification();
+        }
+    }
+
+    /**
+     * Sets the values of an application attribute of several instances from a whole column, like
+     * {@link #setInstanceValue(long, long, int, TS_Value)} for each instance. The column is converted at once, the
+     * values of attributes without special handling are stored in one step.
+     * 
+     * @param aid The application element id.
+     * @param iids The instance element ids.
+     * @param attrNo The application attribute number.
+     * @param values The values, in the order of the instance ids.
+     * @throws AoException Error setting values.
+     */
+    public void setInstanceValues(long aid, long[] iids, int attrNo, TS_ValueSeq values) throws AoException {
+        setInstanceValues(aid, iids, attrNo, ODSHelper.tsValueSeq2jObjects(values), values.u.discriminator());
+    }
+
+    /**
+     * Sets the values of an application attribute of several instances, given as objects.
+     * 
+     * @param aid The application element id.
+     * @param iids The instance element ids.
+     * @param attrNo The application attribute number.
+     * @param jValues The values, in the order of the instance ids.
+     * @param dt The data type of the values.
+     * @throws AoException Error setting values.
+     */
+    private void setInstanceValues(long aid, long[] iids, int attrNo, java.lang.Object[] jValues, DataType dt)
+            throws AoException {
+        startModification();
+        try {
+            for (long iid : iids) {
+                invalidateLocalColumnValues(aid, iid);
+                invalidateExtCompDescriptor(aid, iid);
+                invalidateLocalColumnDescriptor(aid, iid);
+            }
+            if (isLocalColumnValuesAttribute(aid, attrNo) || isLocalColumnFlagsAttribute(aid, attrNo)) {
+                for (int i = 0; i < iids.length; i++) {
+                    storeInstanceValue(aid, iids[i], attrNo, null, dt, jValues[i]);
+                }
+            } else {
+                this.instanceStores.get(aid).setValues(iids, attrNo, jValues);
+            }
+        } finally {
+            endModification();
+        }
+    }
+
+    /**
+     * Stores an instance value after the caches have been invalidated, with the special handling of the values and
+     * flags of local columns.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance element id.
+     * @param attrNo The application attribute number.
+     * @param value The value, null if given as object.
+     * @param dt The data type of the value given as object.
+     * @param jValue The value as object, only used if value is null.
+     * @throws AoException Error storing value.
+     */
+    private void storeInstanceValue(long aid, long iid, int attrNo, TS_Value value, DataType dt,
+            java.lang.Object jValue) throws AoException {
         // check if attribute is 'values' of 'AoLocalColumn', then special handling
         if (isLocalColumnValuesAttribute(aid, attrNo)) {
 
             // read sequence representation and write_mode
             int seqRepAttrNo = getAttrNoByBaName(aid, "sequence_representation");
-            TS_Value seqRepValue = getInstanceValue(aid, seqRepAttrNo, iid);
-            int seqRep = -1;
-            if (DataType.DT_ENUM == seqRepValue.u.discriminator()) {
-                seqRep = seqRepValue.u.enumVal();
-            } else if (DataType.DT_LONG == seqRepValue.u.discriminator()) {
-                // in HORIBA STARS the sequence representation comes as DT_LONG
-                seqRep = seqRepValue.u.longVal();
-            }
-            
+            int seqRep = getSequenceRepresentation(aid, iid);
+
             String writeMode = this.context.get("write_mode").value.u.stringVal();
 
             // ***************************************************
@@ -749,7 +1035,8 @@ class AtfxCache {
             // write mode 'file', then write to external component
             else if (writeMode.equalsIgnoreCase("file")) {
                 seqRep = ODSHelper.seqRepComp2seqRepExtComp(seqRep);
-                ExtCompWriter.getInstance().writeValues(this, iid, value);
+                TS_Value tsValue = (value != null) ? value : ODSHelper.jObject2tsValue(dt, jValue);
+                ExtCompWriter.getInstance().writeValues(this, iid, tsValue);
                 setInstanceValue(aid, iid, seqRepAttrNo, ODSHelper.createEnumNV("", seqRep).value);
                 return;
             }
@@ -769,14 +1056,87 @@ class AtfxCache {
             Collection<Long> extCompIids = getRelatedInstanceIds(aid, iid, relLcExtComp);
             if (extCompIids.size() == 1) {
                 long extCompIid = extCompIids.iterator().next();
-                ExtCompWriter.getInstance().writeFlags(this, extCompIid, value.u.shortSeq());
+                TS_Value flags = (value != null) ? value : ODSHelper.jObject2tsValue(dt, jValue);
+                ExtCompWriter.getInstance().writeFlags(this, extCompIid, flags.u.shortSeq());
                 return;
             }
         }
 
-        // put value to memory
-        java.lang.Object jValue = ODSHelper.tsValue2jObject(value);
-        this.instanceValueMap.get(aid).get(iid).put(attrNo, jValue);
+        // put value to memory, large local column values off heap
+        if (value != null) {
+            jValue = ODSHelper.tsValue2jObject(value);
+        }
+        if (isLocalColumnValuesAttribute(aid, attrNo)) {
+            jValue = putOffHeapValue(jValue);
+            freeOffHeapValue(this.instanceStores.get(aid).setValue(iid, attrNo, jValue));
+            return;
+        }
+        this.instanceStores.get(aid).setValue(iid, attrNo, jValue);
+    }
+
+    /**
+     * Sets the values of several local columns, for example of all columns of a submatrix. In write mode 'file' with
+     * the context variable 'EXT_COMP_WRITE_LAYOUT' set to 'RECORD', the explicit numeric columns of equal length are
+     * written as interleaved records to one external component file, all other columns are set one by one.
+     * 
+     * @param aid The application element id of the local columns.
+     * @param iids The instance ids.
+     * @param values The values, in the order of the instance ids.
+     * @throws AoException Error setting values.
+     */
+    public void setLocalColumnValues(long aid, List<Long> iids, List<TS_Value> values) throws AoException {
+        int valuesAttrNo = getAttrNoByBaName(aid, "values");
+        int seqRepAttrNo = getAttrNoByBaName(aid, "sequence_representation");
+
+        // collect the columns to write as records
+        List<Long> recordIids = new ArrayList<Long>();
+        List<TS_Value> recordValues = new ArrayList<TS_Value>();
+        String writeMode = this.context.get("write_mode").value.u.stringVal();
+        NameValue layout = this.context.get(ExtCompWriter.CONTEXT_WRITE_LAYOUT);
+        if (writeMode.equalsIgnoreCase("file") && layout != null && layout.value.flag == 15
+                && layout.value.u.stringVal().equalsIgnoreCase("RECORD")) {
+            for (int i = 0; i < iids.size(); i++) {
+                // implicit_constant=1,implicit_linear=2,implicit_saw=3,formula=6
+                int seqRep = getSequenceRepresentation(aid, iids.get(i));
+                int rows = ExtCompWriter.getRecordRows(values.get(i));
+                if (seqRep == 1 || seqRep == 2 || seqRep == 3 || seqRep == 6 || rows < 0) {
+                    continue;
+                }
+                if (recordValues.isEmpty() || ExtCompWriter.getRecordRows(recordValues.get(0)) == rows) {
+                    recordIids.add(iids.get(i));
+                    recordValues.add(values.get(i));
+                }
+            }
+        }
+
+        // a single column is written as usual
+        Set<Long> writtenIids = new HashSet<Long>();
+        if (recordIids.size() > 1) {
+            ExtCompWriter.getInstance().writeRecords(this, recordIids, recordValues);
+            for (long iid : recordIids) {
+                int seqRep = ODSHelper.seqRepComp2seqRepExtComp(getSequenceRepresentation(aid, iid));
+                setInstanceValue(aid, iid, seqRepAttrNo, ODSHelper.createEnumNV("", seqRep).value);
+            }
+            writtenIids.addAll(recordIids);
+        }
+        for (int i = 0; i < iids.size(); i++) {
+            if (!writtenIids.contains(iids.get(i))) {
+                setInstanceValue(aid, iids.get(i), valuesAttrNo, values.get(i));
+            }
+        }
+    }
+
+    private int getSequenceRepresentation(long aid, long iid) throws AoException {
+        int seqRepAttrNo = getAttrNoByBaName(aid, "sequence_representation");
+        TS_Value seqRepValue = getInstanceValue(aid, seqRepAttrNo, iid);
+        int seqRep = -1;
+        if (DataType.DT_ENUM == seqRepValue.u.discriminator()) {
+            seqRep = seqRepValue.u.enumVal();
+        } else if (DataType.DT_LONG == seqRepValue.u.discriminator()) {
+            // in HORIBA STARS the sequence representation comes as DT_LONG
+            seqRep = seqRepValue.u.longVal();
+        }
+        return seqRep;
     }
 
     /**
@@ -798,31 +1158,40 @@ class AtfxCache {
 
         // read generation parameters from values if null
         if (isLocalColumnGenParamsAttribute(aid, attrNo)) {
-            int seqRepAttrNo = getAttrNoByBaName(aid, "sequence_representation");
-            int seqRep = getInstanceValue(aid, seqRepAttrNo, iid).u.enumVal();
+            LocalColumnDescriptor lc = getLocalColumnDescriptor(iid);
+            int seqRep = lc.getSequenceRepresentation();
             // implicit_constant=1,implicit_linear=2,implicit_saw=3,formula=4
-            if (seqRep == 1 || seqRep == 2 || seqRep == 3 || seqRep == 4) {
-                int genParamsAttrNo = getAttrNoByBaName(aid, "generation_parameters");
-                if (this.instanceValueMap.get(aid).get(iid).get(genParamsAttrNo) == null) {
-                    int valuesAttrNo = getAttrNoByBaName(aid, "values");
-                    TS_Value val = getInstanceValue(aid, valuesAttrNo, iid);
-                    // generation parameters for 'implicit_constant' may be datatype DT_STRING
-                    if (val.u.discriminator() == DataType.DS_STRING) {
-                        return ODSHelper.createEmptyTS_Value(DataType.DS_DOUBLE);
-                    }
-                    return ODSHelper.convertTsValue(getInstanceValue(aid, valuesAttrNo, iid), DataType.DS_DOUBLE);
+            if ((seqRep == 1 || seqRep == 2 || seqRep == 3 || seqRep == 4) && !lc.hasGenerationParameters()) {
+                int valuesAttrNo = getAttrNoByBaName(aid, "values");
+                TS_Value val = getInstanceValue(aid, valuesAttrNo, iid);
+                // generation parameters for 'implicit_constant' may be datatype DT_STRING
+                if (val.u.discriminator() == DataType.DS_STRING) {
+                    return ODSHelper.createEmptyTS_Value(DataType.DS_DOUBLE);
                 }
+                return ODSHelper.convertTsValue(getInstanceValue(aid, valuesAttrNo, iid), DataType.DS_DOUBLE);
             }
         }
 
+        // the values may still be written to the external component file
+        if (lcValuesAttr || lcFlagsAttr) {
+            awaitExtCompWrite(iid);
+        }
+
         // read values from external component file
-        if (lcValuesAttr) {
-            int seqRepAttrNo = getAttrNoByBaName(aid, "sequence_representation");
-            int seqRep = getInstanceValue(aid, seqRepAttrNo, iid).u.enumVal();
-            // external_component=7,raw_linear_external=8,raw_polynomial_external=9,raw_linear_calibrated_external=11,raw_rational_external=13
-            if (seqRep == 7 || seqRep == 8 || seqRep == 9 || seqRep == 11 || seqRep == 13) {
-                return ExtCompReader.getInstance().readValues(this, iid, dt);
+        if (lcValuesAttr && getLocalColumnDescriptor(iid).isExternal()) {
+            TS_Value value = this.localColumnValuesCache.get(iid, dt);
+            if (value == null) {
+                long generation = getCacheGeneration();
+                value = ExtCompReader.getInstance().readValues(this, iid, dt);
+                if (generation >= 0) {
+                    this.localColumnValuesCache.put(iid, dt, value, getLocalColumnValuesCacheSize());
+                    if (!isCacheGeneration(generation)) {
+                        // modified while reading, the values may be stale
+                        this.localColumnValuesCache.invalidate(iid);
+                    }
+                }
             }
+            return value;
         }
         // read flags from external component file
         if (lcFlagsAttr) {
@@ -833,27 +1202,105 @@ class AtfxCache {
         }
 
         // read values from memory
-        java.lang.Object jValue = this.instanceValueMap.get(aid).get(iid).get(attrNo);
+        java.lang.Object jValue = this.instanceStores.get(aid).getValue(iid, attrNo);
+        while (jValue instanceof OffHeapValueStore.Value) {
+            java.lang.Object offHeapValue = getOffHeapValue((OffHeapValueStore.Value) jValue, 0, Integer.MAX_VALUE);
+            // released by a concurrent overwrite, read the current value
+            jValue = (offHeapValue != null) ? offHeapValue : this.instanceStores.get(aid).getValue(iid, attrNo);
+        }
 
         // adjust datatype in case for internal values
         // and raw datatype differs from measurement quantity datatype
-        if (lcValuesAttr && jValue != null && jValue instanceof float[]) {
-            dt = DataType.DS_FLOAT;
-        } else if (lcValuesAttr && jValue != null && jValue instanceof double[]) {
-            dt = DataType.DS_DOUBLE;
-        } else if (lcValuesAttr && jValue != null && jValue instanceof byte[]) {
-            dt = DataType.DS_BYTE;
-        } else if (lcValuesAttr && jValue != null && jValue instanceof short[]) {
-            dt = DataType.DS_SHORT;
-        } else if (lcValuesAttr && jValue != null && jValue instanceof int[]) {
-            dt = DataType.DS_LONG;
-        } else if (lcValuesAttr && jValue != null && jValue instanceof T_LONGLONG[]) {
-            dt = DataType.DS_LONGLONG;
+        if (lcValuesAttr) {
+            dt = getDataTypeForLocalColumnValues(jValue, dt);
         }
 
         return (jValue == null) ? ODSHelper.createEmptyTS_Value(dt) : ODSHelper.jObject2tsValue(dt, jValue);
     }
 
+    private static DataType getDataTypeForLocalColumnValues(java.lang.Object jValue, DataType dt) {
+        if (jValue instanceof float[]) {
+            return DataType.DS_FLOAT;
+        } else if (jValue instanceof double[]) {
+            return DataType.DS_DOUBLE;
+        } else if (jValue instanceof byte[]) {
+            return DataType.DS_BYTE;
+        } else if (jValue instanceof short[]) {
+            return DataType.DS_SHORT;
+        } else if (jValue instanceof int[]) {
+            return DataType.DS_LONG;
+        } else if (jValue instanceof T_LONGLONG[]) {
+            return DataType.DS_LONGLONG;
+        }
+        return dt;
+    }
+
+    /**
+     * Returns a range of a sequence value of an instance element, e.g. the values or flags of a local column. If the
+     * values or flags are stored in external component files, only the requested range is read from the files.
+     *
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @param iid The instance id.
+     * @param startPoint The index of the first value to return.
+     * @param count The maximum number of values to return, fewer values are returned if the end of the sequence is
+     *            reached.
+     * @return The value range, an empty value if the value is not set.
+     * @throws AoException Error getting value.
+     */
+    public TS_Value getInstanceValue(long aid, int attrNo, long iid, int startPoint, int count) throws AoException {
+        awaitExtCompWrite(aid, iid);
+
+        // read values range from external component file
+        if (isLocalColumnValuesAttribute(aid, attrNo)) {
+            if (getLocalColumnDescriptor(iid).isExternal()) {
+                DataType dt = getDataTypeForLocalColumnValues(iid);
+                TS_Value value = this.localColumnValuesCache.get(iid, dt);
+                if (value != null) {
+                    return subValue(value, startPoint, count);
+                }
+                return ExtCompReader.getInstance().readValues(this, iid, dt, startPoint, count);
+            }
+            // read only the range of values kept off heap
+            java.lang.Object jValue = this.instanceStores.get(aid).getValue(iid, attrNo);
+            while (jValue instanceof OffHeapValueStore.Value) {
+                java.lang.Object range = getOffHeapValue((OffHeapValueStore.Value) jValue, startPoint, count);
+                if (range != null) {
+                    DataType dt = getDataTypeForLocalColumnValues(iid);
+                    return ODSHelper.jObject2tsValue(getDataTypeForLocalColumnValues(range, dt), range);
+                }
+                // released by a concurrent overwrite, read the current value
+                jValue = this.instanceStores.get(aid).getValue(iid, attrNo);
+            }
+        }
+        // read flags range from external component file
+        else if (isLocalColumnFlagsAttribute(aid, attrNo)) {
+            TS_Value flags = ExtCompReader.getInstance().readFlags(this, iid, startPoint, count);
+            if (flags != null) {
+                return flags;
+            }
+        }
+
+        // copy range of values from memory
+        return subValue(getInstanceValue(aid, attrNo, iid), startPoint, count);
+    }
+
+    private static TS_Value subValue(TS_Value value, int startPoint, int count) throws AoException {
+        if (value.flag != 15) {
+            return value;
+        }
+        java.lang.Object jValue = ODSHelper.tsValue2jObject(value);
+        if (jValue == null || !jValue.getClass().isArray()) {
+            return value;
+        }
+        int length = Array.getLength(jValue);
+        int from = Math.min(startPoint, length);
+        int to = (int) Math.min((long) from + count, length);
+        java.lang.Object range = Array.newInstance(jValue.getClass().getComponentType(), to - from);
+        System.arraycopy(jValue, from, range, 0, to - from);
+        return ODSHelper.jObject2tsValue(value.u.discriminator(), range);
+    }
+
     /**
      * Returns all values of an instance attribute of a given list of instances.
      * 
@@ -871,6 +1318,15 @@ class AtfxCache {
         boolean lcValuesAttr = isLocalColumnValuesAttribute(aid, attrNo);
         DataType dt = aa.getDataType();
 
+        // plain values are copied from the attribute column
+        if (!lcValuesAttr && !isLocalColumnFlagsAttribute(aid, attrNo)
+                && !isLocalColumnGenParamsAttribute(aid, attrNo)) {
+            TS_ValueSeq valueSeq = getColumnValues(aid, attrNo, dt, iids);
+            if (valueSeq != null) {
+                return valueSeq;
+            }
+        }
+
         List<TS_Value> list = new ArrayList<TS_Value>();
         for (long iid : iids) {
             dt = lcValuesAttr ? getDataTypeForLocalColumnValues(iid) : aa.getDataType();
@@ -880,6 +1336,146 @@ class AtfxCache {
         return ODSHelper.tsValue2tsValueSeq(list.toArray(new TS_Value[0]), dt);
     }
 
+    /**
+     * Copies the values of an application attribute from its column, without creating an object per value.
+     *
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @param dt The datatype of the application attribute.
+     * @param iids The instance ids.
+     * @return The values, null if the datatype does not match the type of the stored values.
+     */
+    private TS_ValueSeq getColumnValues(long aid, int attrNo, DataType dt, Collection<Long> iids) {
+        InstanceStore instances = this.instanceStores.get(aid);
+        instances.readLock().lock();
+        try {
+            AttributeColumn column = instances.getColumn(attrNo);
+            if (column == null) {
+                return null;
+            }
+            int[] slots = new int[iids.size()];
+            short[] flags = new short[slots.length];
+            int row = 0;
+            for (long iid : iids) {
+                slots[row] = instances.getSlot(iid);
+                flags[row] = column.isSet(slots[row]) ? (short) 15 : (short) 0;
+                row++;
+            }
+
+            TS_ValueSeq valueSeq = new TS_ValueSeq(new TS_UnionSeq(), flags);
+            AttributeColumn.Kind kind = column.getKind();
+            if (dt == DataType.DT_DOUBLE && kind == AttributeColumn.Kind.DOUBLE) {
+                double[] values = new double[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) ? column.getDouble(slots[i]) : 0;
+                }
+                valueSeq.u.doubleVal(values);
+            } else if (dt == DataType.DT_FLOAT && kind == AttributeColumn.Kind.FLOAT) {
+                float[] values = new float[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) ? (float) column.getDouble(slots[i]) : 0;
+                }
+                valueSeq.u.floatVal(values);
+            } else if ((dt == DataType.DT_LONG || dt == DataType.DT_ENUM) && kind == AttributeColumn.Kind.INT) {
+                int[] values = new int[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) ? (int) column.getLong(slots[i]) : 0;
+                }
+                if (dt == DataType.DT_LONG) {
+                    valueSeq.u.longVal(values);
+                } else {
+                    valueSeq.u.enumVal(values);
+                }
+            } else if (dt == DataType.DT_SHORT && kind == AttributeColumn.Kind.SHORT) {
+                short[] values = new short[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) ? (short) column.getLong(slots[i]) : 0;
+                }
+                valueSeq.u.shortVal(values);
+            } else if (dt == DataType.DT_BYTE && kind == AttributeColumn.Kind.BYTE) {
+                byte[] values = new byte[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) ? (byte) column.getLong(slots[i]) : 0;
+                }
+                valueSeq.u.byteVal(values);
+            } else if (dt == DataType.DT_BOOLEAN && kind == AttributeColumn.Kind.BOOLEAN) {
+                boolean[] values = new boolean[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = (flags[i] == 15) && column.getLong(slots[i]) != 0;
+                }
+                valueSeq.u.booleanVal(values);
+            } else if (dt == DataType.DT_LONGLONG && kind == AttributeColumn.Kind.LONGLONG) {
+                T_LONGLONG[] values = new T_LONGLONG[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    values[i] = ODSHelper.asODSLongLong((flags[i] == 15) ? column.getLong(slots[i]) : 0);
+                }
+                valueSeq.u.longlongVal(values);
+            } else if ((dt == DataType.DT_STRING || dt == DataType.DT_DATE) && kind == AttributeColumn.Kind.OBJECT) {
+                String[] values = new String[slots.length];
+                for (int i = 0; i < slots.length; i++) {
+                    java.lang.Object value = column.get(slots[i]);
+                    if (value != null && !(value instanceof String)) {
+                        return null;
+                    }
+                    values[i] = (value == null) ? "" : (String) value;
+                }
+                if (dt == DataType.DT_STRING) {
+                    valueSeq.u.stringVal(values);
+                } else {
+                    valueSeq.u.dateVal(values);
+                }
+            } else {
+                return null;
+            }
+            return valueSeq;
+        } finally {
+            instances.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a range of the values of an instance attribute of a given list of instances. The values of local columns
+     * stored in external components sharing the same file and record layout are read in one pass.
+     * 
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @param iids The instance ids.
+     * @param startPoint The index of the first value to return.
+     * @param count The maximum number of values to return.
+     * @return The value ranges mapped by instance id, in the order of the given instance ids.
+     * @throws AoException Error getting values.
+     */
+    public Map<Long, TS_Value> getInstanceValues(long aid, int attrNo, Collection<Long> iids, int startPoint,
+            int count) throws AoException {
+        Map<Long, TS_Value> map = new LinkedHashMap<Long, TS_Value>();
+        Map<Long, DataType> extCompLcs = new LinkedHashMap<Long, DataType>();
+        if (isLocalColumnValuesAttribute(aid, attrNo)) {
+            for (long iid : iids) {
+                if (getLocalColumnDescriptor(iid).isExternal()) {
+                    DataType dt = getDataTypeForLocalColumnValues(iid);
+                    TS_Value value = this.localColumnValuesCache.get(iid, dt);
+                    if (value != null) {
+                        map.put(iid, subValue(value, startPoint, count));
+                    } else {
+                        extCompLcs.put(iid, dt);
+                    }
+                }
+            }
+        }
+        Map<Long, TS_Value> extCompValues = Collections.emptyMap();
+        if (!extCompLcs.isEmpty()) {
+            extCompValues = ExtCompReader.getInstance().readValues(this, extCompLcs, startPoint, count);
+        }
+        for (long iid : iids) {
+            TS_Value value = map.get(iid);
+            if (value == null) {
+                value = extCompValues.get(iid);
+            }
+            map.put(iid, value != null ? value : getInstanceValue(aid, attrNo, iid, startPoint, count));
+        }
+        return map;
+    }
+
     /**
      * Returns the unit name for an application attribute.
      * 
@@ -908,7 +1504,7 @@ class AtfxCache {
             return "";
         }
 
-        String unitNameObj = (String) this.instanceValueMap.get(unitAid).get(unitIid).get(unitNameAttrNo);
+        String unitNameObj = (String) this.instanceStores.get(unitAid).getValue(unitIid, unitNameAttrNo);
         return (unitNameObj == null) ? "" : unitNameObj;
     }
     
@@ -925,6 +1521,48 @@ class AtfxCache {
         return aa.getUnit();
     }
 
+    /**
+     * Returns the roles of an application attribute with special handling on reading and writing values. The roles of
+     * all application attributes of an application element are computed on first usage.
+     * 
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @return The roles as bit mask, 0 if none.
+     */
+    private int getAttributeRoles(long aid, long attrNo) {
+        int[] roles = this.attrRoles.get(aid);
+        if (roles == null) {
+            roles = new int[0];
+            Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
+            if (localColumnAids != null && localColumnAids.contains(aid)) {
+                roles = addAttributeRole(roles, getAttrNoByBaName(aid, "values"), ROLE_LC_VALUES);
+                roles = addAttributeRole(roles, getAttrNoByBaName(aid, "flags"), ROLE_LC_FLAGS);
+                roles = addAttributeRole(roles, getAttrNoByBaName(aid, "generation_parameters"), ROLE_LC_GEN_PARAMS);
+            }
+            this.attrRoles.put(aid, roles);
+        }
+        return (attrNo >= 0 && attrNo < roles.length) ? roles[(int) attrNo] : 0;
+    }
+
+    private static int[] addAttributeRole(int[] roles, Integer attrNo, int role) {
+        if (attrNo == null || attrNo < 0) {
+            return roles;
+        }
+        int[] newRoles = (attrNo < roles.length) ? roles : Arrays.copyOf(roles, attrNo + 1);
+        newRoles[attrNo] |= role;
+        return newRoles;
+    }
+
+    /**
+     * Drops the computed roles of all application attributes and the descriptors of the local columns, has to be
+     * called if the application model changes.
+     */
+    private void invalidateAttributeRoles() {
+        this.cacheGeneration.incrementAndGet();
+        this.attrRoles.clear();
+        this.localColumnDescriptors.clear();
+    }
+
     /**
      * Checks whether given attribute name is from base attribute 'values' of and this instance is from base element
      * 'AoLocalColumn'.
@@ -934,12 +1572,7 @@ class AtfxCache {
      * @return True, if attribute is 'values'.
      */
     private boolean isLocalColumnValuesAttribute(long aid, long attrNo) {
-        Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
-        if (localColumnAids != null && localColumnAids.contains(aid)) {
-            Integer valuesAttrNo = getAttrNoByBaName(aid, "values");
-            return (valuesAttrNo != null) && (attrNo == valuesAttrNo);
-        }
-        return false;
+        return (getAttributeRoles(aid, attrNo) & ROLE_LC_VALUES) != 0;
     }
 
     /**
@@ -951,12 +1584,7 @@ class AtfxCache {
      * @return True, if attribute is 'flags'.
      */
     private boolean isLocalColumnFlagsAttribute(long aid, long attrNo) {
-        Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
-        if (localColumnAids != null && localColumnAids.contains(aid)) {
-            Integer valuesAttrNo = getAttrNoByBaName(aid, "flags");
-            return (valuesAttrNo != null) && (attrNo == valuesAttrNo);
-        }
-        return false;
+        return (getAttributeRoles(aid, attrNo) & ROLE_LC_FLAGS) != 0;
     }
 
     /**
@@ -968,12 +1596,7 @@ class AtfxCache {
      * @return True, if attribute is 'sequence_representation'.
      */
     private boolean isLocalColumnGenParamsAttribute(long aid, long attrNo) {
-        Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
-        if (localColumnAids != null && localColumnAids.contains(aid)) {
-            Integer genParamsAttrNo = getAttrNoByBaName(aid, "generation_parameters");
-            return (genParamsAttrNo != null) && (attrNo == genParamsAttrNo);
-        }
-        return false;
+        return (getAttributeRoles(aid, attrNo) & ROLE_LC_GEN_PARAMS) != 0;
     }
 
     /**
@@ -1002,71 +1625,701 @@ class AtfxCache {
      * @throws AoException Error getting datatype.
      */
     private DataType getDataTypeForLocalColumnValues(long lcIid) throws AoException {
-        long meaQuaAid = getAidsByBaseType("aomeasurementquantity").iterator().next();
-        long meaQuaIid = getMeaQuantityInstance(lcIid);
-        int attrNo = getAttrNoByBaName(meaQuaAid, "datatype");
-        TS_Value dtValue = getInstanceValue(meaQuaAid, attrNo, meaQuaIid);
-        if (dtValue != null && dtValue.flag == 15 && dtValue.u.discriminator() == DataType.DT_ENUM) {
-            int val = dtValue.u.enumVal();
-            if (val == 1) { // DT_STRING
-                return DataType.DS_STRING;
-            } else if (val == 2) { // DT_SHORT
-                return DataType.DS_SHORT;
-            } else if (val == 3) { // DT_FLOAT
-                return DataType.DS_FLOAT;
-            } else if (val == 4) { // DT_BOOLEAN
-                return DataType.DS_BOOLEAN;
-            } else if (val == 5) { // DT_BYTE
-                return DataType.DS_BYTE;
-            } else if (val == 6) { // DT_LONG
-                return DataType.DS_LONG;
-            } else if (val == 7) { // DT_DOUBLE
-                return DataType.DS_DOUBLE;
-            } else if (val == 8) { // DT_LONGLONG
-                return DataType.DS_LONGLONG;
-            } else if (val == 10) { // DT_DATE
-                return DataType.DS_DATE;
-            } else if (val == 11) { // DT_BYTESTR
-                return DataType.DS_BYTESTR;
-            } else if (val == 13) { // DT_COMPLEX
-                return DataType.DS_COMPLEX;
-            } else if (val == 14) { // DT_DCOMPLEX
-                return DataType.DS_DCOMPLEX;
-            } else if (val == 28) { // DT_EXTERNALREFERENCE
-                return DataType.DS_EXTERNALREFERENCE;
-            } else if (val == 30) { // DT_ENUM
-                return DataType.DS_ENUM;
-            }
+        DataType dataType = getLocalColumnDescriptor(lcIid).getDataType();
+        if (dataType != null) {
+            return dataType;
         }
+        // none or multiple measurement quantities, or an invalid datatype
+        getMeaQuantityInstance(lcIid);
         throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0,
                               "Implementation problem at method 'getDataTypeForLocalColumnValues()' for iid=" + lcIid);
     }
 
     /***********************************************************************************
-     * instance attribute values
+     * external component file channels and decoding threads
      ***********************************************************************************/
 
     /**
-     * List all instance attribute names.
+     * Returns the pool of open file channels to the external component files.
      * 
-     * @param aid The application element id.
-     * @param iid The instance id.
-     * @return Collection of attribute names.
+     * @return The file channel pool.
      */
-    public Collection<String> listInstanceAttributes(long aid, long iid) {
-        return this.instanceAttrValueMap.get(aid).get(iid).keySet();
+    public FileChannelPool getFileChannelPool() {
+        return this.fileChannelPool;
     }
 
     /**
-     * Sets an instance attribute value.
+     * Returns the fork join pool used to decode the segments of external components in parallel. The pool is created
+     * on first usage, its parallelism is the number of available processors.
      * 
-     * @param aid The application element id.
-     * @param iid The instance id.
+     * @return The fork join pool.
+     */
+    public synchronized ForkJoinPool getForkJoinPool() {
+        if (this.forkJoinPool == null) {
+            this.forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return this.forkJoinPool;
+    }
+
+    /**
+     * Closes the segment writers and all open file channels and shuts down the writing and decoding threads. Pending
+     * writes of local column values are discarded.
+     * 
+     * @throws AoException Error closing file channels.
+     */
+    public void closeExtCompResources() throws AoException {
+        // not synchronized while waiting, the writing threads need the segment writers
+        discardExtCompWrites();
+        closeExtCompFiles();
+    }
+
+    private synchronized void closeExtCompFiles() throws AoException {
+        if (this.extCompWriteQueue != null) {
+            this.extCompWriteQueue.shutdown();
+            this.extCompWriteQueue = null;
+            this.extCompWriteQueueCreated = false;
+        }
+        closeExtCompSegmentWriters();
+        if (this.forkJoinPool != null) {
+            this.forkJoinPool.shutdown();
+            this.forkJoinPool = null;
+        }
+        try {
+            this.fileChannelPool.close();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+    }
+
+    /***********************************************************************************
+     * external component segment writers
+     ***********************************************************************************/
+
+    /**
+     * Returns the writer appending to the segment files of given kind. The writer is created on first usage and
+     * kept open until the transaction is committed or aborted or the session is closed.
+     * 
+     * @param kind The kind of the segment files.
+     * @return The writer.
+     * @throws AoException Error reading context.
+     */
+    public synchronized ExtCompSegmentWriter getExtCompSegmentWriter(ExtCompSegmentWriter.Kind kind)
+            throws AoException {
+        ExtCompSegmentWriter writer = this.extCompSegmentWriters.get(kind);
+        if (writer == null) {
+            File fileRoot = new File(this.context.get("FILE_ROOT").value.u.stringVal());
+            File atfxFile = new File(this.context.get("FILENAME").value.u.stringVal());
+            long segmentSize = ODSHelper.asJLong(this.context.get("EXT_COMP_SEGSIZE").value.u.longlongVal());
+            writer = new ExtCompSegmentWriter(fileRoot, FileUtil.stripExtension(atfxFile.getName()), kind,
+                                              segmentSize, ExtCompSegmentWriter.DEFAULT_BUFFER_SIZE,
+                                              ExtCompSegmentWriter.DEFAULT_EXTENT_SIZE);
+            this.extCompSegmentWriters.put(kind, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Writes the buffered data of all segment writers to the files, so it can be read.
+     * 
+     * @throws AoException Error writing files.
+     */
+    public synchronized void flushExtCompSegmentWriters() throws AoException {
+        try {
+            for (ExtCompSegmentWriter writer : this.extCompSegmentWriters.values()) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the buffered data of the segment writer appending to given file, so the file can be read. Neither the
+     * cache nor the writers of other files are locked, see {@link ExtCompSegmentWriter#flush(File)}.
+     * 
+     * @param file The file to read, may be null.
+     * @throws AoException Error writing file.
+     */
+    public void flushExtCompSegmentWriter(File file) throws AoException {
+        if (file == null) {
+            return;
+        }
+        try {
+            for (ExtCompSegmentWriter writer : this.extCompSegmentWriters.values()) {
+                if (writer.flush(file)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the buffered data of all segment writers to the files and closes them.
+     * 
+     * @throws AoException Error writing files.
+     */
+    public synchronized void closeExtCompSegmentWriters() throws AoException {
+        IOException ex = null;
+        for (ExtCompSegmentWriter writer : this.extCompSegmentWriters.values()) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+                ex = e;
+            }
+        }
+        this.extCompSegmentWriters.clear();
+        if (ex != null) {
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, ex.getMessage());
+        }
+    }
+
+    /***********************************************************************************
+     * external component write queue
+     ***********************************************************************************/
+
+    /**
+     * Returns the queue writing local column values to the external component files. The queue is created on first
+     * usage, configured by the context variables 'EXT_COMP_WRITE_THREADS' and 'EXT_COMP_WRITE_QUEUE_SIZE'.
+     * 
+     * @return The queue, null if the values are written synchronously.
+     * @throws AoException Invalid context value.
+     */
+    public synchronized ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> getExtCompWriteQueue()
+            throws AoException {
+        if (!this.extCompWriteQueueCreated) {
+            long threads = getContextLong(ExtCompWriteQueue.CONTEXT_WRITE_THREADS,
+                                          ExtCompWriteQueue.DEFAULT_WRITE_THREADS);
+            long queueSize = getContextLong(ExtCompWriteQueue.CONTEXT_QUEUE_SIZE, ExtCompWriteQueue.DEFAULT_QUEUE_SIZE);
+            if (threads > 0) {
+                this.extCompWriteQueue = new ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>>((int) threads,
+                                                                                                      queueSize);
+            }
+            this.extCompWriteQueueCreated = true;
+        }
+        return this.extCompWriteQueue;
+    }
+
+    /**
+     * Waits for a pending write of the values of a local column and creates its external component instances.
+     * 
+     * @param iidLc The instance id of the local column.
+     * @throws AoException Error writing values.
+     */
+    public void awaitExtCompWrite(long iidLc) throws AoException {
+        ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> queue = this.extCompWriteQueue;
+        if (queue == null || !queue.hasPending()) {
+            return;
+        }
+        queue.await(iidLc, this.extCompAttacher);
+    }
+
+    /**
+     * Waits for all pending writes of local column values and creates their external component instances.
+     * 
+     * @throws AoException Error writing values.
+     */
+    public void awaitExtCompWrites() throws AoException {
+        ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> queue = this.extCompWriteQueue;
+        if (queue == null || !queue.hasPending()) {
+            return;
+        }
+        queue.awaitAll(this.extCompAttacher);
+    }
+
+    /**
+     * Waits for all pending writes of local column values without creating external component instances, the
+     * written bytes stay unreferenced in the files.
+     */
+    public void discardExtCompWrites() {
+        ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> queue = this.extCompWriteQueue;
+        if (queue == null) {
+            return;
+        }
+        try {
+            queue.awaitAll(null);
+        } catch (AoException e) {
+            LOG.warn("Discarded failed write of external component values: " + e.reason);
+        }
+    }
+
+    private void awaitExtCompWrite(long aid, long iid) throws AoException {
+        ExtCompWriteQueue<List<ExtCompWriter.WrittenComponent>> queue = this.extCompWriteQueue;
+        if (queue != null && queue.hasPending()) {
+            Set<Long> localColumnAids = getAidsByBaseType("aolocalcolumn");
+            if (localColumnAids != null && localColumnAids.contains(aid)) {
+                awaitExtCompWrite(iid);
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * external component descriptors
+     ***********************************************************************************/
+
+    /**
+     * Returns the descriptor of an external component. The descriptor is read from the instance values on first
+     * access and cached until an attribute value of the external component changes.
+     * 
+     * @param iidExtComp The instance id of the external component.
+     * @return The descriptor.
+     * @throws AoException Error reading instance values.
+     */
+    public ExtCompDescriptor getExtCompDescriptor(long iidExtComp) throws AoException {
+        ExtCompDescriptor descriptor = this.extCompDescriptors.get(iidExtComp);
+        if (descriptor == null) {
+            long generation = getCacheGeneration();
+            descriptor = ExtCompDescriptor.read(this, iidExtComp);
+            if (generation >= 0) {
+                this.extCompDescriptors.put(iidExtComp, descriptor);
+                if (!isCacheGeneration(generation)) {
+                    // modified while reading, the descriptor may be stale
+                    this.extCompDescriptors.remove(iidExtComp);
+                }
+            }
+        }
+        return descriptor;
+    }
+
+    /**
+     * Puts the descriptor of an external component whose instance values have just been written to the cache.
+     * 
+     * @param descriptor The descriptor.
+     */
+    public void putExtCompDescriptor(ExtCompDescriptor descriptor) {
+        this.extCompDescriptors.put(descriptor.getIid(), descriptor);
+    }
+
+    /**
+     * Removes the cached descriptor if given instance is an external component.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance id.
+     */
+    private void invalidateExtCompDescriptor(long aid, long iid) {
+        if (this.extCompDescriptors.containsKey(iid)) {
+            Set<Long> extCompAids = getAidsByBaseType("aoexternalcomponent");
+            if (extCompAids != null && extCompAids.contains(aid)) {
+                this.extCompDescriptors.remove(iid);
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * off heap values
+     ***********************************************************************************/
+
+    /**
+     * Returns the store keeping large local column values outside of the heap, created on first usage.
+     * 
+     * @return The store.
+     */
+    private synchronized OffHeapValueStore getOffHeapValueStore() {
+        if (this.offHeapValueStore == null) {
+            this.offHeapValueStore = new OffHeapValueStore();
+        }
+        return this.offHeapValueStore;
+    }
+
+    /**
+     * Moves a value to the off heap store if its size reaches the threshold taken from the context variable
+     * 'OFF_HEAP_VALUES_THRESHOLD'.
+     * 
+     * @param jValue The value.
+     * @return The reference to the value in the off heap store, or the given value if kept on heap.
+     * @throws AoException Error writing value.
+     */
+    private java.lang.Object putOffHeapValue(java.lang.Object jValue) throws AoException {
+        long threshold = getContextLong(OffHeapValueStore.CONTEXT_THRESHOLD, OffHeapValueStore.DEFAULT_THRESHOLD);
+        if (threshold <= 0 || OffHeapValueStore.sizeOf(jValue) < threshold) {
+            return jValue;
+        }
+        try {
+            return getOffHeapValueStore().put(jValue);
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a range of a value from the off heap store.
+     * 
+     * @param value The reference to the value.
+     * @param startPoint The index of the first value to read.
+     * @param count The maximum number of values to read.
+     * @return The array holding the range, null if the value has been released meanwhile.
+     * @throws AoException Error reading value.
+     */
+    private java.lang.Object getOffHeapValue(OffHeapValueStore.Value value, int startPoint, int count)
+            throws AoException {
+        try {
+            return getOffHeapValueStore().get(value, startPoint, count);
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the space of a value in the off heap store, so it can be reused by the following writes.
+     * 
+     * @param jValue The value, ignored if not kept off heap.
+     */
+    private void freeOffHeapValue(java.lang.Object jValue) {
+        if (jValue instanceof OffHeapValueStore.Value) {
+            getOffHeapValueStore().free((OffHeapValueStore.Value) jValue);
+        }
+    }
+
+    /**
+     * Releases the space of the values of an application attribute of several instances kept in the off heap store.
+     * 
+     * @param aid The application element id.
+     * @param attrNo The application attribute number.
+     * @param iids The instance ids.
+     */
+    private void freeOffHeapValues(long aid, int attrNo, Collection<Long> iids) {
+        InstanceStore instances = this.instanceStores.get(aid);
+        if (instances == null || !isLocalColumnValuesAttribute(aid, attrNo)) {
+            return;
+        }
+        synchronized (this) {
+            if (this.offHeapValueStore == null) {
+                return;
+            }
+        }
+        for (long iid : iids) {
+            freeOffHeapValue(instances.getValue(iid, attrNo));
+        }
+    }
+
+    /**
+     * Closes the off heap store and deletes its file, the values kept off heap are not available afterwards.
+     * 
+     * @throws AoException Error closing file.
+     */
+    public synchronized void closeOffHeapValueStore() throws AoException {
+        if (this.offHeapValueStore != null) {
+            try {
+                this.offHeapValueStore.close();
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+                throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+            } finally {
+                this.offHeapValueStore = null;
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * local column descriptors
+     ***********************************************************************************/
+
+    /**
+     * Returns the descriptor of a local column. The descriptor is read from the instance values and relations on
+     * first access and cached until an attribute value or instance relation of the local column changes.
+     * 
+     * @param iidLc The instance id of the local column.
+     * @return The descriptor.
+     * @throws AoException Error reading instance values.
+     */
+    public LocalColumnDescriptor getLocalColumnDescriptor(long iidLc) throws AoException {
+        // the external components of local columns with pending writes are not yet created
+        awaitExtCompWrite(iidLc);
+        LocalColumnDescriptor descriptor = this.localColumnDescriptors.get(iidLc);
+        if (descriptor == null) {
+            long generation = getCacheGeneration();
+            descriptor = readLocalColumnDescriptor(iidLc);
+            if (generation >= 0) {
+                this.localColumnDescriptors.put(iidLc, descriptor);
+                if (!isCacheGeneration(generation)) {
+                    // modified while reading, the descriptor may be stale
+                    this.localColumnDescriptors.remove(iidLc);
+                }
+            }
+        }
+        return descriptor;
+    }
+
+    private LocalColumnDescriptor readLocalColumnDescriptor(long iidLc) throws AoException {
+        long aidLc = getAidsByBaseType("aolocalcolumn").iterator().next();
+        InstanceStore instances = this.instanceStores.get(aidLc);
+
+        // datatype of the measurement quantity, not available if none or multiple are related
+        DataType dataType = null;
+        ApplicationRelation relMeaQua = getApplicationRelationByBaseName(aidLc, "measurement_quantity");
+        Set<Long> meaQuaAids = getAidsByBaseType("aomeasurementquantity");
+        long[] meaQuaIids = (relMeaQua == null) ? new long[0] : instances.getRelatedIids(iidLc, relMeaQua);
+        if (meaQuaAids != null && meaQuaIids.length == 1) {
+            long meaQuaAid = meaQuaAids.iterator().next();
+            Integer dtAttrNo = getAttrNoByBaName(meaQuaAid, "datatype");
+            if (dtAttrNo != null && instanceExists(meaQuaAid, meaQuaIids[0])) {
+                TS_Value dtValue = getInstanceValue(meaQuaAid, dtAttrNo, meaQuaIids[0]);
+                if (dtValue != null && dtValue.flag == 15 && dtValue.u.discriminator() == DataType.DT_ENUM) {
+                    dataType = LocalColumnDescriptor.toSequenceDataType(dtValue.u.enumVal());
+                }
+            }
+        }
+
+        // raw datatype
+        DataType rawDataType = null;
+        Integer rawDtAttrNo = getAttrNoByBaName(aidLc, "raw_datatype");
+        if (rawDtAttrNo != null) {
+            TS_Value rawDtValue = getInstanceValue(aidLc, rawDtAttrNo, iidLc);
+            if (rawDtValue != null && rawDtValue.flag == 15) {
+                rawDataType = LocalColumnDescriptor.toSequenceDataType(rawDtValue.u.enumVal());
+            }
+        }
+
+        // generation parameters as stored, not derived from the values
+        Integer genParamsAttrNo = getAttrNoByBaName(aidLc, "generation_parameters");
+        java.lang.Object genParams = (genParamsAttrNo == null) ? null : instances.getValue(iidLc, genParamsAttrNo);
+
+        // external components
+        ApplicationRelation relExtComps = getApplicationRelationByBaseName(aidLc, "external_component");
+        long[] extCompIids = (relExtComps == null) ? new long[0] : instances.getRelatedIids(iidLc, relExtComps);
+
+        return new LocalColumnDescriptor(iidLc, dataType, getSequenceRepresentation(aidLc, iidLc), rawDataType,
+                                         (genParams instanceof double[]) ? (double[]) genParams : null, extCompIids);
+    }
+
+    /**
+     * Removes the descriptor of a local column after an attribute value has been changed. Changing a value of a
+     * measurement quantity removes all descriptors, as the datatype of the local columns may change.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance id.
+     */
+    private void invalidateLocalColumnDescriptor(long aid, long iid) {
+        if (this.localColumnDescriptors.isEmpty()) {
+            return;
+        }
+        Set<Long> lcAids = getAidsByBaseType("aolocalcolumn");
+        Set<Long> meaQuaAids = getAidsByBaseType("aomeasurementquantity");
+        if (lcAids != null && lcAids.contains(aid)) {
+            this.localColumnDescriptors.remove(iid);
+        } else if (meaQuaAids != null && meaQuaAids.contains(aid)) {
+            this.localColumnDescriptors.clear();
+        }
+    }
+
+    /**
+     * Removes the descriptors of the local columns affected by changing an instance relation.
+     * 
+     * @param aid The source application element id.
+     * @param iid The source instance id.
+     * @param applRel The application relation.
+     * @param otherIids The target instance element ids.
+     * @throws AoException Error reading relation.
+     */
+    private void invalidateLocalColumnDescriptors(long aid, long iid, ApplicationRelation applRel,
+            Collection<Long> otherIids) throws AoException {
+        if (this.localColumnDescriptors.isEmpty()) {
+            return;
+        }
+        Set<Long> lcAids = getAidsByBaseType("aolocalcolumn");
+        if (lcAids == null) {
+            return;
+        }
+        if (lcAids.contains(aid)) {
+            this.localColumnDescriptors.remove(iid);
+        }
+        ApplicationElement elem2 = applRel.getElem2();
+        if (elem2 != null && lcAids.contains(ODSHelper.asJLong(elem2.getId()))) {
+            for (long otherIid : otherIids) {
+                this.localColumnDescriptors.remove(otherIid);
+            }
+        }
+    }
+
+    /***********************************************************************************
+     * cache generations
+     ***********************************************************************************/
+
+    /**
+     * Marks the start of a modification of instance data, has to be followed by {@link #endModification()}.
+     */
+    private void startModification() {
+        this.runningModifications.incrementAndGet();
+        this.cacheGeneration.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a modification of instance data.
+     */
+    private void endModification() {
+        this.cacheGeneration.incrementAndGet();
+        this.runningModifications.decrementAndGet();
+    }
+
+    /**
+     * Returns the generation of the cached data, taken before computing a value for the local column values cache or
+     * the descriptor caches. The caches are invalidated before the instance data is modified, so a value computed
+     * concurrently to a modification may be stale: it is only put to the cache if no modification was running, and
+     * removed again if the generation changed meanwhile, see {@link #isCacheGeneration(long)}.
+     * 
+     * @return The generation, -1 if a modification is running.
+     */
+    private long getCacheGeneration() {
+        long generation = this.cacheGeneration.get();
+        return (this.runningModifications.get() > 0) ? -1 : generation;
+    }
+
+    /**
+     * Checks whether the cached data is still of given generation, after a computed value has been put to a cache.
+     * 
+     * @param generation The generation taken before computing the value.
+     * @return True, if no modification has been started since.
+     */
+    private boolean isCacheGeneration(long generation) {
+        return generation >= 0 && this.runningModifications.get() == 0 && this.cacheGeneration.get() == generation;
+    }
+
+    /***********************************************************************************
+     * decoded local column values cache
+     ***********************************************************************************/
+
+    /**
+     * Returns the cache of the decoded values of local columns read from external component files.
+     * 
+     * @return The cache.
+     */
+    public LocalColumnValuesCache getLocalColumnValuesCache() {
+        return this.localColumnValuesCache;
+    }
+
+    /**
+     * Removes the cached values of a local column, has to be called if the external components of the local column
+     * have been changed.
+     * 
+     * @param iidLc The instance id of the local column.
+     */
+    public void invalidateLocalColumnValues(long iidLc) {
+        this.localColumnValuesCache.invalidate(iidLc);
+    }
+
+    /**
+     * Removes the cached values of a local column or of the local column an external component belongs to.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance id.
+     * @throws AoException Error reading relations.
+     */
+    private void invalidateLocalColumnValues(long aid, long iid) throws AoException {
+        if (this.localColumnValuesCache.isEmpty()) {
+            return;
+        }
+        Set<Long> lcAids = getAidsByBaseType("aolocalcolumn");
+        Set<Long> extCompAids = getAidsByBaseType("aoexternalcomponent");
+        if (lcAids != null && lcAids.contains(aid)) {
+            this.localColumnValuesCache.invalidate(iid);
+        } else if (extCompAids != null && extCompAids.contains(aid)) {
+            ApplicationRelation relExtCompLc = getApplicationRelationByBaseName(aid, "local_column");
+            InstanceStore instances = this.instanceStores.get(aid);
+            if (relExtCompLc != null && instances.contains(iid)) {
+                for (long iidLc : instances.getRelatedIids(iid, relExtCompLc)) {
+                    this.localColumnValuesCache.invalidate(iidLc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the cached values of the local columns affected by changing an instance relation.
+     * 
+     * @param aid The source application element id.
+     * @param iid The source instance id.
+     * @param applRel The application relation.
+     * @param otherIids The target instance element ids.
+     * @throws AoException Error reading relations.
+     */
+    private void invalidateLocalColumnValues(long aid, long iid, ApplicationRelation applRel,
+            Collection<Long> otherIids) throws AoException {
+        if (this.localColumnValuesCache.isEmpty()) {
+            return;
+        }
+        invalidateLocalColumnValues(aid, iid);
+        ApplicationElement elem2 = applRel.getElem2();
+        if (elem2 != null) {
+            long otherAid = ODSHelper.asJLong(elem2.getId());
+            for (long otherIid : otherIids) {
+                invalidateLocalColumnValues(otherAid, otherIid);
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum size in bytes of the decoded local column values cache, taken from the context variable
+     * 'EXT_COMP_CACHE_SIZE'.
+     * 
+     * @return The size, 0 disables the cache.
+     * @throws AoException Invalid context value.
+     */
+    private long getLocalColumnValuesCacheSize() throws AoException {
+        return getContextLong(LocalColumnValuesCache.CONTEXT_CACHE_SIZE, LocalColumnValuesCache.DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Returns the numeric value of a context variable, the value may be of type DT_LONGLONG, DT_LONG or DT_STRING.
+     * 
+     * @param name The name of the context variable.
+     * @param defaultValue The value if the context variable is not set.
+     * @return The value.
+     * @throws AoException Invalid context value.
+     */
+    private long getContextLong(String name, long defaultValue) throws AoException {
+        NameValue nv = this.context.get(name);
+        if (nv == null || nv.value == null || nv.value.flag != 15) {
+            return defaultValue;
+        }
+        DataType dt = nv.value.u.discriminator();
+        if (dt == DataType.DT_LONGLONG) {
+            return ODSHelper.asJLong(nv.value.u.longlongVal());
+        } else if (dt == DataType.DT_LONG) {
+            return nv.value.u.longVal();
+        } else if (dt == DataType.DT_STRING) {
+            try {
+                return Long.parseLong(nv.value.u.stringVal().trim());
+            } catch (NumberFormatException e) {
+                throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0, "Invalid value for context '"
+                        + name + "': " + nv.value.u.stringVal());
+            }
+        }
+        throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0, "Invalid data type for context '"
+                + name + "': " + ODSHelper.dataType2String(dt));
+    }
+
+    /***********************************************************************************
+     * instance attribute values
+     ***********************************************************************************/
+
+    /**
+     * List all instance attribute names.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance id.
+     * @return Collection of attribute names.
+     */
+    public Collection<String> listInstanceAttributes(long aid, long iid) {
+        return this.instanceStores.get(aid).listInstanceAttributes(iid);
+    }
+
+    /**
+     * Sets an instance attribute value.
+     * 
+     * @param aid The application element id.
+     * @param iid The instance id.
      * @param attrName The attribute name.
      * @param value The instance value.
      */
     public void setInstanceAttributeValue(long aid, long iid, String attrName, TS_Value value) {
-        this.instanceAttrValueMap.get(aid).get(iid).put(attrName, value);
+        this.instanceStores.get(aid).setInstanceAttribute(iid, attrName, value);
     }
 
     /**
@@ -1078,11 +2331,11 @@ class AtfxCache {
      * @return The value, null if instance attribute does not exist.
      */
     public TS_Value getInstanceAttributeValue(long aid, long iid, String attrName) {
-        return instanceAttrValueMap.get(aid).get(iid).get(attrName);
+        return this.instanceStores.get(aid).getInstanceAttribute(iid, attrName);
     }
 
     public void removeInstanceAttribute(long aid, long iid, String attrName) {
-        this.instanceAttrValueMap.get(aid).get(iid).remove(attrName);
+        this.instanceStores.get(aid).removeInstanceAttribute(iid, attrName);
     }
 
     /***********************************************************************************
@@ -1100,40 +2353,94 @@ class AtfxCache {
      */
     public void createInstanceRelations(long aid, long iid, ApplicationRelation applRel, Collection<Long> otherIids)
             throws AoException {
-        if (otherIids.isEmpty()) {
-            return;
-        }
-
-        // add relation, if none or multiple cardinality, overwrite
-        Set<Long> relInstIds = this.instanceRelMap.get(aid).get(iid).get(applRel);
-        if ((!relInstIds.isEmpty()) && (applRel.getRelationRange().max != -1)) {
-            relInstIds.clear();
-        }
-        relInstIds.addAll(otherIids);
+        startModification();
+        try {
+            if (otherIids.isEmpty()) {
+                return;
+            }
+            invalidateLocalColumnValues(aid, iid, applRel, otherIids);
+            invalidateLocalColumnDescriptors(aid, iid, applRel, otherIids);
+
+            // add relation, if none or multiple cardinality, overwrite
+            boolean replace = applRel.getRelationRange().max != -1;
+            this.instanceStores.get(aid).addRelatedIids(iid, applRel, otherIids, replace);
+
+            // add inverse relation
+            ApplicationRelation invApplRel = getInverseRelation(applRel);
+            ApplicationElement elem1 = invApplRel.getElem1();
+            if (elem1 == null) {
+                throw new AoException(ErrorCode.AO_INVALID_RELATION, SeverityFlag.ERROR, 0,
+                                      "Elem1 not set for relation: " + invApplRel.getRelationName());
+            }
 
-        // add inverse relation
-        ApplicationRelation invApplRel = getInverseRelation(applRel);
-        ApplicationElement elem1 = invApplRel.getElem1();
-        if (elem1 == null) {
-            throw new AoException(ErrorCode.AO_INVALID_RELATION, SeverityFlag.ERROR, 0,
-                                  "Elem1 not set for relation: " + invApplRel.getRelationName());
+            long otherAid = ODSHelper.asJLong(invApplRel.getElem1().getId());
+            InstanceStore otherInstances = this.instanceStores.get(otherAid);
+            boolean replaceInverse = invApplRel.getRelationRange().max != -1;
+            for (long otherIid : otherIids) {
+                if (otherInstances == null || !otherInstances.contains(otherIid)) {
+                    continue;
+                }
+                otherInstances.addRelatedIids(otherIid, invApplRel, Collections.singletonList(iid), replaceInverse);
+            }
+        } finally {
+            endModification();
         }
+    }
 
-        long otherAid = ODSHelper.asJLong(invApplRel.getElem1().getId());
-        for (Long otherIid : otherIids) {
-            Map<Long, Map<ApplicationRelation, Set<Long>>> instanceRelMapForAid = this.instanceRelMap.get(otherAid);
-            if (instanceRelMapForAid == null) {
-                continue;
+    /**
+     * Creates one instance relation for each of several source instances, as given by a relation column of
+     * <code>ApplElemAccess.insertInstances()</code>. The relations of all source instances are added in one step,
+     * the inverse relations once per target instance.
+     * 
+     * @param aid The source application element id.
+     * @param iids The source instance ids.
+     * @param applRel The application relation.
+     * @param otherIids The target instance element ids, in the order of the source instance ids.
+     * @throws AoException Error creating instance relations.
+     */
+    public void createInstanceRelations(long aid, long[] iids, ApplicationRelation applRel, long[] otherIids)
+            throws AoException {
+        startModification();
+        try {
+            Map<Long, List<Long>> inverseIids = new LinkedHashMap<Long, List<Long>>(); // <otherIid,iids>
+            for (int i = 0; i < iids.length; i++) {
+                Collection<Long> otherIid = Collections.singletonList(otherIids[i]);
+                invalidateLocalColumnValues(aid, iids[i], applRel, otherIid);
+                invalidateLocalColumnDescriptors(aid, iids[i], applRel, otherIid);
+                List<Long> list = inverseIids.get(otherIids[i]);
+                if (list == null) {
+                    list = new ArrayList<Long>();
+                    inverseIids.put(otherIids[i], list);
+                }
+                list.add(iids[i]);
             }
-            Map<ApplicationRelation, Set<Long>> instanceRelsForIid = instanceRelMapForAid.get(otherIid);
-            if (instanceRelsForIid == null) {
-                continue;
+
+            // add relations, if none or multiple cardinality, overwrite
+            boolean replace = applRel.getRelationRange().max != -1;
+            this.instanceStores.get(aid).addRelatedIids(iids, applRel, otherIids, replace);
+
+            // add inverse relations
+            ApplicationRelation invApplRel = getInverseRelation(applRel);
+            ApplicationElement elem1 = invApplRel.getElem1();
+            if (elem1 == null) {
+                throw new AoException(ErrorCode.AO_INVALID_RELATION, SeverityFlag.ERROR, 0,
+                                      "Elem1 not set for relation: " + invApplRel.getRelationName());
             }
-            Set<Long> invRelInstIds = instanceRelsForIid.get(invApplRel);
-            if (invRelInstIds != null && (!invRelInstIds.isEmpty()) && (invApplRel.getRelationRange().max != -1)) {
-                invRelInstIds.clear();
+            InstanceStore otherInstances = this.instanceStores.get(ODSHelper.asJLong(elem1.getId()));
+            boolean replaceInverse = invApplRel.getRelationRange().max != -1;
+            for (Entry<Long, List<Long>> entry : inverseIids.entrySet()) {
+                if (otherInstances == null || !otherInstances.contains(entry.getKey())) {
+                    continue;
+                }
+                // the last source instance replaces the previous ones
+                List<Long> list = entry.getValue();
+                if (replaceInverse) {
+                    list = list.subList(list.size() - 1, list.size());
+                }
+                otherInstances.addRelatedIids(entry.getKey(), invApplRel, list, replaceInverse);
             }
-            invRelInstIds.add(iid);
+        } finally {
+            endModification();
         }
     }
 
@@ -1148,18 +2455,28 @@ class AtfxCache {
      */
     public void removeInstanceRelations(long aid, long iid, ApplicationRelation applRel, Collection<Long> otherIids)
             throws AoException {
-        if (otherIids.isEmpty()) {
-            return;
-        }
-
-        // remove relations
-        this.instanceRelMap.get(aid).get(iid).get(applRel).removeAll(otherIids);
-
-        // remove inverse relations
-        ApplicationRelation invApplRel = getInverseRelation(applRel);
-        long otherAid = ODSHelper.asJLong(invApplRel.getElem1().getId());
-        for (Long otherIid : otherIids) {
-            this.instanceRelMap.get(otherAid).get(otherIid).get(invApplRel).remove(iid);
+        startModification();
+        try {
+            if (otherIids.isEmpty()) {
+                return;
+            }
+            invalidateLocalColumnValues(aid, iid, applRel, otherIids);
+            invalidateLocalColumnDescriptors(aid, iid, applRel, otherIids);
+
+            // remove relations
+            this.instanceStores.get(aid).removeRelatedIids(iid, applRel, otherIids);
+
+            // remove inverse relations
+            ApplicationRelation invApplRel = getInverseRelation(applRel);
+            long otherAid = ODSHelper.asJLong(invApplRel.getElem1().getId());
+            InstanceStore otherInstances = this.instanceStores.get(otherAid);
+            for (long otherIid : otherIids) {
+                if (otherInstances.contains(otherIid)) {
+                    otherInstances.removeRelatedIids(otherIid, invApplRel, Collections.singletonList(iid));
+                }
+            }
+        } finally {
+            endModification();
         }
     }
 
@@ -1173,7 +2490,19 @@ class AtfxCache {
      * @throws AoException Error getting inverse relation.
      */
     public List<Long> getRelatedInstanceIds(long aid, long iid, ApplicationRelation applRel) throws AoException {
-        return new ArrayList<Long>(this.instanceRelMap.get(aid).get(iid).get(applRel));
+        // the external components of local columns with pending writes are not yet created
+        awaitExtCompWrite(aid, iid);
+        return toList(this.instanceStores.get(aid).getRelatedIids(iid, applRel));
+    }
+
+    /**
+     * Packs the related instance ids of all instances into compact arrays. Should be called after loading many
+     * instance relations, later modifications are still possible.
+     */
+    public void packInstanceRelations() {
+        for (InstanceStore instances : this.instanceStores.values()) {
+            instances.packRelations();
+        }
     }
 
     /**
@@ -1211,13 +2540,13 @@ class AtfxCache {
         return ODSHelper.tsValue2tsValueSeq(list.toArray(new TS_Value[0]), DataType.DT_LONGLONG);
     }
 
-    public synchronized InstanceElementIterator newInstanceElementIterator(POA instancePOA, InstanceElement[] instances)
+    public InstanceElementIterator newInstanceElementIterator(POA instancePOA, InstanceElement[] instances)
             throws AoException {
-        nextInstanceIteratorId++;
-        this.instanceIteratorElementCache.put(nextInstanceIteratorId, instances);
-        this.instanceIteratorPointerCache.put(nextInstanceIteratorId, 0);
+        long id = this.nextInstanceIteratorId.incrementAndGet();
+        this.instanceIteratorElementCache.put(id, instances);
+        this.instanceIteratorPointerCache.put(id, 0);
 
-        byte[] oid = toByta(new long[] { 3, nextInstanceIteratorId, 0 }); // 3=InstanceElementIterator
+        byte[] oid = toByta(new long[] { 3, id, 0 }); // 3=InstanceElementIterator
         org.omg.CORBA.Object obj;
         try {
             obj = instancePOA.create_reference_with_id(oid, InstanceElementIteratorHelper.id());
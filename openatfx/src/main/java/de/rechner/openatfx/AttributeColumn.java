@@ -0,0 +1,221 @@
+package de.rechner.openatfx;
+
+import java.util.Arrays;
+
+import org.asam.ods.T_LONGLONG;
+
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * The values of one application attribute of all instances of an application element, indexed by the slot of the
+ * instance.
+ * <p>
+ * The values are kept in a primitive array as long as all values have the same numeric type, else as objects. Whether a
+ * slot has a value is kept in a bitmap.
+ *
+ * @author Christian Rechner
+ */
+class AttributeColumn {
+
+    /**
+     * The type of the stored values.
+     */
+    enum Kind {
+        NONE, BOOLEAN, BYTE, SHORT, INT, LONGLONG, FLOAT, DOUBLE, OBJECT
+    }
+
+    private Kind kind;
+    private long[] present; // bitmap of the slots having a value
+    private long[] longs; // BOOLEAN, BYTE, SHORT, INT, LONGLONG
+    private double[] doubles; // FLOAT, DOUBLE
+    private Object[] objects; // OBJECT
+    private int capacity;
+
+    /**
+     * Constructor.
+     */
+    public AttributeColumn() {
+        this.kind = Kind.NONE;
+        this.present = new long[0];
+        this.capacity = 0;
+    }
+
+    /**
+     * Returns the type of the stored values.
+     *
+     * @return The kind, {@link Kind#NONE} if no value has been set yet.
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns whether a slot has a value.
+     *
+     * @param slot The slot.
+     * @return True, if a value is set.
+     */
+    public boolean isSet(int slot) {
+        int word = slot >>> 6;
+        return word < this.present.length && (this.present[word] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Returns the value of a slot of a column of kind BOOLEAN, BYTE, SHORT, INT or LONGLONG.
+     *
+     * @param slot The slot, must have a value.
+     * @return The value.
+     */
+    public long getLong(int slot) {
+        return this.longs[slot];
+    }
+
+    /**
+     * Returns the value of a slot of a column of kind FLOAT or DOUBLE.
+     *
+     * @param slot The slot, must have a value.
+     * @return The value.
+     */
+    public double getDouble(int slot) {
+        return this.doubles[slot];
+    }
+
+    /**
+     * Returns the value of a slot.
+     *
+     * @param slot The slot.
+     * @return The value, null if not set.
+     */
+    public Object get(int slot) {
+        if (!isSet(slot)) {
+            return null;
+        }
+        switch (this.kind) {
+            case BOOLEAN:
+                return Boolean.valueOf(this.longs[slot] != 0);
+            case BYTE:
+                return Byte.valueOf((byte) this.longs[slot]);
+            case SHORT:
+                return Short.valueOf((short) this.longs[slot]);
+            case INT:
+                return Integer.valueOf((int) this.longs[slot]);
+            case LONGLONG:
+                return ODSHelper.asODSLongLong(this.longs[slot]);
+            case FLOAT:
+                return Float.valueOf((float) this.doubles[slot]);
+            case DOUBLE:
+                return Double.valueOf(this.doubles[slot]);
+            default:
+                return this.objects[slot];
+        }
+    }
+
+    /**
+     * Sets the value of a slot.
+     *
+     * @param slot The slot.
+     * @param value The value, null removes the value.
+     */
+    public void set(int slot, Object value) {
+        if (value == null) {
+            clear(slot);
+            return;
+        }
+        Kind valueKind = kindOf(value);
+        if (this.kind == Kind.NONE) {
+            this.kind = valueKind;
+        } else if (this.kind != valueKind && this.kind != Kind.OBJECT) {
+            toObjects();
+        }
+        ensureCapacity(slot + 1);
+
+        switch (this.kind) {
+            case BOOLEAN:
+                this.longs[slot] = ((Boolean) value).booleanValue() ? 1 : 0;
+                break;
+            case BYTE:
+            case SHORT:
+            case INT:
+                this.longs[slot] = ((Number) value).longValue();
+                break;
+            case LONGLONG:
+                this.longs[slot] = ODSHelper.asJLong((T_LONGLONG) value);
+                break;
+            case FLOAT:
+            case DOUBLE:
+                this.doubles[slot] = ((Number) value).doubleValue();
+                break;
+            default:
+                this.objects[slot] = value;
+                break;
+        }
+        this.present[slot >>> 6] |= 1L << slot;
+    }
+
+    /**
+     * Removes the value of a slot.
+     *
+     * @param slot The slot.
+     */
+    public void clear(int slot) {
+        int word = slot >>> 6;
+        if (word < this.present.length) {
+            this.present[word] &= ~(1L << slot);
+            if (this.objects != null && slot < this.objects.length) {
+                this.objects[slot] = null;
+            }
+        }
+    }
+
+    private static Kind kindOf(Object value) {
+        if (value instanceof Boolean) {
+            return Kind.BOOLEAN;
+        } else if (value instanceof Byte) {
+            return Kind.BYTE;
+        } else if (value instanceof Short) {
+            return Kind.SHORT;
+        } else if (value instanceof Integer) {
+            return Kind.INT;
+        } else if (value instanceof T_LONGLONG) {
+            return Kind.LONGLONG;
+        } else if (value instanceof Float) {
+            return Kind.FLOAT;
+        } else if (value instanceof Double) {
+            return Kind.DOUBLE;
+        }
+        return Kind.OBJECT;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.capacity) {
+            return;
+        }
+        this.capacity = Math.max(capacity, this.capacity + (this.capacity >> 1) + 1);
+        if (this.kind == Kind.OBJECT) {
+            this.objects = (this.objects == null) ? new Object[this.capacity] : Arrays.copyOf(this.objects,
+                                                                                             this.capacity);
+        } else if (this.kind == Kind.FLOAT || this.kind == Kind.DOUBLE) {
+            this.doubles = (this.doubles == null) ? new double[this.capacity] : Arrays.copyOf(this.doubles,
+                                                                                             this.capacity);
+        } else {
+            this.longs = (this.longs == null) ? new long[this.capacity] : Arrays.copyOf(this.longs, this.capacity);
+        }
+        this.present = Arrays.copyOf(this.present, (this.capacity + 63) >>> 6);
+    }
+
+    /**
+     * Boxes all values, called if a value of another type is set.
+     */
+    private void toObjects() {
+        Object[] boxed = new Object[this.capacity];
+        for (int slot = 0; slot < this.capacity; slot++) {
+            boxed[slot] = get(slot);
+        }
+        this.kind = Kind.OBJECT;
+        this.objects = boxed;
+        this.longs = null;
+        this.doubles = null;
+    }
+
+}
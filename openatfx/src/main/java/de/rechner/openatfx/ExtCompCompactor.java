@@ -0,0 +1,391 @@
+package de.rechner.openatfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.asam.ods.AoException;
+import org.asam.ods.ApplicationRelation;
+import org.asam.ods.DataType;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.SeverityFlag;
+import org.asam.ods.TS_Value;
+
+import de.rechner.openatfx.util.FileUtil;
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Removes orphaned data from the external component segment files of a session.
+ * <p>
+ * The byte ranges referenced by the external components are copied in file order to new segment files and the
+ * attributes 'filename_url', 'start_offset', 'flags_filename_url' and 'flags_start_offset' are changed to the new
+ * location. Only the segment files written by this library are compacted, see {@link ExtCompSegmentWriter}. Other
+ * files, for example of the measurement device, are never changed. The old segment files become obsolete and may be
+ * deleted after the ATFX file referencing the new files has been written. Segment files still referenced by a
+ * component which cannot be compacted, for example because its size is unknown, are never obsolete.
+ *
+ * @author Christian Rechner
+ */
+class ExtCompCompactor {
+
+    private static final Log LOG = LogFactory.getLog(ExtCompCompactor.class);
+
+    /** The name of the context variable enabling the compaction on commit */
+    static final String CONTEXT_COMPACT = "EXT_COMP_COMPACT";
+
+    /** The size of the buffer copying the byte ranges in bytes */
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024 * 4; // 4 MB
+
+    private final AtfxCache atfxCache;
+
+    /**
+     * Constructor.
+     *
+     * @param atfxCache The ATFX cache.
+     */
+    public ExtCompCompactor(AtfxCache atfxCache) {
+        this.atfxCache = atfxCache;
+    }
+
+    /**
+     * Copies the referenced data of the segment files to new segment files. The segment writers of the session must
+     * have been closed before.
+     *
+     * @return The obsolete segment files, which are no longer referenced.
+     * @throws AoException Error compacting files.
+     */
+    public Collection<File> compact() throws AoException {
+        long start = System.currentTimeMillis();
+        File fileRoot = new File(this.atfxCache.getContext().get("FILE_ROOT").value.u.stringVal());
+        File atfxFile = new File(this.atfxCache.getContext().get("FILENAME").value.u.stringVal());
+        String baseName = FileUtil.stripExtension(atfxFile.getName());
+        long segmentSize = ODSHelper.asJLong(this.atfxCache.getContext().get("EXT_COMP_SEGSIZE").value.u.longlongVal());
+
+        // collect the referenced byte ranges of the segment files
+        Set<File> retainedFiles = new HashSet<File>();
+        Map<File, List<Reference>> references = collectReferences(fileRoot, baseName, retainedFiles);
+        Set<File> obsoleteFiles = new HashSet<File>();
+        File[] files = fileRoot.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (ExtCompSegmentWriter.getKind(baseName, file.getName()) != null) {
+                    obsoleteFiles.add(normalize(file));
+                }
+            }
+        }
+        obsoleteFiles.removeAll(references.keySet());
+        obsoleteFiles.removeAll(retainedFiles);
+
+        // copy the ranges of each kind to new segments
+        Map<ExtCompSegmentWriter.Kind, ExtCompSegmentWriter> writers = new EnumMap<ExtCompSegmentWriter.Kind, ExtCompSegmentWriter>(
+                ExtCompSegmentWriter.Kind.class);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        long oldSize = 0;
+        long newSize = 0;
+        try {
+            for (Map.Entry<File, List<Reference>> entry : references.entrySet()) {
+                File file = entry.getKey();
+                ExtCompSegmentWriter.Kind kind = ExtCompSegmentWriter.getKind(baseName, file.getName());
+                ExtCompSegmentWriter out = writers.get(kind);
+                if (out == null) {
+                    out = new ExtCompSegmentWriter(fileRoot, baseName, kind, segmentSize,
+                                                   ExtCompSegmentWriter.DEFAULT_BUFFER_SIZE,
+                                                   ExtCompSegmentWriter.DEFAULT_EXTENT_SIZE);
+                    out.nextFreshSegment();
+                    writers.put(kind, out);
+                }
+                oldSize += file.length();
+                newSize += copyRanges(file, entry.getValue(), out, buffer);
+                obsoleteFiles.add(file);
+            }
+            for (ExtCompSegmentWriter out : writers.values()) {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        } finally {
+            for (ExtCompSegmentWriter out : writers.values()) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.warn(e.getMessage(), e);
+                }
+            }
+        }
+
+        // change the references to the new location
+        for (List<Reference> list : references.values()) {
+            for (Reference ref : list) {
+                updateReference(ref);
+            }
+        }
+
+        LOG.info("Compacted " + references.size() + " external component files from " + oldSize + " to " + newSize
+                + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+        return obsoleteFiles;
+    }
+
+    /**
+     * Collects the byte ranges of all external components located in segment files, mapped by the segment file.
+     * Segment files containing components of unknown size are not compacted, they are added to the retained files.
+     */
+    private Map<File, List<Reference>> collectReferences(File fileRoot, String baseName, Set<File> retainedFiles)
+            throws AoException {
+        Map<File, List<Reference>> references = new TreeMap<File, List<Reference>>();
+        Set<Long> aidExtComps = this.atfxCache.getAidsByBaseType("aoexternalcomponent");
+        if (aidExtComps == null || aidExtComps.isEmpty()) {
+            return references;
+        }
+        long aidExtComp = aidExtComps.iterator().next();
+        File root = normalize(fileRoot);
+        for (long iidExtComp : new ArrayList<Long>(this.atfxCache.getInstanceIds(aidExtComp))) {
+            ExtCompDescriptor comp = this.atfxCache.getExtCompDescriptor(iidExtComp);
+
+            // values
+            if (comp.getFilenameUrl() != null) {
+                long length = getComponentSize(comp);
+                addReference(references, retainedFiles, root, baseName,
+                             new Reference(iidExtComp, false, comp.getFile(), comp.getStartOffset(), length));
+            }
+            // flags, 2 bytes per value
+            if (comp.getFlagsFilenameUrl() != null) {
+                long valueCount = comp.getFlagsStartOffset() < 0 ? -1 : getValueCount(aidExtComp, comp);
+                long length = valueCount < 0 ? -1 : 2L * valueCount;
+                addReference(references, retainedFiles, root, baseName,
+                             new Reference(iidExtComp, true, comp.getFlagsFile(), comp.getFlagsStartOffset(), length));
+            }
+        }
+        for (File file : retainedFiles) {
+            if (references.remove(file) != null) {
+                LOG.warn("External component file '" + file + "' not compacted, the size of a component is unknown");
+            }
+        }
+        return references;
+    }
+
+    private static void addReference(Map<File, List<Reference>> references, Set<File> retainedFiles, File root,
+            String baseName, Reference ref) {
+        File file = normalize(ref.file);
+        if (ExtCompSegmentWriter.getKind(baseName, file.getName()) == null) {
+            return;
+        }
+        // a segment file referenced by an unexpected path is kept
+        if (!root.equals(file.getParentFile())) {
+            retainedFiles.add(file);
+            return;
+        }
+        if (ref.length < 0) {
+            retainedFiles.add(file);
+        }
+        List<Reference> list = references.get(file);
+        if (list == null) {
+            list = new ArrayList<Reference>();
+            references.put(file, list);
+        }
+        list.add(ref);
+    }
+
+    /**
+     * Returns the file with a canonical path, so that different paths to the same file are equal.
+     */
+    private static File normalize(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile().toPath().normalize().toFile();
+        }
+    }
+
+    /**
+     * Returns the number of values of an external component, each value has one flag. The length of components of
+     * strings and byte streams is given in bytes, so the values are counted, and complex values are stored as two
+     * values, the real and imaginary part.
+     *
+     * @return The number of values, -1 if unknown.
+     */
+    private long getValueCount(long aidExtComp, ExtCompDescriptor comp) throws AoException {
+        int valueType = comp.getValueType();
+        // 12=dt_string, 25=dt_string_utf8, 13=dt_bytestr, 18=dt_bytestr_beo
+        if (valueType == 12 || valueType == 25 || valueType == 13 || valueType == 18) {
+            if (comp.getFile() == null) {
+                return -1;
+            }
+            ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(COPY_BUFFER_SIZE, Integer.MAX_VALUE, 1);
+            try {
+                RandomAccessFile raf = new RandomAccessFile(comp.getFile(), "r");
+                try {
+                    if (valueType == 13 || valueType == 18) {
+                        decoder.decodeBytestrs(raf.getChannel(), comp.getStartOffset(), comp.getComponentLength(),
+                                               new ArrayList<byte[]>());
+                    } else {
+                        decoder.decodeStrings(raf.getChannel(), comp.getStartOffset(), comp.getComponentLength(),
+                                              Charset.forName("UTF-8"), new ArrayList<String>());
+                    }
+                } finally {
+                    raf.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to count the values of external component file '" + comp.getFile() + "': "
+                        + e.getMessage());
+                return -1;
+            }
+            return decoder.getSkipped();
+        }
+
+        // complex values are stored as pairs of real and imaginary part
+        ApplicationRelation relLc = this.atfxCache.getApplicationRelationByBaseName(aidExtComp, "local_column");
+        if (relLc != null) {
+            for (long iidLc : this.atfxCache.getRelatedInstanceIds(aidExtComp, comp.getIid(), relLc)) {
+                LocalColumnDescriptor lc = this.atfxCache.getLocalColumnDescriptor(iidLc);
+                DataType dt = (lc.getRawDataType() == null) ? lc.getDataType() : lc.getRawDataType();
+                if (dt == DataType.DS_COMPLEX || dt == DataType.DS_DCOMPLEX) {
+                    return comp.getComponentLength() / 2;
+                }
+            }
+        }
+        return comp.getComponentLength();
+    }
+
+    /**
+     * Returns the size of the data of an external component in bytes.
+     *
+     * @return The size, -1 if unknown.
+     */
+    private static long getComponentSize(ExtCompDescriptor comp) {
+        int valueType = comp.getValueType();
+        // 12=dt_string, 13=dt_bytestr, 18=dt_bytestr_beo, 25=dt_string_utf8: the length is given in bytes
+        if (valueType == 12 || valueType == 13 || valueType == 18 || valueType == 25) {
+            return comp.getComponentLength();
+        }
+        if (comp.getBlockSize() <= 0 || comp.getValuesPerBlock() <= 0) {
+            return -1;
+        }
+        long blocks = (comp.getComponentLength() + comp.getValuesPerBlock() - 1) / comp.getValuesPerBlock();
+        return blocks * comp.getBlockSize();
+    }
+
+    /**
+     * Copies the merged byte ranges of a file to the segment writer. Overlapping ranges, for example of components
+     * sharing the same records, are copied once and keep their relative position.
+     *
+     * @return The number of copied bytes.
+     */
+    private static long copyRanges(File file, List<Reference> refs, ExtCompSegmentWriter out, ByteBuffer buffer)
+            throws IOException {
+        Collections.sort(refs, new Comparator<Reference>() {
+
+            public int compare(Reference o1, Reference o2) {
+                return Long.compare(o1.startOffset, o2.startOffset);
+            }
+        });
+        long copied = 0;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            int i = 0;
+            while (i < refs.size()) {
+                // merge overlapping and adjacent ranges
+                long rangeStart = refs.get(i).startOffset;
+                long rangeEnd = rangeStart + refs.get(i).length;
+                int j = i + 1;
+                while (j < refs.size() && refs.get(j).startOffset <= rangeEnd) {
+                    rangeEnd = Math.max(rangeEnd, refs.get(j).startOffset + refs.get(j).length);
+                    j++;
+                }
+
+                // copy the range in large sequential reads
+                out.nextSegmentIfFull(rangeEnd - rangeStart);
+                File newFile = out.getFile();
+                long newStart = out.getPosition();
+                long pos = rangeStart;
+                while (pos < rangeEnd) {
+                    Buffer.class.cast(buffer).clear(); // workaround: make buildable with both java8 and java9
+                    Buffer.class.cast(buffer).limit((int) Math.min(buffer.capacity(), rangeEnd - pos));
+                    int read = channel.read(buffer, pos);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of external component file '" + file + "' at position "
+                                + pos);
+                    }
+                    Buffer.class.cast(buffer).flip();
+                    out.write(buffer);
+                    pos += read;
+                }
+                copied += rangeEnd - rangeStart;
+
+                for (int k = i; k < j; k++) {
+                    refs.get(k).newFile = newFile;
+                    refs.get(k).newStartOffset = newStart + (refs.get(k).startOffset - rangeStart);
+                }
+                i = j;
+            }
+        } finally {
+            raf.close();
+        }
+        return copied;
+    }
+
+    private void updateReference(Reference ref) throws AoException {
+        long aidExtComp = this.atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
+        String urlAttr = ref.flags ? "flags_filename_url" : "filename_url";
+        String offsetAttr = ref.flags ? "flags_start_offset" : "start_offset";
+
+        Integer attrNo = this.atfxCache.getAttrNoByBaName(aidExtComp, urlAttr);
+        this.atfxCache.setInstanceValue(aidExtComp, ref.iidExtComp, attrNo,
+                                        ODSHelper.createStringNV("", ref.newFile.getName()).value);
+        attrNo = this.atfxCache.getAttrNoByBaName(aidExtComp, offsetAttr);
+        TS_Value value;
+        if (this.atfxCache.getApplicationAttribute(aidExtComp, attrNo).getDataType() == DataType.DT_LONG) {
+            if (ref.newStartOffset > Integer.MAX_VALUE) {
+                throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, "Offset " + ref.newStartOffset
+                        + " exceeds the range of the DT_LONG attribute '" + offsetAttr + "'");
+            }
+            value = ODSHelper.createLongNV("", (int) ref.newStartOffset).value;
+        } else {
+            value = ODSHelper.createLongLongNV("", ref.newStartOffset).value;
+        }
+        this.atfxCache.setInstanceValue(aidExtComp, ref.iidExtComp, attrNo, value);
+    }
+
+    /**
+     * A byte range referenced by the values or the flags of an external component.
+     */
+    private static class Reference {
+
+        private final long iidExtComp;
+        private final boolean flags;
+        private final File file;
+        private final long startOffset;
+        private final long length;
+
+        private File newFile;
+        private long newStartOffset;
+
+        public Reference(long iidExtComp, boolean flags, File file, long startOffset, long length) {
+            this.iidExtComp = iidExtComp;
+            this.flags = flags;
+            this.file = file;
+            this.startOffset = startOffset;
+            this.length = length;
+        }
+
+    }
+
+}
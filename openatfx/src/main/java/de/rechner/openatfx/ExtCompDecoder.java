@@ -0,0 +1,668 @@
+package de.rechner.openatfx;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.asam.ods.AoException;
+import org.asam.ods.DataType;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.SeverityFlag;
+import org.asam.ods.TS_Union;
+import org.asam.ods.T_COMPLEX;
+import org.asam.ods.T_DCOMPLEX;
+
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Decoding kernels for the numeric values of external component files.
+ * <p>
+ * For each 'value_type' there is a specialized kernel decoding the values of all blocks directly into a primitive
+ * array. The natural array type of a value type is:
+ * <ul>
+ * <li>dt_boolean: <code>boolean[]</code></li>
+ * <li>dt_byte, dt_sbyte: <code>byte[]</code></li>
+ * <li>dt_short, dt_short_beo: <code>short[]</code></li>
+ * <li>dt_long, dt_long_beo, dt_ushort, dt_ushort_beo: <code>int[]</code></li>
+ * <li>dt_longlong, dt_longlong_beo, dt_ulong, dt_ulong_beo: <code>long[]</code></li>
+ * <li>dt_bit_int, dt_bit_int_beo, dt_bit_uint, dt_bit_uint_beo: <code>long[]</code></li>
+ * <li>ieeefloat4, ieeefloat4_beo: <code>float[]</code></li>
+ * <li>ieeefloat8, ieeefloat8_beo, dt_bit_float, dt_bit_float_beo: <code>double[]</code></li>
+ * </ul>
+ * If the target array has the natural type, the values are decoded directly into the target array, else they are
+ * decoded into a temporary array and converted.
+ * <p>
+ * The bit field value types are extracted from a 64 bit word read at the first byte of each value, so no value needs
+ * more than two reads from the buffer.
+ *
+ * @author Christian Rechner
+ */
+final class ExtCompDecoder {
+
+    /**
+     * Non visible constructor.
+     */
+    private ExtCompDecoder() {}
+
+    /**
+     * Returns the byte order of given value type.
+     *
+     * @param valueType The value type.
+     * @return The byte order.
+     */
+    public static ByteOrder getByteOrder(int valueType) {
+        // dt_short_beo [7], dt_long_beo [8], dt_longlong_beo [9], ieeefloat4_beo [10], ieeefloat8_beo [11],
+        // dt_boolean_flags_beo [15], dt_byte_flags_beo [16], dt_string_flags_beo [17], dt_bytestr_beo [18],
+        // dt_sbyte_flags_beo [20], dt_ushort_beo [22], dt_ulong_beo [24], dt_string_utf8_beo [26]
+        // dt_bit_int_beo [28], dt_bit_uint_beo [30], dt_bit_float_beo [32]
+        if ((valueType == 7) || (valueType == 8) || (valueType == 9) || (valueType == 10) || (valueType == 11)
+                || (valueType == 15) || (valueType == 16) || (valueType == 17) || (valueType == 18)
+                || (valueType == 20) || (valueType == 22) || (valueType == 24) || (valueType == 26)
+                || (valueType == 28) || (valueType == 30) || (valueType == 32)) {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        return ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * Allocates the primitive array holding the values of given raw data type.
+     *
+     * @param rawDataType The raw data type.
+     * @param length The number of values, for complex data types the number of real and imaginary parts.
+     * @return The array.
+     * @throws AoException Unsupported data type.
+     */
+    public static Object allocate(DataType rawDataType, int length) throws AoException {
+        if (rawDataType == DataType.DS_BOOLEAN) {
+            return new boolean[length];
+        } else if (rawDataType == DataType.DS_BYTE) {
+            return new byte[length];
+        } else if (rawDataType == DataType.DS_SHORT) {
+            return new short[length];
+        } else if (rawDataType == DataType.DS_LONG) {
+            return new int[length];
+        } else if (rawDataType == DataType.DS_LONGLONG) {
+            return new long[length];
+        } else if (rawDataType == DataType.DS_FLOAT || rawDataType == DataType.DS_COMPLEX) {
+            return new float[length];
+        } else if (rawDataType == DataType.DS_DOUBLE || rawDataType == DataType.DS_DCOMPLEX) {
+            return new double[length];
+        }
+        throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                              "Reading values from external component not yet supported for datatype: "
+                                      + ODSHelper.dataType2String(rawDataType));
+    }
+
+    /**
+     * Sets the array allocated by {@link #allocate(DataType, int)} to given union.
+     *
+     * @param rawDataType The raw data type.
+     * @param array The array.
+     * @param u The union.
+     * @throws AoException Unsupported data type.
+     */
+    public static void setToUnion(DataType rawDataType, Object array, TS_Union u) throws AoException {
+        if (rawDataType == DataType.DS_BOOLEAN) {
+            u.booleanSeq((boolean[]) array);
+        } else if (rawDataType == DataType.DS_BYTE) {
+            u.byteSeq((byte[]) array);
+        } else if (rawDataType == DataType.DS_SHORT) {
+            u.shortSeq((short[]) array);
+        } else if (rawDataType == DataType.DS_LONG) {
+            u.longSeq((int[]) array);
+        } else if (rawDataType == DataType.DS_LONGLONG) {
+            long[] values = (long[]) array;
+            u.longlongSeq(ODSHelper.asODSLongLong(values));
+        } else if (rawDataType == DataType.DS_FLOAT) {
+            u.floatSeq((float[]) array);
+        } else if (rawDataType == DataType.DS_DOUBLE) {
+            u.doubleSeq((double[]) array);
+        } else if (rawDataType == DataType.DS_COMPLEX) {
+            float[] values = (float[]) array;
+            T_COMPLEX[] ar = new T_COMPLEX[values.length / 2];
+            for (int i = 0; i < ar.length; i++) {
+                ar[i] = new T_COMPLEX(values[i * 2], values[i * 2 + 1]);
+            }
+            u.complexSeq(ar);
+        } else if (rawDataType == DataType.DS_DCOMPLEX) {
+            double[] values = (double[]) array;
+            T_DCOMPLEX[] ar = new T_DCOMPLEX[values.length / 2];
+            for (int i = 0; i < ar.length; i++) {
+                ar[i] = new T_DCOMPLEX(values[i * 2], values[i * 2 + 1]);
+            }
+            u.dcomplexSeq(ar);
+        } else {
+            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                  "Reading values from external component not yet supported for datatype: "
+                                          + ODSHelper.dataType2String(rawDataType));
+        }
+    }
+
+    /**
+     * Decodes the values of an external component into the target array. The first block returned by the input is the
+     * block containing the first value to decode.
+     *
+     * @param input The input providing the blocks of the external component.
+     * @param valueType The value type.
+     * @param valueOffset The offset of the first value within each block.
+     * @param valuesPerBlock The number of values per block.
+     * @param bitCount The number of bits of a value, only used for bit field value types.
+     * @param bitOffset The bit offset of a value, only used for bit field value types.
+     * @param first The index of the first value to decode within the first block.
+     * @param count The number of values to decode.
+     * @param target The target array.
+     * @param offset The index of the first value in the target array.
+     * @throws AoException Unsupported value type.
+     * @throws IOException Error reading blocks.
+     */
+    public static void decode(ExtCompInput input, int valueType, int valueOffset, int valuesPerBlock, int bitCount,
+            int bitOffset, int first, int count, Object target, int offset) throws AoException, IOException {
+        Class<?> naturalType = getNaturalArrayType(valueType);
+        if (naturalType == null) {
+            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                  "Unsupported 'value_type': " + ODSHelper.valueType2String(valueType));
+        }
+
+        // decode directly into target array if possible
+        Object values = target;
+        int valuesOffset = offset;
+        if (target.getClass() != naturalType) {
+            values = Array.newInstance(naturalType.getComponentType(), count);
+            valuesOffset = 0;
+        }
+
+        // 0=dt_boolean
+        if (valueType == 0) {
+            decodeBoolean(input, valueOffset, valuesPerBlock, first, count, (boolean[]) values, valuesOffset);
+        }
+        // 1=dt_byte, 19=dt_sbyte
+        else if ((valueType == 1) || (valueType == 19)) {
+            decodeByte(input, valueOffset, valuesPerBlock, first, count, (byte[]) values, valuesOffset);
+        }
+        // 2=dt_short, 7=dt_short_beo
+        else if ((valueType == 2) || (valueType == 7)) {
+            decodeShort(input, valueOffset, valuesPerBlock, first, count, (short[]) values, valuesOffset);
+        }
+        // 3=dt_long, 8=dt_long_beo
+        else if ((valueType == 3) || (valueType == 8)) {
+            decodeInt(input, valueOffset, valuesPerBlock, first, count, (int[]) values, valuesOffset);
+        }
+        // 4=dt_longlong, 9=dt_longlong_beo
+        else if ((valueType == 4) || (valueType == 9)) {
+            decodeLong(input, valueOffset, valuesPerBlock, first, count, (long[]) values, valuesOffset);
+        }
+        // 5=ieeefloat4, 10=ieeefloat4_beo
+        else if ((valueType == 5) || (valueType == 10)) {
+            decodeFloat(input, valueOffset, valuesPerBlock, first, count, (float[]) values, valuesOffset);
+        }
+        // 6=ieeefloat8, 11=ieeefloat8_beo
+        else if ((valueType == 6) || (valueType == 11)) {
+            decodeDouble(input, valueOffset, valuesPerBlock, first, count, (double[]) values, valuesOffset);
+        }
+        // 21=dt_ushort, 22=dt_ushort_beo
+        else if ((valueType == 21) || (valueType == 22)) {
+            decodeUShort(input, valueOffset, valuesPerBlock, first, count, (int[]) values, valuesOffset);
+        }
+        // 23=dt_ulong, 24=dt_ulong_beo
+        else if ((valueType == 23) || (valueType == 24)) {
+            decodeULong(input, valueOffset, valuesPerBlock, first, count, (long[]) values, valuesOffset);
+        }
+        // 27=dt_bit_int, 28=dt_bit_int_beo, 29=dt_bit_uint, 30=dt_bit_uint_beo
+        else if ((valueType == 27) || (valueType == 28) || (valueType == 29) || (valueType == 30)) {
+            checkBitCount(valueType, bitCount, 1, 64);
+            decodeBitInt(input, valueOffset, valuesPerBlock, first, bitCount, bitOffset, valueType < 29, count,
+                         (long[]) values, valuesOffset);
+        }
+        // 31=dt_bit_float, 32=dt_bit_float_beo
+        else if ((valueType == 31) || (valueType == 32)) {
+            if (bitCount != 16 && bitCount != 32 && bitCount != 64) {
+                checkBitCount(valueType, bitCount, 16, 16);
+            }
+            decodeBitFloat(input, valueOffset, valuesPerBlock, first, bitCount, bitOffset, count, (double[]) values,
+                           valuesOffset);
+        }
+
+        // convert values to target array
+        if (values != target) {
+            convert(values, count, target, offset);
+        }
+    }
+
+    /**
+     * Returns the natural array type of given value type.
+     *
+     * @param valueType The value type.
+     * @return The array class, null if value type is not supported.
+     */
+    private static Class<?> getNaturalArrayType(int valueType) {
+        switch (valueType) {
+            case 0:
+                return boolean[].class;
+            case 1:
+            case 19:
+                return byte[].class;
+            case 2:
+            case 7:
+                return short[].class;
+            case 3:
+            case 8:
+            case 21:
+            case 22:
+                return int[].class;
+            case 4:
+            case 9:
+            case 23:
+            case 24:
+            case 27:
+            case 28:
+            case 29:
+            case 30:
+                return long[].class;
+            case 5:
+            case 10:
+                return float[].class;
+            case 6:
+            case 11:
+            case 31:
+            case 32:
+                return double[].class;
+            default:
+                return null;
+        }
+    }
+
+    /***********************************************************************************
+     * decoding kernels, the values of a block are consecutive
+     ***********************************************************************************/
+
+    private static void decodeBoolean(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            boolean[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                // bits are stored starting with the most significant bit, see ODSHelper.setBit()
+                target[pos++] = (bb.get(base + (j >>> 3)) & (0x80 >>> (j & 7))) != 0;
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeByte(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count, byte[]
+            target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.get(base + j);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeShort(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            short[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getShort(base + j * 2);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeUShort(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            int[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getShort(base + j * 2) & 0xffff;
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeInt(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count, int[]
+            target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getInt(base + j * 4);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeULong(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            long[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getInt(base + j * 4) & 0xffffffffL;
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeLong(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count, long[]
+            target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getLong(base + j * 8);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeFloat(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            float[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getFloat(base + j * 4);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeDouble(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int count,
+            double[] target, int offset) throws IOException {
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                target[pos++] = bb.getDouble(base + j * 8);
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    /***********************************************************************************
+     * bit field decoding kernels
+     ***********************************************************************************/
+
+    private static void checkBitCount(int valueType, int bitCount, int min, int max) throws AoException {
+        if (bitCount < min || bitCount > max) {
+            throw new AoException(ErrorCode.AO_INVALID_LENGTH, SeverityFlag.ERROR, 0, "Invalid 'ao_bit_count' "
+                    + bitCount + " for 'value_type': " + ODSHelper.valueType2String(valueType));
+        }
+    }
+
+    private static void decodeBitInt(ExtCompInput input, int valueOffset, int valuesPerBlock, int first, int bitCount,
+            int bitOffset, boolean signed, int count, long[] target, int offset) throws IOException {
+        // each value occupies the whole bytes covering bit offset and bit count
+        int bytesPerValue = ((bitCount + bitOffset - 1) / 8) + 1;
+        int shift = 64 - bitCount;
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            boolean bigEndian = bb.order() == ByteOrder.BIG_ENDIAN;
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                long raw = getBits(bb, base + j * bytesPerValue, bytesPerValue, bitCount, bitOffset, bigEndian);
+                // the unused high bits are either cleared or filled with the sign bit
+                target[pos++] = signed ? (raw << shift) >> shift : (raw << shift) >>> shift;
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    private static void decodeBitFloat(ExtCompInput input, int valueOffset, int valuesPerBlock, int first,
+            int bitCount, int bitOffset, int count, double[] target, int offset) throws IOException {
+        int bytesPerValue = ((bitCount + bitOffset - 1) / 8) + 1;
+        int pos = offset;
+        int remaining = count;
+        int firstInBlock = first;
+        for (int blockNo = 0; remaining > 0; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            boolean bigEndian = bb.order() == ByteOrder.BIG_ENDIAN;
+            int base = bb.position() + valueOffset;
+            int end = Math.min(valuesPerBlock, firstInBlock + remaining);
+            for (int j = firstInBlock; j < end; j++) {
+                long raw = getBits(bb, base + j * bytesPerValue, bytesPerValue, bitCount, bitOffset, bigEndian);
+                if (bitCount == 16) {
+                    target[pos++] = halfToFloat((int) raw & 0xFFFF);
+                } else if (bitCount == 32) {
+                    target[pos++] = Float.intBitsToFloat((int) raw);
+                } else {
+                    target[pos++] = Double.longBitsToDouble(raw);
+                }
+            }
+            remaining -= end - firstInBlock;
+            firstInBlock = 0;
+        }
+    }
+
+    /**
+     * Extracts the bits of a bit field value. The bit offset is counted from the least significant bit of the value
+     * bytes, so for little endian values the first byte, for big endian values the last byte holds the lowest bits.
+     * <p>
+     * The value bytes are read as one 64 bit word if the buffer holds 8 bytes starting at the first value byte. A
+     * ninth byte is only read if bit offset and bit count exceed 64 bits.
+     *
+     * @param bb The buffer, its byte order is the byte order of the value.
+     * @param index The index of the first byte of the value.
+     * @param bytesPerValue The number of bytes of the value.
+     * @param bitCount The number of bits.
+     * @param bitOffset The bit offset.
+     * @param bigEndian True, if the value is big endian.
+     * @return The bits of the value in the lowest bits, the higher bits are undefined.
+     */
+    static long getBits(ByteBuffer bb, int index, int bytesPerValue, int bitCount, int bitOffset, boolean bigEndian) {
+        if (bigEndian) {
+            // the bytes below the bit offset are skipped from the end of the value
+            int valueBytes = bytesPerValue - (bitOffset >>> 3);
+            int bitShift = bitOffset & 7;
+            if (valueBytes > 8) {
+                long word = bb.getLong(index);
+                return (word << (8 - bitShift)) | ((bb.get(index + 8) & 0xFFL) >>> bitShift);
+            } else if (index + 8 <= bb.limit()) {
+                return bb.getLong(index) >>> (64 - 8 * valueBytes + bitShift);
+            }
+            long word = 0;
+            for (int k = 0; k < valueBytes; k++) {
+                word = (word << 8) | (bb.get(index + k) & 0xFFL);
+            }
+            return word >>> bitShift;
+        }
+
+        // the bytes below the bit offset are skipped from the start of the value
+        int start = index + (bitOffset >>> 3);
+        int valueBytes = bytesPerValue - (bitOffset >>> 3);
+        int bitShift = bitOffset & 7;
+        long word;
+        if (start + 8 <= bb.limit()) {
+            word = bb.getLong(start);
+        } else {
+            word = 0;
+            for (int k = Math.min(valueBytes, 8) - 1; k >= 0; k--) {
+                word = (word << 8) | (bb.get(start + k) & 0xFFL);
+            }
+        }
+        if (valueBytes > 8) {
+            return (word >>> bitShift) | ((bb.get(start + 8) & 0xFFL) << (64 - bitShift));
+        }
+        return word >>> bitShift;
+    }
+
+    /**
+     * Converts an IEEE 754 half precision value to a float.
+     *
+     * @param half The 16 bits of the half precision value.
+     * @return The float value.
+     */
+    static float halfToFloat(int half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1F;
+        int mantissa = half & 0x3FF;
+        if (exponent == 0x1F) { // infinity or NaN
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        } else if (exponent == 0) { // zero or subnormal
+            float value = mantissa * 0x1p-24f;
+            return sign == 0 ? value : -value;
+        }
+        // rebias exponent from 15 to 127
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    /***********************************************************************************
+     * conversion between array types
+     ***********************************************************************************/
+
+    private static void convert(Object source, int count, Object target, int offset) {
+        if (target instanceof float[] || target instanceof double[]) {
+            double[] values = asDoubles(source, count);
+            if (target instanceof float[]) {
+                float[] ar = (float[]) target;
+                for (int i = 0; i < count; i++) {
+                    ar[offset + i] = (float) values[i];
+                }
+            } else {
+                System.arraycopy(values, 0, target, offset, count);
+            }
+            return;
+        }
+
+        long[] values = asLongs(source, count);
+        if (target instanceof boolean[]) {
+            boolean[] ar = (boolean[]) target;
+            for (int i = 0; i < count; i++) {
+                ar[offset + i] = (byte) values[i] != 0;
+            }
+        } else if (target instanceof byte[]) {
+            byte[] ar = (byte[]) target;
+            for (int i = 0; i < count; i++) {
+                ar[offset + i] = (byte) values[i];
+            }
+        } else if (target instanceof short[]) {
+            short[] ar = (short[]) target;
+            for (int i = 0; i < count; i++) {
+                ar[offset + i] = (short) values[i];
+            }
+        } else if (target instanceof int[]) {
+            int[] ar = (int[]) target;
+            for (int i = 0; i < count; i++) {
+                ar[offset + i] = (int) values[i];
+            }
+        } else {
+            System.arraycopy(values, 0, target, offset, count);
+        }
+    }
+
+    private static double[] asDoubles(Object source, int count) {
+        if (source instanceof double[]) {
+            return (double[]) source;
+        }
+        double[] values = new double[count];
+        if (source instanceof float[]) {
+            float[] ar = (float[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i];
+            }
+        } else {
+            long[] ar = asLongs(source, count);
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i];
+            }
+        }
+        return values;
+    }
+
+    private static long[] asLongs(Object source, int count) {
+        if (source instanceof long[]) {
+            return (long[]) source;
+        }
+        long[] values = new long[count];
+        if (source instanceof boolean[]) {
+            boolean[] ar = (boolean[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i] ? 1 : 0;
+            }
+        } else if (source instanceof byte[]) {
+            byte[] ar = (byte[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i];
+            }
+        } else if (source instanceof short[]) {
+            short[] ar = (short[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i];
+            }
+        } else if (source instanceof int[]) {
+            int[] ar = (int[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = ar[i];
+            }
+        } else if (source instanceof float[]) {
+            float[] ar = (float[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = (long) ar[i];
+            }
+        } else if (source instanceof double[]) {
+            double[] ar = (double[]) source;
+            for (int i = 0; i < count; i++) {
+                values[i] = (long) ar[i];
+            }
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,224 @@
+package de.rechner.openatfx;
+
+import java.io.File;
+import java.nio.ByteOrder;
+
+import org.asam.ods.AoException;
+import org.asam.ods.DataType;
+import org.asam.ods.TS_Value;
+
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Immutable description of an instance of 'AoExternalComponent', holding the values of all base attributes needed to
+ * read the values and flags of the component with the files already resolved against the 'FILE_ROOT'.
+ * <p>
+ * The descriptors are cached by the <code>AtfxCache</code> and dropped if any attribute value of the external
+ * component instance changes.
+ *
+ * @author Christian Rechner
+ */
+final class ExtCompDescriptor {
+
+    private final long iid;
+    private final String filenameUrl;
+    private final File file;
+    private final int valueType;
+    private final int componentLength;
+    private final long startOffset;
+    private final int valueOffset;
+    private final int blockSize;
+    private final int valuesPerBlock;
+    private final short bitCount;
+    private final short bitOffset;
+    private final int ordinalNumber;
+    private final String flagsFilenameUrl;
+    private final File flagsFile;
+    private final long flagsStartOffset;
+    private final ByteOrder byteOrder;
+
+    /**
+     * Constructor.
+     *
+     * @param iid The instance id of the external component.
+     * @param fileRoot The directory the file names are relative to.
+     * @param filenameUrl The value of 'filename_url'.
+     * @param valueType The value of 'value_type'.
+     * @param componentLength The value of 'component_length'.
+     * @param startOffset The value of 'start_offset'.
+     * @param valueOffset The value of 'value_offset'.
+     * @param blockSize The value of 'block_size'.
+     * @param valuesPerBlock The value of 'valuesperblock'.
+     * @param bitCount The value of 'ao_bit_count', 0 if not available.
+     * @param bitOffset The value of 'ao_bit_offset', 0 if not available.
+     * @param ordinalNumber The value of 'ordinal_number', 0 if not available.
+     * @param flagsFilenameUrl The value of 'flags_filename_url', null if no flags are stored.
+     * @param flagsStartOffset The value of 'flags_start_offset', -1 if the attribute does not exist.
+     */
+    public ExtCompDescriptor(long iid, File fileRoot, String filenameUrl, int valueType, int componentLength,
+            long startOffset, int valueOffset, int blockSize, int valuesPerBlock, short bitCount, short bitOffset,
+            int ordinalNumber, String flagsFilenameUrl, long flagsStartOffset) {
+        this.iid = iid;
+        this.filenameUrl = filenameUrl;
+        this.file = filenameUrl == null ? null : new File(fileRoot, filenameUrl);
+        this.valueType = valueType;
+        this.componentLength = componentLength;
+        this.startOffset = startOffset;
+        this.valueOffset = valueOffset;
+        this.blockSize = blockSize;
+        this.valuesPerBlock = valuesPerBlock;
+        this.bitCount = bitCount;
+        this.bitOffset = bitOffset;
+        this.ordinalNumber = ordinalNumber;
+        this.flagsFilenameUrl = flagsFilenameUrl;
+        this.flagsFile = flagsFilenameUrl == null ? null : new File(fileRoot, flagsFilenameUrl);
+        this.flagsStartOffset = flagsStartOffset;
+        this.byteOrder = ExtCompDecoder.getByteOrder(valueType);
+    }
+
+    public long getIid() {
+        return this.iid;
+    }
+
+    public String getFilenameUrl() {
+        return this.filenameUrl;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    public int getValueType() {
+        return this.valueType;
+    }
+
+    public int getComponentLength() {
+        return this.componentLength;
+    }
+
+    public long getStartOffset() {
+        return this.startOffset;
+    }
+
+    public int getValueOffset() {
+        return this.valueOffset;
+    }
+
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    public int getValuesPerBlock() {
+        return this.valuesPerBlock;
+    }
+
+    public short getBitCount() {
+        return this.bitCount;
+    }
+
+    public short getBitOffset() {
+        return this.bitOffset;
+    }
+
+    public int getOrdinalNumber() {
+        return this.ordinalNumber;
+    }
+
+    public String getFlagsFilenameUrl() {
+        return this.flagsFilenameUrl;
+    }
+
+    public File getFlagsFile() {
+        return this.flagsFile;
+    }
+
+    public long getFlagsStartOffset() {
+        return this.flagsStartOffset;
+    }
+
+    public ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
+    /**
+     * Reads the descriptor of an external component from the instance values.
+     *
+     * @param atfxCache The ATFX cache.
+     * @param iidExtComp The instance id of the external component.
+     * @return The descriptor.
+     * @throws AoException Error reading instance values.
+     */
+    public static ExtCompDescriptor read(AtfxCache atfxCache, long iidExtComp) throws AoException {
+        long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
+        File fileRoot = new File(atfxCache.getContext().get("FILE_ROOT").value.u.stringVal());
+
+        // file name and flags file name
+        TS_Value v = getValue(atfxCache, aidExtComp, iidExtComp, "filename_url");
+        String filenameUrl = (v == null) ? null : v.u.stringVal();
+        v = getValue(atfxCache, aidExtComp, iidExtComp, "flags_filename_url");
+        String flagsFilenameUrl = null;
+        if (v != null && v.u.stringVal() != null && v.u.stringVal().length() > 0) {
+            flagsFilenameUrl = v.u.stringVal();
+        }
+
+        // value type
+        v = getValue(atfxCache, aidExtComp, iidExtComp, "value_type");
+        int valueType = (v == null) ? 0 : v.u.enumVal();
+
+        // the bit field attributes are optional
+        v = getValue(atfxCache, aidExtComp, iidExtComp, "ao_bit_count");
+        short bitCount = (v == null) ? 0 : v.u.shortVal();
+        v = getValue(atfxCache, aidExtComp, iidExtComp, "ao_bit_offset");
+        short bitOffset = (v == null) ? 0 : v.u.shortVal();
+
+        return new ExtCompDescriptor(iidExtComp, fileRoot, filenameUrl, valueType,
+                                     getInt(atfxCache, aidExtComp, iidExtComp, "component_length"),
+                                     getOffset(atfxCache, aidExtComp, iidExtComp, "start_offset", 0),
+                                     getInt(atfxCache, aidExtComp, iidExtComp, "value_offset"),
+                                     getInt(atfxCache, aidExtComp, iidExtComp, "block_size"),
+                                     getInt(atfxCache, aidExtComp, iidExtComp, "valuesperblock"), bitCount,
+                                     bitOffset, getInt(atfxCache, aidExtComp, iidExtComp, "ordinal_number"),
+                                     flagsFilenameUrl,
+                                     getOffset(atfxCache, aidExtComp, iidExtComp, "flags_start_offset", -1));
+    }
+
+    /**
+     * Returns the value of the attribute derived from given base attribute.
+     *
+     * @return The value, null if the attribute does not exist or the value is undefined.
+     */
+    private static TS_Value getValue(AtfxCache atfxCache, long aid, long iid, String baName) throws AoException {
+        Integer attrNo = atfxCache.getAttrNoByBaName(aid, baName);
+        if (attrNo == null) {
+            return null;
+        }
+        TS_Value v = atfxCache.getInstanceValue(aid, attrNo, iid);
+        if (v == null || v.flag != 15) {
+            return null;
+        }
+        return v;
+    }
+
+    private static int getInt(AtfxCache atfxCache, long aid, long iid, String baName) throws AoException {
+        TS_Value v = getValue(atfxCache, aid, iid, baName);
+        return (v == null) ? 0 : v.u.longVal();
+    }
+
+    /**
+     * Returns the value of an offset attribute, which may be DT_LONG or DT_LONGLONG.
+     */
+    private static long getOffset(AtfxCache atfxCache, long aid, long iid, String baName, long defaultValue)
+            throws AoException {
+        TS_Value v = getValue(atfxCache, aid, iid, baName);
+        if (v == null) {
+            return defaultValue;
+        } else if (v.u.discriminator() == DataType.DT_LONG) {
+            return v.u.longVal();
+        } else if (v.u.discriminator() == DataType.DT_LONGLONG) {
+            return ODSHelper.asJLong(v.u.longlongVal());
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,359 @@
+package de.rechner.openatfx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.asam.ods.NameValue;
+
+
+/**
+ * Block wise read access to the values of an external component file.
+ * <p>
+ * The blocks of the component are either copied into a heap buffer using positional reads (read mode
+ * <code>BUFFERED</code>, the default) or read from a memory mapped region of the file (read mode <code>MMAP</code>).
+ * The read mode is taken from the session context variable <code>EXT_COMP_READ_MODE</code>. The file channels are
+ * acquired from the file channel pool of the session and released when the input is closed.
+ * <p>
+ * Mapped regions are only released when they are garbage collected. Until then they keep the address space reserved
+ * and, on Windows, prevent the file from being truncated or deleted, so memory mapping has to be enabled explicitly.
+ * <p>
+ * Because a single mapped buffer is limited to 2GB, the mapped region is split into windows each holding a whole
+ * number of blocks.
+ *
+ * @author Christian Rechner
+ */
+abstract class ExtCompInput implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(ExtCompInput.class);
+
+    /** The name of the context variable holding the read mode */
+    static final String CONTEXT_READ_MODE = "EXT_COMP_READ_MODE";
+
+    /** Read mode mapping the external component file into memory */
+    static final String READ_MODE_MMAP = "MMAP";
+
+    /** Read mode copying the blocks into a heap buffer by positional reads on a pooled file channel */
+    static final String READ_MODE_BUFFERED = "BUFFERED";
+
+    private static final int BUFFER_SIZE = 32768;
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    protected final int blockSize;
+    protected final int blockCount;
+
+    /**
+     * Constructor.
+     *
+     * @param blockSize The size of one block in bytes.
+     * @param blockCount The number of blocks.
+     */
+    protected ExtCompInput(int blockSize, int blockCount) {
+        this.blockSize = blockSize;
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * Returns the buffer containing given block. The position of the returned buffer points to the first byte of the
+     * block, the limit to the end of the block. The returned buffer is only valid until the next call of this method.
+     *
+     * @param blockNo The block number, starting with 0.
+     * @return The buffer.
+     * @throws IOException Error reading block.
+     */
+    public abstract ByteBuffer getBlock(int blockNo) throws IOException;
+
+    /**
+     * Opens the input for an external component file using the read mode configured in the session context.
+     *
+     * @param atfxCache The ATFX cache.
+     * @param file The external component file.
+     * @param startOffset The start offset of the first block in the file.
+     * @param blockSize The block size in bytes.
+     * @param blockCount The number of blocks to read.
+     * @param byteOrder The byte order of the values.
+     * @return The input, has to be closed by the caller.
+     * @throws IOException Error opening file.
+     */
+    public static ExtCompInput open(AtfxCache atfxCache, File file, long startOffset, int blockSize, int blockCount,
+            ByteOrder byteOrder) throws IOException {
+        FileChannelPool pool = atfxCache.getFileChannelPool();
+        if (READ_MODE_MMAP.equalsIgnoreCase(getReadMode(atfxCache))) {
+            try {
+                return new MappedExtCompInput(pool, file, startOffset, blockSize, blockCount, byteOrder,
+                                              MAX_WINDOW_SIZE);
+            } catch (IOException e) {
+                LOG.warn("Unable to map external component file '" + file + "', falling back to buffered reading: "
+                        + e.getMessage());
+            }
+        }
+        return new BufferedExtCompInput(pool, file, startOffset, blockSize, blockCount, byteOrder);
+    }
+
+    private static String getReadMode(AtfxCache atfxCache) {
+        NameValue nv = atfxCache.getContext().get(CONTEXT_READ_MODE);
+        if (nv == null || nv.value == null || nv.value.flag != 15) {
+            return READ_MODE_BUFFERED;
+        }
+        return nv.value.u.stringVal();
+    }
+
+    /**
+     * Input reading the blocks from memory mapped windows of the file.
+     */
+    static class MappedExtCompInput extends ExtCompInput {
+
+        private final FileChannelPool pool;
+        private final FileChannel channel;
+        private final long startOffset;
+        private final long fileSize;
+        private final int blocksPerWindow;
+        private final ByteOrder byteOrder;
+        private final ByteBuffer[] windows;
+
+        /**
+         * Constructor.
+         *
+         * @param pool The pool to acquire the file channel from.
+         * @param file The external component file.
+         * @param startOffset The start offset of the first block in the file.
+         * @param blockSize The block size in bytes.
+         * @param blockCount The number of blocks to read.
+         * @param byteOrder The byte order of the values.
+         * @param maxWindowSize The maximum size in bytes of a single mapped window.
+         * @throws IOException Error opening file.
+         */
+        MappedExtCompInput(FileChannelPool pool, File file, long startOffset, int blockSize, int blockCount,
+                ByteOrder byteOrder, long maxWindowSize) throws IOException {
+            super(blockSize, blockCount);
+            this.startOffset = startOffset;
+            this.byteOrder = byteOrder;
+            this.blocksPerWindow = (int) Math.max(1, maxWindowSize / Math.max(1, blockSize));
+            this.windows = new ByteBuffer[(int) ((blockCount + (long) blocksPerWindow - 1) / blocksPerWindow)];
+            this.pool = pool;
+            this.channel = pool.acquire(file, false);
+            this.fileSize = this.channel.size();
+            if (blockCount > 0 && this.fileSize <= startOffset) {
+                close();
+                throw new IOException("Start offset " + startOffset + " exceeds size of file '" + file + "'");
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see de.rechner.openatfx.ExtCompInput#getBlock(int)
+         */
+        public ByteBuffer getBlock(int blockNo) throws IOException {
+            int windowNo = blockNo / this.blocksPerWindow;
+            ByteBuffer window = this.windows[windowNo];
+            if (window == null) {
+                window = mapWindow(windowNo);
+                this.windows[windowNo] = window;
+            }
+            int position = (blockNo % this.blocksPerWindow) * this.blockSize;
+            // make buildable with both java8 and java9
+            Buffer buffer = Buffer.class.cast(window);
+            buffer.limit(window.capacity());
+            buffer.position(Math.min(position, window.capacity()));
+            buffer.limit(Math.min(position + this.blockSize, window.capacity()));
+            return window;
+        }
+
+        private ByteBuffer mapWindow(int windowNo) throws IOException {
+            long windowStart = this.startOffset + (long) windowNo * this.blocksPerWindow * this.blockSize;
+            int windowBlocks = Math.min(this.blocksPerWindow, this.blockCount - windowNo * this.blocksPerWindow);
+            long windowSize = Math.min((long) windowBlocks * this.blockSize, this.fileSize - windowStart);
+            windowSize = Math.max(0, windowSize); // the last block may be truncated at the end of the file
+            ByteBuffer window = this.channel.map(MapMode.READ_ONLY, windowStart, windowSize);
+            window.order(this.byteOrder);
+            return window;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.io.Closeable#close()
+         */
+        public void close() throws IOException {
+            // the mapped windows stay valid until they are garbage collected
+            this.pool.release(this.channel);
+        }
+
+    }
+
+    /**
+     * Input holding a chunk of consecutive blocks of another input in a heap buffer. Used to demultiplex the values
+     * of several external components sharing the same blocks: each chunk is read once from the source input and then
+     * decoded for every component. The block numbers passed to {@link #getBlock(int)} are relative to the first block
+     * of the currently loaded chunk.
+     */
+    static class ChunkedExtCompInput extends ExtCompInput {
+
+        private final ExtCompInput source;
+        private final int blocksPerChunk;
+        private final ByteBuffer buffer;
+
+        /**
+         * Constructor.
+         *
+         * @param source The source input, will be closed with this input.
+         * @param blocksPerChunk The maximum number of blocks of one chunk.
+         * @param byteOrder The byte order of the values.
+         */
+        ChunkedExtCompInput(ExtCompInput source, int blocksPerChunk, ByteOrder byteOrder) {
+            super(source.blockSize, source.blockCount);
+            this.source = source;
+            this.blocksPerChunk = blocksPerChunk;
+            this.buffer = ByteBuffer.allocate(blocksPerChunk * source.blockSize);
+            this.buffer.order(byteOrder);
+        }
+
+        /**
+         * Returns the maximum number of blocks of one chunk.
+         *
+         * @return The number of blocks.
+         */
+        int getBlocksPerChunk() {
+            return this.blocksPerChunk;
+        }
+
+        /**
+         * Copies a range of blocks from the source input into the chunk buffer.
+         *
+         * @param firstBlock The number of the first block in the source input.
+         * @param count The number of blocks, must not exceed the blocks per chunk.
+         * @throws IOException Error reading blocks.
+         */
+        void load(int firstBlock, int count) throws IOException {
+            // make buildable with both java8 and java9
+            Buffer buf = Buffer.class.cast(this.buffer);
+            buf.clear();
+            for (int i = 0; i < count; i++) {
+                buf.position(i * this.blockSize);
+                this.buffer.put(this.source.getBlock(firstBlock + i));
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see de.rechner.openatfx.ExtCompInput#getBlock(int)
+         */
+        public ByteBuffer getBlock(int blockNo) throws IOException {
+            int position = blockNo * this.blockSize;
+            // make buildable with both java8 and java9
+            Buffer buf = Buffer.class.cast(this.buffer);
+            buf.limit(this.buffer.capacity());
+            buf.position(position);
+            buf.limit(position + this.blockSize);
+            return this.buffer;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.io.Closeable#close()
+         */
+        public void close() throws IOException {
+            this.source.close();
+        }
+
+    }
+
+    /**
+     * Input copying the blocks into a heap buffer using positional reads. To reduce the number of reads, as many
+     * whole blocks as fit into the read buffer are read at once.
+     */
+    static class BufferedExtCompInput extends ExtCompInput {
+
+        private final FileChannelPool pool;
+        private final FileChannel channel;
+        private final long startOffset;
+        private final int blocksPerRead;
+        private final ByteBuffer buffer;
+        private int firstBufferedBlockNo;
+        private int bufferedBlocks;
+
+        /**
+         * Constructor.
+         *
+         * @param pool The pool to acquire the file channel from.
+         * @param file The external component file.
+         * @param startOffset The start offset of the first block in the file.
+         * @param blockSize The block size in bytes.
+         * @param blockCount The number of blocks to read.
+         * @param byteOrder The byte order of the values.
+         * @throws IOException Error opening file.
+         */
+        BufferedExtCompInput(FileChannelPool pool, File file, long startOffset, int blockSize, int blockCount,
+                ByteOrder byteOrder) throws IOException {
+            super(blockSize, blockCount);
+            this.pool = pool;
+            this.channel = pool.acquire(file, false);
+            this.startOffset = startOffset;
+            this.blocksPerRead = Math.max(1, Math.min(BUFFER_SIZE / Math.max(1, blockSize), blockCount));
+            this.buffer = ByteBuffer.allocate(this.blocksPerRead * blockSize);
+            this.buffer.order(byteOrder);
+            this.firstBufferedBlockNo = 0;
+            this.bufferedBlocks = 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see de.rechner.openatfx.ExtCompInput#getBlock(int)
+         */
+        public ByteBuffer getBlock(int blockNo) throws IOException {
+            if (blockNo < this.firstBufferedBlockNo || blockNo >= this.firstBufferedBlockNo + this.bufferedBlocks) {
+                read(blockNo);
+            }
+            int position = (blockNo - this.firstBufferedBlockNo) * this.blockSize;
+            // make buildable with both java8 and java9
+            Buffer buf = Buffer.class.cast(this.buffer);
+            buf.limit(this.buffer.capacity());
+            buf.position(position);
+            buf.limit(position + this.blockSize);
+            return this.buffer;
+        }
+
+        private void read(int blockNo) throws IOException {
+            int blocks = Math.max(1, Math.min(this.blocksPerRead, this.blockCount - blockNo));
+            long position = this.startOffset + (long) blockNo * this.blockSize;
+            // make buildable with both java8 and java9
+            Buffer buf = Buffer.class.cast(this.buffer);
+            buf.clear();
+            buf.limit(blocks * this.blockSize);
+            while (this.buffer.hasRemaining()) {
+                int read = this.channel.read(this.buffer, position);
+                if (read < 0) { // the last block may be truncated at the end of the file
+                    while (this.buffer.hasRemaining()) {
+                        this.buffer.put((byte) 0);
+                    }
+                    break;
+                }
+                position += read;
+            }
+            this.firstBufferedBlockNo = blockNo;
+            this.bufferedBlocks = blocks;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.io.Closeable#close()
+         */
+        public void close() throws IOException {
+            this.pool.release(this.channel);
+        }
+
+    }
+
+}
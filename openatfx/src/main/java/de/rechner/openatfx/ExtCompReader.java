@@ -3,33 +3,32 @@ package de.rechner.openatfx;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.File;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.charset.Charset;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.asam.ods.AoException;
-import org.asam.ods.ApplicationRelation;
 import org.asam.ods.DataType;
 import org.asam.ods.ErrorCode;
 import org.asam.ods.SeverityFlag;
 import org.asam.ods.TS_Union;
 import org.asam.ods.TS_Value;
-import org.asam.ods.T_COMPLEX;
-import org.asam.ods.T_DCOMPLEX;
-import org.asam.ods.T_LONGLONG;
 
-import de.rechner.openatfx.util.BufferedRandomAccessFile;
 import de.rechner.openatfx.util.ODSHelper;
 
 
@@ -41,525 +40,577 @@ import de.rechner.openatfx.util.ODSHelper;
 class ExtCompReader {
 
     private static final Log LOG = LogFactory.getLog(ExtCompReader.class);
-    private static final int BUFFER_SIZE = 32768;
+    private static final int CHUNK_SIZE = 262144;
 
     /** The singleton instance */
     private static volatile ExtCompReader instance;
 
+    /**
+     * Reads all values of a local column from its external components.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @param targetDataType The target data type.
+     * @return The values.
+     * @throws AoException Error reading values.
+     */
     public TS_Value readValues(AtfxCache atfxCache, long iidLc, DataType targetDataType) throws AoException {
-        // read external component instances
-        long aidLc = atfxCache.getAidsByBaseType("aolocalcolumn").iterator().next();
-        ApplicationRelation relExtComps = atfxCache.getApplicationRelationByBaseName(aidLc, "external_component");
-        List<Long> iidExtComps = atfxCache.getRelatedInstanceIds(aidLc, iidLc, relExtComps);
-        if (iidExtComps.size() > 0) {
-            Collections.sort(iidExtComps, new ExternalComponentComparator(atfxCache));
+        return readValues(atfxCache, iidLc, targetDataType, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads a range of the values of a local column from its external components. Only the blocks containing the
+     * requested values are read.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @param targetDataType The target data type.
+     * @param startPoint The index of the first value to read.
+     * @param count The maximum number of values to read, fewer values are returned if the end of the values is
+     *            reached.
+     * @return The values.
+     * @throws AoException Error reading values.
+     */
+    public TS_Value readValues(AtfxCache atfxCache, long iidLc, DataType targetDataType, int startPoint, int count)
+            throws AoException {
+        // read external component instances, values written by this session may still be buffered
+        List<ExtCompDescriptor> extComps = getExtCompDescriptors(atfxCache, iidLc);
+        for (ExtCompDescriptor extComp : extComps) {
+            atfxCache.flushExtCompSegmentWriter(extComp.getFile());
         }
 
         TS_Value tsValue = new TS_Value();
         tsValue.flag = (short) 15;
         tsValue.u = new TS_Union();
 
-        // get raw data type
-        DataType rawDataType = targetDataType;
-        Integer attrNo = atfxCache.getAttrNoByBaName(aidLc, "raw_datatype");
-        if (attrNo != null) {
-            TS_Value valRawDatatype = atfxCache.getInstanceValue(aidLc, attrNo, iidLc);
-            if (valRawDatatype != null && valRawDatatype.flag == 15) {
-                int val = valRawDatatype.u.enumVal();
-                if (val == 1) { // DT_STRING
-                    rawDataType = DataType.DS_STRING;
-                } else if (val == 2) { // DT_SHORT
-                    rawDataType = DataType.DS_SHORT;
-                } else if (val == 3) { // DT_FLOAT
-                    rawDataType = DataType.DS_FLOAT;
-                } else if (val == 4) { // DT_BOOLEAN
-                    rawDataType = DataType.DS_BOOLEAN;
-                } else if (val == 5) { // DT_BYTE
-                    rawDataType = DataType.DS_BYTE;
-                } else if (val == 6) { // DT_LONG
-                    rawDataType = DataType.DS_LONG;
-                } else if (val == 7) { // DT_DOUBLE
-                    rawDataType = DataType.DS_DOUBLE;
-                } else if (val == 8) { // DT_LONGLONG
-                    rawDataType = DataType.DS_LONGLONG;
-                } else if (val == 10) { // DT_DATE
-                    rawDataType = DataType.DS_DATE;
-                } else if (val == 11) { // DT_BYTESTR
-                    rawDataType = DataType.DS_BYTESTR;
-                } else if (val == 13) { // DT_COMPLEX
-                    rawDataType = DataType.DS_COMPLEX;
-                } else if (val == 14) { // DT_DCOMPLEX
-                    rawDataType = DataType.DS_DCOMPLEX;
-                } else if (val == 28) { // DT_EXTERNALREFERENCE
-                    rawDataType = DataType.DS_EXTERNALREFERENCE;
-                } else if (val == 30) { // DT_ENUM
-                    rawDataType = DataType.DS_ENUM;
-                }
-            }
-        }
+        DataType rawDataType = getRawDataType(atfxCache, iidLc, targetDataType);
 
         // DS_STRING
-        if (rawDataType == DataType.DS_STRING || rawDataType == DataType.DS_BYTESTR) {
-            List<String> list = new ArrayList<String>();
-            for (long iidExtComp : iidExtComps) {
-                list.addAll(readStringValues(atfxCache, iidExtComp));
-            }
-            tsValue.u.stringSeq(list.toArray(new String[0]));
+        if (rawDataType == DataType.DS_STRING) {
+            tsValue.u.stringSeq(readStringValues(atfxCache, extComps, startPoint, count).toArray(new String[0]));
         } // DS_DATE
         else if (rawDataType == DataType.DS_DATE) {
-            List<String> list = new ArrayList<String>();
-            for (long iidExtComp : iidExtComps) {
-                list.addAll(readStringValues(atfxCache, iidExtComp));
-            }
-            tsValue.u.dateSeq(list.toArray(new String[0]));
+            tsValue.u.dateSeq(readStringValues(atfxCache, extComps, startPoint, count).toArray(new String[0]));
+        } // DS_BYTESTR
+        else if (rawDataType == DataType.DS_BYTESTR) {
+            tsValue.u.bytestrSeq(readBytestrValues(atfxCache, extComps, startPoint, count).toArray(new byte[0][]));
         }
         // DS_NUMBER
         else {
-            List<Number> list = new ArrayList<Number>();
-            for (long iidExtComp : iidExtComps) {
-                list.addAll(readNumberValues(atfxCache, iidExtComp, rawDataType));
-            }
-            // DS_BOOLEAN
-            if (rawDataType == DataType.DS_BOOLEAN) {
-                boolean[] ar = new boolean[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).byteValue() != 0;
-                }
-                tsValue.u.booleanSeq(ar);
-            }
-            // DS_BYTE
-            else if (rawDataType == DataType.DS_BYTE) {
-                byte[] ar = new byte[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).byteValue();
-                }
-                tsValue.u.byteSeq(ar);
-            }
-            // DS_SHORT
-            else if (rawDataType == DataType.DS_SHORT) {
-                short[] ar = new short[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).shortValue();
-                }
-                tsValue.u.shortSeq(ar);
-            }
-            // DS_LONG
-            else if (rawDataType == DataType.DS_LONG) {
-                int[] ar = new int[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).intValue();
-                }
-                tsValue.u.longSeq(ar);
-            }
-            // DS_DOUBLE
-            else if (rawDataType == DataType.DS_DOUBLE) {
-                double[] ar = new double[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).doubleValue();
-                }
-                tsValue.u.doubleSeq(ar);
-            }
-            // DS_LONGLONG
-            else if (rawDataType == DataType.DS_LONGLONG) {
-                T_LONGLONG[] ar = new T_LONGLONG[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = ODSHelper.asODSLongLong(list.get(i).longValue());
-                }
-                tsValue.u.longlongSeq(ar);
-            }
-            // DS_FLOAT
-            else if (rawDataType == DataType.DS_FLOAT) {
-                float[] ar = new float[list.size()];
-                for (int i = 0; i < list.size(); i++) {
-                    ar[i] = list.get(i).floatValue();
-                }
-                tsValue.u.floatSeq(ar);
-            }
-            // DS_COMPLEX
-            else if (rawDataType == DataType.DS_COMPLEX) {
-                int size = list.size() / 2;
-                T_COMPLEX[] ar = new T_COMPLEX[size];
-                for (int i = 0; i < size; i++) {
-                    ar[i] = new T_COMPLEX();
-                    ar[i].r = list.get(i * 2).floatValue();
-                    ar[i].i = list.get(i * 2 + 1).floatValue();
-                }
-                tsValue.u.complexSeq(ar);
+            // complex values are stored as pairs of real and imaginary part
+            int factor = (rawDataType == DataType.DS_COMPLEX || rawDataType == DataType.DS_DCOMPLEX) ? 2 : 1;
+
+            // determine the requested range over all external components
+            long length = 0;
+            for (ExtCompDescriptor extComp : extComps) {
+                length += extComp.getComponentLength();
             }
-            // DS_DCOMPLEX
-            else if (rawDataType == DataType.DS_DCOMPLEX) {
-                int size = list.size() / 2;
-                T_DCOMPLEX[] ar = new T_DCOMPLEX[size];
-                for (int i = 0; i < size; i++) {
-                    ar[i] = new T_DCOMPLEX();
-                    ar[i].r = list.get(i * 2).doubleValue();
-                    ar[i].i = list.get(i * 2 + 1).doubleValue();
+            long first = Math.min((long) startPoint * factor, length);
+            long end = Math.min(first + (long) count * factor, length);
+
+            // the values of all external components are decoded into disjoint ranges of one array, the start of
+            // each range is the prefix sum of the lengths of the preceding components
+            Object values = ExtCompDecoder.allocate(rawDataType, (int) (end - first));
+            List<SegmentReader> segments = new ArrayList<SegmentReader>();
+            long componentStart = 0;
+            for (ExtCompDescriptor extComp : extComps) {
+                long componentEnd = componentStart + extComp.getComponentLength();
+                if (componentEnd > first && componentStart < end) {
+                    int from = (int) (Math.max(first, componentStart) - componentStart);
+                    int to = (int) (Math.min(end, componentEnd) - componentStart);
+                    segments.add(new SegmentReader(atfxCache, extComp, from, to - from, values,
+                                                   (int) (componentStart + from - first)));
                 }
-                tsValue.u.dcomplexSeq(ar);
-            }
-            // unsupported
-            else {
-                throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
-                                      "Reading values from external component not yet supported for datatype: "
-                                              + ODSHelper.dataType2String(targetDataType));
+                componentStart = componentEnd;
             }
+            readSegments(atfxCache, segments);
+            ExtCompDecoder.setToUnion(rawDataType, values, tsValue.u);
         }
         return tsValue;
     }
 
-    private List<Number> readNumberValues(AtfxCache atfxCache, long iidExtComp, DataType rawDataType)
+    /**
+     * Reads a range of the values of several local columns from their external components.
+     * <p>
+     * External components sharing the same file and record layout (start offset, block size and values per block),
+     * like the channels of a record of a MDF file, are read in one sequential pass: each chunk of records is read once
+     * and the values of all these components are demultiplexed from it. All other local columns are read one by
+     * one.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param lcs The instance ids of the local columns mapped to their target data type.
+     * @param startPoint The index of the first value to read.
+     * @param count The maximum number of values to read, fewer values are returned if the end of the values is
+     *            reached.
+     * @return The values mapped by the instance ids of the local columns, in the order of the given map.
+     * @throws AoException Error reading values.
+     */
+    public Map<Long, TS_Value> readValues(AtfxCache atfxCache, Map<Long, DataType> lcs, int startPoint, int count)
             throws AoException {
-        long start = System.currentTimeMillis();
-
-        List<Number> list = new ArrayList<Number>();
-        long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
-
-        // get filename
-        Integer attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "filename_url");
-        String filenameUrl = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.stringVal();
-        File fileRoot = new File(atfxCache.getContext().get("FILE_ROOT").value.u.stringVal());
-        File extCompFile = new File(fileRoot, filenameUrl);
-
-        // get value type
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "value_type");
-        int valueType = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.enumVal();
-
-        // read length
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "component_length");
-        int componentLength = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
-
-        // read start offset, may be DT_LONG or DT_LONGLONG
-        int startOffset = 0;
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "start_offset");
-        TS_Value vStartOffset = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp);
-        if (vStartOffset.u.discriminator() == DataType.DT_LONG) {
-            startOffset = vStartOffset.u.longVal();
-        } else if (vStartOffset.u.discriminator() == DataType.DT_LONGLONG) {
-            startOffset = (int) ODSHelper.asJLong(vStartOffset.u.longlongVal());
+        // group the local columns by file and record layout
+        Map<Long, TS_Value> result = new LinkedHashMap<Long, TS_Value>();
+        Map<String, List<BatchColumn>> groups = new LinkedHashMap<String, List<BatchColumn>>();
+        for (Map.Entry<Long, DataType> entry : lcs.entrySet()) {
+            long iidLc = entry.getKey();
+            result.put(iidLc, null);
+            long[] iidExtComps = atfxCache.getLocalColumnDescriptor(iidLc).getExtCompIids();
+            DataType rawDataType = getRawDataType(atfxCache, iidLc, entry.getValue());
+            if (iidExtComps.length != 1 || rawDataType == DataType.DS_STRING || rawDataType == DataType.DS_BYTESTR
+                    || rawDataType == DataType.DS_DATE) {
+                continue;
+            }
+            ExtCompDescriptor comp = atfxCache.getExtCompDescriptor(iidExtComps[0]);
+            if (comp.getBlockSize() > CHUNK_SIZE) {
+                continue;
+            }
+            int factor = (rawDataType == DataType.DS_COMPLEX || rawDataType == DataType.DS_DCOMPLEX) ? 2 : 1;
+            int first = (int) Math.min((long) startPoint * factor, comp.getComponentLength());
+            int end = (int) Math.min(first + (long) count * factor, comp.getComponentLength());
+            String key = comp.getFile().getAbsolutePath() + ":" + comp.getStartOffset() + ":" + comp.getBlockSize()
+                    + ":" + comp.getValuesPerBlock() + ":" + comp.getByteOrder() + ":" + first + ":" + end;
+            List<BatchColumn> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<BatchColumn>();
+                groups.put(key, group);
+            }
+            group.add(new BatchColumn(iidLc, rawDataType, comp, first, end));
         }
 
-        // read value offset
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "value_offset");
-        int valueOffset = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
-
-        // read bit count
-        short bitCount = 0;
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "ao_bit_count");
-        if (attrNo != null) {
-            bitCount = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.shortVal();
+        // read the grouped local columns in one pass, values written by this session may still be buffered
+        for (List<BatchColumn> group : groups.values()) {
+            if (group.size() > 1) {
+                atfxCache.flushExtCompSegmentWriter(group.get(0).component.getFile());
+                readInterleavedValues(atfxCache, group);
+                for (BatchColumn column : group) {
+                    TS_Value tsValue = new TS_Value();
+                    tsValue.flag = (short) 15;
+                    tsValue.u = new TS_Union();
+                    ExtCompDecoder.setToUnion(column.rawDataType, column.values, tsValue.u);
+                    result.put(column.iidLc, tsValue);
+                }
+            }
         }
 
-        // read bit offset
-        short bitOffset = 0;
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "ao_bit_offset");
-        if (attrNo != null) {
-            bitOffset = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.shortVal();
+        // read the remaining local columns one by one
+        for (Map.Entry<Long, TS_Value> entry : result.entrySet()) {
+            if (entry.getValue() == null) {
+                entry.setValue(readValues(atfxCache, entry.getKey(), lcs.get(entry.getKey()), startPoint, count));
+            }
         }
+        return result;
+    }
 
-        // block_size, valuesperblock
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "block_size");
-        int blockSize = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
+    /**
+     * Decodes the values of external components sharing the same file and record layout in one sequential pass.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param columns The local columns to read, the values are stored in the columns.
+     * @throws AoException Error reading values.
+     */
+    private void readInterleavedValues(AtfxCache atfxCache, List<BatchColumn> columns) throws AoException {
+        long start = System.currentTimeMillis();
 
-        // valuesperblock
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "valuesperblock");
-        int valuesperblock = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
+        BatchColumn layout = columns.get(0);
+        ExtCompDescriptor comp = layout.component;
+        int valueCount = layout.end - layout.first;
+        for (BatchColumn column : columns) {
+            column.values = ExtCompDecoder.allocate(column.rawDataType, valueCount);
+        }
 
-        // read values
-        RandomAccessFile raf = null;
+        ExtCompInput.ChunkedExtCompInput input = null;
         try {
-            // open source file
-            raf = new BufferedRandomAccessFile(extCompFile, "r", BUFFER_SIZE);
-            raf.seek(startOffset);
-
-            // initialize buffer
-            ByteBuffer sourceMbb = ByteBuffer.allocate(blockSize);
-            ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
-            // dt_short_beo [7], dt_long_beo [8], dt_longlong_beo [9], ieeefloat4_beo [10], ieeefloat8_beo [11],
-            // dt_boolean_flags_beo [15], dt_byte_flags_beo [16], dt_string_flags_beo [17], dt_bytestr_beo [18],
-            // dt_sbyte_flags_beo [20], dt_ushort_beo [22], dt_ulong_beo [24], dt_string_utf8_beo [26]
-            // dt_bit_int_beo [28], dt_bit_uint_beo [30], dt_bit_float_beo [32]
-            if ((valueType == 7) || (valueType == 8) || (valueType == 9) || (valueType == 10) || (valueType == 11)
-                    || (valueType == 15) || (valueType == 16) || (valueType == 17) || (valueType == 18)
-                    || (valueType == 20) || (valueType == 22) || (valueType == 24) || (valueType == 26)
-                    || (valueType == 28) || (valueType == 30) || (valueType == 32)) {
-                byteOrder = ByteOrder.BIG_ENDIAN;
-            }
-            sourceMbb.order(byteOrder);
-
-            // loop over blocks
-            for (int i = 0; i < componentLength; i += valuesperblock) {
-
-                // read whole block into memory
-                byte[] record = new byte[blockSize];
-                raf.read(record, 0, record.length);
-
-                // make buildable with both java8 and java9
-                Buffer.class.cast(sourceMbb).clear();
-                sourceMbb.put(record);
-                sourceMbb.position(valueOffset);
-
-                // sub blocks are consecutive, puhh!
-                for (int j = 0; j < valuesperblock; j++) {
-
-                    // 1=dt_byte
-                    if (valueType == 1) {
-                        // int b = sourceMbb.get() & 0xFF;
-                        list.add(sourceMbb.get());
-                    }
-                    // 19=dt_sbyte
-                    else if (valueType == 19) {
-                        // short b = (short) (sourceMbb.get() & 0xFF);
-                        list.add(sourceMbb.get());
-                    }
-                    // 2=dt_short, 7=dt_short_beo
-                    else if ((valueType == 2) || (valueType == 7)) {
-                        list.add(sourceMbb.getShort());
-                    }
-                    // 3=dt_long, 8=dt_long_beo
-                    else if ((valueType == 3) || (valueType == 8)) {
-                        list.add(sourceMbb.getInt());
-                    }
-                    // 4=dt_longlong, 9=dt_longlong_beo
-                    else if ((valueType == 4) || (valueType == 9)) {
-                        list.add(sourceMbb.getLong());
-                    }
-                    // 5=ieeefloat4, 10=ieeefloat4_beo
-                    else if ((valueType == 5) || (valueType == 10)) {
-                        list.add(sourceMbb.getFloat());
-                    }
-                    // 6=ieeefloat8, 11=ieeefloat8_beo
-                    else if ((valueType == 6) || (valueType == 11)) {
-                        list.add(sourceMbb.getDouble());
-                    }
-                    // 21=dt_ushort, 22=dt_ushort_beo
-                    else if ((valueType == 21) || (valueType == 22)) {
-                        int val = sourceMbb.getShort() & 0xffff;
-                        list.add(val);
-                    }
-                    // 23=dt_ulong, 24=dt_ulong_beo
-                    else if ((valueType == 23) || (valueType == 24)) {
-                        long val = sourceMbb.getInt() & 0xffffffffL;
-                        list.add(val);
-                    }
-                    // 29=dt_bit_uint, 30=dt_bit_uint_beo
-                    else if ((valueType == 29) || (valueType == 30)) {
-
-                        // read that number of bytes from the byte position within the file
-                        int bytesToRead = ((bitCount + bitOffset - 1) / 8) + 1;
-                        byte[] tmp = new byte[bytesToRead];
-                        sourceMbb.get(tmp);
-
-                        // put the byte into an integer to enable bit shifting
-                        if (tmp.length <= 4) {
-                            ByteBuffer bb = ByteBuffer.allocate(4);
-                            bb.order(byteOrder);
-                            bb.put(tmp);
-                            Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                            int intValue = bb.getInt();
-                            intValue = intValue >> bitOffset; // shift right bit offset
-                            int mask = 0xFFFFFFFF >>> (32 - bitCount); // mask out unnecessary bits
-                            intValue = intValue & mask;
-                            list.add(intValue);
-                        }
-                        // put the byte into a long to enable bit shifting
-                        else {
-                            ByteBuffer bb = ByteBuffer.allocate(8);
-                            bb.order(byteOrder);
-                            bb.put(tmp);
-                            Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                            long longValue = bb.getLong();
-                            longValue = longValue >> bitOffset; // shift right bit offset
-                            long mask = 0xFFFFFFFFFFFFFFFFl >>> (64 - bitCount); // mask out unnecessary bits
-                            longValue = longValue & mask;
-                            list.add(longValue);
-                        }
-                    }
-                    // unsupported data type
-                    else {
-                        throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
-                                              "Unsupported 'value_type': " + ODSHelper.valueType2String(valueType));
-                    }
+            int valuesPerBlock = comp.getValuesPerBlock();
+            int firstBlock = layout.first / valuesPerBlock;
+            int firstInBlock = layout.first % valuesPerBlock;
+            int blockCount = (firstInBlock + valueCount + valuesPerBlock - 1) / valuesPerBlock;
+            ExtCompInput source = ExtCompInput.open(atfxCache, comp.getFile(),
+                                                    comp.getStartOffset() + (long) firstBlock * comp.getBlockSize(),
+                                                    comp.getBlockSize(), blockCount, comp.getByteOrder());
+            input = new ExtCompInput.ChunkedExtCompInput(source, CHUNK_SIZE / comp.getBlockSize(),
+                                                         comp.getByteOrder());
+
+            // each chunk of blocks is read once and decoded for all columns
+            int offset = 0;
+            for (int chunkStart = 0; chunkStart < blockCount; chunkStart += input.getBlocksPerChunk()) {
+                int chunkBlocks = Math.min(input.getBlocksPerChunk(), blockCount - chunkStart);
+                input.load(chunkStart, chunkBlocks);
+                int chunkValues = Math.min(valueCount - offset, chunkBlocks * valuesPerBlock - firstInBlock);
+                for (BatchColumn column : columns) {
+                    ExtCompDescriptor c = column.component;
+                    ExtCompDecoder.decode(input, c.getValueType(), c.getValueOffset(), c.getValuesPerBlock(),
+                                          c.getBitCount(), c.getBitOffset(), firstInBlock, chunkValues,
+                                          column.values, offset);
                 }
+                offset += chunkValues;
+                firstInBlock = 0;
             }
 
-            LOG.info("Read " + list.size() + " numeric values from component file '" + filenameUrl + "' in "
-                    + (System.currentTimeMillis() - start) + "ms [value_type=" + ODSHelper.valueType2String(valueType)
-                    + "]");
-            return list;
+            LOG.info("Read " + valueCount + " numeric values of " + columns.size() + " components from file '"
+                    + comp.getFilenameUrl() + "' in " + (System.currentTimeMillis() - start) + "ms");
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, e.getMessage());
         } finally {
-            if (raf != null) {
+            if (input != null) {
                 try {
-                    raf.close();
+                    input.close();
                 } catch (IOException ioe) {
                     LOG.error(ioe.getMessage(), ioe);
                 }
-                raf = null;
+                input = null;
             }
         }
     }
 
-    private Collection<String> readStringValues(AtfxCache atfxCache, long iidExtComp) throws AoException {
-        long start = System.currentTimeMillis();
-        long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
-
-        // get filename
-        int attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "filename_url");
-        String filenameUrl = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.stringVal();
-        File fileRoot = new File(atfxCache.getContext().get("FILE_ROOT").value.u.stringVal());
-        File extCompFile = new File(fileRoot, filenameUrl);
-
-        // get datatype
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "value_type");
-        int valueType = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.enumVal();
-        if (valueType != 12 && valueType != 25) {
-            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
-                                  "Unsupported 'value_type' for data type DT_STRING or DT_DATE: " + valueType);
+    /**
+     * Returns the data type the values of a local column are stored with, taken from the attribute derived from base
+     * attribute 'raw_datatype'.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @param targetDataType The target data type, used if no raw data type is given.
+     * @return The raw data type.
+     * @throws AoException Error reading raw data type.
+     */
+    private DataType getRawDataType(AtfxCache atfxCache, long iidLc, DataType targetDataType) throws AoException {
+        DataType rawDataType = atfxCache.getLocalColumnDescriptor(iidLc).getRawDataType();
+        return (rawDataType == null) ? targetDataType : rawDataType;
+    }
+
+    /**
+     * Decodes the segments of a local column, if there are several segments they are decoded in parallel using the
+     * fork join pool of the session.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param segments The segments.
+     * @throws AoException Error reading values.
+     */
+    private void readSegments(AtfxCache atfxCache, List<SegmentReader> segments) throws AoException {
+        if (segments.size() == 1) {
+            segments.get(0).read();
+            return;
+        }
+        try {
+            for (Future<Void> future : atfxCache.getForkJoinPool().invokeAll(segments)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0,
+                                  "Interrupted while reading external components");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AoException) {
+                throw (AoException) e.getCause();
+            }
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
         }
+    }
 
-        // read length
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "component_length");
-        int componentLength = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
-
-        // read start offset, may be DT_LONG or DT_LONGLONG
-        long startOffset = 0;
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "start_offset");
-        TS_Value vStartOffset = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp);
-        if (vStartOffset.u.discriminator() == DataType.DT_LONG) {
-            startOffset = vStartOffset.u.longVal();
-        } else if (vStartOffset.u.discriminator() == DataType.DT_LONGLONG) {
-            startOffset = ODSHelper.asJLong(vStartOffset.u.longlongVal());
+    /**
+     * Returns the descriptors of the external components of a local column, sorted by their ordinal number.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @return The descriptors.
+     * @throws AoException Error reading external components.
+     */
+    private List<ExtCompDescriptor> getExtCompDescriptors(AtfxCache atfxCache, long iidLc) throws AoException {
+        long[] iidExtComps = atfxCache.getLocalColumnDescriptor(iidLc).getExtCompIids();
+        List<ExtCompDescriptor> extComps = new ArrayList<ExtCompDescriptor>(iidExtComps.length);
+        for (long iidExtComp : iidExtComps) {
+            extComps.add(atfxCache.getExtCompDescriptor(iidExtComp));
         }
+        if (extComps.size() > 1) {
+            Collections.sort(extComps, new ExternalComponentComparator());
+        }
+        return extComps;
+    }
 
-        // value_offset is irrelevant according ODS Standard 3.42, page 3-51
+    /**
+     * Decodes a range of the numeric values of an external component into the target array.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param comp The descriptor of the external component.
+     * @param from The index of the first value within the external component.
+     * @param count The number of values to decode.
+     * @param target The primitive target array.
+     * @param offset The index in the target array to write the first value to.
+     * @throws AoException Error reading values.
+     */
+    private void readNumberValues(AtfxCache atfxCache, ExtCompDescriptor comp, int from, int count, Object target,
+            int offset) throws AoException {
+        long start = System.currentTimeMillis();
 
         // read values
-        RandomAccessFile raf = null;
-        byte[] backingBuffer = new byte[componentLength];
-        List<String> list = new ArrayList<String>();
-        Charset charset = valueType == 12 ? ISO_8859_1 : UTF_8;
+        ExtCompInput input = null;
         try {
-            // open source channel
-            raf = new BufferedRandomAccessFile(extCompFile, "r", BUFFER_SIZE);
-            raf.seek(startOffset);
-            raf.read(backingBuffer, 0, backingBuffer.length);
-
-            int startPosition = 0;
-            for (int position = 0; position < componentLength; position++) {
-                if (backingBuffer[position] == 0) {
-                    list.add(new String(backingBuffer, startPosition, position - startPosition, charset));
-                    startPosition = position + 1;
-                }
-            }
-
-            LOG.info("Read " + list.size() + " string values from component file '" + filenameUrl + "' in "
-                    + (System.currentTimeMillis() - start) + "ms [value_type=" + ODSHelper.valueType2String(valueType)
-                    + "]");
-            return list;
+            // open source file starting at the block containing the first value, the blocks are decoded directly
+            // from the buffer provided by the input
+            int valuesPerBlock = comp.getValuesPerBlock();
+            int firstBlock = from / valuesPerBlock;
+            int firstInBlock = from % valuesPerBlock;
+            int blockCount = (firstInBlock + count + valuesPerBlock - 1) / valuesPerBlock;
+            input = ExtCompInput.open(atfxCache, comp.getFile(),
+                                      comp.getStartOffset() + (long) firstBlock * comp.getBlockSize(),
+                                      comp.getBlockSize(), blockCount, comp.getByteOrder());
+            ExtCompDecoder.decode(input, comp.getValueType(), comp.getValueOffset(), valuesPerBlock,
+                                  comp.getBitCount(), comp.getBitOffset(), firstInBlock, count, target, offset);
+
+            LOG.info("Read " + count + " of " + comp.getComponentLength() + " numeric values from component file '"
+                    + comp.getFilenameUrl() + "' in " + (System.currentTimeMillis() - start) + "ms [value_type="
+                    + ODSHelper.valueType2String(comp.getValueType()) + "]");
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, e.getMessage());
         } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ioe) {
+                    LOG.error(ioe.getMessage(), ioe);
+                }
+                input = null;
+            }
+        }
+    }
+
+    /**
+     * Reads a range of the zero terminated strings of the external components of a local column. The components are
+     * streamed in chunks, only the strings within the range are decoded.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param extComps The external components, sorted by their ordinal number.
+     * @param startPoint The index of the first value to read.
+     * @param count The maximum number of values to read.
+     * @return The strings.
+     * @throws AoException Error reading values.
+     */
+    private List<String> readStringValues(AtfxCache atfxCache, List<ExtCompDescriptor> extComps, int startPoint,
+            int count) throws AoException {
+        long start = System.currentTimeMillis();
+
+        List<String> list = new ArrayList<String>();
+        ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(CHUNK_SIZE, startPoint, count);
+        FileChannelPool pool = atfxCache.getFileChannelPool();
+        for (ExtCompDescriptor extComp : extComps) {
+            if (decoder.isComplete()) {
+                break;
+            }
+            int valueType = extComp.getValueType();
+            if (valueType != 12 && valueType != 25) {
+                throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                      "Unsupported 'value_type' for data type DT_STRING or DT_DATE: " + valueType);
+            }
+            // value_offset is irrelevant according ODS Standard 3.42, page 3-51
+            FileChannel channel = null;
             try {
-                if (raf != null) {
-                    raf.close();
+                channel = pool.acquire(extComp.getFile(), false);
+                decoder.decodeStrings(channel, extComp.getStartOffset(), extComp.getComponentLength(),
+                                      valueType == 12 ? ISO_8859_1 : UTF_8, list);
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+                throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, e.getMessage());
+            } finally {
+                if (channel != null) {
+                    pool.release(channel);
                 }
-                raf = null;
-            } catch (Exception e) {
+            }
+        }
+
+        LOG.info("Read " + list.size() + " string values from " + extComps.size() + " component(s) in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return list;
+    }
+
+    /**
+     * Reads a range of the length prefixed byte streams of the external components of a local column. The components
+     * are streamed in chunks, only the byte streams within the range are read.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param extComps The external components, sorted by their ordinal number.
+     * @param startPoint The index of the first value to read.
+     * @param count The maximum number of values to read.
+     * @return The byte streams.
+     * @throws AoException Error reading values.
+     */
+    private List<byte[]> readBytestrValues(AtfxCache atfxCache, List<ExtCompDescriptor> extComps, int startPoint,
+            int count) throws AoException {
+        long start = System.currentTimeMillis();
+
+        List<byte[]> list = new ArrayList<byte[]>();
+        ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(CHUNK_SIZE, startPoint, count);
+        FileChannelPool pool = atfxCache.getFileChannelPool();
+        for (ExtCompDescriptor extComp : extComps) {
+            if (decoder.isComplete()) {
+                break;
+            }
+            int valueType = extComp.getValueType();
+            if (valueType != 13 && valueType != 18) {
+                throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                      "Unsupported 'value_type' for data type DT_BYTESTR: " + valueType);
+            }
+            FileChannel channel = null;
+            try {
+                channel = pool.acquire(extComp.getFile(), false);
+                decoder.decodeBytestrs(channel, extComp.getStartOffset(), extComp.getComponentLength(), list);
+            } catch (IOException e) {
                 LOG.error(e.getMessage(), e);
+                throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, e.getMessage());
+            } finally {
+                if (channel != null) {
+                    pool.release(channel);
+                }
             }
         }
+
+        LOG.info("Read " + list.size() + " byte streams from " + extComps.size() + " component(s) in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return list;
     }
 
+    /**
+     * Reads all flags of a local column from its external component.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @return The flags, null if no flags are stored in an external component.
+     * @throws AoException Error reading flags.
+     */
     public TS_Value readFlags(AtfxCache atfxCache, long iidLc) throws AoException {
-        long start = System.currentTimeMillis();
+        return readFlags(atfxCache, iidLc, 0, Integer.MAX_VALUE);
+    }
 
-        // read external component instances
-        long aidLc = atfxCache.getAidsByBaseType("aolocalcolumn").iterator().next();
-        ApplicationRelation relExtComps = atfxCache.getApplicationRelationByBaseName(aidLc, "external_component");
-        Collection<Long> iidExtComps = atfxCache.getRelatedInstanceIds(aidLc, iidLc, relExtComps);
+    /**
+     * Reads a range of the flags of a local column from its external component.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The instance id of the local column.
+     * @param startPoint The index of the first flag to read.
+     * @param count The maximum number of flags to read.
+     * @return The flags, null if no flags are stored in an external component.
+     * @throws AoException Error reading flags.
+     */
+    public TS_Value readFlags(AtfxCache atfxCache, long iidLc, int startPoint, int count) throws AoException {
+        long start = System.currentTimeMillis();
 
-        if (iidExtComps.size() < 1) {
-            return null;
-        } else if (iidExtComps.size() != 1) {
-            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
-                                  "The implementation currently only may read exactly one external component file");
+        // read external component instances, flags written by this session may still be buffered
+        List<ExtCompDescriptor> extComps = getExtCompDescriptors(atfxCache, iidLc);
+        for (ExtCompDescriptor extComp : extComps) {
+            atfxCache.flushExtCompSegmentWriter(extComp.getFlagsFile());
         }
-        long iidExtComp = iidExtComps.iterator().next();
-        long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
 
-        // get filename
-        Integer attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "flags_filename_url");
-        if (attrNo == null) {
-            return null;
+        // the flags of the external components are concatenated in the order of their ordinal numbers like the
+        // values, there is one flag per value of a component
+        boolean hasFlags = false;
+        long length = 0;
+        for (ExtCompDescriptor extComp : extComps) {
+            if (extComp.getFlagsFilenameUrl() != null) {
+                if (extComp.getFlagsStartOffset() < 0) {
+                    throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, "Application attribute "
+                            + "derived from base attribute 'flags_start_offset' not found");
+                }
+                hasFlags = true;
+            }
+            length += extComp.getComponentLength();
         }
-        TS_Value v = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp);
-        if ((v == null) || (v.flag != 15) || (v.u.stringVal() == null) || (v.u.stringVal().length() < 1)) {
+        if (!hasFlags) {
             return null;
         }
-        String flagsFilenameUrl = v.u.stringVal();
-        File fileRoot = new File(atfxCache.getContext().get("FILE_ROOT").value.u.stringVal());
-        File flagsFile = new File(fileRoot, flagsFilenameUrl);
-
-        // read start offset, may be DT_LONG or DT_LONGLONG
-        int flagsStartOffset = 0;
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "flags_start_offset");
-        if (attrNo == null) {
-            throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0,
-                                  "Application attribute derived from base attribute 'flags_start_offset' not found");
-        }
-        TS_Value vStartOffset = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp);
-        if (vStartOffset.u.discriminator() == DataType.DT_LONG) {
-            flagsStartOffset = vStartOffset.u.longVal();
-        } else if (vStartOffset.u.discriminator() == DataType.DT_LONGLONG) {
-            flagsStartOffset = (int) ODSHelper.asJLong(vStartOffset.u.longlongVal());
-        }
-
-        // read length
-        attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "component_length");
-        int componentLength = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp).u.longVal();
+        long first = Math.min(startPoint, length);
+        long end = Math.min(first + count, length);
 
-        // read values
         TS_Value tsValue = new TS_Value();
         tsValue.flag = (short) 15;
         tsValue.u = new TS_Union();
-        tsValue.u.shortSeq(new short[componentLength]);
+        tsValue.u.shortSeq(new short[(int) (end - first)]);
+
+        // only the requested range is read, in chunks decoded through a short view of the buffer
+        ByteBuffer bb = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, 2 * (end - first)));
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        long componentStart = 0;
+        for (ExtCompDescriptor extComp : extComps) {
+            long componentEnd = componentStart + extComp.getComponentLength();
+            if (componentEnd > first && componentStart < end) {
+                int from = (int) (Math.max(first, componentStart) - componentStart);
+                int to = (int) (Math.min(end, componentEnd) - componentStart);
+                int offset = (int) (componentStart + from - first);
+                if (extComp.getFlagsFilenameUrl() == null) {
+                    // no flags stored for this component, all values are valid
+                    Arrays.fill(tsValue.u.shortSeq(), offset, offset + to - from, (short) 15);
+                } else {
+                    readFlags(atfxCache, extComp, from, to - from, bb, tsValue.u.shortSeq(), offset);
+                }
+            }
+            componentStart = componentEnd;
+        }
+
+        LOG.info("Read " + (end - first) + " flags from " + extComps.size() + " component(s) in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return tsValue;
+    }
 
-        RandomAccessFile raf = null;
-        byte[] backingBuffer = new byte[2];
+    /**
+     * Reads a range of the flags of one external component.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param extComp The external component.
+     * @param from The index of the first flag within the component.
+     * @param count The number of flags to read.
+     * @param bb The buffer to use for reading, its size has to be a multiple of 2.
+     * @param target The target array.
+     * @param offset The index in the target array of the first flag.
+     * @throws AoException Error reading flags.
+     */
+    private void readFlags(AtfxCache atfxCache, ExtCompDescriptor extComp, int from, int count, ByteBuffer bb,
+            short[] target, int offset) throws AoException {
+        FileChannelPool pool = atfxCache.getFileChannelPool();
+        FileChannel channel = null;
         try {
-            // open source channel
-            raf = new BufferedRandomAccessFile(flagsFile, "r", BUFFER_SIZE);
-            raf.seek(flagsStartOffset);
-
-            for (int i = 0; i < componentLength; i++) {
-                raf.read(backingBuffer, 0, backingBuffer.length);
-                ByteBuffer sourceMbb = ByteBuffer.wrap(backingBuffer);
-                sourceMbb.order(ByteOrder.LITTLE_ENDIAN);
-                tsValue.u.shortSeq()[i] = sourceMbb.getShort();
+            channel = pool.acquire(extComp.getFlagsFile(), false);
+            long position = extComp.getFlagsStartOffset() + 2L * from;
+            int read = 0;
+            while (read < count) {
+                int chunkCount = Math.min(count - read, bb.capacity() / 2);
+                // make buildable with both java8 and java9
+                Buffer.class.cast(bb).clear();
+                Buffer.class.cast(bb).limit(2 * chunkCount);
+                readFully(channel, bb, position);
+                Buffer.class.cast(bb).flip();
+                bb.asShortBuffer().get(target, offset + read, chunkCount);
+                position += 2L * chunkCount;
+                read += chunkCount;
             }
-
-            LOG.info("Read " + componentLength + " flags from component file '" + flagsFilenameUrl + "' in "
-                    + (System.currentTimeMillis() - start) + "ms");
-            return tsValue;
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0, e.getMessage());
         } finally {
-            backingBuffer = null;
-            try {
-                if (raf != null) {
-                    raf.close();
-                }
-                raf = null;
-            } catch (Exception e) {
-                LOG.error(e.getMessage(), e);
+            if (channel != null) {
+                pool.release(channel);
             }
         }
     }
 
+    /**
+     * Reads bytes from a file channel into a buffer, starting at given file position, until the buffer is full.
+     *
+     * @param channel The file channel.
+     * @param bb The buffer.
+     * @param position The file position.
+     * @throws IOException Error reading or end of file reached.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer bb, long position) throws IOException {
+        long pos = position;
+        while (bb.hasRemaining()) {
+            int read = channel.read(bb, pos);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at position " + pos);
+            }
+            pos += read;
+        }
+    }
+
     /**
      * Returns the singleton instance.
      * 
@@ -573,42 +624,79 @@ class ExtCompReader {
     }
 
     /**
-     * Custom comparator so sort multiple instances of 'AoExternalComponent' for the same 'AoLocalColumn' instance by
-     * the value of the base attribute 'ordinal_number'.
+     * Decodes a range of the values of one external component of a local column into its range of the values
+     * array.
      */
-    private static class ExternalComponentComparator implements Comparator<Long> {
+    private class SegmentReader implements Callable<Void> {
 
         private final AtfxCache atfxCache;
-
-        public ExternalComponentComparator(AtfxCache atfxCache) {
+        private final ExtCompDescriptor extComp;
+        private final int from;
+        private final int count;
+        private final Object values;
+        private final int offset;
+
+        public SegmentReader(AtfxCache atfxCache, ExtCompDescriptor extComp, int from, int count, Object values,
+                int offset) {
             this.atfxCache = atfxCache;
+            this.extComp = extComp;
+            this.from = from;
+            this.count = count;
+            this.values = values;
+            this.offset = offset;
+        }
+
+        public void read() throws AoException {
+            readNumberValues(this.atfxCache, this.extComp, this.from, this.count, this.values, this.offset);
         }
 
         /**
          * {@inheritDoc}
          * 
-         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         * @see java.util.concurrent.Callable#call()
          */
-        public int compare(Long iidExtComp1, Long iidExtComp2) {
-            try {
-                Integer ordExtComp1 = 0;
-                Integer ordExtComp2 = 0;
-
-                long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
-                Integer attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "ordinal_number");
-                if (attrNo == null) {
-                    LOG.warn("Application attribute derived from 'ordinal_number' not found!");
-                    return 0;
-                }
+        public Void call() throws AoException {
+            read();
+            return null;
+        }
+
+    }
 
-                ordExtComp1 = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp1).u.longVal();
-                ordExtComp2 = atfxCache.getInstanceValue(aidExtComp, attrNo, iidExtComp2).u.longVal();
+    /**
+     * A local column read together with other local columns sharing the same file and record layout.
+     */
+    private static class BatchColumn {
+
+        private final long iidLc;
+        private final DataType rawDataType;
+        private final ExtCompDescriptor component;
+        private final int first;
+        private final int end;
+        private Object values;
+
+        public BatchColumn(long iidLc, DataType rawDataType, ExtCompDescriptor component, int first, int end) {
+            this.iidLc = iidLc;
+            this.rawDataType = rawDataType;
+            this.component = component;
+            this.first = first;
+            this.end = end;
+        }
 
-                return ordExtComp1.compareTo(ordExtComp2);
-            } catch (AoException e) {
-                LOG.warn(e.reason, e);
-                return 0;
-            }
+    }
+
+    /**
+     * Custom comparator so sort multiple instances of 'AoExternalComponent' for the same 'AoLocalColumn' instance by
+     * the value of the base attribute 'ordinal_number'.
+     */
+    private static class ExternalComponentComparator implements Comparator<ExtCompDescriptor> {
+
+        /**
+         * {@inheritDoc}
+         * 
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(ExtCompDescriptor extComp1, ExtCompDescriptor extComp2) {
+            return Integer.compare(extComp1.getOrdinalNumber(), extComp2.getOrdinalNumber());
         }
     }
 
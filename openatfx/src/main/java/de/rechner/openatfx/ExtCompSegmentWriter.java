@@ -0,0 +1,343 @@
+package de.rechner.openatfx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Appends data to the segment files of one kind of external component files of a session.
+ * <p>
+ * The segment files are named '&lt;atfx file name&gt;_&lt;segment number&gt;&lt;kind suffix&gt;.btf'. The channel
+ * to the current segment stays open until the writer is closed, the size of the segment is tracked in memory and the
+ * appended data is collected in a direct buffer, which is written to the file if full or on {@link #flush()}. Readers
+ * of a file call {@link #flush(File)}, which only waits for the writer if the buffered data belongs to that file.
+ * <p>
+ * The segment files are extended in large extents, so the file system allocates space in few large steps instead of
+ * many small appends. The space after the logical end of a segment is truncated when the segment is closed.
+ *
+ * @author Christian Rechner
+ */
+class ExtCompSegmentWriter implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(ExtCompSegmentWriter.class);
+
+    /** The default size of the write buffer in bytes */
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024; // 1 MB
+
+    /** The default size of the extents the segment files are extended by in bytes */
+    static final long DEFAULT_EXTENT_SIZE = 1024 * 1024 * 16; // 16 MB
+
+    /**
+     * The kinds of external component files, each kind is written to its own sequence of segment files.
+     */
+    enum Kind {
+
+        NUMERIC(""), STRING("_string"), UTF8STRING("_utf8string"), BYTESTREAM("_bytestream"), FLAGS("_flags");
+
+        private final String suffix;
+
+        private Kind(String suffix) {
+            this.suffix = suffix;
+        }
+
+    }
+
+    private final File fileRoot;
+    private final String baseName;
+    private final Kind kind;
+    private final long segmentSize;
+    private final long extentSize;
+    private final ByteBuffer buffer;
+
+    private int segmentNo;
+    private File file;
+    private File normalizedFile;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long size; // logical end including the buffered data
+    private long flushedSize; // logical end of the data written to the file
+    private long allocatedSize; // physical length of the file
+    private volatile File pendingFile; // the normalized file of the buffered data, null if nothing is buffered
+
+    /**
+     * Constructor.
+     *
+     * @param fileRoot The directory of the segment files.
+     * @param baseName The base name of the segment files, the name of the ATFX file without extension.
+     * @param kind The kind of the segment files.
+     * @param segmentSize The maximum size of a segment file in bytes.
+     * @param bufferSize The size of the write buffer in bytes.
+     * @param extentSize The size of the extents the segment files are extended by in bytes.
+     */
+    public ExtCompSegmentWriter(File fileRoot, String baseName, Kind kind, long segmentSize, int bufferSize,
+            long extentSize) {
+        this.fileRoot = fileRoot;
+        this.baseName = baseName;
+        this.kind = kind;
+        this.segmentSize = segmentSize;
+        this.extentSize = Math.max(1, extentSize);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.segmentNo = 0;
+    }
+
+    /**
+     * Returns the maximum size of a segment file.
+     *
+     * @return The segment size in bytes.
+     */
+    public long getSegmentSize() {
+        return this.segmentSize;
+    }
+
+    /**
+     * Returns the file of the current segment. On first access the first segment not exceeding the segment size is
+     * opened.
+     *
+     * @return The file.
+     * @throws IOException Error opening file.
+     */
+    public synchronized File getFile() throws IOException {
+        open();
+        return this.file;
+    }
+
+    /**
+     * Returns the size of the current segment including the buffered data, which is the file position of the next
+     * appended byte.
+     *
+     * @return The position.
+     * @throws IOException Error opening file.
+     */
+    public synchronized long getPosition() throws IOException {
+        open();
+        return this.size;
+    }
+
+    /**
+     * Moves to the next segment if appending given number of bytes would exceed the segment size. Data larger than
+     * the segment size is appended to an empty segment anyway.
+     *
+     * @param length The number of bytes to append.
+     * @throws IOException Error writing or opening file.
+     */
+    public synchronized void nextSegmentIfFull(long length) throws IOException {
+        open();
+        if (this.size > 0 && this.size + length > this.segmentSize) {
+            nextSegment();
+        }
+    }
+
+    /**
+     * Moves to the next segment not exceeding the segment size.
+     *
+     * @throws IOException Error writing or opening file.
+     */
+    public synchronized void nextSegment() throws IOException {
+        open();
+        closeChannel();
+        this.segmentNo++;
+        open();
+    }
+
+    /**
+     * Moves to a new segment numbered after all existing segments of the kind, so the following data is written to
+     * files not existing before.
+     *
+     * @throws IOException Error writing or opening file.
+     */
+    public synchronized void nextFreshSegment() throws IOException {
+        closeChannel();
+        int no = Math.max(this.segmentNo, 0);
+        File[] files = this.fileRoot.listFiles();
+        if (files != null) {
+            for (File existingFile : files) {
+                no = Math.max(no, getSegmentNo(this.baseName, this.kind, existingFile.getName()));
+            }
+        }
+        this.segmentNo = no + 1;
+        open();
+    }
+
+    /**
+     * Appends the remaining bytes of a buffer to the current segment.
+     *
+     * @param src The buffer.
+     * @throws IOException Error writing file.
+     */
+    public synchronized void write(ByteBuffer src) throws IOException {
+        open();
+        while (src.hasRemaining()) {
+            if (!this.buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int length = Math.min(src.remaining(), this.buffer.remaining());
+            ByteBuffer part = src.duplicate();
+            // make buildable with both java8 and java9
+            Buffer.class.cast(part).limit(part.position() + length);
+            this.buffer.put(part);
+            Buffer.class.cast(src).position(src.position() + length);
+            this.size += length;
+            this.pendingFile = this.normalizedFile;
+        }
+    }
+
+    /**
+     * Writes the buffered data to the file.
+     *
+     * @throws IOException Error writing file.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.channel != null) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered data to the file if it belongs to given file, to be called before reading the file. Without
+     * buffered data for the file no lock is taken, so readers of other files do not wait for the writer.
+     *
+     * @param file The file to read.
+     * @return True, if buffered data has been written.
+     * @throws IOException Error writing file.
+     */
+    public boolean flush(File file) throws IOException {
+        File pending = this.pendingFile;
+        if (pending == null || !pending.equals(normalize(file))) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.channel == null || !pending.equals(this.pendingFile)) {
+                return false;
+            }
+            flushBuffer();
+            return true;
+        }
+    }
+
+    /**
+     * Writes the buffered data, truncates the preallocated space and closes the channel. The writer may be used
+     * afterwards, the segment is opened again.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public synchronized void close() throws IOException {
+        closeChannel();
+    }
+
+    private void open() throws IOException {
+        if (this.channel != null) {
+            return;
+        }
+        if (this.segmentNo < 1) {
+            this.segmentNo = 1;
+        }
+        File segmentFile = getSegmentFile(this.segmentNo);
+        while (segmentFile.length() >= this.segmentSize) {
+            this.segmentNo++;
+            segmentFile = getSegmentFile(this.segmentNo);
+        }
+        this.raf = new RandomAccessFile(segmentFile, "rw");
+        this.file = segmentFile;
+        this.normalizedFile = normalize(segmentFile);
+        this.channel = this.raf.getChannel();
+        this.size = this.channel.size();
+        this.flushedSize = this.size;
+        this.allocatedSize = this.size;
+        LOG.debug("Opened external component segment '" + segmentFile + "' [size=" + this.size + "]");
+    }
+
+    /**
+     * Returns the number of a segment file.
+     *
+     * @param baseName The base name of the segment files.
+     * @param kind The kind of the segment files.
+     * @param fileName The file name.
+     * @return The segment number, -1 if the file is not a segment file of given kind.
+     */
+    static int getSegmentNo(String baseName, Kind kind, String fileName) {
+        Matcher m = Pattern.compile(Pattern.quote(baseName + "_") + "(\\d+)" + Pattern.quote(kind.suffix + ".btf"))
+                           .matcher(fileName);
+        if (m.matches() && m.group(1).length() < 10) {
+            return Integer.parseInt(m.group(1));
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the kind of a segment file.
+     *
+     * @param baseName The base name of the segment files.
+     * @param fileName The file name.
+     * @return The kind, null if the file is not a segment file.
+     */
+    static Kind getKind(String baseName, String fileName) {
+        for (Kind kind : Kind.values()) {
+            if (getSegmentNo(baseName, kind, fileName) > 0) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    private File getSegmentFile(int no) {
+        return new File(this.fileRoot, this.baseName + "_" + no + this.kind.suffix + ".btf");
+    }
+
+    private void flushBuffer() throws IOException {
+        // make buildable with both java8 and java9
+        Buffer.class.cast(this.buffer).flip();
+        long end = this.flushedSize + this.buffer.remaining();
+        if (end > this.allocatedSize) {
+            allocate(end);
+        }
+        while (this.buffer.hasRemaining()) {
+            this.flushedSize += this.channel.write(this.buffer, this.flushedSize);
+        }
+        Buffer.class.cast(this.buffer).clear();
+        this.pendingFile = null;
+    }
+
+    /**
+     * Extends the file by at least one extent, not beyond the segment size unless the data requires it.
+     */
+    private void allocate(long end) throws IOException {
+        long length = this.allocatedSize + this.extentSize;
+        if (length > this.segmentSize) {
+            length = this.segmentSize;
+        }
+        length = Math.max(length, end);
+        this.raf.setLength(length);
+        this.allocatedSize = length;
+    }
+
+    private void closeChannel() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            if (this.allocatedSize > this.flushedSize) {
+                this.channel.truncate(this.flushedSize);
+            }
+        } finally {
+            this.raf.close();
+            this.raf = null;
+            this.channel = null;
+        }
+    }
+
+}
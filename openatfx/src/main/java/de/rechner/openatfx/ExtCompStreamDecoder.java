@@ -0,0 +1,206 @@
+package de.rechner.openatfx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Streaming decoder for external components holding values of variable length: zero terminated strings (value types
+ * 'dt_string' and 'dt_string_utf8') and byte streams prefixed by their length as 4 byte big endian integer (value
+ * types 'dt_bytestr' and 'dt_bytestr_beo').
+ * <p>
+ * The components are read in chunks into one buffer of fixed size, so the memory needed besides the decoded values
+ * does not depend on the size of the components. A range of values spanning several components is decoded by passing
+ * all components to the same decoder in the order of their ordinal numbers: the values before the range are skipped
+ * without being decoded, and decoding stops as soon as the range is complete.
+ *
+ * @author Christian Rechner
+ */
+class ExtCompStreamDecoder {
+
+    private final ByteBuffer buffer;
+    private final int startPoint;
+    private long windowStart;
+    private int skip;
+    private int remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param bufferSize The size of the read buffer in bytes.
+     * @param startPoint The index of the first value to decode.
+     * @param count The maximum number of values to decode.
+     */
+    public ExtCompStreamDecoder(int bufferSize, int startPoint, int count) {
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.order(ByteOrder.BIG_ENDIAN);
+        this.startPoint = startPoint;
+        this.skip = startPoint;
+        this.remaining = count;
+    }
+
+    /**
+     * Returns whether all requested values have been decoded.
+     *
+     * @return True, if decoding is complete.
+     */
+    public boolean isComplete() {
+        return this.remaining < 1;
+    }
+
+    /**
+     * Returns the number of values skipped so far, a decoder skipping all values counts the values of components.
+     *
+     * @return The number of skipped values.
+     */
+    public int getSkipped() {
+        return this.startPoint - this.skip;
+    }
+
+    /**
+     * Decodes the zero terminated strings of an external component. Bytes after the last zero byte are ignored.
+     *
+     * @param channel The file channel.
+     * @param startOffset The start offset of the component in the file.
+     * @param length The length of the component in bytes.
+     * @param charset The character set of the strings.
+     * @param target The list to add the decoded strings to.
+     * @throws IOException Error reading file.
+     */
+    public void decodeStrings(FileChannel channel, long startOffset, long length, Charset charset,
+            List<String> target) throws IOException {
+        byte[] array = this.buffer.array();
+        // the beginning of a string continued in the next chunk
+        byte[] pending = new byte[0];
+        int pendingLength = 0;
+
+        long position = 0;
+        while (position < length && !isComplete()) {
+            int chunkLength = readChunk(channel, startOffset, length, position);
+            int valueStart = 0;
+            for (int i = 0; i < chunkLength && !isComplete(); i++) {
+                if (array[i] != 0) {
+                    continue;
+                }
+                if (this.skip > 0) {
+                    this.skip--;
+                } else if (pendingLength > 0) {
+                    pending = append(pending, pendingLength, array, valueStart, i - valueStart);
+                    pendingLength += i - valueStart;
+                    target.add(new String(pending, 0, pendingLength, charset));
+                    this.remaining--;
+                } else {
+                    target.add(new String(array, valueStart, i - valueStart, charset));
+                    this.remaining--;
+                }
+                pendingLength = 0;
+                valueStart = i + 1;
+            }
+            if (this.skip < 1 && valueStart < chunkLength) {
+                pending = append(pending, pendingLength, array, valueStart, chunkLength - valueStart);
+                pendingLength += chunkLength - valueStart;
+            }
+            position += chunkLength;
+        }
+    }
+
+    /**
+     * Decodes the length prefixed byte streams of an external component. The payload of skipped byte streams
+     * exceeding the buffer is not read.
+     *
+     * @param channel The file channel.
+     * @param startOffset The start offset of the component in the file.
+     * @param length The length of the component in bytes.
+     * @param target The list to add the decoded byte streams to.
+     * @throws IOException Error reading file or invalid length information.
+     */
+    public void decodeBytestrs(FileChannel channel, long startOffset, long length, List<byte[]> target)
+            throws IOException {
+        byte[] array = this.buffer.array();
+        // make buildable with both java8 and java9
+        Buffer.class.cast(this.buffer).limit(0);
+
+        long position = 0;
+        while (position < length && !isComplete()) {
+            if (length - position < 4) {
+                throw new IOException("Incomplete length of byte stream at position " + (startOffset + position));
+            }
+            fill(channel, startOffset, length, position, 4);
+            int valueLength = this.buffer.getInt((int) (position - this.windowStart));
+            position += 4;
+            if (valueLength < 0 || valueLength > length - position) {
+                throw new IOException("Invalid length of byte stream at position " + (startOffset + position - 4)
+                        + ": " + valueLength);
+            }
+
+            if (this.skip > 0) {
+                this.skip--;
+            } else {
+                byte[] value = new byte[valueLength];
+                if (valueLength <= this.buffer.capacity()) {
+                    fill(channel, startOffset, length, position, valueLength);
+                    System.arraycopy(array, (int) (position - this.windowStart), value, 0, valueLength);
+                } else {
+                    readFully(channel, ByteBuffer.wrap(value), startOffset + position);
+                }
+                target.add(value);
+                this.remaining--;
+            }
+            position += valueLength;
+        }
+    }
+
+    /**
+     * Reads the next chunk of a component into the buffer.
+     *
+     * @return The number of bytes read.
+     */
+    private int readChunk(FileChannel channel, long startOffset, long length, long position) throws IOException {
+        int chunkLength = (int) Math.min(this.buffer.capacity(), length - position);
+        // make buildable with both java8 and java9
+        Buffer.class.cast(this.buffer).clear();
+        Buffer.class.cast(this.buffer).limit(chunkLength);
+        readFully(channel, this.buffer, startOffset + position);
+        this.windowStart = position;
+        return chunkLength;
+    }
+
+    /**
+     * Makes sure the buffer holds the given range of a component, reads the next chunk starting at the given position
+     * if not.
+     */
+    private void fill(FileChannel channel, long startOffset, long length, long position, int minLength)
+            throws IOException {
+        if (position < this.windowStart || position + minLength > this.windowStart + this.buffer.limit()) {
+            readChunk(channel, startOffset, length, position);
+        }
+    }
+
+    private static byte[] append(byte[] target, int targetLength, byte[] source, int offset, int length) {
+        byte[] result = target;
+        if (targetLength + length > result.length) {
+            result = Arrays.copyOf(result, Math.max(2 * result.length, targetLength + length));
+        }
+        System.arraycopy(source, offset, result, targetLength, length);
+        return result;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer bb, long position) throws IOException {
+        long pos = position;
+        while (bb.hasRemaining()) {
+            int read = channel.read(bb, pos);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at position " + pos);
+            }
+            pos += read;
+        }
+    }
+
+}
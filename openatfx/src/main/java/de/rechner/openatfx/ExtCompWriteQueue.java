@@ -0,0 +1,243 @@
+package de.rechner.openatfx;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.asam.ods.AoException;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.SeverityFlag;
+
+
+/**
+ * Write-behind queue for the values of local columns written to external component files.
+ * <p>
+ * The values are encoded and written by a fixed number of worker threads. If the size of the queued values exceeds
+ * the maximum queue size, submitting blocks until enough values have been written. The results of the writes are
+ * passed to a {@link Collector} by {@link #await(long, Collector)} or {@link #awaitAll(Collector)}, which attaches the
+ * external component instances, so the instance data is never modified by the worker threads. Collecting holds an
+ * exclusive lock, so a result is collected exactly once, and a write stays pending until its result has been
+ * collected: a thread finding no pending write for a local column sees its instances attached.
+ *
+ * @param <T> The type of the result of a write.
+ * @author Christian Rechner
+ */
+class ExtCompWriteQueue<T> {
+
+    private static final Log LOG = LogFactory.getLog(ExtCompWriteQueue.class);
+
+    /** The name of the context variable holding the number of worker threads, 0 writes synchronously */
+    static final String CONTEXT_WRITE_THREADS = "EXT_COMP_WRITE_THREADS";
+
+    /** The name of the context variable holding the maximum size of the queued values in bytes */
+    static final String CONTEXT_QUEUE_SIZE = "EXT_COMP_WRITE_QUEUE_SIZE";
+
+    /** The default number of worker threads, writing behind has to be enabled explicitly */
+    static final int DEFAULT_WRITE_THREADS = 0;
+
+    /** The default maximum size of the queued values in bytes */
+    static final long DEFAULT_QUEUE_SIZE = 1024 * 1024 * 64; // 64 MB
+
+    private static final AtomicInteger THREAD_NO = new AtomicInteger();
+
+    /**
+     * Receives the results of the writes.
+     *
+     * @param <T> The type of the result of a write.
+     */
+    interface Collector<T> {
+
+        /**
+         * Collects the result of a write.
+         *
+         * @param iidLc The instance id of the local column.
+         * @param result The result.
+         * @throws AoException Error collecting result.
+         */
+        void collect(long iidLc, T result) throws AoException;
+
+    }
+
+    private final ExecutorService executor;
+    private final long maxQueueSize;
+    private final Map<Long, Future<T>> pending; // <iidLc,write>
+    private final Object collectLock;
+    private long queueSize;
+
+    /**
+     * Constructor.
+     *
+     * @param threads The number of worker threads.
+     * @param maxQueueSize The maximum size of the queued values in bytes.
+     */
+    public ExtCompWriteQueue(int threads, long maxQueueSize) {
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "openatfx-extcomp-writer-" + THREAD_NO.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.maxQueueSize = maxQueueSize;
+        this.pending = new LinkedHashMap<Long, Future<T>>();
+        this.collectLock = new Object();
+        this.queueSize = 0;
+    }
+
+    /**
+     * Submits the write of the values of a local column. Blocks while the queue is full, a write larger than the
+     * maximum queue size is accepted if the queue is empty.
+     *
+     * @param iidLc The instance id of the local column, there must not be a pending write for it.
+     * @param size The size of the values in bytes.
+     * @param write The write.
+     * @throws AoException Interrupted while waiting.
+     */
+    public void submit(long iidLc, final long size, final Callable<T> write) throws AoException {
+        reserve(size);
+        try {
+            Future<T> future = this.executor.submit(new Callable<T>() {
+
+                public T call() throws Exception {
+                    try {
+                        return write.call();
+                    } finally {
+                        release(size);
+                    }
+                }
+            });
+            synchronized (this.pending) {
+                this.pending.put(iidLc, future);
+            }
+        } catch (RuntimeException e) {
+            release(size);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether writes are pending.
+     *
+     * @return True, if there are writes not yet collected.
+     */
+    public boolean hasPending() {
+        synchronized (this.pending) {
+            return !this.pending.isEmpty();
+        }
+    }
+
+    /**
+     * Waits for the write of the values of a local column and passes its result to the collector. The write is no
+     * longer pending after its result has been collected.
+     *
+     * @param iidLc The instance id of the local column.
+     * @param collector The collector.
+     * @throws AoException Error writing values or collecting result.
+     */
+    public void await(long iidLc, Collector<T> collector) throws AoException {
+        synchronized (this.collectLock) {
+            Future<T> future;
+            synchronized (this.pending) {
+                future = this.pending.get(iidLc);
+            }
+            if (future != null) {
+                collect(iidLc, future, collector);
+            }
+        }
+    }
+
+    /**
+     * Waits for all pending writes and passes their results to the collector in the order of submission. If a write
+     * failed, the results of all other writes are collected before the error is thrown.
+     *
+     * @param collector The collector, null to discard the results.
+     * @throws AoException Error writing values or collecting results.
+     */
+    public void awaitAll(Collector<T> collector) throws AoException {
+        synchronized (this.collectLock) {
+            List<Map.Entry<Long, Future<T>>> entries;
+            synchronized (this.pending) {
+                entries = new ArrayList<Map.Entry<Long, Future<T>>>(this.pending.entrySet());
+            }
+            AoException error = null;
+            for (Map.Entry<Long, Future<T>> entry : entries) {
+                try {
+                    collect(entry.getKey(), entry.getValue(), collector);
+                } catch (AoException e) {
+                    error = (error == null) ? e : error;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    private void collect(long iidLc, Future<T> future, Collector<T> collector) throws AoException {
+        try {
+            T result = get(future);
+            if (collector != null) {
+                collector.collect(iidLc, result);
+            }
+        } finally {
+            synchronized (this.pending) {
+                this.pending.remove(iidLc);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads, pending writes are finished but their results are discarded.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private synchronized void reserve(long size) throws AoException {
+        try {
+            while (this.queueSize > 0 && this.queueSize + size > this.maxQueueSize) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, "Interrupted while waiting "
+                    + "for writing external component files");
+        }
+        this.queueSize += size;
+    }
+
+    private synchronized void release(long size) {
+        this.queueSize -= size;
+        notifyAll();
+    }
+
+    private T get(Future<T> future) throws AoException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, "Interrupted while waiting "
+                    + "for writing external component files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AoException) {
+                throw (AoException) e.getCause();
+            }
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, String.valueOf(e.getCause()));
+        }
+    }
+
+}
@@ -3,17 +3,18 @@ package de.rechner.openatfx;
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.FileChannel;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -21,11 +22,10 @@ import org.asam.ods.AoException;
 import org.asam.ods.ApplicationRelation;
 import org.asam.ods.DataType;
 import org.asam.ods.ErrorCode;
-import org.asam.ods.NameValue;
 import org.asam.ods.SeverityFlag;
+import org.asam.ods.TS_Union;
 import org.asam.ods.TS_Value;
 
-import de.rechner.openatfx.util.FileUtil;
 import de.rechner.openatfx.util.ODSHelper;
 
 
@@ -33,172 +33,328 @@ class ExtCompWriter {
 
     private static final Log LOG = LogFactory.getLog(ExtCompWriter.class);
 
+    /** The name of the context variable selecting the layout of columns written together, 'COLUMN' or 'RECORD' */
+    static final String CONTEXT_WRITE_LAYOUT = "EXT_COMP_WRITE_LAYOUT";
+
+    /** The maximum size of the numeric values encoded at once in bytes */
+    private static final int CHUNK_SIZE = 1024 * 1024; // 1 MB
+
     /** The singleton instance */
     private static volatile ExtCompWriter instance;
 
-    private static File getExtCompFile(AtfxCache atfxCache, int cnt) {
-        Map<String, NameValue> context = atfxCache.getContext();
-        String rootPath = context.get("FILE_ROOT").value.u.stringVal();
-        File atfxPath = new File(context.get("FILENAME").value.u.stringVal());
-        long extCompSize = ODSHelper.asJLong(context.get("EXT_COMP_SEGSIZE").value.u.longlongVal());
-        File binFile = new File(rootPath, FileUtil.stripExtension(atfxPath.getName()) + "_" + cnt + ".btf");
-        if (binFile.length() > extCompSize) {
-            binFile = getExtCompFile(atfxCache, cnt + 1);
+    /**
+     * Writes measurement values to a external component file.
+     * <p>
+     * If the session has an external component write queue, the values are encoded and appended by a worker thread
+     * and the 'AoExternalComponent' instances are created when the write is awaited, see
+     * {@link AtfxCache#awaitExtCompWrite(long)}. The value must not be modified afterwards.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param lcIid The LocalColumn instance id.
+     * @param value The value to write.
+     * @throws AoException Error writing value.
+     */
+    public void writeValues(AtfxCache atfxCache, long iidLc, TS_Value value) throws AoException {
+        DataType dt = value.u.discriminator();
+        if (!isSupported(dt)) {
+            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                  "DataType '" + ODSHelper.dataType2String(dt)
+                                  + "' not yet supported for writing to external component file");
+        }
+
+        removeExtComps(atfxCache, iidLc);
+
+        ExtCompWriteQueue<List<WrittenComponent>> queue = atfxCache.getExtCompWriteQueue();
+        if (queue == null) {
+            attachValues(atfxCache, iidLc, appendValues(atfxCache, value));
+        } else {
+            Object values = ODSHelper.tsValue2jObject(value);
+            long size = (values == null) ? 0 : LocalColumnValuesCache.estimateSize(values);
+            queue.submit(iidLc, size, new AppendTask(atfxCache, value));
         }
-        return binFile;
     }
 
-    private static File getExtCompFileString(AtfxCache atfxCache, int cnt) {
-        Map<String, NameValue> context = atfxCache.getContext();
-        String rootPath = context.get("FILE_ROOT").value.u.stringVal();
-        File atfxPath = new File(context.get("FILENAME").value.u.stringVal());
-        long extCompSize = ODSHelper.asJLong(context.get("EXT_COMP_SEGSIZE").value.u.longlongVal());
-        File binFile = new File(rootPath, FileUtil.stripExtension(atfxPath.getName()) + "_" + cnt + "_string.btf");
-        if (binFile.length() > extCompSize) {
-            binFile = getExtCompFileString(atfxCache, cnt + 1);
+    /**
+     * Writes the values of several local columns as interleaved records to one external component file. Each record
+     * holds one value of every column in the given order, so the columns can be read together in one pass. The
+     * columns must have the same number of values, see {@link #getRecordRows(TS_Value)}.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLcs The LocalColumn instance ids.
+     * @param values The values to write, in the order of the instance ids.
+     * @throws AoException Error writing values.
+     */
+    public void writeRecords(AtfxCache atfxCache, List<Long> iidLcs, List<TS_Value> values) throws AoException {
+        int rows = getRecordRows(values.get(0));
+        int recordSize = 0;
+        for (TS_Value value : values) {
+            int[] layout = getRecordLayout(value.u.discriminator());
+            if (layout == null || getRecordRows(value) != rows) {
+                throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
+                                      "Only numeric values of equal length can be written as records");
+            }
+            recordSize += layout[1] * layout[2];
+        }
+        for (long iidLc : iidLcs) {
+            removeExtComps(atfxCache, iidLc);
+        }
+
+        // encode the records in chunks and append them to the current segment
+        ExtCompSegmentWriter out = atfxCache.getExtCompSegmentWriter(ExtCompSegmentWriter.Kind.NUMERIC);
+        File extCompFile = null;
+        long startOffset = 0;
+        try {
+            synchronized (out) {
+                out.nextSegmentIfFull((long) rows * recordSize);
+                extCompFile = out.getFile();
+                startOffset = out.getPosition();
+                appendRecords(out, values, rows, recordSize);
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
+        }
+
+        // one component per column, addressing its values within the records
+        int valueOffset = 0;
+        for (int i = 0; i < iidLcs.size(); i++) {
+            int[] layout = getRecordLayout(values.get(i).u.discriminator());
+            WrittenComponent component = new WrittenComponent(extCompFile, layout[0], rows * layout[2], startOffset,
+                                                              valueOffset, recordSize, layout[2]);
+            attachValues(atfxCache, iidLcs.get(i), Collections.singletonList(component));
+            valueOffset += layout[1] * layout[2];
         }
-        return binFile;
     }
 
-    private static File getExtCompFileUTF8String(AtfxCache atfxCache, int cnt) {
-        Map<String, NameValue> context = atfxCache.getContext();
-        String rootPath = context.get("FILE_ROOT").value.u.stringVal();
-        File atfxPath = new File(context.get("FILENAME").value.u.stringVal());
-        long extCompSize = ODSHelper.asJLong(context.get("EXT_COMP_SEGSIZE").value.u.longlongVal());
-        File binFile = new File(rootPath, FileUtil.stripExtension(atfxPath.getName()) + "_" + cnt + "_utf8string.btf");
-        if (binFile.length() > extCompSize) {
-            binFile = getExtCompFileUTF8String(atfxCache, cnt + 1);
+    /**
+     * Returns the number of records needed to write given values as interleaved records.
+     * 
+     * @param value The values.
+     * @return The number of values, -1 if the data type cannot be written as records.
+     */
+    public static int getRecordRows(TS_Value value) {
+        DataType dt = value.u.discriminator();
+        if (getRecordLayout(dt) == null) {
+            return -1;
+        } else if (dt == DataType.DS_BYTE) {
+            return value.u.byteSeq().length;
+        } else if (dt == DataType.DS_SHORT) {
+            return value.u.shortSeq().length;
+        } else if (dt == DataType.DS_LONG) {
+            return value.u.longSeq().length;
+        } else if (dt == DataType.DS_LONGLONG) {
+            return value.u.longlongSeq().length;
+        } else if (dt == DataType.DS_FLOAT) {
+            return value.u.floatSeq().length;
+        } else if (dt == DataType.DS_DOUBLE) {
+            return value.u.doubleSeq().length;
+        } else if (dt == DataType.DS_COMPLEX) {
+            return value.u.complexSeq().length;
         }
-        return binFile;
+        return value.u.dcomplexSeq().length;
     }
 
-    private static File getExtCompFileBytestr(AtfxCache atfxCache, boolean getNextUnused) {
-        Map<String, NameValue> context = atfxCache.getContext();
-        String rootPath = context.get("FILE_ROOT").value.u.stringVal();
-        File atfxPath = new File(context.get("FILENAME").value.u.stringVal());
-        String pattern = FileUtil.stripExtension(atfxPath.getName()) + "_%d_bytestream.btf";
-        int nextUnusedNo = 1;
-        while (true) {
-           if (Files.exists(Paths.get(rootPath, String.format(pattern, nextUnusedNo)))) {
-               nextUnusedNo++;
-           } else {
-               break;
-           }
-        }
-        
-        File binFile = new File(rootPath, String.format(pattern, (getNextUnused ? nextUnusedNo :  Math.max(1, nextUnusedNo - 1))));
-        
-        return binFile;
+    /**
+     * Returns the layout of a value within a record.
+     * 
+     * @param dt The data type.
+     * @return The value type, the size of a value in bytes and the number of values per record, null if the data
+     *         type cannot be written as records.
+     */
+    private static int[] getRecordLayout(DataType dt) {
+        if (dt == DataType.DS_BYTE) {
+            return new int[] { 1, 1, 1 }; // dt_byte
+        } else if (dt == DataType.DS_SHORT) {
+            return new int[] { 2, 2, 1 }; // dt_short
+        } else if (dt == DataType.DS_LONG) {
+            return new int[] { 3, 4, 1 }; // dt_long
+        } else if (dt == DataType.DS_LONGLONG) {
+            return new int[] { 4, 8, 1 }; // dt_longlong
+        } else if (dt == DataType.DS_FLOAT) {
+            return new int[] { 5, 4, 1 }; // ieeefloat4
+        } else if (dt == DataType.DS_DOUBLE) {
+            return new int[] { 6, 8, 1 }; // ieeefloat8
+        } else if (dt == DataType.DS_COMPLEX) {
+            return new int[] { 5, 4, 2 }; // ieeefloat4, real and imaginary part
+        } else if (dt == DataType.DS_DCOMPLEX) {
+            return new int[] { 6, 8, 2 }; // ieeefloat8, real and imaginary part
+        }
+        return null;
     }
 
-    private static File getExtCompFileFlags(AtfxCache atfxCache, int cnt) {
-        Map<String, NameValue> context = atfxCache.getContext();
-        String rootPath = context.get("FILE_ROOT").value.u.stringVal();
-        File atfxPath = new File(context.get("FILENAME").value.u.stringVal());
-        long extCompSize = ODSHelper.asJLong(context.get("EXT_COMP_SEGSIZE").value.u.longlongVal());
-        File binFile = new File(rootPath, FileUtil.stripExtension(atfxPath.getName()) + "_" + cnt + "_flags.btf");
-        if (binFile.length() > extCompSize) {
-            binFile = getExtCompFileFlags(atfxCache, cnt + 1);
+    private static void putRecordValue(ByteBuffer bb, TS_Value value, int row) {
+        DataType dt = value.u.discriminator();
+        if (dt == DataType.DS_BYTE) {
+            bb.put(value.u.byteSeq()[row]);
+        } else if (dt == DataType.DS_SHORT) {
+            bb.putShort(value.u.shortSeq()[row]);
+        } else if (dt == DataType.DS_LONG) {
+            bb.putInt(value.u.longSeq()[row]);
+        } else if (dt == DataType.DS_LONGLONG) {
+            bb.putLong(ODSHelper.asJLong(value.u.longlongSeq()[row]));
+        } else if (dt == DataType.DS_FLOAT) {
+            bb.putFloat(value.u.floatSeq()[row]);
+        } else if (dt == DataType.DS_DOUBLE) {
+            bb.putDouble(value.u.doubleSeq()[row]);
+        } else if (dt == DataType.DS_COMPLEX) {
+            bb.putFloat(value.u.complexSeq()[row].r);
+            bb.putFloat(value.u.complexSeq()[row].i);
+        } else if (dt == DataType.DS_DCOMPLEX) {
+            bb.putDouble(value.u.dcomplexSeq()[row].r);
+            bb.putDouble(value.u.dcomplexSeq()[row].i);
         }
-        return binFile;
     }
 
     /**
-     * Writes measurement values to a external component file.
+     * Encodes numeric values as interleaved records and appends them to the current segment. The values are encoded
+     * in chunks, so the memory needed does not depend on the number of values. The caller has to hold the lock of the
+     * segment writer.
      * 
-     * @param atfxCache The ATFX cache.
-     * @param lcIid The LocalColumn instance id.
-     * @param value The value to write.
-     * @throws AoException Error writing value.
+     * @param out The segment writer.
+     * @param values The values of the columns.
+     * @param rows The number of records.
+     * @param recordSize The size of a record in bytes.
+     * @throws IOException Error writing file.
      */
-    public void writeValues(AtfxCache atfxCache, long iidLc, TS_Value value) throws AoException {
-        DataType dt = value.u.discriminator();
+    private static void appendRecords(ExtCompSegmentWriter out, List<TS_Value> values, int rows, int recordSize)
+            throws IOException {
+        int rowsPerChunk = Math.max(1, CHUNK_SIZE / recordSize);
+        ByteBuffer bb = ByteBuffer.allocate(Math.min(rows, rowsPerChunk) * recordSize);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        for (int row = 0; row < rows; row += rowsPerChunk) {
+            int chunkRows = Math.min(rowsPerChunk, rows - row);
+            Buffer.class.cast(bb).clear(); // workaround: make buildable with both java8 and java9
+            if (values.size() == 1) {
+                putValues(bb, values.get(0), row, chunkRows);
+            } else {
+                for (int i = row; i < row + chunkRows; i++) {
+                    for (TS_Value value : values) {
+                        putRecordValue(bb, value, i);
+                    }
+                }
+            }
+            Buffer.class.cast(bb).flip(); // workaround: make buildable with both java8 and java9
+            out.write(bb);
+        }
+    }
 
-        // open file, strings have to be in the same file
-        File extCompFile = null;
-        if (dt == DataType.DS_STRING) {
-            extCompFile = getExtCompFileUTF8String(atfxCache, 1);
-        } else if (dt == DataType.DS_DATE) {
-            extCompFile = getExtCompFileString(atfxCache, 1);
-        } else if (dt == DataType.DS_BYTESTR) {
-            extCompFile = getExtCompFileBytestr(atfxCache, false);
+    /**
+     * Puts a range of the values of a single column to a buffer, using bulk copies for the primitive types.
+     */
+    private static void putValues(ByteBuffer bb, TS_Value value, int offset, int count) {
+        DataType dt = value.u.discriminator();
+        int position = bb.position();
+        if (dt == DataType.DS_BYTE) {
+            bb.put(value.u.byteSeq(), offset, count);
+            return;
+        } else if (dt == DataType.DS_SHORT) {
+            bb.asShortBuffer().put(value.u.shortSeq(), offset, count);
+            position += count * 2;
+        } else if (dt == DataType.DS_LONG) {
+            bb.asIntBuffer().put(value.u.longSeq(), offset, count);
+            position += count * 4;
+        } else if (dt == DataType.DS_FLOAT) {
+            bb.asFloatBuffer().put(value.u.floatSeq(), offset, count);
+            position += count * 4;
+        } else if (dt == DataType.DS_DOUBLE) {
+            bb.asDoubleBuffer().put(value.u.doubleSeq(), offset, count);
+            position += count * 8;
         } else {
-            extCompFile = getExtCompFile(atfxCache, 1);
+            for (int i = offset; i < offset + count; i++) {
+                putRecordValue(bb, value, i);
+            }
+            return;
+        }
+        Buffer.class.cast(bb).position(position); // workaround: make buildable with both java8 and java9
+    }
+
+    /**
+     * Removes the 'AoExternalComponent' instances of a local column, because new values are set.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The LocalColumn instance id.
+     * @throws AoException Error removing instances.
+     */
+    private void removeExtComps(AtfxCache atfxCache, long iidLc) throws AoException {
+        // a pending write of previous values has to be attached before its instances can be removed
+        atfxCache.awaitExtCompWrite(iidLc);
+
+        // the cached values of the local column are replaced
+        atfxCache.invalidateLocalColumnValues(iidLc);
+
+        // delete existing 'AoExternalComponent' instances first, because new values have been set
+        long aidLc = atfxCache.getAidsByBaseType("aolocalcolumn").iterator().next();
+        long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
+        ApplicationRelation relLcExtComp = atfxCache.getApplicationRelationByBaseName(aidLc, "external_component");
+        if (relLcExtComp == null) {
+            throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0,
+                                  "No application relation of type 'external_component' found!");
+        }
+        for (long relExtCompIid : atfxCache.getRelatedInstanceIds(aidLc, iidLc, relLcExtComp)) {
+            atfxCache.removeInstance(aidExtComp, relExtCompIid);
+        }
+    }
+
+    /**
+     * Creates the 'AoExternalComponent' instances for values appended to the external component files.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param iidLc The LocalColumn instance id.
+     * @param components The written components in order.
+     * @throws AoException Error creating instances.
+     */
+    public void attachValues(AtfxCache atfxCache, long iidLc, List<WrittenComponent> components) throws AoException {
+        int ordinalNumber = 1;
+        for (WrittenComponent c : components) {
+            createAoExternalComponent(atfxCache, iidLc, c.file, c.valueType, c.length, c.startOffset, c.valueOffset,
+                                      c.blockSize, c.valuesPerBlock, ordinalNumber++);
         }
+    }
 
-        FileOutputStream fos = null;
-        FileChannel channel = null;
+    /**
+     * Encodes values and appends them to the segment files. Only the segment writers of the cache are accessed, so
+     * this may be called by a worker thread.
+     * 
+     * @param atfxCache The ATFX cache.
+     * @param value The value to write.
+     * @return The written components in order.
+     * @throws AoException Error writing value.
+     */
+    private List<WrittenComponent> appendValues(AtfxCache atfxCache, TS_Value value) throws AoException {
+        DataType dt = value.u.discriminator();
         try {
-            // delete existing 'AoExternalComponent' instances first, because new values have been set
-            long aidLc = atfxCache.getAidsByBaseType("aolocalcolumn").iterator().next();
-            long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
-            ApplicationRelation relLcExtComp = atfxCache.getApplicationRelationByBaseName(aidLc, "external_component");
-            if (relLcExtComp == null) {
-                throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0,
-                                      "No application relation of type 'external_component' found!");
-            }
-            for (long relExtCompIid : atfxCache.getRelatedInstanceIds(aidLc, iidLc, relLcExtComp)) {
-                atfxCache.removeInstance(aidExtComp, relExtCompIid);
+            // DS_BYTESTR
+            if (dt == DataType.DS_BYTESTR) {
+                return appendBytestrs(atfxCache.getExtCompSegmentWriter(ExtCompSegmentWriter.Kind.BYTESTREAM),
+                                      value.u.bytestrSeq());
             }
 
-            // open source channel
-            fos = new FileOutputStream(extCompFile, true);
-            channel = fos.getChannel();
-            long startOffset = channel.size();
+            // numeric values are streamed to the current segment
+            int[] layout = getRecordLayout(dt);
+            if (layout != null) {
+                int rows = getRecordRows(value);
+                int valueSize = layout[1] * layout[2];
+                ExtCompSegmentWriter out = atfxCache.getExtCompSegmentWriter(ExtCompSegmentWriter.Kind.NUMERIC);
+                synchronized (out) {
+                    out.nextSegmentIfFull((long) rows * valueSize);
+                    WrittenComponent component = new WrittenComponent(out.getFile(), layout[0], rows * layout[2],
+                                                                      out.getPosition(), 0, layout[1], 1);
+                    appendRecords(out, Collections.singletonList(value), rows, valueSize);
+                    return Collections.singletonList(component);
+                }
+            }
 
-            // write values
+            // encode values
             int valueType = 0;
             int length = 0;
             int blockSize = 0;
             int valuesPerBlock = 0;
-            
-            int ordinalNumber = 1;
-
-            // DS_BYTESTR
-            if (dt == DataType.DS_BYTESTR) {
-                valueType = 13; // dt_bytestr
-
-                long extCompSize = ODSHelper.asJLong(atfxCache.getContext()
-                                                     .get("EXT_COMP_SEGSIZE").value.u.longlongVal());
-
-                for (byte[] currentByteStream : value.u.bytestrSeq()) {
-                    int lengthOfByteStream = currentByteStream.length;
-
-                    int dataLength = 4 + lengthOfByteStream;
-                    if (startOffset + length + dataLength > extCompSize) {
-                        // allowed ext comp size exceeded -> write to new ext comp file:
-                        // finish old ext comp file:
-                        channel.close();
-                        fos.close();
-
-                        // write external component for old ext comp file:
-                        createAoExternalComponent(atfxCache, iidLc, extCompFile, valueType, length, startOffset,
-                                                  blockSize, valuesPerBlock, ordinalNumber++);
-
-                        // get new ext comp file:
-                        extCompFile = getExtCompFileBytestr(atfxCache, true);
-                        fos = new FileOutputStream(extCompFile, true);
-                        channel = fos.getChannel();
-                        startOffset = channel.size();
-
-                        valuesPerBlock = 0;
-                        length = 0;
-                    }
+            ByteBuffer bb = null;
+            // strings have to be in the same file
+            ExtCompSegmentWriter.Kind kind = ExtCompSegmentWriter.Kind.NUMERIC;
 
-                    ByteBuffer bb = ByteBuffer.allocate(dataLength);
-                    // length information must be big endian for dt_bytestr typespec, see recent clarification in ODS documentation:
-                    bb.order(ByteOrder.BIG_ENDIAN);  
-                    // write 4 byte length block
-                    bb.putInt(lengthOfByteStream);
-
-                    bb.put(currentByteStream, 0, lengthOfByteStream);
-                    Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                    length += channel.write(bb);
-                    valuesPerBlock++;
-                }
-            } 
             // DS_BOOLEAN
-            else if (dt == DataType.DS_BOOLEAN) {
+            if (dt == DataType.DS_BOOLEAN) {
                 valueType = 0; // dt_boolean
                 length = value.u.booleanSeq().length;
                 blockSize = 1 + ((int) value.u.booleanSeq().length - 1) / 8;
@@ -207,152 +363,25 @@ class ExtCompWriter {
                 for (int i = 0; i < value.u.booleanSeq().length; i++) {
                     ODSHelper.setBit(target, i, value.u.booleanSeq()[i]);
                 }
-                channel.write(ByteBuffer.wrap(target));
+                bb = ByteBuffer.wrap(target);
             }
             // DS_STRING
             else if (dt == DataType.DS_STRING) {
+                kind = ExtCompSegmentWriter.Kind.UTF8STRING;
                 valueType = 25; // dt_string_utf8
-                length = 0;
                 valuesPerBlock = value.u.stringSeq().length;
-                for (String str : value.u.stringSeq()) {
-                    byte[] b = str.getBytes(UTF_8);
-                    length += b.length;
-                    ByteBuffer bb = ByteBuffer.wrap(b);
-                    channel.write(bb);
-                    bb = ByteBuffer.wrap(new byte[] { (byte) 0 });
-                    length += 1;
-                    channel.write(bb);
-                }
+                bb = encodeStrings(value.u.stringSeq(), UTF_8);
+                length = bb.remaining();
                 blockSize = length;
             }
-            // DS_BYTE
-            else if (dt == DataType.DS_BYTE) {
-                valueType = 1; // dt_byte
-                blockSize = 1;
-                valuesPerBlock = 1;
-                length = value.u.byteSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                for (int i = 0; i < length; i++) {
-                    bb.put(value.u.byteSeq()[i]);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_SHORT
-            else if (dt == DataType.DS_SHORT) {
-                valueType = 2; // dt_short
-                blockSize = 2;
-                valuesPerBlock = 1;
-                length = value.u.shortSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i++) {
-                    bb.putShort(value.u.shortSeq()[i]);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_LONG
-            else if (dt == DataType.DS_LONG) {
-                valueType = 3; // dt_long
-                blockSize = 4;
-                valuesPerBlock = 1;
-                length = value.u.longSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i++) {
-                    bb.putInt(value.u.longSeq()[i]);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_LONGLONG
-            else if (dt == DataType.DS_LONGLONG) {
-                valueType = 4; // dt_longlong
-                blockSize = 8;
-                valuesPerBlock = 1;
-                length = value.u.longlongSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i++) {
-                    bb.putLong(ODSHelper.asJLong(value.u.longlongSeq()[i]));
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
             // DS_DATE
             else if (dt == DataType.DS_DATE) {
+                kind = ExtCompSegmentWriter.Kind.STRING;
                 valueType = 12; // dt_date (dt_string)
                 blockSize = 0;
-                length = 0;
                 valuesPerBlock = 1;
-                for (String str : value.u.dateSeq()) {
-                    byte[] b = str.getBytes(ISO_8859_1);
-                    length += b.length;
-                    ByteBuffer bb = ByteBuffer.wrap(b);
-                    channel.write(bb);
-                    bb = ByteBuffer.wrap(new byte[] { (byte) 0 });
-                    length += 1;
-                    channel.write(bb);
-                }
-            }
-            // DS_FLOAT
-            else if (dt == DataType.DS_FLOAT) {
-                valueType = 5; // dt_float
-                blockSize = 4;
-                valuesPerBlock = 1;
-                length = value.u.floatSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i++) {
-                    bb.putFloat(value.u.floatSeq()[i]);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_COMPLEX
-            else if (dt == DataType.DS_COMPLEX) {
-                valueType = 5; // dt_float
-                blockSize = 4;
-                valuesPerBlock = 1;
-                length = value.u.complexSeq().length * 2;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < (length / 2); i++) {
-                    bb.putFloat(value.u.complexSeq()[i].r);
-                    bb.putFloat(value.u.complexSeq()[i].i);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_DOUBLE
-            else if (dt == DataType.DS_DOUBLE) {
-                valueType = 6; // dt_double
-                blockSize = 8;
-                valuesPerBlock = 1;
-                length = value.u.doubleSeq().length;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length; i++) {
-                    bb.putDouble(value.u.doubleSeq()[i]);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
-            }
-            // DS_DCOMPLEX
-            else if (dt == DataType.DS_DCOMPLEX) {
-                valueType = 6; // dt_double
-                blockSize = 8;
-                valuesPerBlock = 1;
-                length = value.u.dcomplexSeq().length * 2;
-                ByteBuffer bb = ByteBuffer.allocate(length * blockSize);
-                bb.order(ByteOrder.LITTLE_ENDIAN);
-                for (int i = 0; i < length / 2; i++) {
-                    bb.putDouble(value.u.dcomplexSeq()[i].r);
-                    bb.putDouble(value.u.dcomplexSeq()[i].i);
-                }
-                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-                channel.write(bb);
+                bb = encodeStrings(value.u.dateSeq(), ISO_8859_1);
+                length = bb.remaining();
             }
             // not supported
             else {
@@ -360,26 +389,136 @@ class ExtCompWriter {
                                       "DataType '" + ODSHelper.dataType2String(dt)
                                       + "' not yet supported for writing to external component file");
             }
+            Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
 
-            createAoExternalComponent(atfxCache, iidLc, extCompFile, valueType, length, startOffset, blockSize,
-                                      valuesPerBlock, ordinalNumber);
+            // append the values to the current segment, the values of a column are kept together
+            ExtCompSegmentWriter out = atfxCache.getExtCompSegmentWriter(kind);
+            synchronized (out) {
+                out.nextSegmentIfFull(bb.remaining());
+                WrittenComponent component = new WrittenComponent(out.getFile(), valueType, length,
+                                                                  out.getPosition(), 0, blockSize, valuesPerBlock);
+                out.write(bb);
+                return Collections.singletonList(component);
+            }
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
-        } finally {
-            try {
-                if (channel != null) {
-                    channel.close();
-                }
-                if (fos != null) {
-                    fos.close();
+        }
+    }
+
+    /**
+     * Appends byte streams to the segment files, a byte stream never exceeds the segment size, so the values may be
+     * split into several components.
+     * 
+     * @param out The segment writer.
+     * @param values The byte streams.
+     * @return The written components in order.
+     * @throws IOException Error writing file.
+     */
+    private List<WrittenComponent> appendBytestrs(ExtCompSegmentWriter out, byte[][] values) throws IOException {
+        List<WrittenComponent> components = new ArrayList<WrittenComponent>();
+        synchronized (out) {
+            File extCompFile = out.getFile();
+            long startOffset = out.getPosition();
+            int length = 0;
+            int valuesPerBlock = 0;
+            for (byte[] currentByteStream : values) {
+                int lengthOfByteStream = currentByteStream.length;
+
+                int dataLength = 4 + lengthOfByteStream;
+                if (out.getPosition() > 0 && out.getPosition() + dataLength > out.getSegmentSize()) {
+                    // allowed ext comp size exceeded -> write external component for old ext comp file
+                    if (length > 0) {
+                        components.add(new WrittenComponent(extCompFile, 13, length, startOffset, 0, 0,
+                                                            valuesPerBlock));
+                    }
+
+                    // continue in next segment
+                    out.nextSegment();
+                    extCompFile = out.getFile();
+                    startOffset = out.getPosition();
+
+                    valuesPerBlock = 0;
+                    length = 0;
                 }
-                fos = null;
-                channel = null;
-            } catch (Exception e) {
-                LOG.error(e.getMessage(), e);
+
+                ByteBuffer bb = ByteBuffer.allocate(dataLength);
+                // length information must be big endian for dt_bytestr typespec, see recent clarification in ODS documentation:
+                bb.order(ByteOrder.BIG_ENDIAN);  
+                // write 4 byte length block
+                bb.putInt(lengthOfByteStream);
+
+                bb.put(currentByteStream, 0, lengthOfByteStream);
+                Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
+                out.write(bb);
+                length += dataLength;
+                valuesPerBlock++;
             }
+            components.add(new WrittenComponent(extCompFile, 13, length, startOffset, 0, 0, valuesPerBlock));
         }
+        return components;
+    }
+
+    private static ByteBuffer encodeStrings(String[] strings, Charset charset) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (String str : strings) {
+            byte[] b = str.getBytes(charset);
+            bos.write(b, 0, b.length);
+            bos.write(0);
+        }
+        return ByteBuffer.wrap(bos.toByteArray());
+    }
+
+    private static boolean isSupported(DataType dt) {
+        return dt == DataType.DS_BYTESTR || dt == DataType.DS_BOOLEAN || dt == DataType.DS_STRING
+                || dt == DataType.DS_BYTE || dt == DataType.DS_SHORT || dt == DataType.DS_LONG
+                || dt == DataType.DS_LONGLONG || dt == DataType.DS_DATE || dt == DataType.DS_FLOAT
+                || dt == DataType.DS_COMPLEX || dt == DataType.DS_DOUBLE || dt == DataType.DS_DCOMPLEX;
+    }
+
+    /**
+     * The location of values appended to an external component file.
+     */
+    static class WrittenComponent {
+
+        private final File file;
+        private final int valueType;
+        private final int length;
+        private final long startOffset;
+        private final int valueOffset;
+        private final int blockSize;
+        private final int valuesPerBlock;
+
+        WrittenComponent(File file, int valueType, int length, long startOffset, int valueOffset, int blockSize,
+                int valuesPerBlock) {
+            this.file = file;
+            this.valueType = valueType;
+            this.length = length;
+            this.startOffset = startOffset;
+            this.valueOffset = valueOffset;
+            this.blockSize = blockSize;
+            this.valuesPerBlock = valuesPerBlock;
+        }
+
+    }
+
+    /**
+     * Appends the values of a local column by a worker thread of the write queue.
+     */
+    private class AppendTask implements Callable<List<WrittenComponent>> {
+
+        private final AtfxCache atfxCache;
+        private final TS_Value value;
+
+        public AppendTask(AtfxCache atfxCache, TS_Value value) {
+            this.atfxCache = atfxCache;
+            this.value = value;
+        }
+
+        public List<WrittenComponent> call() throws AoException {
+            return appendValues(this.atfxCache, this.value);
+        }
+
     }
 
     /**
@@ -391,13 +530,15 @@ class ExtCompWriter {
      * @param valueType
      * @param length
      * @param startOffset
+     * @param valueOffset
      * @param blockSize
      * @param valuesPerBlock
      * @param ordinalNumber
      * @throws AoException
      */
     private void createAoExternalComponent(AtfxCache atfxCache, long iidLc, File extCompFile, int valueType, int length,
-            long startOffset, int blockSize, int valuesPerBlock, int ordinalNumber) throws AoException {
+            long startOffset, int valueOffset, int blockSize, int valuesPerBlock, int ordinalNumber)
+            throws AoException {
         // create 'AoExternalComponent' instance
         long aidLc = atfxCache.getAidsByBaseType("aolocalcolumn").iterator().next();
         long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
@@ -477,7 +618,7 @@ class ExtCompWriter {
             throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0,
                                   "No application attribute of type 'value_offset' found for '" + aidExtComp + "'");
         }
-        atfxCache.setInstanceValue(aidExtComp, iidExtComp, attrNo, ODSHelper.createLongNV("", 0).value);
+        atfxCache.setInstanceValue(aidExtComp, iidExtComp, attrNo, ODSHelper.createLongNV("", valueOffset).value);
         // ordinal_number
         attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "ordinal_number");
         if (attrNo == null) {
@@ -488,6 +629,13 @@ class ExtCompWriter {
 
         // relation to LocalColumn
         atfxCache.createInstanceRelations(aidLc, iidLc, relLcExtComp, Arrays.asList(iidExtComp));
+
+        // register the descriptor, so reading the values back does not need to evaluate the attributes again
+        long flagsStartOffset = atfxCache.getAttrNoByBaName(aidExtComp, "flags_start_offset") == null ? -1 : 0;
+        atfxCache.putExtCompDescriptor(new ExtCompDescriptor(iidExtComp, extCompFile.getParentFile(),
+                                                             extCompFile.getName(), valueType, length, startOffset,
+                                                             valueOffset, blockSize, valuesPerBlock, (short) 0,
+                                                             (short) 0, ordinalNumber, null, flagsStartOffset));
     }
 
     /**
@@ -501,24 +649,19 @@ class ExtCompWriter {
     public void writeFlags(AtfxCache atfxCache, long iidExtComp, short[] flags) throws AoException {
         long aidExtComp = atfxCache.getAidsByBaseType("aoexternalcomponent").iterator().next();
 
-        // open file
-        File flagsFile = getExtCompFileFlags(atfxCache, 1);
-        FileOutputStream fos = null;
-        FileChannel channel = null;
+        ExtCompSegmentWriter out = atfxCache.getExtCompSegmentWriter(ExtCompSegmentWriter.Kind.FLAGS);
         try {
-            // open source channel
-            fos = new FileOutputStream(flagsFile, true);
-            channel = fos.getChannel();
-            long startOffset = channel.size();
-
-            // DS_SHORT
-            ByteBuffer bb = ByteBuffer.allocate(flags.length * 2);
-            bb.order(ByteOrder.LITTLE_ENDIAN);
-            for (int i = 0; i < flags.length; i++) {
-                bb.putShort(flags[i]);
+            // the flags are appended to the current segment, DS_SHORT
+            TS_Value value = new TS_Value(new TS_Union(), (short) 15);
+            value.u.shortSeq(flags);
+            File flagsFile;
+            long startOffset;
+            synchronized (out) {
+                out.nextSegmentIfFull(flags.length * 2L);
+                flagsFile = out.getFile();
+                startOffset = out.getPosition();
+                appendRecords(out, Collections.singletonList(value), flags.length, 2);
             }
-            Buffer.class.cast(bb).rewind(); // workaround: make buildable with both java8 and java9
-            channel.write(bb);
 
             // flags_filename_url
             Integer attrNo = atfxCache.getAttrNoByBaName(aidExtComp, "flags_filename_url");
@@ -549,19 +692,6 @@ class ExtCompWriter {
         } catch (IOException e) {
             LOG.error(e.getMessage(), e);
             throw new AoException(ErrorCode.AO_UNKNOWN_ERROR, SeverityFlag.ERROR, 0, e.getMessage());
-        } finally {
-            try {
-                if (channel != null) {
-                    channel.close();
-                }
-                if (fos != null) {
-                    fos.close();
-                }
-                fos = null;
-                channel = null;
-            } catch (Exception e) {
-                LOG.error(e.getMessage(), e);
-            }
         }
     }
 
@@ -0,0 +1,177 @@
+package de.rechner.openatfx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Pool of open file channels to the external component files of a session.
+ * <p>
+ * The channels are keyed by the absolute path of the file. A channel is acquired before and released after each
+ * access. Because all reads and writes are positional, a channel may be shared by several threads. If more than the
+ * maximum number of channels are open, the least recently used channels not in use are closed.
+ *
+ * @author Christian Rechner
+ */
+class FileChannelPool implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(FileChannelPool.class);
+
+    /** The default maximum number of open channels */
+    static final int DEFAULT_MAX_OPEN_CHANNELS = 64;
+
+    private final int maxOpenChannels;
+    private final Map<String, PooledChannel> channels;
+    private final List<PooledChannel> retiredChannels;
+
+    /**
+     * Constructor.
+     *
+     * @param maxOpenChannels The maximum number of open channels not in use.
+     */
+    public FileChannelPool(int maxOpenChannels) {
+        this.maxOpenChannels = maxOpenChannels;
+        this.channels = new LinkedHashMap<String, PooledChannel>(16, 0.75f, true);
+        this.retiredChannels = new ArrayList<PooledChannel>();
+    }
+
+    /**
+     * Acquires the channel of a file. The channel has to be released using {@link #release(FileChannel)} after
+     * usage, it must not be closed by the caller.
+     *
+     * @param file The file.
+     * @param write True, if the channel is used to write, the file will be created if not existing.
+     * @return The channel.
+     * @throws IOException Error opening file.
+     */
+    public synchronized FileChannel acquire(File file, boolean write) throws IOException {
+        String path = file.toPath().toAbsolutePath().normalize().toString();
+        PooledChannel pc = this.channels.get(path);
+
+        // replace channels closed by an interrupt and read only channels used for writing
+        if (pc != null && (!pc.channel.isOpen() || (write && !pc.writable) || (write && !file.exists()))) {
+            this.channels.remove(path);
+            retire(pc);
+            pc = null;
+        }
+
+        if (pc == null) {
+            RandomAccessFile raf = new RandomAccessFile(file, write ? "rw" : "r");
+            pc = new PooledChannel(raf.getChannel(), write);
+            this.channels.put(path, pc);
+            pc.refCount++;
+            evict();
+        } else {
+            pc.refCount++;
+        }
+        return pc.channel;
+    }
+
+    /**
+     * Releases a channel acquired before.
+     *
+     * @param channel The channel.
+     */
+    public synchronized void release(FileChannel channel) {
+        for (PooledChannel pc : this.channels.values()) {
+            if (pc.channel == channel) {
+                pc.refCount--;
+                evict();
+                return;
+            }
+        }
+        Iterator<PooledChannel> iter = this.retiredChannels.iterator();
+        while (iter.hasNext()) {
+            PooledChannel pc = iter.next();
+            if (pc.channel == channel) {
+                pc.refCount--;
+                if (pc.refCount < 1) {
+                    closeQuietly(pc);
+                    iter.remove();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of open channels.
+     *
+     * @return The number of channels.
+     */
+    public synchronized int getOpenChannelCount() {
+        return this.channels.size() + this.retiredChannels.size();
+    }
+
+    /**
+     * Closes all channels. The pool may be used afterwards, channels will be opened again.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public synchronized void close() throws IOException {
+        for (PooledChannel pc : this.channels.values()) {
+            closeQuietly(pc);
+        }
+        for (PooledChannel pc : this.retiredChannels) {
+            closeQuietly(pc);
+        }
+        this.channels.clear();
+        this.retiredChannels.clear();
+    }
+
+    private void retire(PooledChannel pc) {
+        if (pc.refCount < 1) {
+            closeQuietly(pc);
+        } else {
+            this.retiredChannels.add(pc);
+        }
+    }
+
+    private void evict() {
+        Iterator<PooledChannel> iter = this.channels.values().iterator();
+        while (this.channels.size() > this.maxOpenChannels && iter.hasNext()) {
+            PooledChannel pc = iter.next();
+            if (pc.refCount < 1) {
+                closeQuietly(pc);
+                iter.remove();
+            }
+        }
+    }
+
+    private static void closeQuietly(PooledChannel pc) {
+        try {
+            pc.channel.close();
+        } catch (IOException e) {
+            LOG.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * An open channel of the pool.
+     */
+    private static class PooledChannel {
+
+        private final FileChannel channel;
+        private final boolean writable;
+        private int refCount;
+
+        public PooledChannel(FileChannel channel, boolean writable) {
+            this.channel = channel;
+            this.writable = writable;
+            this.refCount = 0;
+        }
+
+    }
+
+}
@@ -443,8 +443,11 @@ class InstanceElementImpl extends InstanceElementPOA {
      * @throws AoException Error fetching related instances.
      */
     private InstanceElement[] collectRelatedInstances(ApplicationRelation applRel, String iePattern) throws AoException {
-        long otherAid = ODSHelper.asJLong(applRel.getElem2().getId());
         Collection<Long> otherIids = this.atfxCache.getRelatedInstanceIds(this.aid, this.iid, applRel);
+        if (otherIids.isEmpty()) {
+            return new InstanceElement[0];
+        }
+        long otherAid = ODSHelper.asJLong(applRel.getElem2().getId());
 
         // pattern 'all'
         if (iePattern.equals("*")) {
@@ -0,0 +1,675 @@
+package de.rechner.openatfx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.asam.ods.ApplicationRelation;
+import org.asam.ods.TS_Value;
+
+import de.rechner.openatfx.util.LongIntHashMap;
+import de.rechner.openatfx.util.LongSortedSet;
+
+
+/**
+ * The instances of an application element with their values, instance attributes and relations.
+ * <p>
+ * Each instance is assigned a dense slot number, the data of the instances is kept in arrays indexed by the slot. The
+ * slots of removed instances are reused. The values are stored column-wise, one {@link AttributeColumn} per
+ * application attribute, the related instance ids in a {@link RelationIndex} per application relation. No objects are
+ * created per instance, except the arrays of its related instance ids.
+ * <p>
+ * Hash indexes by the values of an application attribute or by the related instance of an application relation are
+ * built on first lookup and kept up to date with all modifications.
+ * <p>
+ * All methods are thread safe: reads share a read lock of the application element, modifications take its write lock.
+ * Only copies of the stored sets and maps are returned.
+ *
+ * @author Christian Rechner
+ */
+class InstanceStore {
+
+    private final ReentrantReadWriteLock lock;
+
+    private final LongIntHashMap slots; // <iid,slot>
+    private final LongSortedSet iids;
+
+    private long[] slotIids;
+    private AttributeColumn[] columns; // <attrNo,values>
+    private Map<String, TS_Value>[] instAttrs; // <slot,<attrName,value>>, null if none
+    private final Map<ApplicationRelation, RelationIndex> relations;
+    private final Map<Integer, ValueIndex> valueIndexes; // <attrNo,index>
+    private final Map<Integer, ValueIndex> ciValueIndexes; // <attrNo,index>
+    private final Map<ApplicationRelation, ValueIndex> relationIndexes; // <applRel,index>
+
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeCount;
+
+    /**
+     * Constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public InstanceStore() {
+        this.lock = new ReentrantReadWriteLock();
+        this.slots = new LongIntHashMap();
+        this.iids = new LongSortedSet();
+        this.slotIids = new long[16];
+        this.columns = new AttributeColumn[0];
+        this.instAttrs = new Map[16];
+        this.relations = new HashMap<ApplicationRelation, RelationIndex>();
+        this.valueIndexes = new HashMap<Integer, ValueIndex>();
+        this.ciValueIndexes = new HashMap<Integer, ValueIndex>();
+        this.relationIndexes = new HashMap<ApplicationRelation, ValueIndex>();
+        this.slotCount = 0;
+        this.freeSlots = new int[0];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Returns the read lock, to be held while reading several values consistently, e.g. from a column.
+     *
+     * @return The read lock.
+     */
+    public Lock readLock() {
+        return this.lock.readLock();
+    }
+
+    /**
+     * Adds an instance. An existing instance with the same id is replaced by an empty one.
+     *
+     * @param iid The instance id.
+     */
+    public void add(long iid) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = this.slots.get(iid);
+            if (slot != LongIntHashMap.NO_VALUE) {
+                clearSlot(slot);
+            } else if (this.freeCount > 0) {
+                slot = this.freeSlots[--this.freeCount];
+            } else {
+                slot = this.slotCount++;
+                if (slot == this.slotIids.length) {
+                    grow(slot + (slot >> 1) + 1);
+                }
+            }
+            this.slots.put(iid, slot);
+            this.iids.add(iid);
+            this.slotIids[slot] = iid;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an instance.
+     *
+     * @param iid The instance id.
+     * @return True, if the instance existed.
+     */
+    public boolean remove(long iid) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = this.slots.remove(iid);
+            if (slot == LongIntHashMap.NO_VALUE) {
+                return false;
+            }
+            this.iids.remove(iid);
+            clearSlot(slot);
+            if (this.freeCount == this.freeSlots.length) {
+                this.freeSlots = Arrays.copyOf(this.freeSlots, Math.max(4, this.freeCount * 2));
+            }
+            this.freeSlots[this.freeCount++] = slot;
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void clearSlot(int slot) {
+        unindex(slot);
+        for (AttributeColumn column : this.columns) {
+            if (column != null) {
+                column.clear(slot);
+            }
+        }
+        this.instAttrs[slot] = null;
+        for (RelationIndex index : this.relations.values()) {
+            index.clear(slot);
+        }
+    }
+
+    private void grow(int capacity) {
+        this.slotIids = Arrays.copyOf(this.slotIids, capacity);
+        this.instAttrs = Arrays.copyOf(this.instAttrs, capacity);
+    }
+
+    /**
+     * Returns whether an instance exists.
+     *
+     * @param iid The instance id.
+     * @return True, if the instance exists.
+     */
+    public boolean contains(long iid) {
+        this.lock.readLock().lock();
+        try {
+            return this.slots.containsKey(iid);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of all instances in ascending order.
+     *
+     * @return A copy of the instance ids.
+     */
+    public LongSortedSet getIids() {
+        this.lock.readLock().lock();
+        try {
+            return new LongSortedSet(this.iids);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the slot of an instance.
+     *
+     * @param iid The instance id.
+     * @return The slot.
+     * @throws IllegalArgumentException The instance does not exist.
+     */
+    public int getSlot(long iid) {
+        this.lock.readLock().lock();
+        try {
+            int slot = this.slots.get(iid);
+            if (slot == LongIntHashMap.NO_VALUE) {
+                throw new IllegalArgumentException("Instance not found: " + iid);
+            }
+            return slot;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /***********************************************************************************
+     * values
+     ***********************************************************************************/
+
+    /**
+     * Returns a value of an instance.
+     *
+     * @param iid The instance id.
+     * @param attrNo The application attribute number.
+     * @return The value, null if not set.
+     */
+    public Object getValue(long iid, int attrNo) {
+        this.lock.readLock().lock();
+        try {
+            int slot = getSlot(iid);
+            AttributeColumn column = getColumn(attrNo);
+            return (column == null) ? null : column.get(slot);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets a value of an instance.
+     *
+     * @param iid The instance id.
+     * @param attrNo The application attribute number.
+     * @param value The value, null removes the value.
+     * @return The previous value, null if not set.
+     */
+    public Object setValue(long iid, int attrNo, Object value) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = getSlot(iid);
+            AttributeColumn column = getColumn(attrNo);
+            if (column == null && value != null) {
+                if (attrNo >= this.columns.length) {
+                    this.columns = Arrays.copyOf(this.columns, attrNo + 1);
+                }
+                column = new AttributeColumn();
+                this.columns[attrNo] = column;
+            }
+            if (column == null) {
+                return null;
+            }
+            Object oldValue = column.get(slot);
+            unindexValue(slot, attrNo, oldValue);
+            column.set(slot, value);
+            indexValue(slot, attrNo, value);
+            return oldValue;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the values of an application attribute of several instances at once.
+     *
+     * @param iids The instance ids.
+     * @param attrNo The application attribute number.
+     * @param values The values in the order of the instance ids, null removes a value.
+     * @return The previous values, null if not set.
+     */
+    public Object[] setValues(long[] iids, int attrNo, Object[] values) {
+        this.lock.writeLock().lock();
+        try {
+            Object[] oldValues = new Object[iids.length];
+            for (int i = 0; i < iids.length; i++) {
+                oldValues[i] = setValue(iids[i], attrNo, values[i]);
+            }
+            return oldValues;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the values of an application attribute of all instances. The column must only be accessed while holding
+     * the {@link #readLock()}.
+     *
+     * @param attrNo The application attribute number.
+     * @return The values indexed by the slots of the instances, null if no value has been set yet.
+     */
+    public AttributeColumn getColumn(int attrNo) {
+        return (attrNo >= 0 && attrNo < this.columns.length) ? this.columns[attrNo] : null;
+    }
+
+    /**
+     * Removes the values of an application attribute from all instances.
+     *
+     * @param attrNo The application attribute number.
+     */
+    public void removeValues(int attrNo) {
+        this.lock.writeLock().lock();
+        try {
+            if (attrNo >= 0 && attrNo < this.columns.length) {
+                this.columns[attrNo] = null;
+            }
+            this.valueIndexes.remove(attrNo);
+            this.ciValueIndexes.remove(attrNo);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /***********************************************************************************
+     * instance attributes
+     ***********************************************************************************/
+
+    /**
+     * Returns the names of the instance attributes of an instance.
+     *
+     * @param iid The instance id.
+     * @return A copy of the instance attribute names.
+     */
+    public List<String> listInstanceAttributes(long iid) {
+        this.lock.readLock().lock();
+        try {
+            Map<String, TS_Value> map = this.instAttrs[getSlot(iid)];
+            return (map == null) ? new ArrayList<String>(0) : new ArrayList<String>(map.keySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the value of an instance attribute.
+     *
+     * @param iid The instance id.
+     * @param attrName The instance attribute name.
+     * @return The value, null if not found.
+     */
+    public TS_Value getInstanceAttribute(long iid, String attrName) {
+        this.lock.readLock().lock();
+        try {
+            Map<String, TS_Value> map = this.instAttrs[getSlot(iid)];
+            return (map == null) ? null : map.get(attrName);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the value of an instance attribute.
+     *
+     * @param iid The instance id.
+     * @param attrName The instance attribute name.
+     * @param value The value.
+     */
+    public void setInstanceAttribute(long iid, String attrName, TS_Value value) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = getSlot(iid);
+            if (this.instAttrs[slot] == null) {
+                this.instAttrs[slot] = new LinkedHashMap<String, TS_Value>();
+            }
+            this.instAttrs[slot].put(attrName, value);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the values of an instance attribute of several instances at once.
+     *
+     * @param iids The instance ids.
+     * @param attrName The instance attribute name.
+     * @param values The values in the order of the instance ids.
+     */
+    public void setInstanceAttributes(long[] iids, String attrName, TS_Value[] values) {
+        this.lock.writeLock().lock();
+        try {
+            for (int i = 0; i < iids.length; i++) {
+                setInstanceAttribute(iids[i], attrName, values[i]);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an instance attribute.
+     *
+     * @param iid The instance id.
+     * @param attrName The instance attribute name.
+     */
+    public void removeInstanceAttribute(long iid, String attrName) {
+        this.lock.writeLock().lock();
+        try {
+            Map<String, TS_Value> map = this.instAttrs[getSlot(iid)];
+            if (map != null) {
+                map.remove(attrName);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /***********************************************************************************
+     * relations
+     ***********************************************************************************/
+
+    /**
+     * Returns the ids of the instances related to an instance.
+     *
+     * @param iid The instance id.
+     * @param applRel The application relation.
+     * @return A copy of the related instance ids in ascending order.
+     */
+    public long[] getRelatedIids(long iid, ApplicationRelation applRel) {
+        this.lock.readLock().lock();
+        try {
+            int slot = getSlot(iid);
+            RelationIndex index = this.relations.get(applRel);
+            return (index == null) ? new long[0] : index.get(slot);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds related instances to an instance.
+     *
+     * @param iid The instance id.
+     * @param applRel The application relation.
+     * @param otherIids The ids of the related instances.
+     * @param replace Whether to remove the existing related instances first.
+     */
+    public void addRelatedIids(long iid, ApplicationRelation applRel, Collection<Long> otherIids, boolean replace) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = getSlot(iid);
+            RelationIndex index = this.relations.get(applRel);
+            if (index == null) {
+                index = new RelationIndex(this.slotIids.length);
+                this.relations.put(applRel, index);
+            }
+            unindexRelation(slot, applRel, index);
+            if (replace) {
+                index.clear(slot);
+            }
+            for (long otherIid : otherIids) {
+                index.add(slot, otherIid);
+            }
+            indexRelation(slot, applRel, index);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds one related instance to each of several instances.
+     *
+     * @param iids The instance ids.
+     * @param applRel The application relation.
+     * @param otherIids The ids of the related instances, in the order of the instance ids.
+     * @param replace Whether to remove the existing related instances first.
+     */
+    public void addRelatedIids(long[] iids, ApplicationRelation applRel, long[] otherIids, boolean replace) {
+        this.lock.writeLock().lock();
+        try {
+            RelationIndex index = this.relations.get(applRel);
+            if (index == null) {
+                index = new RelationIndex(this.slotIids.length);
+                this.relations.put(applRel, index);
+            }
+            for (int i = 0; i < iids.length; i++) {
+                int slot = getSlot(iids[i]);
+                unindexRelation(slot, applRel, index);
+                if (replace) {
+                    index.clear(slot);
+                }
+                index.add(slot, otherIids[i]);
+                indexRelation(slot, applRel, index);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes related instances from an instance.
+     *
+     * @param iid The instance id.
+     * @param applRel The application relation.
+     * @param otherIids The ids of the related instances.
+     */
+    public void removeRelatedIids(long iid, ApplicationRelation applRel, Collection<Long> otherIids) {
+        this.lock.writeLock().lock();
+        try {
+            int slot = getSlot(iid);
+            RelationIndex index = this.relations.get(applRel);
+            if (index != null) {
+                unindexRelation(slot, applRel, index);
+                for (long otherIid : otherIids) {
+                    index.remove(slot, otherIid);
+                }
+                indexRelation(slot, applRel, index);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Packs the related instance ids of all application relations into compact arrays, to be called after loading
+     * many instance relations.
+     */
+    public void packRelations() {
+        this.lock.writeLock().lock();
+        try {
+            for (RelationIndex index : this.relations.values()) {
+                index.pack();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the instance relations of an application relation from all instances.
+     *
+     * @param applRel The application relation.
+     */
+    public void removeRelations(ApplicationRelation applRel) {
+        this.lock.writeLock().lock();
+        try {
+            this.relations.remove(applRel);
+            this.relationIndexes.remove(applRel);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /***********************************************************************************
+     * hash indexes
+     ***********************************************************************************/
+
+    /**
+     * Returns the ids of the instances having one of the given values of an application attribute. The hash index of
+     * the application attribute is built on first usage.
+     *
+     * @param attrNo The application attribute number.
+     * @param values The values, <code>T_LONGLONG</code> values may be given as <code>Long</code>.
+     * @param caseInsensitive Whether to ignore the case of the ASCII characters of string values.
+     * @return The instance ids in ascending order.
+     */
+    public long[] findIids(int attrNo, Collection<?> values, boolean caseInsensitive) {
+        Map<Integer, ValueIndex> indexes = caseInsensitive ? this.ciValueIndexes : this.valueIndexes;
+        this.lock.readLock().lock();
+        try {
+            ValueIndex index = indexes.get(attrNo);
+            if (index != null) {
+                return index.get(values);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        this.lock.writeLock().lock();
+        try {
+            ValueIndex index = indexes.get(attrNo);
+            if (index == null) {
+                index = new ValueIndex(caseInsensitive);
+                AttributeColumn column = getColumn(attrNo);
+                for (int i = 0; column != null && i < this.iids.size(); i++) {
+                    long iid = this.iids.get(i);
+                    index.add(column.get(this.slots.get(iid)), iid);
+                }
+                indexes.put(attrNo, index);
+            }
+            return index.get(values);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the instances having exactly one related instance with one of the given ids. The hash index
+     * of the application relation is built on first usage.
+     *
+     * @param applRel The application relation.
+     * @param otherIids The ids of the related instances.
+     * @return The instance ids in ascending order.
+     */
+    public long[] findIidsByRelatedIid(ApplicationRelation applRel, Collection<Long> otherIids) {
+        this.lock.readLock().lock();
+        try {
+            ValueIndex index = this.relationIndexes.get(applRel);
+            if (index != null) {
+                return index.get(otherIids);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        this.lock.writeLock().lock();
+        try {
+            ValueIndex index = this.relationIndexes.get(applRel);
+            if (index == null) {
+                index = new ValueIndex(false);
+                RelationIndex relInstIds = this.relations.get(applRel);
+                for (int i = 0; relInstIds != null && i < this.iids.size(); i++) {
+                    long iid = this.iids.get(i);
+                    int slot = this.slots.get(iid);
+                    if (relInstIds.size(slot) == 1) {
+                        index.add(relInstIds.get(slot)[0], iid);
+                    }
+                }
+                this.relationIndexes.put(applRel, index);
+            }
+            return index.get(otherIids);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void indexValue(int slot, int attrNo, Object value) {
+        ValueIndex index = this.valueIndexes.get(attrNo);
+        if (index != null) {
+            index.add(value, this.slotIids[slot]);
+        }
+        index = this.ciValueIndexes.get(attrNo);
+        if (index != null) {
+            index.add(value, this.slotIids[slot]);
+        }
+    }
+
+    private void unindexValue(int slot, int attrNo, Object value) {
+        ValueIndex index = this.valueIndexes.get(attrNo);
+        if (index != null) {
+            index.remove(value, this.slotIids[slot]);
+        }
+        index = this.ciValueIndexes.get(attrNo);
+        if (index != null) {
+            index.remove(value, this.slotIids[slot]);
+        }
+    }
+
+    private void indexRelation(int slot, ApplicationRelation applRel, RelationIndex relInstIds) {
+        ValueIndex index = this.relationIndexes.get(applRel);
+        if (index != null && relInstIds.size(slot) == 1) {
+            index.add(relInstIds.get(slot)[0], this.slotIids[slot]);
+        }
+    }
+
+    private void unindexRelation(int slot, ApplicationRelation applRel, RelationIndex relInstIds) {
+        ValueIndex index = this.relationIndexes.get(applRel);
+        if (index != null && relInstIds.size(slot) == 1) {
+            index.remove(relInstIds.get(slot)[0], this.slotIids[slot]);
+        }
+    }
+
+    private void unindex(int slot) {
+        for (Map.Entry<Integer, ValueIndex> entry : this.valueIndexes.entrySet()) {
+            AttributeColumn column = getColumn(entry.getKey());
+            if (column != null) {
+                entry.getValue().remove(column.get(slot), this.slotIids[slot]);
+            }
+        }
+        for (Map.Entry<Integer, ValueIndex> entry : this.ciValueIndexes.entrySet()) {
+            AttributeColumn column = getColumn(entry.getKey());
+            if (column != null) {
+                entry.getValue().remove(column.get(slot), this.slotIids[slot]);
+            }
+        }
+        for (Map.Entry<ApplicationRelation, ValueIndex> entry : this.relationIndexes.entrySet()) {
+            RelationIndex relInstIds = this.relations.get(entry.getKey());
+            if (relInstIds != null) {
+                unindexRelation(slot, entry.getKey(), relInstIds);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package de.rechner.openatfx;
+
+import org.asam.ods.DataType;
+
+
+/**
+ * Immutable description of an instance of 'AoLocalColumn', holding everything needed to read its values without
+ * resolving the application model and the related instances again.
+ * <p>
+ * The descriptors are cached by the <code>AtfxCache</code> and dropped if any attribute value or instance relation of
+ * the local column changes, or any attribute value of a measurement quantity.
+ *
+ * @author Christian Rechner
+ */
+final class LocalColumnDescriptor {
+
+    private final long iid;
+    private final DataType dataType;
+    private final int sequenceRepresentation;
+    private final DataType rawDataType;
+    private final double[] generationParameters;
+    private final long[] extCompIids;
+
+    /**
+     * Constructor.
+     *
+     * @param iid The instance id of the local column.
+     * @param dataType The sequence data type of the values, taken from the measurement quantity, null if not
+     *            available.
+     * @param sequenceRepresentation The value of 'sequence_representation', -1 if not set.
+     * @param rawDataType The sequence data type of the value of 'raw_datatype', null if not set.
+     * @param generationParameters The value of 'generation_parameters', null if not set.
+     * @param extCompIids The instance ids of the related external components in ascending order.
+     */
+    public LocalColumnDescriptor(long iid, DataType dataType, int sequenceRepresentation, DataType rawDataType,
+            double[] generationParameters, long[] extCompIids) {
+        this.iid = iid;
+        this.dataType = dataType;
+        this.sequenceRepresentation = sequenceRepresentation;
+        this.rawDataType = rawDataType;
+        this.generationParameters = generationParameters;
+        this.extCompIids = extCompIids;
+    }
+
+    public long getIid() {
+        return this.iid;
+    }
+
+    public DataType getDataType() {
+        return this.dataType;
+    }
+
+    public int getSequenceRepresentation() {
+        return this.sequenceRepresentation;
+    }
+
+    public DataType getRawDataType() {
+        return this.rawDataType;
+    }
+
+    public double[] getGenerationParameters() {
+        return this.generationParameters == null ? null : this.generationParameters.clone();
+    }
+
+    /**
+     * Returns whether generation parameters are set.
+     *
+     * @return True, if set.
+     */
+    public boolean hasGenerationParameters() {
+        return this.generationParameters != null;
+    }
+
+    public long[] getExtCompIids() {
+        return this.extCompIids.clone();
+    }
+
+    /**
+     * Returns whether the values are stored in external component files.
+     *
+     * @return True, if the sequence representation is one of the '*_external' types.
+     */
+    public boolean isExternal() {
+        // external_component=7,raw_linear_external=8,raw_polynomial_external=9,raw_linear_calibrated_external=11,
+        // raw_rational_external=13
+        int seqRep = this.sequenceRepresentation;
+        return seqRep == 7 || seqRep == 8 || seqRep == 9 || seqRep == 11 || seqRep == 13;
+    }
+
+    /**
+     * Converts the value of an enumeration attribute of type 'datatype_enum' to the corresponding sequence data type.
+     *
+     * @param val The enumeration value.
+     * @return The sequence data type, null if the enumeration value has no sequence data type.
+     */
+    public static DataType toSequenceDataType(int val) {
+        if (val == 1) { // DT_STRING
+            return DataType.DS_STRING;
+        } else if (val == 2) { // DT_SHORT
+            return DataType.DS_SHORT;
+        } else if (val == 3) { // DT_FLOAT
+            return DataType.DS_FLOAT;
+        } else if (val == 4) { // DT_BOOLEAN
+            return DataType.DS_BOOLEAN;
+        } else if (val == 5) { // DT_BYTE
+            return DataType.DS_BYTE;
+        } else if (val == 6) { // DT_LONG
+            return DataType.DS_LONG;
+        } else if (val == 7) { // DT_DOUBLE
+            return DataType.DS_DOUBLE;
+        } else if (val == 8) { // DT_LONGLONG
+            return DataType.DS_LONGLONG;
+        } else if (val == 10) { // DT_DATE
+            return DataType.DS_DATE;
+        } else if (val == 11) { // DT_BYTESTR
+            return DataType.DS_BYTESTR;
+        } else if (val == 13) { // DT_COMPLEX
+            return DataType.DS_COMPLEX;
+        } else if (val == 14) { // DT_DCOMPLEX
+            return DataType.DS_DCOMPLEX;
+        } else if (val == 28) { // DT_EXTERNALREFERENCE
+            return DataType.DS_EXTERNALREFERENCE;
+        } else if (val == 30) { // DT_ENUM
+            return DataType.DS_ENUM;
+        }
+        return null;
+    }
+
+}
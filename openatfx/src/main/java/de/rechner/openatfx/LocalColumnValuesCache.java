@@ -0,0 +1,295 @@
+package de.rechner.openatfx;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.asam.ods.AoException;
+import org.asam.ods.DataType;
+import org.asam.ods.TS_Value;
+import org.asam.ods.T_COMPLEX;
+import org.asam.ods.T_DCOMPLEX;
+import org.asam.ods.T_LONGLONG;
+
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Size bounded cache of the decoded values of local columns read from external component files.
+ * <p>
+ * The entries are keyed by the instance id of the local column and the data type the values have been read for. If
+ * the estimated size of all cached values exceeds the configured maximum size, the least recently used entries are
+ * evicted.
+ *
+ * @author Christian Rechner
+ */
+class LocalColumnValuesCache {
+
+    /** The name of the context variable holding the maximum cache size in bytes */
+    static final String CONTEXT_CACHE_SIZE = "EXT_COMP_CACHE_SIZE";
+
+    /** The default maximum cache size in bytes */
+    static final long DEFAULT_CACHE_SIZE = 1024 * 1024 * 64; // 64 MB
+
+    private final Map<Key, Entry> entries;
+    private long size;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor.
+     */
+    public LocalColumnValuesCache() {
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        this.size = 0;
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * Returns the cached values of a local column. The returned value holds a copy of the cached sequence, so the
+     * caller may modify it.
+     *
+     * @param iidLc The instance id of the local column.
+     * @param dt The data type the values have been read for.
+     * @return The values, null if not cached.
+     * @throws AoException Error copying values.
+     */
+    public synchronized TS_Value get(long iidLc, DataType dt) throws AoException {
+        Entry entry = this.entries.get(new Key(iidLc, dt));
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return ODSHelper.jObject2tsValue(entry.dataType, copyArray(entry.values));
+    }
+
+    /**
+     * Puts the values of a local column to the cache. Values larger than the maximum cache size are not cached.
+     *
+     * @param iidLc The instance id of the local column.
+     * @param dt The data type the values have been read for.
+     * @param value The values.
+     * @param maxSize The maximum size of the cache in bytes.
+     * @throws AoException Error copying values.
+     */
+    public synchronized void put(long iidLc, DataType dt, TS_Value value, long maxSize) throws AoException {
+        Object values = ODSHelper.tsValue2jObject(value);
+        if (value.flag != 15 || values == null || !values.getClass().isArray()) {
+            return;
+        }
+        long valuesSize = estimateSize(values);
+        if (valuesSize > maxSize) {
+            return;
+        }
+
+        // the cache keeps its own copy, the given value is returned to the caller
+        Entry old = this.entries.put(new Key(iidLc, dt), new Entry(value.u.discriminator(), copyArray(values),
+                                                                   valuesSize));
+        if (old != null) {
+            this.size -= old.size;
+        }
+        this.size += valuesSize;
+
+        // evict least recently used entries
+        Iterator<Entry> iter = this.entries.values().iterator();
+        while (this.size > maxSize && iter.hasNext()) {
+            this.size -= iter.next().size;
+            iter.remove();
+        }
+    }
+
+    /**
+     * Removes all cached values of a local column.
+     *
+     * @param iidLc The instance id of the local column.
+     */
+    public synchronized void invalidate(long iidLc) {
+        Iterator<Map.Entry<Key, Entry>> iter = this.entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iter.next();
+            if (mapEntry.getKey().iidLc == iidLc) {
+                this.size -= mapEntry.getValue().size;
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Returns whether the cache is empty.
+     *
+     * @return True, if no values are cached.
+     */
+    public synchronized boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * Returns the estimated size of all cached values in bytes.
+     *
+     * @return The size.
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of cache hits.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of cache misses.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Copies an array of values. The elements of byte streams, long longs and complex values are mutable, so they are
+     * copied too, the cached values must not be shared with the callers.
+     *
+     * @param array The array.
+     * @return The copy.
+     */
+    private static Object copyArray(Object array) {
+        if (array instanceof byte[][]) {
+            byte[][] bytestrs = ((byte[][]) array).clone();
+            for (int i = 0; i < bytestrs.length; i++) {
+                bytestrs[i] = (bytestrs[i] == null) ? null : bytestrs[i].clone();
+            }
+            return bytestrs;
+        } else if (array instanceof T_LONGLONG[]) {
+            T_LONGLONG[] longlongs = ((T_LONGLONG[]) array).clone();
+            for (int i = 0; i < longlongs.length; i++) {
+                longlongs[i] = (longlongs[i] == null) ? null : new T_LONGLONG(longlongs[i].high, longlongs[i].low);
+            }
+            return longlongs;
+        } else if (array instanceof T_COMPLEX[]) {
+            T_COMPLEX[] complexes = ((T_COMPLEX[]) array).clone();
+            for (int i = 0; i < complexes.length; i++) {
+                complexes[i] = (complexes[i] == null) ? null : new T_COMPLEX(complexes[i].r, complexes[i].i);
+            }
+            return complexes;
+        } else if (array instanceof T_DCOMPLEX[]) {
+            T_DCOMPLEX[] dcomplexes = ((T_DCOMPLEX[]) array).clone();
+            for (int i = 0; i < dcomplexes.length; i++) {
+                dcomplexes[i] = (dcomplexes[i] == null) ? null : new T_DCOMPLEX(dcomplexes[i].r, dcomplexes[i].i);
+            }
+            return dcomplexes;
+        }
+        int length = Array.getLength(array);
+        Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Estimates the heap size of an array of values in bytes.
+     *
+     * @param array The array.
+     * @return The estimated size.
+     */
+    static long estimateSize(Object array) {
+        int length = Array.getLength(array);
+        Class<?> type = array.getClass().getComponentType();
+        if (type == boolean.class || type == byte.class) {
+            return length;
+        } else if (type == short.class) {
+            return 2L * length;
+        } else if (type == int.class || type == float.class) {
+            return 4L * length;
+        } else if (type == long.class || type == double.class) {
+            return 8L * length;
+        } else if (type == String.class) {
+            long size = 4L * length;
+            for (int i = 0; i < length; i++) {
+                String str = (String) Array.get(array, i);
+                size += (str == null) ? 0 : 40 + 2L * str.length();
+            }
+            return size;
+        } else if (type == byte[].class) {
+            long size = 4L * length;
+            for (int i = 0; i < length; i++) {
+                byte[] bytes = (byte[]) Array.get(array, i);
+                size += (bytes == null) ? 0 : 16 + bytes.length;
+            }
+            return size;
+        }
+        // objects like T_LONGLONG or T_COMPLEX: reference, header and two fields
+        return 32L * length;
+    }
+
+    /**
+     * The key of a cache entry.
+     */
+    private static class Key {
+
+        private final long iidLc;
+        private final int dataType;
+
+        public Key(long iidLc, DataType dt) {
+            this.iidLc = iidLc;
+            this.dataType = dt.value();
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return 31 * (int) (this.iidLc ^ (this.iidLc >>> 32)) + this.dataType;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.iidLc == other.iidLc && this.dataType == other.dataType;
+        }
+
+    }
+
+    /**
+     * A cache entry.
+     */
+    private static class Entry {
+
+        private final DataType dataType;
+        private final Object values;
+        private final long size;
+
+        public Entry(DataType dataType, Object values, long size) {
+            this.dataType = dataType;
+            this.values = values;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,447 @@
+package de.rechner.openatfx;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.asam.ods.T_LONGLONG;
+
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Keeps large numeric sequence values outside of the Java heap, in a temporary file of the session.
+ * <p>
+ * Arrays of type <code>byte[]</code>, <code>short[]</code>, <code>int[]</code>, <code>float[]</code>,
+ * <code>double[]</code> and <code>T_LONGLONG[]</code> are written to the file through a direct buffer in native byte
+ * order. Only a small {@link Value} referencing the position in the file is kept on the heap. The values are read
+ * back with positional reads, either the whole array or a range of it.
+ * <p>
+ * The space of values no longer referenced has to be released by {@link #free(Value)}. Released space is kept in a
+ * list of free extents, adjacent extents are merged and reused by the following writes; free space at the end of the
+ * file is truncated. The file is created on first usage and deleted when the store is closed.
+ * <p>
+ * Reads share a read lock, writing and releasing values take the write lock, so the space of a value is not reused
+ * while it is read. Reading a released value returns null.
+ *
+ * @author Christian Rechner
+ */
+class OffHeapValueStore implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(OffHeapValueStore.class);
+
+    /** The name of the context variable holding the minimum size in bytes of values kept off heap, 0 disables */
+    static final String CONTEXT_THRESHOLD = "OFF_HEAP_VALUES_THRESHOLD";
+
+    /** The default minimum size of values kept off heap */
+    static final long DEFAULT_THRESHOLD = 1024 * 1024 * 16; // 16 MB
+
+    private static final int BUFFER_SIZE = 1024 * 1024; // 1 MB
+
+    /**
+     * The types of the stored arrays.
+     */
+    enum Kind {
+
+        BYTE(1), SHORT(2), INT(4), LONGLONG(8), FLOAT(4), DOUBLE(8);
+
+        private final int size;
+
+        private Kind(int size) {
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * Reference to an array stored in the file.
+     */
+    static final class Value {
+
+        private final Kind kind;
+        private final long position;
+        private final int length;
+        private boolean freed; // guarded by the lock of the store
+
+        private Value(Kind kind, long position, int length) {
+            this.kind = kind;
+            this.position = position;
+            this.length = length;
+            this.freed = false;
+        }
+
+        /**
+         * Returns the number of array elements.
+         *
+         * @return The length.
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+        private long getByteLength() {
+            return (long) this.length * this.kind.size;
+        }
+
+    }
+
+    private final ReentrantReadWriteLock lock;
+    private final TreeMap<Long, Long> freeExtents; // <position,length>
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long size;
+    private long freeSize;
+
+    /**
+     * Constructor.
+     */
+    public OffHeapValueStore() {
+        this.lock = new ReentrantReadWriteLock();
+        this.freeExtents = new TreeMap<Long, Long>();
+        this.size = 0;
+        this.freeSize = 0;
+    }
+
+    /**
+     * Returns the number of bytes an array would occupy in the store.
+     *
+     * @param obj The value.
+     * @return The size in bytes, -1 if the value cannot be stored.
+     */
+    public static long sizeOf(Object obj) {
+        Kind kind = kindOf(obj);
+        return (kind == null) ? -1 : (long) Array.getLength(obj) * kind.size;
+    }
+
+    /**
+     * Writes an array to the file, into released space if a large enough extent is free.
+     *
+     * @param obj The array, must be of a supported type.
+     * @return The reference to the stored array.
+     * @throws IOException Error writing file.
+     */
+    public Value put(Object obj) throws IOException {
+        Kind kind = kindOf(obj);
+        if (kind == null) {
+            throw new IllegalArgumentException("Unsupported value type: " + obj.getClass().getName());
+        }
+        this.lock.writeLock().lock();
+        try {
+            open();
+            int length = Array.getLength(obj);
+            long position = allocate((long) length * kind.size);
+            int valuesPerBuffer = BUFFER_SIZE / kind.size;
+            long filePosition = position;
+            for (int from = 0; from < length; from += valuesPerBuffer) {
+                int count = Math.min(valuesPerBuffer, length - from);
+                // make buildable with both java8 and java9
+                Buffer.class.cast(this.buffer).clear();
+                switch (kind) {
+                    case BYTE:
+                        this.buffer.put((byte[]) obj, from, count);
+                        break;
+                    case SHORT:
+                        this.buffer.asShortBuffer().put((short[]) obj, from, count);
+                        break;
+                    case INT:
+                        this.buffer.asIntBuffer().put((int[]) obj, from, count);
+                        break;
+                    case LONGLONG:
+                        T_LONGLONG[] longlongs = (T_LONGLONG[]) obj;
+                        for (int i = 0; i < count; i++) {
+                            this.buffer.putLong(i * 8, ODSHelper.asJLong(longlongs[from + i]));
+                        }
+                        break;
+                    case FLOAT:
+                        this.buffer.asFloatBuffer().put((float[]) obj, from, count);
+                        break;
+                    default:
+                        this.buffer.asDoubleBuffer().put((double[]) obj, from, count);
+                        break;
+                }
+                Buffer.class.cast(this.buffer).position(0);
+                Buffer.class.cast(this.buffer).limit(count * kind.size);
+                while (this.buffer.hasRemaining()) {
+                    filePosition += this.channel.write(this.buffer, filePosition);
+                }
+            }
+            return new Value(kind, position, length);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Releases the space of a stored array. Further reads of the array return null.
+     *
+     * @param value The reference to the stored array.
+     */
+    public void free(Value value) {
+        this.lock.writeLock().lock();
+        try {
+            if (value.freed || this.channel == null) {
+                return;
+            }
+            value.freed = true;
+            long position = value.position;
+            long length = value.getByteLength();
+            this.freeSize += length;
+
+            // merge with the adjacent free extents
+            Map.Entry<Long, Long> previous = this.freeExtents.floorEntry(position);
+            if (previous != null && previous.getKey() + previous.getValue() == position) {
+                position = previous.getKey();
+                length += previous.getValue();
+            }
+            Long nextLength = this.freeExtents.remove(position + length);
+            if (nextLength != null) {
+                length += nextLength;
+            }
+
+            // free space at the end of the file is truncated
+            if (position + length == this.size) {
+                this.freeExtents.remove(position);
+                this.freeSize -= length;
+                this.size = position;
+                try {
+                    this.channel.truncate(this.size);
+                } catch (IOException e) {
+                    LOG.warn("Unable to truncate off heap value store '" + this.file.getAbsolutePath() + "': "
+                            + e.getMessage());
+                }
+            } else {
+                this.freeExtents.put(position, length);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a stored array.
+     *
+     * @param value The reference to the stored array.
+     * @return The array, null if the value has been released.
+     * @throws IOException Error reading file.
+     */
+    public Object get(Value value) throws IOException {
+        return get(value, 0, value.length);
+    }
+
+    /**
+     * Reads a range of a stored array.
+     *
+     * @param value The reference to the stored array.
+     * @param startPoint The index of the first element to read.
+     * @param count The maximum number of elements to read, fewer elements are returned if the end of the array is
+     *            reached.
+     * @return The array holding the range, null if the value has been released.
+     * @throws IOException Error reading file.
+     */
+    public Object get(Value value, int startPoint, int count) throws IOException {
+        int from = Math.max(0, Math.min(startPoint, value.length));
+        int length = Math.max(0, Math.min(count, value.length - from));
+        Object array = newArray(value.kind, length);
+        ByteBuffer bb = ByteBuffer.allocate((int) Math.min((long) length * value.kind.size, BUFFER_SIZE));
+        bb.order(ByteOrder.nativeOrder());
+        int valuesPerBuffer = BUFFER_SIZE / value.kind.size;
+
+        this.lock.readLock().lock();
+        try {
+            if (value.freed) {
+                return null;
+            }
+            if (this.channel == null) {
+                throw new IOException("Off heap value store is not open");
+            }
+            for (int offset = 0; offset < length; offset += valuesPerBuffer) {
+                int n = Math.min(valuesPerBuffer, length - offset);
+                long position = value.position + (long) (from + offset) * value.kind.size;
+                // make buildable with both java8 and java9
+                Buffer.class.cast(bb).clear();
+                Buffer.class.cast(bb).limit(n * value.kind.size);
+                while (bb.hasRemaining()) {
+                    int read = this.channel.read(bb, position + bb.position());
+                    if (read < 0) {
+                        throw new EOFException("Unexpected end of off heap value store '"
+                                + this.file.getAbsolutePath() + "'");
+                    }
+                }
+                Buffer.class.cast(bb).flip();
+                switch (value.kind) {
+                    case BYTE:
+                        bb.get((byte[]) array, offset, n);
+                        break;
+                    case SHORT:
+                        bb.asShortBuffer().get((short[]) array, offset, n);
+                        break;
+                    case INT:
+                        bb.asIntBuffer().get((int[]) array, offset, n);
+                        break;
+                    case LONGLONG:
+                        T_LONGLONG[] longlongs = (T_LONGLONG[]) array;
+                        for (int i = 0; i < n; i++) {
+                            longlongs[offset + i] = ODSHelper.asODSLongLong(bb.getLong(i * 8));
+                        }
+                        break;
+                    case FLOAT:
+                        bb.asFloatBuffer().get((float[]) array, offset, n);
+                        break;
+                    default:
+                        bb.asDoubleBuffer().get((double[]) array, offset, n);
+                        break;
+                }
+            }
+            return array;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the file.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the size of the released space within the file, available for the following writes.
+     *
+     * @return The size in bytes.
+     */
+    public long getFreeSize() {
+        this.lock.readLock().lock();
+        try {
+            return this.freeSize;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Allocates space in the file, the first free extent large enough is used, else the file is extended.
+     *
+     * @param length The number of bytes.
+     * @return The position of the allocated space.
+     */
+    private long allocate(long length) {
+        if (length > 0) {
+            Iterator<Map.Entry<Long, Long>> iter = this.freeExtents.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<Long, Long> extent = iter.next();
+                if (extent.getValue() >= length) {
+                    long position = extent.getKey();
+                    long remaining = extent.getValue() - length;
+                    iter.remove();
+                    if (remaining > 0) {
+                        this.freeExtents.put(position + length, remaining);
+                    }
+                    this.freeSize -= length;
+                    return position;
+                }
+            }
+        }
+        long position = this.size;
+        this.size += length;
+        return position;
+    }
+
+    private static Kind kindOf(Object obj) {
+        if (obj instanceof byte[]) {
+            return Kind.BYTE;
+        } else if (obj instanceof short[]) {
+            return Kind.SHORT;
+        } else if (obj instanceof int[]) {
+            return Kind.INT;
+        } else if (obj instanceof T_LONGLONG[]) {
+            return Kind.LONGLONG;
+        } else if (obj instanceof float[]) {
+            return Kind.FLOAT;
+        } else if (obj instanceof double[]) {
+            return Kind.DOUBLE;
+        }
+        return null;
+    }
+
+    private static Object newArray(Kind kind, int length) {
+        switch (kind) {
+            case BYTE:
+                return new byte[length];
+            case SHORT:
+                return new short[length];
+            case INT:
+                return new int[length];
+            case LONGLONG:
+                return new T_LONGLONG[length];
+            case FLOAT:
+                return new float[length];
+            default:
+                return new double[length];
+        }
+    }
+
+    private void open() throws IOException {
+        if (this.channel == null) {
+            this.file = File.createTempFile("openatfx_values", ".bin");
+            this.file.deleteOnExit();
+            this.raf = new RandomAccessFile(this.file, "rw");
+            this.channel = this.raf.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+            this.size = 0;
+            this.freeSize = 0;
+            this.freeExtents.clear();
+            LOG.debug("Created off heap value store '" + this.file.getAbsolutePath() + "'");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.raf != null) {
+                try {
+                    this.raf.close();
+                } finally {
+                    if (!this.file.delete()) {
+                        LOG.warn("Unable to delete off heap value store '" + this.file.getAbsolutePath() + "'");
+                    }
+                    this.raf = null;
+                    this.channel = null;
+                    this.buffer = null;
+                    this.file = null;
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package de.rechner.openatfx;
+
+import java.util.Arrays;
+
+
+/**
+ * The related instance ids of one application relation for all instances of an application element.
+ * <p>
+ * The related ids of each instance are kept as a sorted array indexed by the slot of the instance. After loading, the
+ * arrays may be packed into a single array in compressed sparse row layout with an offset per slot. A packed slot
+ * that is modified afterwards gets its own array again, all other slots stay packed.
+ * <p>
+ * The index is not thread safe, access is guarded by the lock of the {@link InstanceStore}.
+ *
+ * @author Christian Rechner
+ */
+class RelationIndex {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int PACKED = -1;
+
+    private long[][] lists; // <slot,relInstIds>, null if empty or packed
+    private int[] sizes; // <slot,noOfRelInstIds>, PACKED if in the packed array
+
+    private long[] packed;
+    private int[] offsets; // <slot,start>, length is number of packed slots + 1
+
+    /**
+     * Constructor.
+     *
+     * @param capacity The initial number of slots.
+     */
+    public RelationIndex(int capacity) {
+        this.lists = new long[capacity][];
+        this.sizes = new int[capacity];
+        this.packed = EMPTY;
+        this.offsets = new int[1];
+    }
+
+    /**
+     * Returns the number of related instances of a slot.
+     *
+     * @param slot The slot.
+     * @return The number of related instances.
+     */
+    public int size(int slot) {
+        if (slot >= this.sizes.length) {
+            return 0;
+        }
+        int size = this.sizes[slot];
+        return (size == PACKED) ? this.offsets[slot + 1] - this.offsets[slot] : size;
+    }
+
+    /**
+     * Returns the related instance ids of a slot.
+     *
+     * @param slot The slot.
+     * @return A copy of the related instance ids in ascending order.
+     */
+    public long[] get(int slot) {
+        if (slot >= this.sizes.length || this.sizes[slot] == 0) {
+            return EMPTY;
+        } else if (this.sizes[slot] == PACKED) {
+            return Arrays.copyOfRange(this.packed, this.offsets[slot], this.offsets[slot + 1]);
+        }
+        return Arrays.copyOf(this.lists[slot], this.sizes[slot]);
+    }
+
+    /**
+     * Adds a related instance id to a slot.
+     *
+     * @param slot The slot.
+     * @param relInstId The related instance id.
+     * @return True, if not contained before.
+     */
+    public boolean add(int slot, long relInstId) {
+        unpack(slot);
+        long[] list = this.lists[slot];
+        int size = this.sizes[slot];
+        int pos = (size > 0 && list[size - 1] < relInstId) ? -size - 1 : Arrays.binarySearch(list, 0, size, relInstId);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        if (size == list.length) {
+            list = Arrays.copyOf(list, size + (size >> 1) + 1);
+            this.lists[slot] = list;
+        }
+        System.arraycopy(list, pos, list, pos + 1, size - pos);
+        list[pos] = relInstId;
+        this.sizes[slot] = size + 1;
+        return true;
+    }
+
+    /**
+     * Removes a related instance id from a slot.
+     *
+     * @param slot The slot.
+     * @param relInstId The related instance id.
+     * @return True, if contained.
+     */
+    public boolean remove(int slot, long relInstId) {
+        if (size(slot) == 0) {
+            return false;
+        }
+        unpack(slot);
+        long[] list = this.lists[slot];
+        int size = this.sizes[slot];
+        int pos = Arrays.binarySearch(list, 0, size, relInstId);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(list, pos + 1, list, pos, size - pos - 1);
+        this.sizes[slot] = size - 1;
+        return true;
+    }
+
+    /**
+     * Removes all related instance ids of a slot.
+     *
+     * @param slot The slot.
+     */
+    public void clear(int slot) {
+        if (slot < this.sizes.length) {
+            this.lists[slot] = null;
+            this.sizes[slot] = 0;
+        }
+    }
+
+    /**
+     * Packs the related instance ids of all slots into a single array.
+     */
+    public void pack() {
+        int slotCount = this.sizes.length;
+        while (slotCount > 0 && size(slotCount - 1) == 0) {
+            slotCount--;
+        }
+        int[] newOffsets = new int[slotCount + 1];
+        for (int slot = 0; slot < slotCount; slot++) {
+            newOffsets[slot + 1] = newOffsets[slot] + size(slot);
+        }
+        long[] newPacked = (newOffsets[slotCount] == 0) ? EMPTY : new long[newOffsets[slotCount]];
+        for (int slot = 0; slot < slotCount; slot++) {
+            int size = this.sizes[slot];
+            if (size == PACKED) {
+                System.arraycopy(this.packed, this.offsets[slot], newPacked, newOffsets[slot],
+                                 newOffsets[slot + 1] - newOffsets[slot]);
+            } else if (size > 0) {
+                System.arraycopy(this.lists[slot], 0, newPacked, newOffsets[slot], size);
+            }
+            if (size != 0) {
+                this.lists[slot] = null;
+                this.sizes[slot] = PACKED;
+            }
+        }
+        this.packed = newPacked;
+        this.offsets = newOffsets;
+    }
+
+    /**
+     * Returns whether all non empty slots are packed.
+     *
+     * @return True, if packed.
+     */
+    public boolean isPacked() {
+        for (int slot = 0; slot < this.sizes.length; slot++) {
+            if (this.sizes[slot] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void unpack(int slot) {
+        if (slot >= this.sizes.length) {
+            int capacity = Math.max(slot + 1, this.sizes.length + (this.sizes.length >> 1) + 1);
+            this.lists = Arrays.copyOf(this.lists, capacity);
+            this.sizes = Arrays.copyOf(this.sizes, capacity);
+        }
+        if (this.sizes[slot] == PACKED) {
+            this.lists[slot] = Arrays.copyOfRange(this.packed, this.offsets[slot], this.offsets[slot + 1]);
+            this.sizes[slot] = this.lists[slot].length;
+        } else if (this.lists[slot] == null) {
+            this.lists[slot] = EMPTY;
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package de.rechner.openatfx;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.asam.ods.T_LONGLONG;
+
+import de.rechner.openatfx.util.LongSortedSet;
+import de.rechner.openatfx.util.ODSHelper;
+
+
+/**
+ * Hash index of the instances of an application element by the value of an application attribute, or by the id of
+ * the related instance of an application relation.
+ * <p>
+ * Values of type <code>T_LONGLONG</code> are indexed as <code>Long</code>. A case insensitive index ignores the case
+ * of the ASCII characters of string values, like the name pattern matching of {@link de.rechner.openatfx.util.PatternUtil}
+ * does. Null values are not indexed.
+ * <p>
+ * The index is not thread safe, access is guarded by the lock of the {@link InstanceStore}.
+ *
+ * @author Christian Rechner
+ */
+class ValueIndex {
+
+    private final boolean caseInsensitive;
+    private final Map<Object, Object> map; // <value,iid or LongSortedSet of iids>
+
+    /**
+     * Constructor.
+     *
+     * @param caseInsensitive Whether to ignore the case of string values.
+     */
+    public ValueIndex(boolean caseInsensitive) {
+        this.caseInsensitive = caseInsensitive;
+        this.map = new HashMap<Object, Object>();
+    }
+
+    /**
+     * Adds an instance with its value.
+     *
+     * @param value The value, may be null.
+     * @param iid The instance id.
+     */
+    public void add(Object value, long iid) {
+        Object key = toKey(value);
+        if (key == null) {
+            return;
+        }
+        Object entry = this.map.get(key);
+        if (entry == null) {
+            this.map.put(key, Long.valueOf(iid));
+        } else if (entry instanceof Long) {
+            if (((Long) entry).longValue() != iid) {
+                LongSortedSet iids = new LongSortedSet();
+                iids.add(((Long) entry).longValue());
+                iids.add(iid);
+                this.map.put(key, iids);
+            }
+        } else {
+            ((LongSortedSet) entry).add(iid);
+        }
+    }
+
+    /**
+     * Removes an instance with its value.
+     *
+     * @param value The value, may be null.
+     * @param iid The instance id.
+     */
+    public void remove(Object value, long iid) {
+        Object key = toKey(value);
+        if (key == null) {
+            return;
+        }
+        Object entry = this.map.get(key);
+        if (entry instanceof Long) {
+            if (((Long) entry).longValue() == iid) {
+                this.map.remove(key);
+            }
+        } else if (entry != null) {
+            LongSortedSet iids = (LongSortedSet) entry;
+            iids.remove(iid);
+            if (iids.size() == 1) {
+                this.map.put(key, Long.valueOf(iids.get(0)));
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the instances having one of the given values.
+     *
+     * @param values The values.
+     * @return The instance ids in ascending order.
+     */
+    public long[] get(Collection<?> values) {
+        long[] iids = new long[0];
+        int size = 0;
+        for (Object value : values) {
+            Object key = toKey(value);
+            Object entry = (key == null) ? null : this.map.get(key);
+            if (entry == null) {
+                continue;
+            }
+            long[] found = (entry instanceof Long) ? new long[] { ((Long) entry).longValue() }
+                    : ((LongSortedSet) entry).toLongArray();
+            if (size + found.length > iids.length) {
+                iids = Arrays.copyOf(iids, Math.max(size + found.length, iids.length * 2));
+            }
+            System.arraycopy(found, 0, iids, size, found.length);
+            size += found.length;
+        }
+
+        // values given more than once
+        Arrays.sort(iids, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || iids[distinct - 1] != iids[i]) {
+                iids[distinct++] = iids[i];
+            }
+        }
+        return Arrays.copyOf(iids, distinct);
+    }
+
+    private Object toKey(Object value) {
+        if (value instanceof T_LONGLONG) {
+            return Long.valueOf(ODSHelper.asJLong((T_LONGLONG) value));
+        } else if (this.caseInsensitive && value instanceof String) {
+            return toLowerCaseAscii((String) value);
+        }
+        return value;
+    }
+
+    private static String toLowerCaseAscii(String str) {
+        char[] chars = null;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (chars == null) {
+                    chars = str.toCharArray();
+                }
+                chars[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return (chars == null) ? str : new String(chars);
+    }
+
+}
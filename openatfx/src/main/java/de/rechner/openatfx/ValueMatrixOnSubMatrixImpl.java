@@ -2,7 +2,9 @@ package de.rechner.openatfx;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -289,6 +291,21 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
      * @see org.asam.ods.ValueMatrixOperations#getValueVector(org.asam.ods.Column, int, int)
      */
     public TS_ValueSeq getValueVector(Column col, int startPoint, int count) throws AoException {
+        return getValueVector(col, startPoint, count, Collections.<Long, TS_Value> emptyMap());
+    }
+
+    /**
+     * Returns the value vector of given column, using the values already read for the local column if available.
+     * 
+     * @param col The column.
+     * @param startPoint The starting point in the column.
+     * @param count The number of points to be retrieved.
+     * @param preloadedValues The value ranges already read, mapped by the instance id of the local column.
+     * @return The values.
+     * @throws AoException Error reading values.
+     */
+    private TS_ValueSeq getValueVector(Column col, int startPoint, int count, Map<Long, TS_Value> preloadedValues)
+            throws AoException {
         int rowCount = getRowCount();
         AtfxCache atfxCache = this.sourceSubMatrix.atfxCache;
         InstanceElement ieLc = getLocalColumnInstanceByName(col.getName());
@@ -326,10 +343,10 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
             }
         }
         if (valueSeq.flag == null && attrNoFlags != null) {
-            TS_Value flags = atfxCache.getInstanceValue(aidLc, attrNoFlags, iidLc);
+            TS_Value flags = atfxCache.getInstanceValue(aidLc, attrNoFlags, iidLc, startPoint, count);
             if (flags.flag == 15) {
                 valueSeq.flag = new short[count];
-                System.arraycopy(flags.u.shortSeq(), startPoint, valueSeq.flag, 0, count);
+                System.arraycopy(flags.u.shortSeq(), 0, valueSeq.flag, 0, count);
             }
         }
         if (valueSeq.flag == null) {
@@ -347,8 +364,8 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
 
         // explicit (=0), external_component (=7)
         if (seqReq == 0 || seqReq == 7) {
-            NameValueUnit values = ieLc.getValueByBaseName("values");
-            handleValuesExplicit(values, valueSeq, targetDt, startPoint, count);
+            NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
+            handleValuesExplicit(values, valueSeq, targetDt, 0, count);
         }
 
         // implicit_constant (=1)
@@ -388,13 +405,12 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
         // raw_linear (=4), raw_linear_external (=8)
         else if (seqReq == 4 || seqReq == 8) {
             if (this.mode == ValueMatrixMode.STORAGE) {
-                NameValueUnit values = ieLc.getValueByBaseName("values");
-                handleRawValuesStorage(values, valueSeq, startPoint, rowCount);
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
+                handleRawValuesStorage(values, valueSeq, 0, count);
             } else if (this.mode == ValueMatrixMode.CALCULATED) {
-                NameValueUnit values = ieLc.getValueByBaseName("values");
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
                 NameValueUnit genParams = ieLc.getValueByBaseName("generation_parameters");
-                handleValuesRawLinearCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt, startPoint,
-                                                rowCount);
+                handleValuesRawLinearCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt, 0, count);
             } else {
                 throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
                                       "Unsupported ValueMatrixMode: " + this.mode);
@@ -416,13 +432,13 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
         // raw_linear_calibrated (=10), raw_linear_calibrated_external (=11)
         else if (seqReq == 10 || seqReq == 11) {
             if (this.mode == ValueMatrixMode.STORAGE) {
-                NameValueUnit values = ieLc.getValueByBaseName("values");
-                handleRawValuesStorage(values, valueSeq, startPoint, rowCount);
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
+                handleRawValuesStorage(values, valueSeq, 0, count);
             } else if (this.mode == ValueMatrixMode.CALCULATED) {
-                NameValueUnit values = ieLc.getValueByBaseName("values");
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
                 NameValueUnit genParams = ieLc.getValueByBaseName("generation_parameters");
-                handleValuesRawLinearCalibratedCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt,
-                                                          startPoint, rowCount);
+                handleValuesRawLinearCalibratedCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt, 0,
+                                                          count);
             } else {
                 throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
                                       "Unsupported ValueMatrixMode: " + this.mode);
@@ -432,13 +448,13 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
         // raw_rational (=12), raw_rational_external (=13)
         else if (seqReq == 12 || seqReq == 13) {
               if (this.mode == ValueMatrixMode.STORAGE) {
-                NameValueUnit values = ieLc.getValueByBaseName("values");
-                handleRawValuesStorage(values, valueSeq, startPoint, rowCount);
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
+                handleRawValuesStorage(values, valueSeq, 0, count);
             } else if (this.mode == ValueMatrixMode.CALCULATED) {  
-                NameValueUnit values = ieLc.getValueByBaseName("values");
+                NameValueUnit values = getValuesRange(aidLc, iidLc, startPoint, count, preloadedValues);
                 NameValueUnit genParams = ieLc.getValueByBaseName("generation_parameters");
-                handleValuesRawRationalCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt,
-                                                          startPoint, rowCount);              
+                handleValuesRawRationalCalculated(values, genParams.value.u.doubleSeq(), valueSeq, targetDt, 0,
+                                                          count);              
             } else {
                 throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
                                       "Unsupported ValueMatrixMode: " + this.mode);
@@ -448,6 +464,34 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
         return valueSeq;
     }
 
+    /**
+     * Returns the range of the 'values' of a local column. Values stored in external components are read partially
+     * from the component files, so only the requested range will be loaded into memory.
+     * 
+     * @param aidLc The application element id of the local column.
+     * @param iidLc The instance id of the local column.
+     * @param startPoint The index of the first value.
+     * @param count The number of values.
+     * @param preloadedValues The value ranges already read, mapped by the instance id of the local column.
+     * @return The values, the first value of the returned sequence is the value at index startPoint.
+     * @throws AoException Error reading values.
+     */
+    private NameValueUnit getValuesRange(long aidLc, long iidLc, int startPoint, int count,
+            Map<Long, TS_Value> preloadedValues) throws AoException {
+        AtfxCache atfxCache = this.sourceSubMatrix.atfxCache;
+        Integer attrNo = atfxCache.getAttrNoByBaName(aidLc, "values");
+        if (attrNo == null) {
+            throw new AoException(ErrorCode.AO_NOT_FOUND, SeverityFlag.ERROR, 0,
+                                  "No ApplicationAttribute of BaseAttribute 'values' found for LocalColumn");
+        }
+        String aaName = atfxCache.getApplicationAttribute(aidLc, attrNo).getName();
+        TS_Value value = preloadedValues.get(iidLc);
+        if (value == null) {
+            value = atfxCache.getInstanceValue(aidLc, attrNo, iidLc, startPoint, count);
+        }
+        return new NameValueUnit(aaName, value, atfxCache.getUnitNameForAttr(aidLc, attrNo));
+    }
+
     private void handleValuesExplicit(NameValueUnit values, TS_ValueSeq valueSeq, DataType targetDt, int startPoint,
             int count) throws AoException {
         DataType rawDt = values.value.u.discriminator();
@@ -982,8 +1026,35 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
     public NameValueSeqUnit[] getValue(Column[] columns, int startPoint, int count) throws AoException {
         List<NameValueSeqUnit> nvsuList = new ArrayList<NameValueSeqUnit>();
 
+        // read the values of all columns stored in external components at once, so components sharing the same file
+        // and record layout are read in one pass; invalid ranges are reported by getValueVector()
+        Map<Long, TS_Value> preloadedValues = Collections.emptyMap();
+        int rowCount = getRowCount();
+        if (columns.length > 1 && startPoint >= 0 && startPoint <= rowCount && count >= 0) {
+            if ((count == 0) || ((startPoint + count) > rowCount)) {
+                count = rowCount - startPoint;
+            }
+            AtfxCache atfxCache = this.sourceSubMatrix.atfxCache;
+            long aidLc = 0;
+            List<Long> iidLcs = new ArrayList<Long>();
+            for (Column column : columns) {
+                InstanceElement ieLc = getLocalColumnInstanceByName(column.getName());
+                int seqRep = ieLc.getValueByBaseName("sequence_representation").value.u.enumVal();
+                // external_component=7,raw_linear_external=8,raw_polynomial_external=9,
+                // raw_linear_calibrated_external=11,raw_rational_external=13
+                if (seqRep == 7 || seqRep == 8 || seqRep == 9 || seqRep == 11 || seqRep == 13) {
+                    aidLc = ODSHelper.asJLong(ieLc.getApplicationElement().getId());
+                    iidLcs.add(ODSHelper.asJLong(ieLc.getId()));
+                }
+            }
+            if (iidLcs.size() > 1) {
+                Integer attrNo = atfxCache.getAttrNoByBaName(aidLc, "values");
+                preloadedValues = atfxCache.getInstanceValues(aidLc, attrNo, iidLcs, startPoint, count);
+            }
+        }
+
         for (Column column : columns) {
-            TS_ValueSeq tsValue = getValueVector(column, startPoint, count);
+            TS_ValueSeq tsValue = getValueVector(column, startPoint, count, preloadedValues);
             nvsuList.add(new NameValueSeqUnit(column.getName(), tsValue, column.getUnit()));
         }
         return nvsuList.toArray(new NameValueSeqUnit[0]);
@@ -1062,7 +1133,129 @@ class ValueMatrixOnSubMatrixImpl extends ValueMatrixPOA {
      * @see org.asam.ods.ValueMatrixOperations#setValue(org.asam.ods.SetType, int, org.asam.ods.NameValueSeqUnit[])
      */
     public void setValue(SetType set, int startPoint, NameValueSeqUnit[] value) throws AoException {
-        throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0, "Not implemented");
+        // only the values of whole columns can be replaced, new rows only be inserted into an empty submatrix
+        if (this.mode != ValueMatrixMode.STORAGE) {
+            throw new AoException(ErrorCode.AO_INVALID_VALUEMATRIX_MODE, SeverityFlag.ERROR, 0,
+                                  "Values may only be set in ValueMatrixMode STORAGE");
+        }
+        int rowCount = getRowCount();
+        if (set != SetType.UPDATE && !(set == SetType.INSERT && rowCount == 0)) {
+            throw new AoException(ErrorCode.AO_INVALID_SET_TYPE, SeverityFlag.ERROR, 0,
+                                  "Only SetType UPDATE or INSERT into an empty submatrix is implemented");
+        }
+        if (startPoint != 0) {
+            throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0,
+                                  "Only setting the values of whole columns is implemented");
+        }
+
+        // check the column lengths, the inserted columns define the number of rows
+        if (set == SetType.INSERT && value.length > 0) {
+            rowCount = ODSHelper.tsUnionSeqLength(value[0].value.u);
+        }
+        for (NameValueSeqUnit nvsu : value) {
+            int length = ODSHelper.tsUnionSeqLength(nvsu.value.u);
+            if (length != rowCount || nvsu.value.flag == null || nvsu.value.flag.length != rowCount) {
+                throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0, "Length of column '"
+                        + nvsu.valName + "' does not match the row count " + rowCount);
+            }
+        }
+
+        // the columns are written together, so they may be stored as records, see AtfxCache.setLocalColumnValues()
+        AtfxCache atfxCache = this.sourceSubMatrix.atfxCache;
+        long aidLc = 0;
+        List<Long> iidLcs = new ArrayList<Long>();
+        List<TS_Value> values = new ArrayList<TS_Value>();
+        for (NameValueSeqUnit nvsu : value) {
+            InstanceElement ieLc = getLocalColumnInstanceByName(nvsu.valName);
+            aidLc = ODSHelper.asJLong(ieLc.getApplicationElement().getId());
+            if (!allFlagsValid(nvsu.value.flag) && atfxCache.getAttrNoByBaName(aidLc, "flags") == null) {
+                throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0,
+                                      "Unable to store the flags of column '" + nvsu.valName
+                                              + "', no application attribute derived from 'flags' found");
+            }
+            iidLcs.add(ODSHelper.asJLong(ieLc.getId()));
+            values.add(tsUnionSeq2SequenceValue(nvsu.value.u));
+        }
+        if (!iidLcs.isEmpty()) {
+            atfxCache.setLocalColumnValues(aidLc, iidLcs, values);
+            for (int i = 0; i < value.length; i++) {
+                setFlags(aidLc, iidLcs.get(i), value[i].value.flag);
+            }
+        }
+        if (set == SetType.INSERT) {
+            NameValueUnit nvu = this.sourceSubMatrix.getValueByBaseName("number_of_rows");
+            nvu.value = ODSHelper.createLongNV("", rowCount).value;
+            this.sourceSubMatrix.setValue(nvu);
+        }
+    }
+
+    /**
+     * Writes the flags of a local column. Flags all being valid are stored as 'global_flag' if the local column has
+     * such an attribute, otherwise the flags are stored in the attribute derived from 'flags', which takes effect only
+     * if the 'global_flag' is unset.
+     * 
+     * @param aidLc The application element id of the local column.
+     * @param iidLc The instance id of the local column.
+     * @param flags The flags.
+     * @throws AoException Error writing flags.
+     */
+    private void setFlags(long aidLc, long iidLc, short[] flags) throws AoException {
+        AtfxCache atfxCache = this.sourceSubMatrix.atfxCache;
+        Integer attrNoGlobalFlag = atfxCache.getAttrNoByBaName(aidLc, "global_flag");
+        Integer attrNoFlags = atfxCache.getAttrNoByBaName(aidLc, "flags");
+        if (allFlagsValid(flags) && attrNoGlobalFlag != null) {
+            TS_Value globalFlag = atfxCache.getInstanceValue(aidLc, attrNoGlobalFlag, iidLc);
+            if (globalFlag.flag != 15 || globalFlag.u.shortVal() != 15) {
+                atfxCache.setInstanceValue(aidLc, iidLc, attrNoGlobalFlag,
+                                           ODSHelper.createShortNV("", (short) 15).value);
+            }
+        } else if (attrNoFlags != null) {
+            atfxCache.setInstanceValue(aidLc, iidLc, attrNoFlags, ODSHelper.createShortSeqNV("", flags).value);
+            if (attrNoGlobalFlag != null) {
+                atfxCache.setInstanceValue(aidLc, iidLc, attrNoGlobalFlag,
+                                           ODSHelper.createEmptyTS_Value(DataType.DT_SHORT));
+            }
+        }
+    }
+
+    private static boolean allFlagsValid(short[] flags) {
+        for (short flag : flags) {
+            if (flag != 15) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TS_Value tsUnionSeq2SequenceValue(TS_UnionSeq u) throws AoException {
+        DataType dt = u.discriminator();
+        if (dt == DataType.DT_BOOLEAN) {
+            return ODSHelper.jObject2tsValue(DataType.DS_BOOLEAN, u.booleanVal());
+        } else if (dt == DataType.DT_BYTE) {
+            return ODSHelper.jObject2tsValue(DataType.DS_BYTE, u.byteVal());
+        } else if (dt == DataType.DT_SHORT) {
+            return ODSHelper.jObject2tsValue(DataType.DS_SHORT, u.shortVal());
+        } else if (dt == DataType.DT_LONG) {
+            return ODSHelper.jObject2tsValue(DataType.DS_LONG, u.longVal());
+        } else if (dt == DataType.DT_LONGLONG) {
+            return ODSHelper.jObject2tsValue(DataType.DS_LONGLONG, u.longlongVal());
+        } else if (dt == DataType.DT_FLOAT) {
+            return ODSHelper.jObject2tsValue(DataType.DS_FLOAT, u.floatVal());
+        } else if (dt == DataType.DT_DOUBLE) {
+            return ODSHelper.jObject2tsValue(DataType.DS_DOUBLE, u.doubleVal());
+        } else if (dt == DataType.DT_COMPLEX) {
+            return ODSHelper.jObject2tsValue(DataType.DS_COMPLEX, u.complexVal());
+        } else if (dt == DataType.DT_DCOMPLEX) {
+            return ODSHelper.jObject2tsValue(DataType.DS_DCOMPLEX, u.dcomplexVal());
+        } else if (dt == DataType.DT_STRING) {
+            return ODSHelper.jObject2tsValue(DataType.DS_STRING, u.stringVal());
+        } else if (dt == DataType.DT_DATE) {
+            return ODSHelper.jObject2tsValue(DataType.DS_DATE, u.dateVal());
+        } else if (dt == DataType.DT_BYTESTR) {
+            return ODSHelper.jObject2tsValue(DataType.DS_BYTESTR, u.bytestrVal());
+        }
+        throw new AoException(ErrorCode.AO_BAD_PARAMETER, SeverityFlag.ERROR, 0, "Unsupported datatype for values: "
+                + ODSHelper.dataType2String(dt));
     }
 
     /**
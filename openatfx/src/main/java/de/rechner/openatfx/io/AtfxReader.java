@@ -111,6 +111,7 @@ public class AtfxReader {
             XMLStreamReader reader = inputFactory.createFilteredReader(rawReader, new StartEndElementFilter());
 
             String baseModelVersion = "";
+            AoSessionImpl aoSessionImpl = null;
             AoSession aoSession = null;
             while (!(reader.isEndElement() && reader.getLocalName().equals(AtfxTagConstants.ATFX_FILE))) {
 
@@ -134,13 +135,14 @@ public class AtfxReader {
                 else if (reader.isStartElement() && reader.getLocalName().equals(AtfxTagConstants.INSTANCE_DATA)) {
                     // parseInstanceElements(aoSession, reader);
                     AtfxInstanceReader.getInstance().parseInstanceElements(aoSession, files, reader);
+                    aoSessionImpl.packInstanceRelations();
                 }
 
                 // create AoSession object and write documentation to context
                 if ((baseModelVersion.length() > 0) && (aoSession == null)) {
                     BaseStructure bs = BaseStructureFactory.getInstance().getBaseStructure(orb, baseModelVersion);
                     POA modelPOA = createModelPOA(orb);
-                    AoSessionImpl aoSessionImpl = new AoSessionImpl(modelPOA, fileHandler, path, bs);
+                    aoSessionImpl = new AoSessionImpl(modelPOA, fileHandler, path, bs);
                     modelPOA.activate_object(aoSessionImpl);
                     aoSession = AoSessionHelper.narrow(modelPOA.servant_to_reference(aoSessionImpl));
                 }
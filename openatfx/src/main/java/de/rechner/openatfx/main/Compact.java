@@ -0,0 +1,47 @@
+package de.rechner.openatfx.main;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+import org.asam.ods.AoException;
+import org.asam.ods.AoSession;
+import org.omg.CORBA.ORB;
+
+import de.rechner.openatfx.AoServiceFactory;
+
+
+/**
+ * Command line tool removing the orphaned data of the external component files of an ATFX file.
+ * <p>
+ * Usage: <code>Compact &lt;atfxFile&gt;</code>
+ *
+ * @author Christian Rechner
+ */
+public class Compact {
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: " + Compact.class.getName() + " <atfxFile>");
+            System.exit(1);
+        }
+        BasicConfigurator.configure();
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        try {
+            AoServiceFactory factory = AoServiceFactory.getInstance();
+            AoSession aoSession = factory.newAoSession(orb, new File(args[0]));
+            try {
+                aoSession.startTransaction();
+                factory.getAoSessionImpl(orb, aoSession).compactExternalComponents();
+                aoSession.commitTransaction();
+            } finally {
+                aoSession.close();
+            }
+        } catch (AoException e) {
+            System.err.println(e.reason);
+            System.exit(1);
+        } finally {
+            orb.destroy();
+        }
+    }
+
+}
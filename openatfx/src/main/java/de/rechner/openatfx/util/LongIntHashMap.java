@@ -0,0 +1,172 @@
+package de.rechner.openatfx.util;
+
+import java.util.Arrays;
+
+
+/**
+ * Hash map of primitive long keys to non negative int values using open addressing with linear probing.
+ * <p>
+ * Neither keys nor values are boxed and no entry objects are created, the map needs about 12 bytes per entry at the
+ * maximum load factor of 0.5. Removed entries are not marked as deleted, the following entries of the probe sequence
+ * are shifted back instead.
+ *
+ * @author Christian Rechner
+ */
+public class LongIntHashMap {
+
+    /** The value returned for missing keys */
+    public static final int NO_VALUE = -1;
+
+    private long[] keys;
+    private int[] values; // NO_VALUE marks a free bucket
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.values, NO_VALUE);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key The key.
+     * @return The value, {@link #NO_VALUE} if the key is not contained.
+     */
+    public int get(long key) {
+        int mask = this.keys.length - 1;
+        for (int i = bucket(key, mask);; i = (i + 1) & mask) {
+            if (this.values[i] == NO_VALUE) {
+                return NO_VALUE;
+            } else if (this.keys[i] == key) {
+                return this.values[i];
+            }
+        }
+    }
+
+    /**
+     * Returns whether a key is contained.
+     *
+     * @param key The key.
+     * @return True, if the key is contained.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Puts a value.
+     *
+     * @param key The key.
+     * @param value The value, must not be negative.
+     * @return The previous value, {@link #NO_VALUE} if the key was not contained.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values are not supported: " + value);
+        }
+        int mask = this.keys.length - 1;
+        for (int i = bucket(key, mask);; i = (i + 1) & mask) {
+            if (this.values[i] == NO_VALUE) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                if (++this.size * 2 > this.keys.length) {
+                    rehash(this.keys.length << 1);
+                }
+                return NO_VALUE;
+            } else if (this.keys[i] == key) {
+                int previous = this.values[i];
+                this.values[i] = value;
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key The key.
+     * @return The removed value, {@link #NO_VALUE} if the key was not contained.
+     */
+    public int remove(long key) {
+        int mask = this.keys.length - 1;
+        int i = bucket(key, mask);
+        while (this.values[i] != NO_VALUE && this.keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        int removed = this.values[i];
+        if (removed == NO_VALUE) {
+            return NO_VALUE;
+        }
+
+        // shift back the following entries, which would not be found anymore behind the free bucket
+        int free = i;
+        for (int j = (i + 1) & mask; this.values[j] != NO_VALUE; j = (j + 1) & mask) {
+            int home = bucket(this.keys[j], mask);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                this.keys[free] = this.keys[j];
+                this.values[free] = this.values[j];
+                free = j;
+            }
+        }
+        this.values[free] = NO_VALUE;
+        this.size--;
+        return removed;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(this.values, NO_VALUE);
+        this.size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != NO_VALUE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int bucket(long key, int mask) {
+        // spread the bits, the keys are often dense
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
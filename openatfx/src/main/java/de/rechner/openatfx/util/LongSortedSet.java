@@ -0,0 +1,216 @@
+package de.rechner.openatfx.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Set of primitive long values kept as a compact sorted array.
+ * <p>
+ * Lookups use a binary search. Adding values in ascending order is appended at the end, all other modifications shift
+ * the following values. The set is intended for small sets, like the related instances of an instance, or for values
+ * added mostly in ascending order, like instance ids.
+ *
+ * @author Christian Rechner
+ */
+public class LongSortedSet extends AbstractSet<Long> {
+
+    private static final long[] EMPTY = new long[0];
+
+    private long[] values;
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public LongSortedSet() {
+        this.values = EMPTY;
+        this.size = 0;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param set The set to copy.
+     */
+    public LongSortedSet(LongSortedSet set) {
+        this.values = (set.size == 0) ? EMPTY : Arrays.copyOf(set.values, set.size);
+        this.size = set.size;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value The value.
+     * @return True, if the value was not contained before.
+     */
+    public boolean add(long value) {
+        int pos = (this.size > 0 && this.values[this.size - 1] < value) ? -this.size - 1 : indexOf(value);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, Math.max(2, this.size + (this.size >> 1) + 1));
+        }
+        System.arraycopy(this.values, pos, this.values, pos + 1, this.size - pos);
+        this.values[pos] = value;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value The value.
+     * @return True, if the value was contained.
+     */
+    public boolean remove(long value) {
+        int pos = indexOf(value);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(this.values, pos + 1, this.values, pos, this.size - pos - 1);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Returns whether a value is contained.
+     *
+     * @param value The value.
+     * @return True, if contained.
+     */
+    public boolean contains(long value) {
+        return indexOf(value) >= 0;
+    }
+
+    /**
+     * Returns the position of a value.
+     *
+     * @param value The value.
+     * @return The position, or (-(insertion point) - 1) if not contained.
+     */
+    public int indexOf(long value) {
+        return Arrays.binarySearch(this.values, 0, this.size, value);
+    }
+
+    /**
+     * Returns the value at a position.
+     *
+     * @param index The position.
+     * @return The value.
+     */
+    public long get(int index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return this.values[index];
+    }
+
+    /**
+     * Returns the values in ascending order.
+     *
+     * @return A copy of the values.
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    /**
+     * Reduces the capacity to the number of values.
+     */
+    public void trimToSize() {
+        if (this.values.length > this.size) {
+            this.values = this.size == 0 ? EMPTY : Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#add(java.lang.Object)
+     */
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#contains(java.lang.Object)
+     */
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Long) && contains(((Long) o).longValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#remove(java.lang.Object)
+     */
+    @Override
+    public boolean remove(Object o) {
+        return (o instanceof Long) && remove(((Long) o).longValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#clear()
+     */
+    @Override
+    public void clear() {
+        this.values = EMPTY;
+        this.size = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.util.AbstractCollection#iterator()
+     */
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+
+            private int next = 0;
+            private boolean removable = false;
+
+            public boolean hasNext() {
+                return this.next < size;
+            }
+
+            public Long next() {
+                if (this.next >= size) {
+                    throw new NoSuchElementException();
+                }
+                this.removable = true;
+                return values[this.next++];
+            }
+
+            public void remove() {
+                if (!this.removable) {
+                    throw new IllegalStateException();
+                }
+                this.removable = false;
+                LongSortedSet.this.remove(values[--this.next]);
+            }
+        };
+    }
+
+}
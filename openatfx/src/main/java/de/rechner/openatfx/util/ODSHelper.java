@@ -1345,6 +1345,116 @@ public abstract class ODSHelper {
         }
     }
 
+    /**
+     * Converts a whole column of values to the objects stored by the cache, like
+     * {@link #tsValue2jObject(TS_Value)} for each single value, without creating a TS_Value for each value.
+     * 
+     * @param valueSeq The values.
+     * @return The objects, null for values having a flag other than 15.
+     * @throws AoException Unsupported data type.
+     */
+    public static java.lang.Object[] tsValueSeq2jObjects(TS_ValueSeq valueSeq) throws AoException {
+        TS_UnionSeq uSeq = valueSeq.u;
+        DataType dt = uSeq.discriminator();
+        java.lang.Object[] objs = new java.lang.Object[valueSeq.flag.length];
+        // primitive values have to be boxed one by one
+        if (dt == DataType.DT_BOOLEAN) {
+            boolean[] seq = uSeq.booleanVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_BYTE) {
+            byte[] seq = uSeq.byteVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_DOUBLE) {
+            double[] seq = uSeq.doubleVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_ENUM) {
+            int[] seq = uSeq.enumVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_FLOAT) {
+            float[] seq = uSeq.floatVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_LONG) {
+            int[] seq = uSeq.longVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        } else if (dt == DataType.DT_SHORT) {
+            short[] seq = uSeq.shortVal();
+            for (int i = 0; i < objs.length; i++) {
+                objs[i] = seq[i];
+            }
+        }
+        // all other values are objects already
+        else {
+            java.lang.Object[] seq = null;
+            if (dt == DataType.DT_BLOB) {
+                seq = uSeq.blobVal();
+            } else if (dt == DataType.DT_BYTESTR) {
+                seq = uSeq.bytestrVal();
+            } else if (dt == DataType.DT_COMPLEX) {
+                seq = uSeq.complexVal();
+            } else if (dt == DataType.DT_DATE) {
+                seq = uSeq.dateVal();
+            } else if (dt == DataType.DT_DCOMPLEX) {
+                seq = uSeq.dcomplexVal();
+            } else if (dt == DataType.DT_EXTERNALREFERENCE) {
+                seq = uSeq.extRefVal();
+            } else if (dt == DataType.DT_LONGLONG) {
+                seq = uSeq.longlongVal();
+            } else if (dt == DataType.DT_STRING) {
+                seq = uSeq.stringVal();
+            } else if (dt == DataType.DS_BOOLEAN) {
+                seq = uSeq.booleanSeq();
+            } else if (dt == DataType.DS_BYTE) {
+                seq = uSeq.byteSeq();
+            } else if (dt == DataType.DS_BYTESTR) {
+                seq = uSeq.bytestrSeq();
+            } else if (dt == DataType.DS_COMPLEX) {
+                seq = uSeq.complexSeq();
+            } else if (dt == DataType.DS_DATE) {
+                seq = uSeq.dateSeq();
+            } else if (dt == DataType.DS_DCOMPLEX) {
+                seq = uSeq.dcomplexSeq();
+            } else if (dt == DataType.DS_DOUBLE) {
+                seq = uSeq.doubleSeq();
+            } else if (dt == DataType.DS_ENUM) {
+                seq = uSeq.enumSeq();
+            } else if (dt == DataType.DS_EXTERNALREFERENCE) {
+                seq = uSeq.extRefSeq();
+            } else if (dt == DataType.DS_FLOAT) {
+                seq = uSeq.floatSeq();
+            } else if (dt == DataType.DS_LONG) {
+                seq = uSeq.longSeq();
+            } else if (dt == DataType.DS_LONGLONG) {
+                seq = uSeq.longlongSeq();
+            } else if (dt == DataType.DS_SHORT) {
+                seq = uSeq.shortSeq();
+            } else if (dt == DataType.DS_STRING) {
+                seq = uSeq.stringSeq();
+            } else {
+                throw new AoException(ErrorCode.AO_INVALID_DATATYPE, SeverityFlag.ERROR, 0,
+                                      "Unsupported DataType: " + dataType2String(dt));
+            }
+            System.arraycopy(seq, 0, objs, 0, objs.length);
+        }
+        for (int i = 0; i < objs.length; i++) {
+            if (valueSeq.flag[i] != 15) {
+                objs[i] = null;
+            }
+        }
+        return objs;
+    }
+
     public static TS_Value jObject2tsValue(DataType dt, java.lang.Object obj) throws AoException {
         if (obj == null) {
             return createEmptyTS_Value(dt);
@@ -68,32 +68,6 @@ public class ApplElemAccessImplTest {
         aoSession.close();
     }
 
-    @Test
-    public void testInsertInstances() {
-        try {
-            // 2 instances of dsk without relations
-            T_LONGLONG aid = aoSession.getApplicationStructure().getElementByName("dsk").getId();
-            AIDNameValueSeqUnitId[] aidSeq = new AIDNameValueSeqUnitId[2];
-            aidSeq[0] = new AIDNameValueSeqUnitId();
-            aidSeq[0].attr = new AIDName(aid, "iname");
-            aidSeq[0].values = new TS_ValueSeq();
-            aidSeq[0].values.flag = new short[] { 15, 15 };
-            aidSeq[0].values.u = new TS_UnionSeq();
-            aidSeq[0].values.u.stringVal(new String[] { "name1", "name2" });
-            aidSeq[1] = new AIDNameValueSeqUnitId();
-            aidSeq[1].attr = new AIDName(aid, "created");
-            aidSeq[1].values = new TS_ValueSeq();
-            aidSeq[1].values.flag = new short[] { 15, 15 };
-            aidSeq[1].values.u = new TS_UnionSeq();
-            aidSeq[1].values.u.dateVal(new String[] { "20100101", "20111111" });
-            ElemId[] elemIds = applElemAccess.insertInstances(aidSeq);
-            assertEquals(2, elemIds.length);
-
-        } catch (AoException e) {
-            fail(e.reason);
-        }
-    }
-
     @Test
     public void testUpdateInstances() {
         try {
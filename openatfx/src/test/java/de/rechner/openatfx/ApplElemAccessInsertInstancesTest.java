@@ -0,0 +1,140 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.asam.ods.AIDName;
+import org.asam.ods.AIDNameValueSeqUnitId;
+import org.asam.ods.AoException;
+import org.asam.ods.AoSession;
+import org.asam.ods.ApplElemAccess;
+import org.asam.ods.ApplicationElement;
+import org.asam.ods.ElemId;
+import org.asam.ods.InstanceElement;
+import org.asam.ods.InstanceElementIterator;
+import org.asam.ods.Relationship;
+import org.asam.ods.TS_UnionSeq;
+import org.asam.ods.TS_ValueSeq;
+import org.asam.ods.T_LONGLONG;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.omg.CORBA.ORB;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ApplElemAccessImpl.insertInstances()</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ApplElemAccessInsertInstancesTest {
+
+    private static AoSession aoSession;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        URL url = ApplElemAccessInsertInstancesTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        aoSession = AoServiceFactory.getInstance().newAoSession(orb, new File(url.getFile()));
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        if (aoSession != null) {
+            aoSession.close();
+        }
+    }
+
+    @Test
+    public void testInsertInstances() {
+        try {
+            // 2 instances of dsk without relations
+            ApplicationElement aeDsk = aoSession.getApplicationStructure().getElementByName("dsk");
+            T_LONGLONG aid = aeDsk.getId();
+            AIDNameValueSeqUnitId[] aidSeq = new AIDNameValueSeqUnitId[2];
+            aidSeq[0] = column(aid, "iname");
+            aidSeq[0].values.u.stringVal(new String[] { "name1", "name2" });
+            aidSeq[1] = column(aid, "created");
+            aidSeq[1].values.u.dateVal(new String[] { "20100101", "20111111" });
+            ElemId[] elemIds = getApplElemAccess().insertInstances(aidSeq);
+            assertEquals(2, elemIds.length);
+
+            // the ids are allocated in order and the values are set column by column
+            assertEquals(ODSHelper.asJLong(elemIds[0].iid) + 1, ODSHelper.asJLong(elemIds[1].iid));
+            InstanceElement ie = aeDsk.getInstanceById(elemIds[1].iid);
+            assertEquals("name2", ie.getValue("iname").value.u.stringVal());
+            assertEquals("20111111", ie.getValue("created").value.u.dateVal());
+            assertEquals(ODSHelper.asJLong(elemIds[1].iid), ODSHelper.getLongLongVal(ie.getValueByBaseName("id")));
+            assertEquals(1, aeDsk.getInstances("name1").getCount());
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testInsertInstancesWithRelation() {
+        try {
+            // 2 instances of mea below the same instance of tstser
+            ApplicationElement aeMea = aoSession.getApplicationStructure().getElementByName("mea");
+            ApplicationElement aeTstSer = aoSession.getApplicationStructure().getElementByName("tstser");
+            T_LONGLONG aid = aeMea.getId();
+            AIDNameValueSeqUnitId[] aidSeq = new AIDNameValueSeqUnitId[2];
+            aidSeq[0] = column(aid, "iname");
+            aidSeq[0].values.u.stringVal(new String[] { "inserted1", "inserted2" });
+            aidSeq[1] = column(aid, "tstser_iid");
+            aidSeq[1].values.u.longlongVal(new T_LONGLONG[] { ODSHelper.asODSLongLong(2),
+                    ODSHelper.asODSLongLong(2) });
+            ElemId[] elemIds = getApplElemAccess().insertInstances(aidSeq);
+            assertEquals(2, elemIds.length);
+
+            // the relation and its inverse are set for both instances
+            for (ElemId elemId : elemIds) {
+                InstanceElementIterator iter = aeMea.getInstanceById(elemId.iid)
+                                                    .getRelatedInstancesByRelationship(Relationship.FATHER, "*");
+                assertEquals(1, iter.getCount());
+                assertEquals(2, ODSHelper.asJLong(iter.nextOne().getId()));
+                iter.destroy();
+            }
+            InstanceElementIterator iter = aeTstSer.getInstanceById(ODSHelper.asODSLongLong(2))
+                                                   .getRelatedInstancesByRelationship(Relationship.CHILD, "inserted*");
+            Set<Long> childIids = new HashSet<Long>();
+            for (InstanceElement ie : iter.nextN(iter.getCount())) {
+                childIids.add(ODSHelper.asJLong(ie.getId()));
+            }
+            iter.destroy();
+            assertEquals(2, childIids.size());
+            assertTrue(childIids.contains(ODSHelper.asJLong(elemIds[0].iid)));
+            assertTrue(childIids.contains(ODSHelper.asJLong(elemIds[1].iid)));
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    private static ApplElemAccess getApplElemAccess() throws AoException {
+        return aoSession.getApplElemAccess();
+    }
+
+    private static AIDNameValueSeqUnitId column(T_LONGLONG aid, String aaName) {
+        AIDNameValueSeqUnitId column = new AIDNameValueSeqUnitId();
+        column.attr = new AIDName(aid, aaName);
+        column.unitId = ODSHelper.asODSLongLong(0);
+        column.values = new TS_ValueSeq();
+        column.values.flag = new short[] { 15, 15 };
+        column.values.u = new TS_UnionSeq();
+        return column;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ApplElemAccessInsertInstancesTest.class);
+    }
+
+}
@@ -0,0 +1,291 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.asam.ods.AoException;
+import org.asam.ods.AoSession;
+import org.asam.ods.ApplicationElement;
+import org.asam.ods.ApplicationRelation;
+import org.asam.ods.ApplicationStructure;
+import org.asam.ods.InstanceElement;
+import org.asam.ods.InstanceElementIterator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.omg.CORBA.ORB;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Stress test reading instances with several threads while other threads create instances or write values.
+ *
+ * @author Christian Rechner
+ */
+public class AtfxCacheConcurrencyTest {
+
+    private static final int NO_OF_INSTANCES = 2000;
+    private static final int NO_OF_READERS = 4;
+
+    private static AoSession aoSession;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        URL url = AtfxCacheConcurrencyTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        aoSession = AoServiceFactory.getInstance().newAoFactory(orb).newSession("FILENAME=" + new File(url.getFile()));
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        if (aoSession != null) {
+            aoSession.close();
+        }
+    }
+
+    @Test
+    public void testReadWhileInserting() throws Exception {
+        final ApplicationElement ae = aoSession.getApplicationStructure().getElementByName("dsk");
+        final int initialCount = ae.getInstances("*").getCount();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final AtomicInteger reads = new AtomicInteger();
+
+        // readers iterating all instances and reading their names and ids
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < NO_OF_READERS; i++) {
+            Thread reader = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        while (writing.get() && error.get() == null) {
+                            InstanceElementIterator iter = ae.getInstances("*");
+                            for (InstanceElement ie : iter.nextN(iter.getCount())) {
+                                String name = ie.getName();
+                                long iid = ODSHelper.asJLong(ie.getId());
+                                if (name.startsWith("stress_")) {
+                                    assertEquals(iid, ODSHelper.asJLong(ae.getInstanceById(ie.getId()).getId()));
+                                }
+                                reads.incrementAndGet();
+                            }
+                            iter.destroy();
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // single writer creating instances
+        try {
+            for (int i = 0; i < NO_OF_INSTANCES && error.get() == null; i++) {
+                ae.createInstance("stress_" + i);
+            }
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            writing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        if (error.get() != null) {
+            throw new AssertionError("Reader failed: " + error.get(), error.get());
+        }
+        assertTrue(reads.get() > 0);
+        InstanceElementIterator iter = ae.getInstances("stress_*");
+        assertEquals(NO_OF_INSTANCES, iter.getCount());
+        iter.destroy();
+        assertEquals(initialCount + NO_OF_INSTANCES, ae.getInstances("*").getCount());
+    }
+
+    @Test
+    public void testCreateConcurrently() throws Exception {
+        final ApplicationElement ae = aoSession.getApplicationStructure().getElementByName("dsk");
+        final int initialCount = ae.getInstances("*").getCount();
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // several writers creating instances, each instance gets its own id
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int i = 0; i < NO_OF_READERS; i++) {
+            final int writerNo = i;
+            Thread writer = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        for (int j = 0; j < NO_OF_INSTANCES / NO_OF_READERS; j++) {
+                            ae.createInstance("concurrent_" + writerNo + "_" + j);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        if (error.get() != null) {
+            throw new AssertionError("Writer failed: " + error.get(), error.get());
+        }
+        InstanceElementIterator iter = ae.getInstances("concurrent_*");
+        assertEquals(NO_OF_INSTANCES, iter.getCount());
+        iter.destroy();
+        assertEquals(initialCount + NO_OF_INSTANCES, ae.getInstances("*").getCount());
+    }
+
+    @Test
+    public void testReadWhileWritingBehind() throws Exception {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        URL url = AtfxCacheConcurrencyTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        AoSession session = AoServiceFactory.getInstance().newAoFactory(orb)
+                                            .newSession("FILENAME=" + new File(url.getFile()));
+        try {
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            session.setContext(ODSHelper.createLongNV("EXT_COMP_WRITE_THREADS", 2));
+            ApplicationStructure as = session.getApplicationStructure();
+            ApplicationElement aeLc = as.getElementByName("lc");
+            ApplicationElement aeEc = as.getElementsByBaseType("AoExternalComponent")[0];
+            final ApplicationRelation rel = as.getRelations(aeLc, aeEc)[0];
+            final InstanceElement ieLc = aeLc.getInstanceById(ODSHelper.asODSLongLong(45));
+            // the values are initially held in memory, the writes replace each other's external component
+            int extCompCount = aeEc.getInstances("*").getCount() + 1;
+            assertEquals(0, ieLc.getRelatedInstances(rel, "*").getCount());
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+            // readers of the local column wait for its pending write and attach the external component
+            List<Thread> readers = new ArrayList<Thread>();
+            for (int i = 0; i < NO_OF_READERS; i++) {
+                Thread reader = new Thread(new Runnable() {
+
+                    public void run() {
+                        try {
+                            while (writing.get() && error.get() == null) {
+                                assertEquals("Time", ieLc.getName());
+                            }
+                        } catch (Throwable e) {
+                            error.compareAndSet(null, e);
+                        }
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            double[] time = new double[167];
+            try {
+                for (int i = 0; i < 200 && error.get() == null; i++) {
+                    Arrays.fill(time, i);
+                    ieLc.setValue(ODSHelper.createDoubleSeqNVU("values", time.clone()));
+                }
+            } finally {
+                writing.set(false);
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+            }
+
+            if (error.get() != null) {
+                throw new AssertionError("Reader failed: " + error.get(), error.get());
+            }
+            assertArrayEquals(time, ieLc.getValue("values").value.u.doubleSeq(), 0);
+            InstanceElementIterator iter = ieLc.getRelatedInstances(rel, "*");
+            assertEquals(1, iter.getCount());
+            iter.destroy();
+            assertEquals(extCompCount, aeEc.getInstances("*").getCount());
+            session.abortTransaction();
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testReadModelWhileModifying() throws Exception {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        URL url = AtfxCacheConcurrencyTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        final AoSession session = AoServiceFactory.getInstance().newAoFactory(orb)
+                                                  .newSession("FILENAME=" + new File(url.getFile()));
+        try {
+            final ApplicationElement ae = session.getApplicationStructure().getElementByName("dsk");
+            final String[] initialAaNames = ae.listAttributes("*");
+            final int contextCount = session.listContext("*").getCount();
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+            // readers listing the attributes and the context while they are created
+            List<Thread> readers = new ArrayList<Thread>();
+            for (int i = 0; i < NO_OF_READERS; i++) {
+                Thread reader = new Thread(new Runnable() {
+
+                    public void run() {
+                        try {
+                            while (writing.get() && error.get() == null) {
+                                String[] aaNames = ae.listAttributes("*");
+                                assertTrue(aaNames.length >= initialAaNames.length);
+                                assertEquals(initialAaNames[0], aaNames[0]);
+                                assertTrue(ae.getAttributes("*").length >= initialAaNames.length);
+                                assertTrue(session.listContext("*").getCount() >= contextCount);
+                                assertTrue(session.getContext("*").getCount() >= contextCount);
+                            }
+                        } catch (Throwable e) {
+                            error.compareAndSet(null, e);
+                        }
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+
+            // single writer creating attributes and context variables
+            try {
+                for (int i = 0; i < 200 && error.get() == null; i++) {
+                    ae.createAttribute().setName("stress_" + i);
+                    session.setContextString("stress_" + i, String.valueOf(i));
+                }
+            } finally {
+                writing.set(false);
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+            }
+
+            if (error.get() != null) {
+                throw new AssertionError("Reader failed: " + error.get(), error.get());
+            }
+            String[] aaNames = ae.listAttributes("stress_*");
+            assertEquals(200, aaNames.length);
+            assertEquals("stress_0", aaNames[0]);
+            assertEquals("stress_199", aaNames[199]);
+            assertEquals(200, session.listContext("stress_*").getCount());
+        } finally {
+            session.close();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AtfxCacheConcurrencyTest.class);
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.asam.ods.T_LONGLONG;
+import org.junit.Test;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.AttributeColumn</code>.
+ *
+ * @author Christian Rechner
+ */
+public class AttributeColumnTest {
+
+    @Test
+    public void testPrimitiveValues() {
+        AttributeColumn column = new AttributeColumn();
+        assertEquals(AttributeColumn.Kind.NONE, column.getKind());
+        assertNull(column.get(0));
+
+        column.set(0, Double.valueOf(1.5));
+        column.set(200, Double.valueOf(-2));
+        assertEquals(AttributeColumn.Kind.DOUBLE, column.getKind());
+        assertEquals(1.5, column.get(0));
+        assertEquals(-2d, column.getDouble(200), 0);
+        assertTrue(column.isSet(200));
+        assertFalse(column.isSet(100));
+        assertNull(column.get(100));
+        assertFalse(column.isSet(1000));
+
+        column.clear(0);
+        assertNull(column.get(0));
+        column.set(200, null);
+        assertFalse(column.isSet(200));
+    }
+
+    @Test
+    public void testLongLongValues() {
+        AttributeColumn column = new AttributeColumn();
+        column.set(3, ODSHelper.asODSLongLong(Long.MAX_VALUE));
+        assertEquals(AttributeColumn.Kind.LONGLONG, column.getKind());
+        assertEquals(Long.MAX_VALUE, ODSHelper.asJLong((T_LONGLONG) column.get(3)));
+        assertEquals(Long.MAX_VALUE, column.getLong(3));
+    }
+
+    @Test
+    public void testMixedValues() {
+        AttributeColumn column = new AttributeColumn();
+        column.set(0, Short.valueOf((short) 7));
+        column.set(1, Short.valueOf((short) -1));
+        assertEquals(AttributeColumn.Kind.SHORT, column.getKind());
+
+        // a value of another type switches to objects, keeping the existing values
+        column.set(2, Integer.valueOf(8));
+        assertEquals(AttributeColumn.Kind.OBJECT, column.getKind());
+        assertEquals(Short.valueOf((short) 7), column.get(0));
+        assertEquals(Short.valueOf((short) -1), column.get(1));
+        assertEquals(Integer.valueOf(8), column.get(2));
+        column.set(3, "text");
+        assertEquals("text", column.get(3));
+        column.clear(3);
+        assertNull(column.get(3));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(AttributeColumnTest.class);
+    }
+
+}
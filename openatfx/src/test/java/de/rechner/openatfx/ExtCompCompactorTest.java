@@ -0,0 +1,289 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.asam.ods.AoException;
+import org.asam.ods.AoSession;
+import org.asam.ods.ApplicationElement;
+import org.asam.ods.ApplicationRelation;
+import org.asam.ods.ApplicationStructure;
+import org.asam.ods.Column;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.InstanceElement;
+import org.asam.ods.NameValueSeqUnit;
+import org.asam.ods.SetType;
+import org.asam.ods.TS_UnionSeq;
+import org.asam.ods.TS_ValueSeq;
+import org.asam.ods.ValueMatrix;
+import org.asam.ods.ValueMatrixMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.omg.CORBA.ORB;
+
+import de.rechner.openatfx.util.FileUtil;
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompCompactor</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompCompactorTest {
+
+    private File dir;
+    private File atfxFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = File.createTempFile("compactor", "");
+        this.dir.delete();
+        this.dir.mkdir();
+        URL url = ExtCompCompactorTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        this.atfxFile = new File(this.dir, "example.atfx");
+        FileUtil.copyFile(new File(url.getFile()), this.atfxFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = this.dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.dir.delete();
+    }
+
+    @Test
+    public void testCompact() {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        double[] time = new double[167];
+        AoSession session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            ValueMatrix vm = getValueMatrix(session);
+
+            // the values of the first write become orphaned
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+            for (int i = 0; i < 167; i++) {
+                time[i] = i * 0.5;
+            }
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+            File oldFile = new File(this.dir, "example_1.btf");
+            assertTrue(oldFile.exists());
+
+            session.setContext(ODSHelper.createStringNV("EXT_COMP_COMPACT", "TRUE"));
+            session.commitTransaction();
+            File newFile = new File(this.dir, "example_2.btf");
+            assertFalse(oldFile.exists());
+            assertEquals(167 * 8, newFile.length());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+
+        // the compacted file is referenced by the written ATFX file
+        session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            ValueMatrix vm = getValueMatrix(session);
+            NameValueSeqUnit[] read = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0);
+            assertArrayEquals(time, read[0].value.u.doubleVal(), 0);
+
+            ApplicationStructure as = session.getApplicationStructure();
+            ApplicationElement aeLc = as.getElementByName("lc");
+            ApplicationElement aeEc = as.getElementsByBaseType("AoExternalComponent")[0];
+            ApplicationRelation rel = as.getRelations(aeLc, aeEc)[0];
+            InstanceElement ieEc = aeLc.getInstanceById(ODSHelper.asODSLongLong(45)).getRelatedInstances(rel, "*")
+                                       .nextOne();
+            assertEquals("example_2.btf", ieEc.getValueByBaseName("filename_url").value.u.stringVal());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+    }
+
+    @Test
+    public void testCompactExternalComponents() {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        double[] time = new double[167];
+        AoSession session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            AoSessionImpl sessionImpl = AoServiceFactory.getInstance().getAoSessionImpl(orb, session);
+            try {
+                sessionImpl.compactExternalComponents();
+                fail("AoException expected");
+            } catch (AoException e) {
+                assertEquals(ErrorCode.AO_TRANSACTION_NOT_ACTIVE, e.errCode);
+            }
+
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            ValueMatrix vm = getValueMatrix(session);
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+            for (int i = 0; i < 167; i++) {
+                time[i] = i * 0.75;
+            }
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+
+            // the obsolete file is deleted on commit
+            sessionImpl.compactExternalComponents();
+            File oldFile = new File(this.dir, "example_1.btf");
+            File newFile = new File(this.dir, "example_2.btf");
+            assertTrue(oldFile.exists());
+            assertEquals(167 * 8, newFile.length());
+            NameValueSeqUnit[] read = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0);
+            assertArrayEquals(time, read[0].value.u.doubleVal(), 0);
+            session.commitTransaction();
+            assertFalse(oldFile.exists());
+            assertEquals("example_2.btf",
+                         getExternalComponent(session).getValueByBaseName("filename_url").value.u.stringVal());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+    }
+
+    @Test
+    public void testCompactRelativePath() {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        double[] time = new double[167];
+        for (int i = 0; i < 167; i++) {
+            time[i] = i * 0.25;
+        }
+        AoSession session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            ValueMatrix vm = getValueMatrix(session);
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+
+            // the segment file is referenced by a path not equal to the file name
+            getExternalComponent(session).setValue(ODSHelper.createStringNVU(getAttrName(session, "filename_url"),
+                                                                            "./example_1.btf"));
+
+            session.setContext(ODSHelper.createStringNV("EXT_COMP_COMPACT", "TRUE"));
+            session.commitTransaction();
+            assertFalse(new File(this.dir, "example_1.btf").exists());
+            assertTrue(new File(this.dir, "example_2.btf").exists());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+
+        // the values have been moved to the new segment file
+        session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            ValueMatrix vm = getValueMatrix(session);
+            NameValueSeqUnit[] read = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0);
+            assertArrayEquals(time, read[0].value.u.doubleVal(), 0);
+            assertEquals("example_2.btf",
+                         getExternalComponent(session).getValueByBaseName("filename_url").value.u.stringVal());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+    }
+
+    @Test
+    public void testCompactUnknownSize() {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        AoSession session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            ValueMatrix vm = getValueMatrix(session);
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", new double[167]) });
+
+            // without block size the size of the component is unknown, the file must not be compacted nor deleted
+            getExternalComponent(session).setValue(ODSHelper.createLongNVU(getAttrName(session, "block_size"), 0));
+
+            session.setContext(ODSHelper.createStringNV("EXT_COMP_COMPACT", "TRUE"));
+            session.commitTransaction();
+            assertTrue(new File(this.dir, "example_1.btf").exists());
+            assertFalse(new File(this.dir, "example_2.btf").exists());
+            assertEquals("example_1.btf",
+                         getExternalComponent(session).getValueByBaseName("filename_url").value.u.stringVal());
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            close(session);
+        }
+    }
+
+    @Test
+    public void testSegmentFileNames() {
+        assertEquals(ExtCompSegmentWriter.Kind.NUMERIC, ExtCompSegmentWriter.getKind("example", "example_1.btf"));
+        assertEquals(ExtCompSegmentWriter.Kind.FLAGS, ExtCompSegmentWriter.getKind("example", "example_12_flags.btf"));
+        assertEquals(12, ExtCompSegmentWriter.getSegmentNo("example", ExtCompSegmentWriter.Kind.FLAGS,
+                                                           "example_12_flags.btf"));
+        assertEquals(null, ExtCompSegmentWriter.getKind("example", "example.btf"));
+        assertEquals(null, ExtCompSegmentWriter.getKind("example", "other_1.btf"));
+        assertTrue(ExtCompSegmentWriter.getSegmentNo("example", ExtCompSegmentWriter.Kind.NUMERIC,
+                                                     "example_1_flags.btf") < 0);
+    }
+
+    private static ValueMatrix getValueMatrix(AoSession session) throws AoException {
+        ApplicationElement aeSm = session.getApplicationStructure().getElementByName("sm");
+        return aeSm.getInstanceById(ODSHelper.asODSLongLong(33)).upcastSubMatrix()
+                   .getValueMatrixInMode(ValueMatrixMode.STORAGE);
+    }
+
+    private static InstanceElement getExternalComponent(AoSession session) throws AoException {
+        ApplicationStructure as = session.getApplicationStructure();
+        ApplicationElement aeLc = as.getElementByName("lc");
+        ApplicationElement aeEc = as.getElementsByBaseType("AoExternalComponent")[0];
+        ApplicationRelation rel = as.getRelations(aeLc, aeEc)[0];
+        return aeLc.getInstanceById(ODSHelper.asODSLongLong(45)).getRelatedInstances(rel, "*").nextOne();
+    }
+
+    private static String getAttrName(AoSession session, String baseAttrName) throws AoException {
+        ApplicationElement aeEc = session.getApplicationStructure().getElementsByBaseType("AoExternalComponent")[0];
+        return aeEc.getAttributeByBaseName(baseAttrName).getName();
+    }
+
+    private static NameValueSeqUnit nvsu(String name, double[] values) {
+        TS_UnionSeq u = new TS_UnionSeq();
+        u.doubleVal(values);
+        short[] flags = new short[values.length];
+        Arrays.fill(flags, (short) 15);
+        return new NameValueSeqUnit(name, new TS_ValueSeq(u, flags), "");
+    }
+
+    private static void close(AoSession session) {
+        if (session != null) {
+            try {
+                session.close();
+            } catch (AoException e) {
+                fail(e.reason);
+            }
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompCompactorTest.class);
+    }
+
+}
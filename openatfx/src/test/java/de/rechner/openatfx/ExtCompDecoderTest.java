@@ -0,0 +1,387 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.asam.ods.AoException;
+import org.asam.ods.DataType;
+import org.asam.ods.TS_Union;
+import org.junit.After;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompDecoder</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompDecoderTest {
+
+    private static final Log LOG = LogFactory.getLog(ExtCompDecoderTest.class);
+
+    private File file;
+    private final FileChannelPool pool = new FileChannelPool(FileChannelPool.DEFAULT_MAX_OPEN_CHANNELS);
+
+    @After
+    public void tearDown() throws Exception {
+        this.pool.close();
+        if (this.file != null) {
+            this.file.delete();
+        }
+    }
+
+    @Test
+    public void testDecodeShortBlocks() {
+        try {
+            // 3 blocks of 10 bytes: 2 byte header, 4 shorts (the last block only partially used)
+            ByteBuffer bb = ByteBuffer.allocate(30).order(ByteOrder.BIG_ENDIAN);
+            for (int block = 0; block < 3; block++) {
+                bb.position(block * 10 + 2);
+                for (int i = 0; i < 4; i++) {
+                    bb.putShort((short) (-(block * 4 + i)));
+                }
+            }
+            ExtCompInput input = open(bb, 10, 3);
+            short[] target = new short[12];
+            ExtCompDecoder.decode(input, 7, 2, 4, 0, 0, 0, 10, target, 1);
+            input.close();
+            assertArrayEquals(new short[] { 0, 0, -1, -2, -3, -4, -5, -6, -7, -8, -9, 0 }, target);
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeShortBlocksFromValue() {
+        try {
+            // 2 blocks of 4 shorts, reading starts with the third value of the first block
+            ByteBuffer bb = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 8; i++) {
+                bb.putShort((short) i);
+            }
+            ExtCompInput input = open(bb, 8, 2);
+            short[] target = new short[5];
+            ExtCompDecoder.decode(input, 2, 0, 4, 0, 0, 2, 5, target, 0);
+            input.close();
+            assertArrayEquals(new short[] { 2, 3, 4, 5, 6 }, target);
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeDoubleConcatenated() {
+        try {
+            ByteBuffer bb = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 5; i++) {
+                bb.putDouble(i * 1.5);
+            }
+            double[] target = (double[]) ExtCompDecoder.allocate(DataType.DS_DOUBLE, 10);
+            ExtCompInput input = open(bb, 8, 5);
+            ExtCompDecoder.decode(input, 6, 0, 1, 0, 0, 0, 5, target, 0);
+            input.close();
+            input = open(bb, 8, 5);
+            ExtCompDecoder.decode(input, 6, 0, 1, 0, 0, 0, 5, target, 5);
+            input.close();
+            assertArrayEquals(new double[] { 0, 1.5, 3, 4.5, 6, 0, 1.5, 3, 4.5, 6 }, target, 0);
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeUnsignedWithConversion() {
+        try {
+            ByteBuffer bb = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            bb.putShort((short) 0xFFFF).putShort((short) 1).putShort((short) 0x8000).putShort((short) 2);
+            ExtCompInput input = open(bb, 8, 1);
+            double[] target = new double[4];
+            ExtCompDecoder.decode(input, 21, 0, 4, 0, 0, 0, 4, target, 0);
+            input.close();
+            assertArrayEquals(new double[] { 65535, 1, 32768, 2 }, target, 0);
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBoolean() {
+        try {
+            ByteBuffer bb = ByteBuffer.allocate(2);
+            bb.put((byte) 0xA0).put((byte) 0x80);
+            ExtCompInput input = open(bb, 2, 1);
+            boolean[] target = new boolean[9];
+            ExtCompDecoder.decode(input, 0, 0, 9, 0, 0, 0, 9, target, 0);
+            input.close();
+            assertArrayEquals(new boolean[] { true, false, true, false, false, false, false, false, true }, target);
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBitFieldsAllWidths() {
+        try {
+            Random random = new Random(42);
+            for (int bitCount = 1; bitCount <= 64; bitCount++) {
+                for (int bitOffset : new int[] { 0, 3, 7, 12 }) {
+                    for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                        long[] values = new long[37];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = random.nextLong();
+                        }
+                        int bytesPerValue = ((bitCount + bitOffset - 1) / 8) + 1;
+                        String msg = "bitCount=" + bitCount + ", bitOffset=" + bitOffset + ", order=" + order;
+
+                        // all values in one block, the last values are read near the end of the buffer
+                        ByteBuffer bb = encodeBits(values, bitCount, bitOffset, order, 0, bytesPerValue);
+                        assertBitFields(msg, new HeapExtCompInput(bb, bb.capacity(), 1), values.length, bitCount,
+                                        bitOffset, values);
+
+                        // one value per record of a 3 byte header and the value bytes
+                        bb = encodeBits(values, bitCount, bitOffset, order, 3, bytesPerValue + 3);
+                        assertBitFields(msg, new HeapExtCompInput(bb, bytesPerValue + 3, values.length), 1, bitCount,
+                                        bitOffset, values);
+                    }
+                }
+            }
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBitFloat() {
+        try {
+            // half precision, shifted by 4 bits
+            long[] halfs = { 0x3C00, 0xC000, 0x7BFF, 0x0001, 0x8000, 0x7C00, 0xFC00, 0x7E00, 0x3555 };
+            ByteBuffer bb = encodeBits(halfs, 16, 4, ByteOrder.BIG_ENDIAN, 0, 3);
+            double[] target = new double[halfs.length];
+            ExtCompDecoder.decode(new HeapExtCompInput(bb, bb.capacity(), 1), 32, 0, halfs.length, 16, 4, 0,
+                                  halfs.length, target, 0);
+            assertArrayEquals(new double[] { 1, -2, 65504, Math.pow(2, -24), -0.0, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NaN, 0.333251953125 }, target, 0);
+
+            // single and double precision
+            float[] floats = { 1.5f, -3.25e10f, Float.MIN_VALUE };
+            long[] bits = new long[floats.length];
+            for (int i = 0; i < floats.length; i++) {
+                bits[i] = Float.floatToIntBits(floats[i]);
+            }
+            bb = encodeBits(bits, 32, 1, ByteOrder.LITTLE_ENDIAN, 0, 5);
+            float[] floatTarget = new float[floats.length];
+            ExtCompDecoder.decode(new HeapExtCompInput(bb, bb.capacity(), 1), 31, 0, floats.length, 32, 1, 0,
+                                  floats.length, floatTarget, 0);
+            assertArrayEquals(floats, floatTarget, 0);
+
+            bits = new long[] { Double.doubleToLongBits(Math.PI), Double.doubleToLongBits(-1e300) };
+            bb = encodeBits(bits, 64, 0, ByteOrder.BIG_ENDIAN, 0, 8);
+            ExtCompDecoder.decode(new HeapExtCompInput(bb, bb.capacity(), 1), 32, 0, 2, 64, 0, 0, 2, target, 0);
+            assertEquals(Math.PI, target[0], 0);
+            assertEquals(-1e300, target[1], 0);
+
+            // unsupported float bit count
+            try {
+                ExtCompDecoder.decode(new HeapExtCompInput(bb, bb.capacity(), 1), 31, 0, 2, 24, 0, 0, 2, target, 0);
+                fail("AoException expected");
+            } catch (AoException e) {
+            }
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBitFieldThroughput() {
+        try {
+            int count = 1 << 17;
+            Random random = new Random(7);
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = random.nextLong();
+            }
+            long[] target = new long[count];
+            for (int bitCount = 1; bitCount <= 64; bitCount++) {
+                int bytesPerValue = ((bitCount + 2 - 1) / 8) + 1;
+                ByteBuffer bb = encodeBits(values, bitCount, 2, ByteOrder.LITTLE_ENDIAN, 0, bytesPerValue);
+                ExtCompInput input = new HeapExtCompInput(bb, bb.capacity(), 1);
+
+                long expected = 0;
+                for (int i = 0; i < count; i++) {
+                    expected += (values[i] << (64 - bitCount)) >> (64 - bitCount);
+                }
+                long duration = Long.MAX_VALUE;
+                for (int pass = 0; pass < 3; pass++) {
+                    long start = System.nanoTime();
+                    ExtCompDecoder.decode(input, 27, 0, count, bitCount, 2, 0, count, target, 0);
+                    duration = Math.min(duration, System.nanoTime() - start);
+                    long sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += target[i];
+                    }
+                    assertEquals("bitCount=" + bitCount, expected, sum);
+                }
+                LOG.info("Decoded " + count + " dt_bit_int values of " + bitCount + " bits in "
+                        + (duration / 1000) + "us");
+            }
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testHalfToFloat() {
+        for (int half = 0; half < 0x10000; half++) {
+            float f = ExtCompDecoder.halfToFloat(half);
+            int exponent = (half >>> 10) & 0x1F;
+            double expected;
+            if (exponent == 0x1F) {
+                expected = (half & 0x3FF) == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+            } else if (exponent == 0) {
+                expected = (half & 0x3FF) * Math.pow(2, -24);
+            } else {
+                expected = (1 + (half & 0x3FF) / 1024d) * Math.pow(2, exponent - 15);
+            }
+            if ((half & 0x8000) != 0) {
+                expected = -expected;
+            }
+            assertEquals("half=" + half, expected, f, 0);
+        }
+    }
+
+    @Test
+    public void testSetToUnion() {
+        try {
+            TS_Union u = new TS_Union();
+            ExtCompDecoder.setToUnion(DataType.DS_COMPLEX, new float[] { 1, 2, 3, 4 }, u);
+            assertEquals(2, u.complexSeq().length);
+            assertEquals(3f, u.complexSeq()[1].r, 0);
+            assertEquals(4f, u.complexSeq()[1].i, 0);
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testUnsupportedValueType() {
+        try {
+            ExtCompDecoder.decode(null, 14, 0, 1, 0, 0, 0, 1, new byte[1], 0);
+            fail("AoException expected");
+        } catch (AoException e) {
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void assertBitFields(String msg, ExtCompInput input, int valuesPerBlock, int bitCount,
+            int bitOffset, long[] values) throws AoException, IOException {
+        int shift = 64 - bitCount;
+        long[] target = new long[values.length];
+        // dt_bit_uint and dt_bit_int, the byte order is taken from the buffer
+        ExtCompDecoder.decode(input, 29, headerSize(input, bitCount, bitOffset), valuesPerBlock, bitCount, bitOffset,
+                              0, values.length, target, 0);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(msg, (values[i] << shift) >>> shift, target[i]);
+        }
+        ExtCompDecoder.decode(input, 27, headerSize(input, bitCount, bitOffset), valuesPerBlock, bitCount, bitOffset,
+                              0, values.length, target, 0);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(msg, (values[i] << shift) >> shift, target[i]);
+        }
+    }
+
+    private static int headerSize(ExtCompInput input, int bitCount, int bitOffset) {
+        int bytesPerValue = ((bitCount + bitOffset - 1) / 8) + 1;
+        return input.blockSize == bytesPerValue + 3 ? 3 : 0;
+    }
+
+    /**
+     * Encodes the lowest bits of each value into a buffer. The bit offset is counted from the least significant bit of
+     * the value bytes.
+     */
+    private static ByteBuffer encodeBits(long[] values, int bitCount, int bitOffset, ByteOrder order, int valueOffset,
+            int stride) {
+        int bytesPerValue = ((bitCount + bitOffset - 1) / 8) + 1;
+        ByteBuffer bb = ByteBuffer.allocate(values.length * stride).order(order);
+        for (int i = 0; i < values.length; i++) {
+            int index = i * stride + valueOffset;
+            for (int b = 0; b < bitCount; b++) {
+                if (((values[i] >>> b) & 1) != 0) {
+                    int bit = bitOffset + b;
+                    int byteNo = order == ByteOrder.LITTLE_ENDIAN ? bit / 8 : bytesPerValue - 1 - bit / 8;
+                    bb.put(index + byteNo, (byte) (bb.get(index + byteNo) | (1 << (bit % 8))));
+                }
+            }
+        }
+        return bb;
+    }
+
+    private ExtCompInput open(ByteBuffer bb, int blockSize, int blockCount) throws IOException {
+        if (this.file == null) {
+            this.file = File.createTempFile("extcompdecoder", ".btf");
+        }
+        FileOutputStream fos = new FileOutputStream(this.file);
+        fos.write(bb.array());
+        fos.close();
+        return new ExtCompInput.BufferedExtCompInput(this.pool, this.file, 0, blockSize, blockCount, bb.order());
+    }
+
+    /**
+     * Input providing the blocks of a heap buffer.
+     */
+    private static class HeapExtCompInput extends ExtCompInput {
+
+        private final ByteBuffer bb;
+
+        public HeapExtCompInput(ByteBuffer bb, int blockSize, int blockCount) {
+            super(blockSize, blockCount);
+            this.bb = bb;
+        }
+
+        public ByteBuffer getBlock(int blockNo) {
+            // make buildable with both java8 and java9
+            Buffer buf = Buffer.class.cast(this.bb);
+            buf.limit(this.bb.capacity());
+            buf.position(blockNo * this.blockSize);
+            buf.limit((blockNo + 1) * this.blockSize);
+            return this.bb;
+        }
+
+        public void close() {}
+
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompDecoderTest.class);
+    }
+
+}
@@ -0,0 +1,162 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompInput</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompInputTest {
+
+    private static final int HEADER_SIZE = 7;
+    private static final int BLOCK_SIZE = 12; // 3 big endian ints per block
+    private static final int BLOCK_COUNT = 100;
+
+    private static File file;
+    private static FileChannelPool pool;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        file = File.createTempFile("extcompinput", ".btf");
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + BLOCK_SIZE * BLOCK_COUNT);
+        bb.order(ByteOrder.BIG_ENDIAN);
+        bb.put(new byte[HEADER_SIZE]);
+        for (int i = 0; i < BLOCK_COUNT * 3; i++) {
+            bb.putInt(i);
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(bb.array());
+        fos.close();
+        pool = new FileChannelPool(FileChannelPool.DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        pool.close();
+        file.delete();
+    }
+
+    @Test
+    public void testMappedSingleWindow() {
+        try {
+            ExtCompInput input = new ExtCompInput.MappedExtCompInput(pool, file, HEADER_SIZE, BLOCK_SIZE,
+                                                                     BLOCK_COUNT, ByteOrder.BIG_ENDIAN, Integer.MAX_VALUE);
+            assertBlocks(input);
+            input.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMappedMultipleWindows() {
+        try {
+            // window size is no multiple of the block size, 4 blocks per window
+            ExtCompInput input = new ExtCompInput.MappedExtCompInput(pool, file, HEADER_SIZE, BLOCK_SIZE,
+                                                                     BLOCK_COUNT, ByteOrder.BIG_ENDIAN, 50);
+            assertBlocks(input);
+            input.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBuffered() {
+        try {
+            ExtCompInput input = new ExtCompInput.BufferedExtCompInput(pool, file, HEADER_SIZE, BLOCK_SIZE,
+                                                                       BLOCK_COUNT, ByteOrder.BIG_ENDIAN);
+            assertBlocks(input);
+            input.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testChunked() {
+        try {
+            ExtCompInput source = new ExtCompInput.BufferedExtCompInput(pool, file, HEADER_SIZE, BLOCK_SIZE,
+                                                                        BLOCK_COUNT, ByteOrder.BIG_ENDIAN);
+            ExtCompInput.ChunkedExtCompInput input = new ExtCompInput.ChunkedExtCompInput(source, 8,
+                                                                                          ByteOrder.BIG_ENDIAN);
+            for (int chunkStart = 0; chunkStart < BLOCK_COUNT; chunkStart += input.getBlocksPerChunk()) {
+                int chunkBlocks = Math.min(input.getBlocksPerChunk(), BLOCK_COUNT - chunkStart);
+                input.load(chunkStart, chunkBlocks);
+                // each block of the chunk may be read several times
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int blockNo = 0; blockNo < chunkBlocks; blockNo++) {
+                        ByteBuffer bb = input.getBlock(blockNo);
+                        assertEquals(BLOCK_SIZE, bb.remaining());
+                        assertEquals((chunkStart + blockNo) * 3 + pass, bb.getInt(bb.position() + pass * 4));
+                    }
+                }
+            }
+            input.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testOpenReadMode() {
+        AtfxCache atfxCache = new AtfxCache(null);
+        try {
+            // buffered reading is the default, memory mapping has to be enabled
+            ExtCompInput input = ExtCompInput.open(atfxCache, file, HEADER_SIZE, BLOCK_SIZE, BLOCK_COUNT,
+                                                   ByteOrder.BIG_ENDIAN);
+            assertTrue(input instanceof ExtCompInput.BufferedExtCompInput);
+            assertBlocks(input);
+            input.close();
+
+            atfxCache.getContext().put(ExtCompInput.CONTEXT_READ_MODE,
+                                       ODSHelper.createStringNV(ExtCompInput.CONTEXT_READ_MODE,
+                                                                ExtCompInput.READ_MODE_MMAP));
+            input = ExtCompInput.open(atfxCache, file, HEADER_SIZE, BLOCK_SIZE, BLOCK_COUNT, ByteOrder.BIG_ENDIAN);
+            assertTrue(input instanceof ExtCompInput.MappedExtCompInput);
+            assertBlocks(input);
+            input.close();
+            atfxCache.getFileChannelPool().close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    private static void assertBlocks(ExtCompInput input) throws IOException {
+        // sequential
+        for (int blockNo = 0; blockNo < BLOCK_COUNT; blockNo++) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            assertEquals(BLOCK_SIZE, bb.remaining());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(blockNo * 3 + i, bb.getInt());
+            }
+        }
+        // random access
+        for (int blockNo : new int[] { 99, 0, 42, 43, 7 }) {
+            ByteBuffer bb = input.getBlock(blockNo);
+            assertEquals(blockNo * 3, bb.getInt());
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompInputTest.class);
+    }
+
+}
@@ -0,0 +1,180 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompSegmentWriter</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompSegmentWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = Files.createTempDirectory("extcompsegmentwriter").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : this.dir.listFiles()) {
+            file.delete();
+        }
+        this.dir.delete();
+    }
+
+    @Test
+    public void testWrite() {
+        try {
+            ExtCompSegmentWriter writer = new ExtCompSegmentWriter(this.dir, "test",
+                                                                   ExtCompSegmentWriter.Kind.NUMERIC, 1000, 8, 1);
+            File file = writer.getFile();
+            assertEquals(new File(this.dir, "test_1.btf"), file);
+
+            // the data is buffered until the buffer is full
+            writer.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+            assertEquals(5, writer.getPosition());
+            assertEquals(0, file.length());
+
+            // data larger than the buffer
+            ByteBuffer bb = ByteBuffer.wrap(new byte[] { 0, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 });
+            bb.get();
+            writer.write(bb);
+            assertEquals(0, bb.remaining());
+            assertEquals(15, writer.getPosition());
+            assertEquals(8, file.length());
+
+            writer.flush();
+            assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15 },
+                              Files.readAllBytes(file.toPath()));
+
+            // appended after reopening
+            writer.close();
+            writer.write(ByteBuffer.wrap(new byte[] { 16 }));
+            assertEquals(16, writer.getPosition());
+            writer.close();
+            assertEquals(16, file.length());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSegments() {
+        try {
+            // the first segment is full
+            Files.write(new File(this.dir, "test_1_flags.btf").toPath(), new byte[10]);
+            ExtCompSegmentWriter writer = new ExtCompSegmentWriter(this.dir, "test", ExtCompSegmentWriter.Kind.FLAGS,
+                                                                   10, 4, 1);
+            assertEquals(new File(this.dir, "test_2_flags.btf"), writer.getFile());
+
+            // the segment is changed before the data would exceed the segment size
+            writer.nextSegmentIfFull(6);
+            writer.write(ByteBuffer.wrap(new byte[6]));
+            writer.nextSegmentIfFull(4);
+            assertEquals(new File(this.dir, "test_2_flags.btf"), writer.getFile());
+            writer.write(ByteBuffer.wrap(new byte[3]));
+            writer.nextSegmentIfFull(2);
+            assertEquals(new File(this.dir, "test_3_flags.btf"), writer.getFile());
+            assertEquals(0, writer.getPosition());
+            assertEquals(9, new File(this.dir, "test_2_flags.btf").length());
+
+            // data larger than the segment size is written to an empty segment
+            writer.nextSegmentIfFull(12);
+            assertEquals(new File(this.dir, "test_3_flags.btf"), writer.getFile());
+            writer.write(ByteBuffer.wrap(new byte[12]));
+
+            writer.nextSegment();
+            assertEquals(new File(this.dir, "test_4_flags.btf"), writer.getFile());
+            writer.close();
+
+            // a new writer continues with the first segment not filled up to the segment size
+            writer = new ExtCompSegmentWriter(this.dir, "test", ExtCompSegmentWriter.Kind.FLAGS, 10, 4, 1);
+            assertEquals(new File(this.dir, "test_2_flags.btf"), writer.getFile());
+            assertEquals(9, writer.getPosition());
+            writer.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPreallocation() {
+        try {
+            ExtCompSegmentWriter writer = new ExtCompSegmentWriter(this.dir, "test",
+                                                                   ExtCompSegmentWriter.Kind.NUMERIC, 250, 8, 100);
+            File file = writer.getFile();
+
+            // the file is extended by whole extents
+            writer.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+            writer.flush();
+            assertEquals(100, file.length());
+            assertEquals(3, writer.getPosition());
+            writer.write(ByteBuffer.wrap(new byte[100]));
+            writer.flush();
+            assertEquals(200, file.length());
+
+            // not beyond the segment size
+            writer.write(ByteBuffer.wrap(new byte[100]));
+            writer.flush();
+            assertEquals(250, file.length());
+
+            // truncated to the logical end
+            writer.close();
+            assertEquals(203, file.length());
+            byte[] data = Files.readAllBytes(file.toPath());
+            assertArrayEquals(new byte[] { 1, 2, 3 }, new byte[] { data[0], data[1], data[2] });
+
+            // continued at the logical end
+            writer.write(ByteBuffer.wrap(new byte[] { 4 }));
+            assertEquals(204, writer.getPosition());
+            writer.close();
+            assertEquals(204, file.length());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFlushFile() {
+        try {
+            ExtCompSegmentWriter writer = new ExtCompSegmentWriter(this.dir, "test",
+                                                                   ExtCompSegmentWriter.Kind.NUMERIC, 1000, 8, 1);
+            File file = writer.getFile();
+            assertFalse(writer.flush(file));
+
+            // only the file the buffered data belongs to is flushed
+            writer.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+            assertFalse(writer.flush(new File(this.dir, "test_2.btf")));
+            assertEquals(0, file.length());
+            assertTrue(writer.flush(new File(new File(this.dir, "."), "test_1.btf")));
+            assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(file.toPath()));
+            assertFalse(writer.flush(file));
+            writer.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompSegmentWriterTest.class);
+    }
+
+}
@@ -0,0 +1,163 @@
+package de.rechner.openatfx;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompStreamDecoder</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompStreamDecoderTest {
+
+    private File file;
+    private RandomAccessFile raf;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = File.createTempFile("extcompstreamdecoder", ".btf");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.raf != null) {
+            this.raf.close();
+        }
+        this.file.delete();
+    }
+
+    @Test
+    public void testDecodeStrings() {
+        try {
+            // the buffer is smaller than most strings, so they span several chunks
+            String[] strings = new String[] { "abc", "", "hello world", "\u00e4\u00f6\u00fc\u00df", "x" };
+            FileChannel channel = write(strings(strings), new byte[] { 'y', 'z' });
+            ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(4, 0, Integer.MAX_VALUE);
+            List<String> list = new ArrayList<String>();
+            decoder.decodeStrings(channel, 0, channel.size(), UTF_8, list);
+            // the bytes after the last zero byte are ignored
+            assertEquals(Arrays.asList(strings), list);
+            assertFalse(decoder.isComplete());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeStringsRange() {
+        try {
+            byte[] component1 = strings("a", "bb", "ccc");
+            byte[] component2 = strings("dddd", "eeeee", "ffffff");
+            FileChannel channel = write(component1, component2);
+
+            // the range starts in the first and ends in the second component
+            ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(3, 2, 3);
+            List<String> list = new ArrayList<String>();
+            decoder.decodeStrings(channel, 0, component1.length, UTF_8, list);
+            assertEquals(Arrays.asList("ccc"), list);
+            decoder.decodeStrings(channel, component1.length, component2.length, UTF_8, list);
+            assertEquals(Arrays.asList("ccc", "dddd", "eeeee"), list);
+            assertTrue(decoder.isComplete());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBytestrs() {
+        try {
+            byte[][] values = new byte[][] { { 1, 2, 3 }, {}, new byte[100], { 4 } };
+            values[2][99] = 5;
+            byte[] component = bytestrs(values);
+            FileChannel channel = write(new byte[] { 9, 9 }, component);
+
+            // the third value is larger than the buffer
+            ExtCompStreamDecoder decoder = new ExtCompStreamDecoder(8, 0, Integer.MAX_VALUE);
+            List<byte[]> list = new ArrayList<byte[]>();
+            decoder.decodeBytestrs(channel, 2, component.length, list);
+            assertEquals(4, list.size());
+            for (int i = 0; i < values.length; i++) {
+                assertArrayEquals(values[i], list.get(i));
+            }
+
+            // range skipping the large value
+            decoder = new ExtCompStreamDecoder(8, 3, 10);
+            list.clear();
+            decoder.decodeBytestrs(channel, 2, component.length, list);
+            assertEquals(1, list.size());
+            assertArrayEquals(values[3], list.get(0));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecodeBytestrsInvalidLength() {
+        try {
+            byte[] component = bytestrs(new byte[] { 1, 2, 3 });
+            FileChannel channel = write(component);
+            new ExtCompStreamDecoder(8, 0, 10).decodeBytestrs(channel, 0, component.length - 1,
+                                                              new ArrayList<byte[]>());
+            fail("IOException expected");
+        } catch (IOException e) {
+        }
+    }
+
+    private FileChannel write(byte[]... parts) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bos.write(part);
+        }
+        Files.write(this.file.toPath(), bos.toByteArray());
+        this.raf = new RandomAccessFile(this.file, "r");
+        return this.raf.getChannel();
+    }
+
+    private static byte[] strings(String... strings) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (String str : strings) {
+            byte[] b = str.getBytes(UTF_8);
+            bos.write(b, 0, b.length);
+            bos.write(0);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] bytestrs(byte[]... values) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (byte[] value : values) {
+            dos.writeInt(value.length); // big endian
+            dos.write(value);
+        }
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompStreamDecoderTest.class);
+    }
+
+}
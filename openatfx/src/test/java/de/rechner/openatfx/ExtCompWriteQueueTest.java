@@ -0,0 +1,204 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.asam.ods.AoException;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.SeverityFlag;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ExtCompWriteQueue</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ExtCompWriteQueueTest {
+
+    private ExtCompWriteQueue<String> queue;
+
+    @Before
+    public void setUp() throws Exception {
+        this.queue = new ExtCompWriteQueue<String>(2, 100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.queue.shutdown();
+    }
+
+    @Test
+    public void testAwait() {
+        try {
+            Results results = new Results();
+            assertFalse(this.queue.hasPending());
+            this.queue.await(1, results);
+            assertTrue(results.isEmpty());
+
+            this.queue.submit(1, 10, new Result("a"));
+            this.queue.submit(2, 10, new Result("b"));
+            this.queue.submit(3, 10, new Result("c"));
+            assertTrue(this.queue.hasPending());
+            this.queue.await(2, results);
+            this.queue.await(2, results);
+            assertEquals(Arrays.asList(2L), Arrays.asList(results.keySet().toArray()));
+
+            // the results are collected in the order of submission
+            results.clear();
+            this.queue.awaitAll(results);
+            assertEquals(Arrays.asList(1L, 3L), Arrays.asList(results.keySet().toArray()));
+            assertEquals(Arrays.asList("a", "c"), Arrays.asList(results.values().toArray()));
+            assertFalse(this.queue.hasPending());
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testBackpressure() {
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            Callable<String> blocked = new Callable<String>() {
+
+                public String call() throws Exception {
+                    release.await();
+                    return "blocked";
+                }
+            };
+            // a write larger than the queue is accepted if the queue is empty
+            this.queue.submit(1, 150, blocked);
+
+            final CountDownLatch submitted = new CountDownLatch(1);
+            Thread thread = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        queue.submit(2, 10, new Result("next"));
+                        submitted.countDown();
+                    } catch (AoException e) {
+                        fail(e.reason);
+                    }
+                }
+            });
+            thread.start();
+            assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+
+            // finishing the first write frees the queue
+            release.countDown();
+            assertTrue(submitted.await(5, TimeUnit.SECONDS));
+            thread.join();
+            Results results = new Results();
+            this.queue.awaitAll(results);
+            assertEquals("blocked", results.get(1L));
+            assertEquals("next", results.get(2L));
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testError() {
+        try {
+            this.queue.submit(1, 10, new Callable<String>() {
+
+                public String call() throws Exception {
+                    throw new AoException(ErrorCode.AO_NOT_IMPLEMENTED, SeverityFlag.ERROR, 0, "failed");
+                }
+            });
+            this.queue.submit(2, 10, new Result("b"));
+            this.queue.awaitAll(null);
+            fail("AoException expected");
+        } catch (AoException e) {
+            assertEquals(ErrorCode.AO_NOT_IMPLEMENTED, e.errCode);
+            // the other writes are collected anyway
+            assertFalse(this.queue.hasPending());
+        }
+    }
+
+    @Test
+    public void testCollectOnce() throws Exception {
+        final CountDownLatch collecting = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger collected = new AtomicInteger();
+        final ExtCompWriteQueue.Collector<String> slow = new ExtCompWriteQueue.Collector<String>() {
+
+            public void collect(long iidLc, String result) throws AoException {
+                collecting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                collected.incrementAndGet();
+            }
+        };
+        this.queue.submit(1, 10, new Result("a"));
+        Thread thread = new Thread(new Runnable() {
+
+            public void run() {
+                try {
+                    queue.await(1, slow);
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        });
+        thread.start();
+        assertTrue(collecting.await(5, TimeUnit.SECONDS));
+
+        // the write stays pending until it has been collected, another thread waits for the collection
+        assertTrue(this.queue.hasPending());
+        Results results = new Results();
+        release.countDown();
+        this.queue.await(1, results);
+        assertFalse(this.queue.hasPending());
+        thread.join();
+        assertEquals(1, collected.get());
+        assertTrue(results.isEmpty());
+    }
+
+    private static class Results extends LinkedHashMap<Long, String> implements ExtCompWriteQueue.Collector<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        public void collect(long iidLc, String result) {
+            put(iidLc, result);
+        }
+
+    }
+
+    private static class Result implements Callable<String> {
+
+        private final String result;
+
+        public Result(String result) {
+            this.result = result;
+        }
+
+        public String call() throws Exception {
+            return this.result;
+        }
+
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExtCompWriteQueueTest.class);
+    }
+
+}
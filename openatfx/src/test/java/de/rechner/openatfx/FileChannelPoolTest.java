@@ -0,0 +1,129 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.FileChannelPool</code>.
+ *
+ * @author Christian Rechner
+ */
+public class FileChannelPoolTest {
+
+    private File[] files;
+
+    @Before
+    public void setUp() throws Exception {
+        this.files = new File[3];
+        for (int i = 0; i < this.files.length; i++) {
+            this.files[i] = File.createTempFile("filechannelpool", ".btf");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : this.files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testAcquireRelease() {
+        try {
+            FileChannelPool pool = new FileChannelPool(2);
+            FileChannel channel = pool.acquire(this.files[0], false);
+            pool.release(channel);
+            // the channel stays open and is reused
+            assertTrue(channel.isOpen());
+            assertSame(channel, pool.acquire(new File(this.files[0].getParentFile(), this.files[0].getName()), false));
+            pool.release(channel);
+            assertEquals(1, pool.getOpenChannelCount());
+
+            pool.close();
+            assertFalse(channel.isOpen());
+            assertEquals(0, pool.getOpenChannelCount());
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        try {
+            FileChannelPool pool = new FileChannelPool(2);
+            FileChannel channel0 = pool.acquire(this.files[0], false);
+            FileChannel channel1 = pool.acquire(this.files[1], false);
+            pool.release(channel1);
+
+            // channel 0 is in use, so the least recently used channel 1 is closed
+            FileChannel channel2 = pool.acquire(this.files[2], false);
+            assertEquals(2, pool.getOpenChannelCount());
+            assertTrue(channel0.isOpen());
+            assertFalse(channel1.isOpen());
+            assertTrue(channel2.isOpen());
+
+            // channels in use are never closed, the limit may be exceeded
+            FileChannel channel1b = pool.acquire(this.files[1], false);
+            assertEquals(3, pool.getOpenChannelCount());
+            pool.release(channel1b);
+            assertEquals(2, pool.getOpenChannelCount());
+
+            pool.release(channel0);
+            pool.release(channel2);
+            pool.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPositionalReadWrite() {
+        try {
+            FileChannelPool pool = new FileChannelPool(2);
+            FileChannel reader = pool.acquire(this.files[0], false);
+
+            // a read only channel is replaced to write, but stays open while in use
+            FileChannel writer = pool.acquire(this.files[0], true);
+            assertNotSame(reader, writer);
+            writer.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }), 0);
+            writer.write(ByteBuffer.wrap(new byte[] { 5, 6 }), 4);
+            assertTrue(reader.isOpen());
+            ByteBuffer bb = ByteBuffer.allocate(3);
+            reader.read(bb, 3);
+            assertEquals(4, bb.get(0));
+            assertEquals(6, bb.get(2));
+            pool.release(reader);
+            assertFalse(reader.isOpen());
+
+            // the writable channel is used for reading
+            assertSame(writer, pool.acquire(this.files[0], false));
+            pool.release(writer);
+            pool.release(writer);
+            assertEquals(1, pool.getOpenChannelCount());
+            pool.close();
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FileChannelPoolTest.class);
+    }
+
+}
@@ -351,6 +351,9 @@ public class InstanceElementImplTest {
             ieLc.setValue(ODSHelper.createFloatSeqNVU("values", new float[] { -1, 0, 1, 9999999 }));
             assertEquals(true,
                          Arrays.equals(new float[] { -1, 0, 1, 9999999 }, ieLc.getValue("values").value.u.floatSeq()));
+            // the values read before must not be returned from the cache after overwriting them
+            ieLc.setValue(ODSHelper.createFloatSeqNVU("values", new float[] { 2, 3 }));
+            assertEquals(true, Arrays.equals(new float[] { 2, 3 }, ieLc.getValue("values").value.u.floatSeq()));
             // 'flags' of 'AoLocalColumn
             // ieLc.setValue(ODSHelper.createShortSeqNVU("flags", new short[] { 15, 0, 10, 0 }));
             // ieLc.getValueByBaseName("flags");
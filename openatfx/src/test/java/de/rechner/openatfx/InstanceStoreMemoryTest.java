@@ -0,0 +1,101 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case filling the <code>de.rechner.openatfx.InstanceStore</code> with many instances. The memory consumption
+ * compared with the nested maps used before is logged, it depends on the garbage collector and is not asserted.
+ *
+ * @author Christian Rechner
+ */
+public class InstanceStoreMemoryTest {
+
+    private static final Log LOG = LogFactory.getLog(InstanceStoreMemoryTest.class);
+
+    private static final int NO_OF_INSTANCES = 100000;
+    private static final int NO_OF_ATTRIBUTES = 4;
+
+    @Test
+    public void testMemoryConsumption() throws Exception {
+        long nestedUsed = measureNestedMaps();
+
+        long base = usedMemory();
+        InstanceStore store = fillInstanceStore();
+        long storeUsed = usedMemory() - base;
+
+        assertEquals(NO_OF_INSTANCES, store.getIids().size());
+        assertEquals(Integer.valueOf(3), store.getValue(NO_OF_INSTANCES, 3));
+        assertArrayEquals(new long[] { NO_OF_INSTANCES / 100 }, store.getRelatedIids(NO_OF_INSTANCES, null));
+        // the store creates no objects per instance, the nested maps several
+        LOG.info("InstanceStore uses " + storeUsed + " bytes, nested maps " + nestedUsed + " bytes for "
+                + NO_OF_INSTANCES + " instances");
+    }
+
+    private static long measureNestedMaps() throws InterruptedException {
+        long base = usedMemory();
+        Object[] nested = fillNestedMaps();
+        long used = usedMemory() - base;
+        assertEquals(NO_OF_INSTANCES, ((Map<?, ?>) nested[0]).size());
+        return used;
+    }
+
+    private static Object[] fillNestedMaps() {
+        // <iid,<attrNo,value>> and <iid,<applRel,relInstIds>>, as previously held by the cache
+        Map<Long, Map<Integer, Object>> values = new TreeMap<Long, Map<Integer, Object>>();
+        Map<Long, Map<Object, Set<Long>>> relations = new HashMap<Long, Map<Object, Set<Long>>>();
+        Object applRel = new Object();
+        for (long iid = 1; iid <= NO_OF_INSTANCES; iid++) {
+            Map<Integer, Object> ieValues = new HashMap<Integer, Object>();
+            for (int attrNo = 0; attrNo < NO_OF_ATTRIBUTES; attrNo++) {
+                ieValues.put(attrNo, Integer.valueOf(attrNo));
+            }
+            values.put(iid, ieValues);
+            Map<Object, Set<Long>> ieRelations = new HashMap<Object, Set<Long>>();
+            Set<Long> relInstIds = new TreeSet<Long>();
+            relInstIds.add(iid / 100);
+            ieRelations.put(applRel, relInstIds);
+            relations.put(iid, ieRelations);
+        }
+        return new Object[] { values, relations };
+    }
+
+    private static InstanceStore fillInstanceStore() {
+        InstanceStore store = new InstanceStore();
+        for (long iid = 1; iid <= NO_OF_INSTANCES; iid++) {
+            store.add(iid);
+            for (int attrNo = 0; attrNo < NO_OF_ATTRIBUTES; attrNo++) {
+                store.setValue(iid, attrNo, Integer.valueOf(attrNo));
+            }
+            store.addRelatedIids(iid, null, Collections.singletonList(iid / 100), false);
+        }
+        return store;
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(InstanceStoreMemoryTest.class);
+    }
+
+}
@@ -0,0 +1,196 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.asam.ods.TS_Value;
+import org.junit.Test;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.InstanceStore</code>.
+ *
+ * @author Christian Rechner
+ */
+public class InstanceStoreTest {
+
+    @Test
+    public void testAddRemove() {
+        InstanceStore store = new InstanceStore();
+        for (long iid = 100; iid > 0; iid--) {
+            store.add(iid);
+            store.setValue(iid, 1, "ie" + iid);
+        }
+        assertEquals(100, store.getIids().size());
+        assertEquals(1, store.getIids().get(0));
+        assertEquals("ie42", store.getValue(42, 1));
+        assertNull(store.getValue(42, 2));
+
+        assertTrue(store.remove(42));
+        assertFalse(store.remove(42));
+        assertFalse(store.contains(42));
+        assertEquals(99, store.getIids().size());
+        try {
+            store.getValue(42, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        // the slot of the removed instance is reused without its values
+        store.add(1000);
+        assertNull(store.getValue(1000, 1));
+        assertEquals("ie41", store.getValue(41, 1));
+
+        // adding an existing instance resets it
+        store.add(41);
+        assertNull(store.getValue(41, 1));
+    }
+
+    @Test
+    public void testValues() {
+        InstanceStore store = new InstanceStore();
+        store.add(1);
+        store.add(2);
+        store.setValue(1, 1, "a");
+        store.setValue(1, 2, Double.valueOf(1.5));
+        store.setValue(2, 1, "b");
+        store.removeValues(1);
+        assertNull(store.getValue(1, 1));
+        assertNull(store.getValue(2, 1));
+        assertEquals(1.5, store.getValue(1, 2));
+        store.setValue(1, 2, null);
+        assertNull(store.getValue(1, 2));
+
+        assertTrue(store.listInstanceAttributes(1).isEmpty());
+        store.setInstanceAttribute(1, "x", ODSHelper.createStringNV("x", "y").value);
+        assertEquals("y", store.getInstanceAttribute(1, "x").u.stringVal());
+        assertEquals(1, store.listInstanceAttributes(1).size());
+        assertNull(store.getInstanceAttribute(2, "x"));
+        store.removeInstanceAttribute(1, "x");
+        assertNull(store.getInstanceAttribute(1, "x"));
+    }
+
+    @Test
+    public void testRelations() {
+        InstanceStore store = new InstanceStore();
+        for (long iid = 1; iid <= 50; iid++) {
+            store.add(iid);
+        }
+        assertEquals(0, store.getRelatedIids(1, null).length);
+        store.addRelatedIids(1, null, Arrays.asList(5L), false);
+        store.addRelatedIids(1, null, Arrays.asList(3L), false);
+        assertArrayEquals(new long[] { 3, 5 }, store.getRelatedIids(1, null));
+        assertEquals(0, store.getRelatedIids(2, null).length);
+        store.addRelatedIids(1, null, Arrays.asList(7L, 6L), true);
+        assertArrayEquals(new long[] { 6, 7 }, store.getRelatedIids(1, null));
+        store.removeRelatedIids(1, null, Arrays.asList(6L, 8L));
+        assertArrayEquals(new long[] { 7 }, store.getRelatedIids(1, null));
+
+        // instances added after the relation was created
+        store.add(51);
+        assertEquals(0, store.getRelatedIids(51, null).length);
+        store.addRelatedIids(51, null, Arrays.asList(1L), false);
+        assertEquals(1, store.getRelatedIids(51, null).length);
+
+        store.remove(1);
+        store.add(1);
+        assertEquals(0, store.getRelatedIids(1, null).length);
+
+        store.removeRelations(null);
+        assertEquals(0, store.getRelatedIids(51, null).length);
+    }
+
+    @Test
+    public void testPackRelations() {
+        InstanceStore store = new InstanceStore();
+        for (long iid = 1; iid <= 10; iid++) {
+            store.add(iid);
+            store.addRelatedIids(iid, null, Arrays.asList(iid * 10, iid * 10 + 1), false);
+        }
+        store.packRelations();
+        assertArrayEquals(new long[] { 50, 51 }, store.getRelatedIids(5, null));
+
+        // modifications after packing
+        store.addRelatedIids(5, null, Arrays.asList(52L), false);
+        store.remove(6);
+        store.add(11);
+        store.addRelatedIids(11, null, Arrays.asList(110L), false);
+        assertArrayEquals(new long[] { 50, 51, 52 }, store.getRelatedIids(5, null));
+        assertArrayEquals(new long[] { 110 }, store.getRelatedIids(11, null));
+        assertArrayEquals(new long[] { 70, 71 }, store.getRelatedIids(7, null));
+    }
+
+    @Test
+    public void testIndexes() {
+        InstanceStore store = new InstanceStore();
+        for (long iid = 1; iid <= 10; iid++) {
+            store.add(iid);
+            store.setValue(iid, 1, (iid % 2 == 0) ? "even" : "odd");
+            store.addRelatedIids(iid, null, Arrays.asList(iid % 3), false);
+        }
+        assertArrayEquals(new long[] { 2, 4, 6, 8, 10 }, store.findIids(1, Arrays.asList("even"), false));
+        assertArrayEquals(new long[] { 2, 4, 6, 8, 10 }, store.findIids(1, Arrays.asList("EVEN"), true));
+        assertArrayEquals(new long[] { 3, 6, 9 }, store.findIidsByRelatedIid(null, Arrays.asList(0L)));
+
+        // the built indexes are kept up to date
+        store.setValue(2, 1, "odd");
+        store.remove(4);
+        store.add(11);
+        store.setValue(11, 1, "Even");
+        assertArrayEquals(new long[] { 6, 8, 10 }, store.findIids(1, Arrays.asList("even"), false));
+        assertArrayEquals(new long[] { 6, 8, 10, 11 }, store.findIids(1, Arrays.asList("even"), true));
+        store.addRelatedIids(11, null, Arrays.asList(0L), false);
+        store.addRelatedIids(3, null, Arrays.asList(1L), false);
+        store.removeRelatedIids(9, null, Arrays.asList(0L));
+        assertArrayEquals(new long[] { 6, 11 }, store.findIidsByRelatedIid(null, Arrays.asList(0L)));
+        store.addRelatedIids(3, null, Arrays.asList(0L), true);
+        assertArrayEquals(new long[] { 3, 6, 11 }, store.findIidsByRelatedIid(null, Arrays.asList(0L)));
+
+        store.removeValues(1);
+        assertEquals(0, store.findIids(1, Arrays.asList("odd"), false).length);
+    }
+
+    @Test
+    public void testBulkModifications() {
+        InstanceStore store = new InstanceStore();
+        long[] iids = new long[] { 1, 2, 3 };
+        for (long iid : iids) {
+            store.add(iid);
+        }
+        store.setValue(2, 1, "x");
+        assertArrayEquals(new long[] { 2 }, store.findIids(1, Arrays.asList("x"), false));
+
+        // previous values are returned and the indexes are kept up to date
+        Object[] oldValues = store.setValues(iids, 1, new Object[] { "x", "y", null });
+        assertArrayEquals(new Object[] { null, "x", null }, oldValues);
+        assertArrayEquals(new long[] { 1 }, store.findIids(1, Arrays.asList("x"), false));
+        assertArrayEquals(new long[] { 2 }, store.findIids(1, Arrays.asList("y"), false));
+        assertNull(store.getValue(3, 1));
+
+        store.setInstanceAttributes(iids, "a", new TS_Value[] { ODSHelper.createStringNV("a", "1").value,
+                ODSHelper.createStringNV("a", "2").value, ODSHelper.createStringNV("a", "3").value });
+        assertEquals("2", store.getInstanceAttribute(2, "a").u.stringVal());
+
+        store.addRelatedIids(3, null, Arrays.asList(8L), false);
+        assertArrayEquals(new long[] { 3 }, store.findIidsByRelatedIid(null, Arrays.asList(8L)));
+        store.addRelatedIids(iids, null, new long[] { 7, 7, 9 }, true);
+        assertArrayEquals(new long[] { 7 }, store.getRelatedIids(1, null));
+        assertArrayEquals(new long[] { 9 }, store.getRelatedIids(3, null));
+        assertArrayEquals(new long[] { 1, 2 }, store.findIidsByRelatedIid(null, Arrays.asList(7L)));
+        assertEquals(0, store.findIidsByRelatedIid(null, Arrays.asList(8L)).length);
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(InstanceStoreTest.class);
+    }
+
+}
@@ -0,0 +1,61 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.asam.ods.DataType;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.LocalColumnDescriptor</code>.
+ *
+ * @author Christian Rechner
+ */
+public class LocalColumnDescriptorTest {
+
+    @Test
+    public void testToSequenceDataType() {
+        assertEquals(DataType.DS_STRING, LocalColumnDescriptor.toSequenceDataType(1));
+        assertEquals(DataType.DS_DOUBLE, LocalColumnDescriptor.toSequenceDataType(7));
+        assertEquals(DataType.DS_LONGLONG, LocalColumnDescriptor.toSequenceDataType(8));
+        assertEquals(DataType.DS_EXTERNALREFERENCE, LocalColumnDescriptor.toSequenceDataType(28));
+        assertEquals(DataType.DS_ENUM, LocalColumnDescriptor.toSequenceDataType(30));
+        assertNull(LocalColumnDescriptor.toSequenceDataType(0));
+        assertNull(LocalColumnDescriptor.toSequenceDataType(9));
+    }
+
+    @Test
+    public void testIsExternal() {
+        assertFalse(new LocalColumnDescriptor(1, DataType.DS_DOUBLE, 0, null, null, new long[0]).isExternal());
+        assertFalse(new LocalColumnDescriptor(1, DataType.DS_DOUBLE, -1, null, null, new long[0]).isExternal());
+        for (int seqRep : new int[] { 7, 8, 9, 11, 13 }) {
+            assertTrue(new LocalColumnDescriptor(1, DataType.DS_DOUBLE, seqRep, null, null, new long[0]).isExternal());
+        }
+    }
+
+    @Test
+    public void testArraysAreCopied() {
+        double[] genParams = new double[] { 1, 2 };
+        long[] extCompIids = new long[] { 3, 4 };
+        LocalColumnDescriptor descriptor = new LocalColumnDescriptor(1, null, 5, DataType.DS_SHORT, genParams,
+                                                                     extCompIids);
+        assertTrue(descriptor.hasGenerationParameters());
+        descriptor.getGenerationParameters()[0] = 9;
+        descriptor.getExtCompIids()[0] = 9;
+        assertArrayEquals(new double[] { 1, 2 }, descriptor.getGenerationParameters(), 0);
+        assertArrayEquals(new long[] { 3, 4 }, descriptor.getExtCompIids());
+        assertEquals(DataType.DS_SHORT, descriptor.getRawDataType());
+        assertFalse(new LocalColumnDescriptor(1, null, 0, null, null, new long[0]).hasGenerationParameters());
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LocalColumnDescriptorTest.class);
+    }
+
+}
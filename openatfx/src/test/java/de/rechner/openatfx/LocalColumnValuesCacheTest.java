@@ -0,0 +1,127 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.asam.ods.AoException;
+import org.asam.ods.DataType;
+import org.asam.ods.TS_Union;
+import org.asam.ods.TS_Value;
+import org.junit.Test;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.LocalColumnValuesCache</code>.
+ *
+ * @author Christian Rechner
+ */
+public class LocalColumnValuesCacheTest {
+
+    @Test
+    public void testGetPut() {
+        try {
+            LocalColumnValuesCache cache = new LocalColumnValuesCache();
+            assertNull(cache.get(1, DataType.DT_DOUBLE));
+            cache.put(1, DataType.DT_DOUBLE, doubles(1, 2, 3), 1000);
+            assertEquals(24, cache.getSize());
+
+            // the cached values are copied, modifying the returned values does not change the cache
+            TS_Value value = cache.get(1, DataType.DT_DOUBLE);
+            assertArrayEquals(new double[] { 1, 2, 3 }, value.u.doubleSeq(), 0);
+            value.u.doubleSeq()[0] = 99;
+            assertArrayEquals(new double[] { 1, 2, 3 }, cache.get(1, DataType.DT_DOUBLE).u.doubleSeq(), 0);
+
+            // another data type is another entry
+            assertNull(cache.get(1, DataType.DT_FLOAT));
+
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getMisses());
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testBytestrValuesCopied() {
+        try {
+            LocalColumnValuesCache cache = new LocalColumnValuesCache();
+            TS_Value value = new TS_Value(new TS_Union(), (short) 15);
+            value.u.bytestrSeq(new byte[][] { { 1, 2 }, { 3 } });
+            cache.put(1, DataType.DS_BYTESTR, value, 1000);
+
+            // neither the given nor the returned byte streams are shared with the cache
+            value.u.bytestrSeq()[0][0] = 99;
+            TS_Value cached = cache.get(1, DataType.DS_BYTESTR);
+            assertArrayEquals(new byte[] { 1, 2 }, cached.u.bytestrSeq()[0]);
+            cached.u.bytestrSeq()[1][0] = 99;
+            assertArrayEquals(new byte[] { 3 }, cache.get(1, DataType.DS_BYTESTR).u.bytestrSeq()[1]);
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        try {
+            LocalColumnValuesCache cache = new LocalColumnValuesCache();
+            cache.put(1, DataType.DT_DOUBLE, doubles(1, 2), 40);
+            cache.put(2, DataType.DT_DOUBLE, doubles(3, 4), 40);
+            // access entry 1, so entry 2 is the least recently used one
+            assertNotNull(cache.get(1, DataType.DT_DOUBLE));
+            cache.put(3, DataType.DT_DOUBLE, doubles(5, 6), 40);
+            assertEquals(32, cache.getSize());
+            assertNotNull(cache.get(1, DataType.DT_DOUBLE));
+            assertNull(cache.get(2, DataType.DT_DOUBLE));
+            assertNotNull(cache.get(3, DataType.DT_DOUBLE));
+
+            // values larger than the cache are not cached
+            cache.put(4, DataType.DT_DOUBLE, doubles(1, 2, 3, 4, 5, 6), 40);
+            assertNull(cache.get(4, DataType.DT_DOUBLE));
+            assertEquals(32, cache.getSize());
+
+            // cache disabled
+            cache.put(5, DataType.DT_DOUBLE, doubles(1), 0);
+            assertNull(cache.get(5, DataType.DT_DOUBLE));
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        try {
+            LocalColumnValuesCache cache = new LocalColumnValuesCache();
+            cache.put(1, DataType.DT_DOUBLE, doubles(1, 2), 1000);
+            cache.put(1, DataType.DT_FLOAT, ODSHelper.jObject2tsValue(DataType.DS_FLOAT, new float[] { 1, 2 }), 1000);
+            cache.put(2, DataType.DT_DOUBLE, doubles(3, 4), 1000);
+            assertEquals(40, cache.getSize());
+
+            cache.invalidate(1);
+            assertNull(cache.get(1, DataType.DT_DOUBLE));
+            assertNull(cache.get(1, DataType.DT_FLOAT));
+            assertNotNull(cache.get(2, DataType.DT_DOUBLE));
+            assertEquals(16, cache.getSize());
+
+            cache.clear();
+            assertEquals(true, cache.isEmpty());
+            assertEquals(0, cache.getSize());
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    private static TS_Value doubles(double... values) throws AoException {
+        return ODSHelper.jObject2tsValue(DataType.DS_DOUBLE, values);
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LocalColumnValuesCacheTest.class);
+    }
+
+}
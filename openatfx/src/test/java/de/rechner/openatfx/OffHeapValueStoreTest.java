@@ -0,0 +1,211 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.asam.ods.AoException;
+import org.asam.ods.AoSession;
+import org.asam.ods.ApplicationElement;
+import org.asam.ods.Column;
+import org.asam.ods.NameValueSeqUnit;
+import org.asam.ods.SetType;
+import org.asam.ods.TS_UnionSeq;
+import org.asam.ods.TS_ValueSeq;
+import org.asam.ods.T_LONGLONG;
+import org.asam.ods.ValueMatrix;
+import org.asam.ods.ValueMatrixMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.omg.CORBA.ORB;
+
+import de.rechner.openatfx.util.FileUtil;
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.OffHeapValueStore</code>.
+ *
+ * @author Christian Rechner
+ */
+public class OffHeapValueStoreTest {
+
+    private File dir;
+    private File atfxFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = File.createTempFile("offheap", "");
+        this.dir.delete();
+        this.dir.mkdir();
+        URL url = OffHeapValueStoreTest.class.getResource("/de/rechner/openatfx/example.atfx");
+        this.atfxFile = new File(this.dir, "example.atfx");
+        FileUtil.copyFile(new File(url.getFile()), this.atfxFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = this.dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.dir.delete();
+    }
+
+    @Test
+    public void testPutGet() throws IOException {
+        OffHeapValueStore store = new OffHeapValueStore();
+        try {
+            double[] doubles = new double[300000]; // larger than the write buffer
+            for (int i = 0; i < doubles.length; i++) {
+                doubles[i] = i * 0.5;
+            }
+            OffHeapValueStore.Value doubleValue = store.put(doubles);
+            OffHeapValueStore.Value byteValue = store.put(new byte[] { 1, -2, 3 });
+            OffHeapValueStore.Value shortValue = store.put(new short[] { -1, 2 });
+            OffHeapValueStore.Value intValue = store.put(new int[] { Integer.MIN_VALUE, 7 });
+            OffHeapValueStore.Value floatValue = store.put(new float[] { 1.5f });
+            OffHeapValueStore.Value longlongValue = store.put(new T_LONGLONG[] { ODSHelper.asODSLongLong(1L << 40),
+                    ODSHelper.asODSLongLong(-3) });
+            assertEquals(300000 * 8 + 3 + 4 + 8 + 4 + 16, store.getSize());
+
+            assertEquals(300000, doubleValue.getLength());
+            assertArrayEquals(doubles, (double[]) store.get(doubleValue), 0);
+            assertArrayEquals(new byte[] { 1, -2, 3 }, (byte[]) store.get(byteValue));
+            assertArrayEquals(new short[] { -1, 2 }, (short[]) store.get(shortValue));
+            assertArrayEquals(new int[] { Integer.MIN_VALUE, 7 }, (int[]) store.get(intValue));
+            assertArrayEquals(new float[] { 1.5f }, (float[]) store.get(floatValue), 0);
+            T_LONGLONG[] longlongs = (T_LONGLONG[]) store.get(longlongValue);
+            assertEquals(1L << 40, ODSHelper.asJLong(longlongs[0]));
+            assertEquals(-3, ODSHelper.asJLong(longlongs[1]));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testGetRange() throws IOException {
+        OffHeapValueStore store = new OffHeapValueStore();
+        try {
+            store.put(new byte[] { 9 });
+            OffHeapValueStore.Value value = store.put(new int[] { 0, 1, 2, 3, 4 });
+            assertArrayEquals(new int[] { 1, 2 }, (int[]) store.get(value, 1, 2));
+            assertArrayEquals(new int[] { 3, 4 }, (int[]) store.get(value, 3, 10));
+            assertEquals(0, ((int[]) store.get(value, 7, 2)).length);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testFree() throws IOException {
+        OffHeapValueStore store = new OffHeapValueStore();
+        try {
+            OffHeapValueStore.Value v1 = store.put(new int[] { 1, 2, 3, 4 });
+            OffHeapValueStore.Value v2 = store.put(new int[] { 5, 6 });
+            OffHeapValueStore.Value v3 = store.put(new byte[] { 7 });
+            assertEquals(25, store.getSize());
+
+            // released space is reused by the following writes
+            store.free(v1);
+            assertNull(store.get(v1));
+            assertEquals(25, store.getSize());
+            assertEquals(16, store.getFreeSize());
+            OffHeapValueStore.Value v4 = store.put(new double[] { 0.5 });
+            assertEquals(25, store.getSize());
+            assertEquals(8, store.getFreeSize());
+            assertArrayEquals(new double[] { 0.5 }, (double[]) store.get(v4), 0);
+            assertArrayEquals(new int[] { 5, 6 }, (int[]) store.get(v2));
+
+            // adjacent extents are merged
+            store.free(v2);
+            assertEquals(16, store.getFreeSize());
+            OffHeapValueStore.Value v5 = store.put(new short[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+            assertEquals(25, store.getSize());
+            assertEquals(0, store.getFreeSize());
+            assertArrayEquals(new short[] { 1, 2, 3, 4, 5, 6, 7, 8 }, (short[]) store.get(v5));
+
+            // free space at the end of the file is truncated
+            store.free(v3);
+            assertEquals(24, store.getSize());
+            store.free(v5);
+            store.free(v5);
+            assertEquals(8, store.getSize());
+            store.free(v4);
+            assertEquals(0, store.getSize());
+            assertEquals(0, store.getFreeSize());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSizeOf() {
+        assertEquals(24, OffHeapValueStore.sizeOf(new double[3]));
+        assertEquals(16, OffHeapValueStore.sizeOf(new T_LONGLONG[2]));
+        assertEquals(-1, OffHeapValueStore.sizeOf(new String[3]));
+        assertEquals(-1, OffHeapValueStore.sizeOf(null));
+    }
+
+    @Test
+    public void testLocalColumnValues() {
+        ORB orb = ORB.init(new String[0], System.getProperties());
+        AoSession session = null;
+        try {
+            session = AoServiceFactory.getInstance().newAoSession(orb, this.atfxFile);
+            session.setContext(ODSHelper.createLongLongNV("OFF_HEAP_VALUES_THRESHOLD", 8));
+            session.startTransaction();
+            double[] time = new double[167];
+            for (int i = 0; i < time.length; i++) {
+                time[i] = i * 0.25;
+            }
+            ValueMatrix vm = getValueMatrix(session);
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", time) });
+
+            Column[] columns = new Column[] { vm.getColumns("Time")[0] };
+            assertArrayEquals(time, vm.getValue(columns, 0, 0)[0].value.u.doubleVal(), 0);
+            assertArrayEquals(Arrays.copyOfRange(time, 10, 15), vm.getValue(columns, 10, 5)[0].value.u.doubleVal(),
+                              0);
+            session.abortTransaction();
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        }
+    }
+
+    private static ValueMatrix getValueMatrix(AoSession session) throws AoException {
+        ApplicationElement aeSm = session.getApplicationStructure().getElementByName("sm");
+        return aeSm.getInstanceById(ODSHelper.asODSLongLong(33)).upcastSubMatrix()
+                   .getValueMatrixInMode(ValueMatrixMode.STORAGE);
+    }
+
+    private static NameValueSeqUnit nvsu(String name, double[] values) {
+        TS_UnionSeq u = new TS_UnionSeq();
+        u.doubleVal(values);
+        short[] flags = new short[values.length];
+        Arrays.fill(flags, (short) 15);
+        return new NameValueSeqUnit(name, new TS_ValueSeq(u, flags), "");
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OffHeapValueStoreTest.class);
+    }
+
+}
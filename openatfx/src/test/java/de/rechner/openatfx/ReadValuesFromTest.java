@@ -5,15 +5,26 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
 
 import junit.framework.JUnit4TestAdapter;
 
 import org.asam.ods.AoException;
 import org.asam.ods.AoSession;
+import org.asam.ods.ApplicationAttribute;
 import org.asam.ods.ApplicationElement;
+import org.asam.ods.ApplicationRelation;
 import org.asam.ods.ApplicationStructure;
 import org.asam.ods.Column;
+import org.asam.ods.DataType;
+import org.asam.ods.InstanceElement;
+import org.asam.ods.InstanceElementIterator;
+import org.asam.ods.NameValueSeqUnit;
+import org.asam.ods.NameValueUnit;
 import org.asam.ods.SubMatrix;
 import org.asam.ods.TS_ValueSeq;
 import org.asam.ods.ValueMatrix;
@@ -37,6 +48,10 @@ public class ReadValuesFromTest {
     private static ValueMatrix vmStorageExample;
     private static ValueMatrix vmCalculatedExample;
 
+    /** the local columns of this session are named like their measurement quantities */
+    private static AoSession aoSessionValueMatrix;
+    private static ValueMatrix vmStorageValueMatrix;
+
     @BeforeClass
     public static void setUpBeforeClass() throws Exception {
         ORB orb = ORB.init(new String[0], System.getProperties());
@@ -47,11 +62,19 @@ public class ReadValuesFromTest {
         SubMatrix sm = aeSm.getInstanceByName("Submatrix1").upcastSubMatrix();
         vmStorageExample = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
         vmCalculatedExample = sm.getValueMatrixInMode(ValueMatrixMode.CALCULATED);
+
+        url = InstanceElementImplTest.class.getResource("/de/rechner/openatfx/test_valuematrix.atfx");
+        aoSessionValueMatrix = AoServiceFactory.getInstance().newAoFactory(orb)
+                                               .newSession("FILENAME=" + new File(url.getFile()));
+        aeSm = aoSessionValueMatrix.getApplicationStructure().getElementByName("Submatrix");
+        sm = aeSm.getInstanceByName("Submatrix1").upcastSubMatrix();
+        vmStorageValueMatrix = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
     }
 
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
         aoSession.close();
+        aoSessionValueMatrix.close();
     }
 
     @Test
@@ -208,6 +231,141 @@ public class ReadValuesFromTest {
         }
     }
 
+    @Test
+    public void testGetValueExternalComponents() {
+        try {
+            // the columns 't' and 'I' share the same records of the external component file
+            Column[] cols = vmStorageValueMatrix.getColumns("*");
+            for (int[] range : new int[][] { { 0, 0 }, { 3, 4 }, { 8, 5 } }) {
+                NameValueSeqUnit[] values = vmStorageValueMatrix.getValue(cols, range[0], range[1]);
+                assertEquals(cols.length, values.length);
+                for (int i = 0; i < cols.length; i++) {
+                    TS_ValueSeq expected = vmStorageValueMatrix.getValueVector(cols[i], range[0], range[1]);
+                    assertEquals(cols[i].getName(), values[i].valName);
+                    assertValueSeqEquals(expected, values[i].value);
+                }
+            }
+
+            cols = new Column[] { vmStorageValueMatrix.getColumns("t")[0], vmStorageValueMatrix.getColumns("I")[0] };
+            NameValueSeqUnit[] values = vmStorageValueMatrix.getValue(cols, 3, 4);
+            assertArrayEquals(new double[] { 3, 4, 5, 6 }, values[0].value.u.doubleVal(), 0);
+            assertArrayEquals(new int[] { 1, 2, 2, 3 }, values[1].value.u.longVal());
+        } catch (AoException e) {
+            fail(e.reason);
+        }
+    }
+
+    @Test
+    public void testGetValueVectorMultipleComponents() {
+        File flagsFile = null;
+        try {
+            ApplicationStructure as = aoSessionValueMatrix.getApplicationStructure();
+            ApplicationElement aeLc = as.getElementByName("Localcolumn");
+            ApplicationElement aeEc = as.getElementByName("ec");
+            ApplicationRelation relLcEc = as.getRelations(aeLc, aeEc)[0];
+
+            // split the 20 values of local column 't_3' into 3 segments, the ordinal numbers define their order
+            InstanceElement ieLc = aeLc.getInstanceById(ODSHelper.asODSLongLong(3));
+            InstanceElementIterator iter = ieLc.getRelatedInstances(relLcEc, "*");
+            ieLc.removeRelation(relLcEc, iter.nextOne());
+            iter.destroy();
+            int[][] segments = new int[][] { { 3, 13, 7 }, { 1, 0, 7 }, { 2, 7, 6 } }; // ordinal, first, length
+            for (int[] segment : segments) {
+                InstanceElement ieEc = aeEc.createInstance("ec_" + segment[0]);
+                ieEc.setValue(ODSHelper.createStringNVU("filename_url", "test_0001_0002.bin"));
+                ieEc.setValue(ODSHelper.createEnumNVU("value_type", 6));
+                ieEc.setValue(ODSHelper.createLongNVU("component_length", segment[2]));
+                ieEc.setValue(ODSHelper.createLongNVU("start_offset", segment[1] * 11));
+                ieEc.setValue(ODSHelper.createLongNVU("block_size", 11));
+                ieEc.setValue(ODSHelper.createLongNVU("valuesperblock", 1));
+                ieEc.setValue(ODSHelper.createLongNVU("value_offset", 0));
+                ieEc.setValue(ODSHelper.createLongNVU("ordinal_number", segment[0]));
+                ieLc.createRelation(relLcEc, ieEc);
+            }
+
+            SubMatrix sm = as.getElementByName("Submatrix").getInstanceByName("Submatrix2").upcastSubMatrix();
+            ValueMatrix vm = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
+            Column col = vm.getColumns("t_3")[0];
+            double[] expected = new double[20];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = i;
+            }
+            assertArrayEquals(expected, vm.getValueVector(col, 0, 0).u.doubleVal(), 0);
+            // the range covers parts of all segments
+            assertArrayEquals(new double[] { 5, 6, 7, 8, 9, 10, 11, 12, 13, 14 },
+                              vm.getValueVector(col, 5, 10).u.doubleVal(), 0);
+            // the range covers only the last segment
+            assertArrayEquals(new double[] { 17, 18, 19 }, vm.getValueVector(col, 17, 10).u.doubleVal(), 0);
+
+            // the flags of the segments are concatenated, a segment without flags file has valid values only
+            File fileRoot = new File(aoSessionValueMatrix.getContextByName("FILE_ROOT").value.u.stringVal());
+            flagsFile = File.createTempFile("flags", ".btf", fileRoot);
+            ByteBuffer bb = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+            short[] expectedFlags = new short[20];
+            for (int i = 0; i < expectedFlags.length; i++) {
+                expectedFlags[i] = (short) ((i < 7 || i > 12) && i % 3 == 0 ? 0 : 15);
+                if (i < 7 || i > 12) {
+                    bb.putShort(expectedFlags[i]);
+                }
+            }
+            Files.write(flagsFile.toPath(), bb.array());
+            setFlags(aeEc.getInstanceByName("ec_1"), flagsFile.getName(), 0);
+            setFlags(aeEc.getInstanceByName("ec_3"), flagsFile.getName(), 14);
+            ApplicationAttribute aaFlags = aeLc.createAttribute();
+            aaFlags.setName("flags");
+            aaFlags.setBaseAttribute(aeLc.getBaseElement().getAttributes("flags")[0]);
+            NameValueUnit nvuGlobalFlag = ieLc.getValueByBaseName("global_flag");
+            nvuGlobalFlag.value.flag = 0;
+            ieLc.setValue(nvuGlobalFlag);
+            assertArrayEquals(expectedFlags, vm.getValueVector(col, 0, 0).flag);
+            assertArrayEquals(new short[] { 15, 0, 15, 15, 15, 15, 15, 15, 15, 15 },
+                              vm.getValueVector(col, 5, 10).flag);
+            assertArrayEquals(new short[] { 0, 15, 15, 0, 15 }, vm.getValueVector(col, 15, 5).flag);
+
+            // changing an attribute of an external component is visible to the next read
+            aeEc.getInstanceByName("ec_1").setValue(ODSHelper.createLongNVU("ordinal_number", 4));
+            assertArrayEquals(new double[] { 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 0, 1, 2, 3, 4, 5, 6 },
+                              vm.getValueVector(col, 0, 0).u.doubleVal(), 0);
+            vm.destroy();
+        } catch (AoException e) {
+            fail(e.reason);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        } finally {
+            if (flagsFile != null) {
+                flagsFile.delete();
+            }
+        }
+    }
+
+    private static void setFlags(InstanceElement ieEc, String flagsFilenameUrl, int flagsStartOffset)
+            throws AoException {
+        ieEc.setValue(ODSHelper.createStringNVU("flags_filename_url", flagsFilenameUrl));
+        DataType dt = ieEc.getApplicationElement().getAttributeByName("flags_start_offset").getDataType();
+        if (dt == DataType.DT_LONG) {
+            ieEc.setValue(ODSHelper.createLongNVU("flags_start_offset", flagsStartOffset));
+        } else {
+            ieEc.setValue(ODSHelper.createLongLongNVU("flags_start_offset", flagsStartOffset));
+        }
+    }
+
+    private static void assertValueSeqEquals(TS_ValueSeq expected, TS_ValueSeq actual) {
+        assertArrayEquals(expected.flag, actual.flag);
+        assertEquals(expected.u.discriminator(), actual.u.discriminator());
+        DataType dt = expected.u.discriminator();
+        if (dt == DataType.DT_DOUBLE) {
+            assertArrayEquals(expected.u.doubleVal(), actual.u.doubleVal(), 0);
+        } else if (dt == DataType.DT_FLOAT) {
+            assertArrayEquals(expected.u.floatVal(), actual.u.floatVal(), 0);
+        } else if (dt == DataType.DT_LONG) {
+            assertArrayEquals(expected.u.longVal(), actual.u.longVal());
+        } else if (dt == DataType.DT_STRING) {
+            assertArrayEquals(expected.u.stringVal(), actual.u.stringVal());
+        } else {
+            fail("Unexpected data type: " + ODSHelper.dataType2String(dt));
+        }
+    }
+
     @Test
     public void testDestroy() {
         ValueMatrix vm = null;
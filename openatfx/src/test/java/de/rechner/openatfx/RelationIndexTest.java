@@ -0,0 +1,85 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.RelationIndex</code>.
+ *
+ * @author Christian Rechner
+ */
+public class RelationIndexTest {
+
+    @Test
+    public void testAddRemove() {
+        RelationIndex index = new RelationIndex(2);
+        assertEquals(0, index.size(0));
+        assertEquals(0, index.get(5).length);
+
+        assertTrue(index.add(0, 5));
+        assertTrue(index.add(0, 3));
+        assertFalse(index.add(0, 5));
+        assertTrue(index.add(0, 9));
+        assertArrayEquals(new long[] { 3, 5, 9 }, index.get(0));
+
+        // slots beyond the initial capacity
+        assertTrue(index.add(10, 1));
+        assertEquals(1, index.size(10));
+
+        assertTrue(index.remove(0, 5));
+        assertFalse(index.remove(0, 5));
+        assertFalse(index.remove(7, 5));
+        assertArrayEquals(new long[] { 3, 9 }, index.get(0));
+
+        index.clear(0);
+        assertEquals(0, index.size(0));
+        assertArrayEquals(new long[] { 1 }, index.get(10));
+    }
+
+    @Test
+    public void testPack() {
+        RelationIndex index = new RelationIndex(4);
+        index.add(0, 2);
+        index.add(0, 1);
+        index.add(2, 7);
+        index.add(3, 8);
+        index.add(3, 9);
+        index.pack();
+        assertTrue(index.isPacked());
+        assertArrayEquals(new long[] { 1, 2 }, index.get(0));
+        assertEquals(0, index.size(1));
+        assertArrayEquals(new long[] { 7 }, index.get(2));
+        assertArrayEquals(new long[] { 8, 9 }, index.get(3));
+
+        // modified slots leave the packed array, the others stay
+        index.add(2, 6);
+        index.remove(3, 8);
+        index.add(1, 4);
+        index.clear(0);
+        assertFalse(index.isPacked());
+        assertEquals(0, index.size(0));
+        assertArrayEquals(new long[] { 4 }, index.get(1));
+        assertArrayEquals(new long[] { 6, 7 }, index.get(2));
+        assertArrayEquals(new long[] { 9 }, index.get(3));
+
+        // packing again
+        index.pack();
+        assertTrue(index.isPacked());
+        assertEquals(0, index.size(0));
+        assertArrayEquals(new long[] { 4 }, index.get(1));
+        assertArrayEquals(new long[] { 6, 7 }, index.get(2));
+        assertArrayEquals(new long[] { 9 }, index.get(3));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RelationIndexTest.class);
+    }
+
+}
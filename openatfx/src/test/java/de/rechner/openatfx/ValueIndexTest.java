@@ -0,0 +1,68 @@
+package de.rechner.openatfx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import de.rechner.openatfx.util.ODSHelper;
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.ValueIndex</code>.
+ *
+ * @author Christian Rechner
+ */
+public class ValueIndexTest {
+
+    @Test
+    public void testStringValues() {
+        ValueIndex index = new ValueIndex(false);
+        index.add("a", 3);
+        index.add("a", 1);
+        index.add("b", 2);
+        index.add(null, 4);
+        assertArrayEquals(new long[] { 1, 3 }, index.get(Collections.singletonList("a")));
+        assertArrayEquals(new long[] { 1, 2, 3 }, index.get(Arrays.asList("b", "a", "b")));
+        assertEquals(0, index.get(Collections.singletonList("A")).length);
+        assertEquals(0, index.get(Collections.singletonList(null)).length);
+
+        index.remove("a", 3);
+        assertArrayEquals(new long[] { 1 }, index.get(Collections.singletonList("a")));
+        index.remove("a", 1);
+        index.remove("b", 5);
+        assertEquals(0, index.get(Collections.singletonList("a")).length);
+        assertArrayEquals(new long[] { 2 }, index.get(Collections.singletonList("b")));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        ValueIndex index = new ValueIndex(true);
+        index.add("LS.Left Side", 1);
+        index.add("ls.left side", 2);
+        index.add("\u00c4", 3);
+        assertArrayEquals(new long[] { 1, 2 }, index.get(Collections.singletonList("LS.LEFT SIDE")));
+        // only ASCII characters are compared case insensitive
+        assertArrayEquals(new long[] { 3 }, index.get(Collections.singletonList("\u00c4")));
+        assertEquals(0, index.get(Collections.singletonList("\u00e4")).length);
+    }
+
+    @Test
+    public void testLongLongValues() {
+        ValueIndex index = new ValueIndex(false);
+        index.add(ODSHelper.asODSLongLong(94), 1);
+        index.add(Long.valueOf(60), 2);
+        assertArrayEquals(new long[] { 1, 2 }, index.get(Arrays.asList(60L, 94L)));
+        index.remove(ODSHelper.asODSLongLong(60), 2);
+        assertArrayEquals(new long[] { 1 }, index.get(Arrays.asList(60L, 94L)));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ValueIndexTest.class);
+    }
+
+}
@@ -6,14 +6,20 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
 
 import org.asam.ods.AoException;
 import org.asam.ods.AoSession;
 import org.asam.ods.ApplicationElement;
+import org.asam.ods.ApplicationRelation;
 import org.asam.ods.ApplicationStructure;
 import org.asam.ods.Column;
+import org.asam.ods.ErrorCode;
+import org.asam.ods.InstanceElement;
 import org.asam.ods.NameValueSeqUnit;
+import org.asam.ods.SetType;
 import org.asam.ods.SubMatrix;
+import org.asam.ods.TS_UnionSeq;
 import org.asam.ods.TS_ValueSeq;
 import org.asam.ods.ValueMatrix;
 import org.asam.ods.ValueMatrixMode;
@@ -211,6 +217,255 @@ public class ValueMatrixOnSubMatrixImplTest {
         }
     }
 
+    @Test
+    public void testSetValueRecords() {
+        AoSession session = null;
+        try {
+            ORB orb = ORB.init(new String[0], System.getProperties());
+            URL url = InstanceElementImplTest.class.getResource("/de/rechner/openatfx/example.atfx");
+            session = AoServiceFactory.getInstance().newAoFactory(orb).newSession("FILENAME=" + new File(url.getFile()));
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+            session.setContext(ODSHelper.createStringNV("EXT_COMP_WRITE_LAYOUT", "RECORD"));
+
+            ApplicationStructure as = session.getApplicationStructure();
+            SubMatrix sm = as.getElementByName("sm").getInstanceById(ODSHelper.asODSLongLong(33)).upcastSubMatrix();
+            ValueMatrix vm = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
+            float[] right = new float[167];
+            double[] time = new double[167];
+            float[] left = new float[167];
+            for (int i = 0; i < 167; i++) {
+                right[i] = i;
+                time[i] = i * 0.5;
+                left[i] = -i;
+            }
+            TS_UnionSeq[] u = new TS_UnionSeq[] { new TS_UnionSeq(), new TS_UnionSeq(), new TS_UnionSeq() };
+            u[0].floatVal(right);
+            u[1].doubleVal(time);
+            u[2].floatVal(left);
+            NameValueSeqUnit[] nvsu = new NameValueSeqUnit[3];
+            nvsu[0] = nvsu("LS.Right Side", u[0], 167);
+            nvsu[1] = nvsu("Time", u[1], 167);
+            nvsu[2] = nvsu("LS.Left Side", u[2], 167);
+            vm.setValue(SetType.UPDATE, 0, nvsu);
+
+            // the columns are read back from the records
+            Column[] cols = new Column[] { vm.getColumns("LS.Right Side")[0], vm.getColumns("Time")[0],
+                    vm.getColumns("LS.Left Side")[0] };
+            NameValueSeqUnit[] read = vm.getValue(cols, 0, 0);
+            assertArrayEquals(right, read[0].value.u.floatVal(), 0);
+            assertArrayEquals(time, read[1].value.u.doubleVal(), 0);
+            assertArrayEquals(left, read[2].value.u.floatVal(), 0);
+            read = vm.getValue(cols, 100, 3);
+            assertArrayEquals(new double[] { 50, 50.5, 51 }, read[1].value.u.doubleVal(), 0);
+            assertArrayEquals(new float[] { -100, -101, -102 }, read[2].value.u.floatVal(), 0);
+
+            // one record holds a value of each column
+            ApplicationElement aeLc = as.getElementByName("lc");
+            ApplicationElement aeEc = as.getElementsByBaseType("AoExternalComponent")[0];
+            ApplicationRelation rel = as.getRelations(aeLc, aeEc)[0];
+            InstanceElement ieEc = aeLc.getInstanceById(ODSHelper.asODSLongLong(45)).getRelatedInstances(rel, "*")
+                                       .nextOne();
+            assertEquals(16, ieEc.getValueByBaseName("block_size").value.u.longVal());
+            assertEquals(4, ieEc.getValueByBaseName("value_offset").value.u.longVal());
+            assertEquals(1, ieEc.getValueByBaseName("valuesperblock").value.u.longVal());
+            assertEquals(167, ieEc.getValueByBaseName("component_length").value.u.longVal());
+
+            session.abortTransaction();
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetValueLarge() {
+        AoSession session = null;
+        try {
+            ORB orb = ORB.init(new String[0], System.getProperties());
+            URL url = InstanceElementImplTest.class.getResource("/de/rechner/openatfx/example.atfx");
+            session = AoServiceFactory.getInstance().newAoFactory(orb).newSession("FILENAME=" + new File(url.getFile()));
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+
+            // the values exceed the size of the buffer encoding them
+            int count = 300000;
+            double[] time = new double[count];
+            float[] left = new float[count];
+            for (int i = 0; i < count; i++) {
+                time[i] = i * 0.5;
+                left[i] = -i;
+            }
+            ApplicationElement aeLc = session.getApplicationStructure().getElementByName("lc");
+            InstanceElement ieTime = aeLc.getInstanceById(ODSHelper.asODSLongLong(45));
+            InstanceElement ieLeft = aeLc.getInstanceById(ODSHelper.asODSLongLong(47));
+            ieTime.setValue(ODSHelper.createDoubleSeqNVU("values", time));
+            ieLeft.setValue(ODSHelper.createFloatSeqNVU("values", left));
+
+            assertArrayEquals(time, ieTime.getValue("values").value.u.doubleSeq(), 0);
+            assertArrayEquals(left, ieLeft.getValue("values").value.u.floatSeq(), 0);
+
+            session.abortTransaction();
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetValueInvalid() {
+        TS_UnionSeq u = new TS_UnionSeq();
+        u.doubleVal(new double[167]);
+        NameValueSeqUnit[] nvsu = new NameValueSeqUnit[] { nvsu("Time", u, 167) };
+
+        // only in mode STORAGE
+        try {
+            vmCalculated.setValue(SetType.UPDATE, 0, nvsu);
+            fail("AoException expected");
+        } catch (AoException e) {
+            assertEquals(ErrorCode.AO_INVALID_VALUEMATRIX_MODE, e.errCode);
+        }
+
+        // no insert into a filled submatrix, no append or remove
+        SetType[] setTypes = new SetType[] { SetType.INSERT, SetType.APPEND, SetType.REMOVE };
+        for (SetType setType : setTypes) {
+            try {
+                vmStorage.setValue(setType, 0, nvsu);
+                fail("AoException expected");
+            } catch (AoException e) {
+                assertEquals(ErrorCode.AO_INVALID_SET_TYPE, e.errCode);
+            }
+        }
+
+        // the length of the column has to match the row count
+        try {
+            u = new TS_UnionSeq();
+            u.doubleVal(new double[100]);
+            vmStorage.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", u, 100) });
+            fail("AoException expected");
+        } catch (AoException e) {
+            assertEquals(ErrorCode.AO_BAD_PARAMETER, e.errCode);
+        }
+        try {
+            nvsu[0].value.flag = new short[100];
+            vmStorage.setValue(SetType.UPDATE, 0, nvsu);
+            fail("AoException expected");
+        } catch (AoException e) {
+            assertEquals(ErrorCode.AO_BAD_PARAMETER, e.errCode);
+        }
+    }
+
+    @Test
+    public void testSetValueFlags() {
+        AoSession session = null;
+        try {
+            ORB orb = ORB.init(new String[0], System.getProperties());
+            URL url = InstanceElementImplTest.class.getResource("/de/rechner/openatfx/example.atfx");
+            session = AoServiceFactory.getInstance().newAoFactory(orb).newSession("FILENAME=" + new File(url.getFile()));
+            session.startTransaction();
+            session.setContext(ODSHelper.createStringNV("write_mode", "file"));
+
+            ApplicationStructure as = session.getApplicationStructure();
+            SubMatrix sm = as.getElementByName("sm").getInstanceById(ODSHelper.asODSLongLong(33)).upcastSubMatrix();
+            ValueMatrix vm = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
+            TS_UnionSeq u = new TS_UnionSeq();
+            u.doubleVal(new double[167]);
+            NameValueSeqUnit[] nvsu = new NameValueSeqUnit[] { nvsu("Time", u, 167) };
+
+            // flags differing from 15 are stored in the flags of the local column
+            nvsu[0].value.flag[1] = 0;
+            nvsu[0].value.flag[2] = 9;
+            vm.setValue(SetType.UPDATE, 0, nvsu);
+            short[] flags = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0)[0].value.flag;
+            assertEquals(167, flags.length);
+            assertEquals(15, flags[0]);
+            assertEquals(0, flags[1]);
+            assertEquals(9, flags[2]);
+            assertEquals(15, flags[166]);
+
+            // valid flags replace them
+            vm.setValue(SetType.UPDATE, 0, new NameValueSeqUnit[] { nvsu("Time", u, 167) });
+            flags = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0)[0].value.flag;
+            short[] validFlags = new short[167];
+            Arrays.fill(validFlags, (short) 15);
+            assertArrayEquals(validFlags, flags);
+
+            session.abortTransaction();
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSetValueInsert() {
+        AoSession session = null;
+        try {
+            ORB orb = ORB.init(new String[0], System.getProperties());
+            URL url = InstanceElementImplTest.class.getResource("/de/rechner/openatfx/example.atfx");
+            session = AoServiceFactory.getInstance().newAoFactory(orb).newSession("FILENAME=" + new File(url.getFile()));
+            session.startTransaction();
+
+            ApplicationStructure as = session.getApplicationStructure();
+            SubMatrix sm = as.getElementByName("sm").getInstanceById(ODSHelper.asODSLongLong(33)).upcastSubMatrix();
+            sm.setValue(ODSHelper.createLongNVU(sm.getValueByBaseName("number_of_rows").valName, 0));
+            ValueMatrix vm = sm.getValueMatrixInMode(ValueMatrixMode.STORAGE);
+            assertEquals(0, vm.getRowCount());
+
+            // inserting into the empty submatrix sets the number of rows
+            double[] time = new double[10];
+            for (int i = 0; i < time.length; i++) {
+                time[i] = i * 0.5;
+            }
+            TS_UnionSeq u = new TS_UnionSeq();
+            u.doubleVal(time);
+            vm.setValue(SetType.INSERT, 0, new NameValueSeqUnit[] { nvsu("Time", u, 10) });
+            assertEquals(10, vm.getRowCount());
+            assertEquals(10, sm.getValueByBaseName("number_of_rows").value.u.longVal());
+            NameValueSeqUnit[] read = vm.getValue(new Column[] { vm.getColumns("Time")[0] }, 0, 0);
+            assertArrayEquals(time, read[0].value.u.doubleVal(), 0);
+
+            session.abortTransaction();
+        } catch (AoException e) {
+            fail(e.reason);
+        } finally {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (AoException e) {
+                    fail(e.reason);
+                }
+            }
+        }
+    }
+
+    private static NameValueSeqUnit nvsu(String name, TS_UnionSeq u, int count) {
+        short[] flags = new short[count];
+        Arrays.fill(flags, (short) 15);
+        return new NameValueSeqUnit(name, new TS_ValueSeq(u, flags), "");
+    }
+
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(ValueMatrixOnSubMatrixImplTest.class);
     }
@@ -4,21 +4,38 @@ import de.rechner.openatfx.AoFactoryImplTest;
 import de.rechner.openatfx.AoServiceFactoryTest;
 import de.rechner.openatfx.AoSessionImplTest;
 import de.rechner.openatfx.ApplElemAccessImplTest;
+import de.rechner.openatfx.ApplElemAccessInsertInstancesTest;
 import de.rechner.openatfx.ApplicationAttributeImplTest;
 import de.rechner.openatfx.ApplicationElementImplTest;
 import de.rechner.openatfx.ApplicationRelationImplTest;
 import de.rechner.openatfx.ApplicationStructureImplTest;
+import de.rechner.openatfx.AtfxCacheConcurrencyTest;
+import de.rechner.openatfx.AttributeColumnTest;
 import de.rechner.openatfx.BlobImplTest;
 import de.rechner.openatfx.ColumnImplTest;
 import de.rechner.openatfx.EnumerationDefinitionImplTest;
+import de.rechner.openatfx.ExtCompCompactorTest;
+import de.rechner.openatfx.ExtCompDecoderTest;
+import de.rechner.openatfx.ExtCompInputTest;
+import de.rechner.openatfx.ExtCompSegmentWriterTest;
+import de.rechner.openatfx.ExtCompStreamDecoderTest;
+import de.rechner.openatfx.ExtCompWriteQueueTest;
+import de.rechner.openatfx.FileChannelPoolTest;
 import de.rechner.openatfx.InstanceElementImplTest;
 import de.rechner.openatfx.InstanceElementIteratorImplTest;
+import de.rechner.openatfx.InstanceStoreMemoryTest;
+import de.rechner.openatfx.InstanceStoreTest;
+import de.rechner.openatfx.LocalColumnDescriptorTest;
+import de.rechner.openatfx.LocalColumnValuesCacheTest;
 import de.rechner.openatfx.MeasurementImplTest;
 import de.rechner.openatfx.NameIteratorImplTest;
 import de.rechner.openatfx.NameValueIteratorImplTest;
+import de.rechner.openatfx.OffHeapValueStoreTest;
 import de.rechner.openatfx.ReadValuesFromExampleAllTypesTest;
 import de.rechner.openatfx.ReadValuesFromExampleTest;
 import de.rechner.openatfx.ReadValuesFromTest;
+import de.rechner.openatfx.RelationIndexTest;
+import de.rechner.openatfx.ValueIndexTest;
 import de.rechner.openatfx.ValueMatrixOnSubMatrixImplTest;
 import de.rechner.openatfx.ValueMatrixReadFlagsTest;
 import de.rechner.openatfx.basestructure.BaseAttributeImplTest;
@@ -27,6 +44,8 @@ import de.rechner.openatfx.basestructure.BaseEnumerationDefinitionImplTest;
 import de.rechner.openatfx.basestructure.BaseRelationImplTest;
 import de.rechner.openatfx.basestructure.BaseStructureImplTest;
 import de.rechner.openatfx.io.AtfxParseUtilTest;
+import de.rechner.openatfx.util.LongIntHashMapTest;
+import de.rechner.openatfx.util.LongSortedSetTest;
 import de.rechner.openatfx.util.ODSHelperTest;
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +61,8 @@ public class AllTests {
     public static Test suite() {
         TestSuite suite = new TestSuite(AllTests.class.getName());
         suite.addTest(ODSHelperTest.suite());
+        suite.addTest(LongIntHashMapTest.suite());
+        suite.addTest(LongSortedSetTest.suite());
 
         // base structure
         suite.addTest(BaseEnumerationDefinitionImplTest.suite());
@@ -55,6 +76,7 @@ public class AllTests {
         suite.addTest(AoServiceFactoryTest.suite());
         suite.addTest(AoSessionImplTest.suite());
         suite.addTest(ApplElemAccessImplTest.suite());
+        suite.addTest(ApplElemAccessInsertInstancesTest.suite());
         suite.addTest(ApplicationAttributeImplTest.suite());
         suite.addTest(ApplicationRelationImplTest.suite());
         suite.addTest(ApplicationElementImplTest.suite());
@@ -63,12 +85,28 @@ public class AllTests {
         suite.addTest(EnumerationDefinitionImplTest.suite());
         suite.addTest(InstanceElementImplTest.suite());
         suite.addTest(InstanceElementIteratorImplTest.suite());
+        suite.addTest(InstanceStoreTest.suite());
+        suite.addTest(InstanceStoreMemoryTest.suite());
+        suite.addTest(RelationIndexTest.suite());
+        suite.addTest(ValueIndexTest.suite());
+        suite.addTest(AttributeColumnTest.suite());
+        suite.addTest(AtfxCacheConcurrencyTest.suite());
         suite.addTest(NameIteratorImplTest.suite());
         suite.addTest(NameValueIteratorImplTest.suite());
         suite.addTest(MeasurementImplTest.suite());
         suite.addTest(ValueMatrixOnSubMatrixImplTest.suite());
         suite.addTest(ValueMatrixReadFlagsTest.suite());
         suite.addTest(ColumnImplTest.suite());
+        suite.addTest(ExtCompInputTest.suite());
+        suite.addTest(ExtCompDecoderTest.suite());
+        suite.addTest(ExtCompStreamDecoderTest.suite());
+        suite.addTest(ExtCompSegmentWriterTest.suite());
+        suite.addTest(ExtCompWriteQueueTest.suite());
+        suite.addTest(ExtCompCompactorTest.suite());
+        suite.addTest(LocalColumnValuesCacheTest.suite());
+        suite.addTest(LocalColumnDescriptorTest.suite());
+        suite.addTest(OffHeapValueStoreTest.suite());
+        suite.addTest(FileChannelPoolTest.suite());
         suite.addTest(ReadValuesFromExampleTest.suite());
         suite.addTest(ReadValuesFromExampleAllTypesTest.suite());
         suite.addTest(ReadValuesFromTest.suite());
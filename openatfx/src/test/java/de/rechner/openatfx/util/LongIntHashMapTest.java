@@ -0,0 +1,93 @@
+package de.rechner.openatfx.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.util.LongIntHashMap</code>.
+ *
+ * @author Christian Rechner
+ */
+public class LongIntHashMapTest {
+
+    @Test
+    public void testPutGet() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(1));
+        assertEquals(LongIntHashMap.NO_VALUE, map.put(1, 10));
+        assertEquals(LongIntHashMap.NO_VALUE, map.put(-5, 0));
+        assertEquals(LongIntHashMap.NO_VALUE, map.put(Long.MAX_VALUE, 7));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(11, map.get(1));
+        assertEquals(0, map.get(-5));
+        assertEquals(7, map.get(Long.MAX_VALUE));
+        assertTrue(map.containsKey(-5));
+        assertFalse(map.containsKey(2));
+        assertEquals(3, map.size());
+
+        try {
+            map.put(2, -1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(1));
+    }
+
+    @Test
+    public void testRemove() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(LongIntHashMap.NO_VALUE, map.remove(1));
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals(i, map.remove(i));
+        }
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((i % 2 == 0) ? LongIntHashMap.NO_VALUE : i, map.get(i));
+        }
+    }
+
+    @Test
+    public void testRandomOperations() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random random = new Random(4711);
+        for (int i = 0; i < 100000; i++) {
+            // few distinct keys to force collisions, removals and reinsertions
+            long key = random.nextInt(2000) * 1024L;
+            if (random.nextBoolean()) {
+                int value = random.nextInt(Integer.MAX_VALUE);
+                Integer previous = expected.put(key, value);
+                assertEquals(previous == null ? LongIntHashMap.NO_VALUE : previous.intValue(), map.put(key, value));
+            } else {
+                Integer previous = expected.remove(key);
+                assertEquals(previous == null ? LongIntHashMap.NO_VALUE : previous.intValue(), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LongIntHashMapTest.class);
+    }
+
+}
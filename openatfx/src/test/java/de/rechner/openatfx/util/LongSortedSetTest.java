@@ -0,0 +1,81 @@
+package de.rechner.openatfx.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Test case for <code>de.rechner.openatfx.util.LongSortedSet</code>.
+ *
+ * @author Christian Rechner
+ */
+public class LongSortedSetTest {
+
+    @Test
+    public void testAdd() {
+        LongSortedSet set = new LongSortedSet();
+        assertTrue(set.add(5));
+        assertTrue(set.add(7));
+        assertTrue(set.add(1));
+        assertTrue(set.add(6));
+        assertFalse(set.add(5));
+        assertTrue(set.add(Long.valueOf(-3)));
+        assertEquals(5, set.size());
+        assertArrayEquals(new long[] { -3, 1, 5, 6, 7 }, set.toLongArray());
+        assertEquals(6, set.get(3));
+        assertEquals(2, set.indexOf(5));
+        assertTrue(set.indexOf(4) < 0);
+    }
+
+    @Test
+    public void testRemove() {
+        LongSortedSet set = new LongSortedSet();
+        for (long i = 0; i < 10; i++) {
+            set.add(i);
+        }
+        assertTrue(set.remove(0));
+        assertTrue(set.remove(Long.valueOf(9)));
+        assertTrue(set.remove(4));
+        assertFalse(set.remove(4));
+        assertFalse(set.remove("4"));
+        assertArrayEquals(new long[] { 1, 2, 3, 5, 6, 7, 8 }, set.toLongArray());
+        assertTrue(set.contains(Long.valueOf(3)));
+        assertFalse(set.contains(4));
+
+        set.trimToSize();
+        assertTrue(set.add(4));
+        assertEquals(8, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(1));
+    }
+
+    @Test
+    public void testIterator() {
+        LongSortedSet set = new LongSortedSet();
+        set.add(3);
+        set.add(1);
+        set.add(2);
+        Iterator<Long> iter = set.iterator();
+        assertEquals(Long.valueOf(1), iter.next());
+        assertEquals(Long.valueOf(2), iter.next());
+        iter.remove();
+        assertEquals(Long.valueOf(3), iter.next());
+        assertFalse(iter.hasNext());
+        assertArrayEquals(new long[] { 1, 3 }, set.toLongArray());
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LongSortedSetTest.class);
+    }
+
+}